@@ -0,0 +1,411 @@
+package dbf_framework;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A DBFCharacterColumn stores the values of a 'C' field. Rather than keeping
+ * a String per row, the text of all the rows is stored back to back in one
+ * byte array, one byte per character just like in a .dbf file, with each
+ * row's value found by where it starts and how long it is. Strings are only
+ * made when a value is asked for.
+ */
+public class DBFCharacterColumn extends DBFColumn
+{
+	// .dbf FILES USE ONE BYTE PER CHARACTER
+	public static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	// THE TEXT OF ALL THE ROWS
+	private byte[] bytes;
+	private int numBytes;
+
+	// WHERE EACH ROW'S TEXT IS IN bytes
+	private int[] starts;
+	private int[] lengths;
+
+	// HOW MANY BYTES ARE NO LONGER USED BY ANY ROW, SINCE
+	// THEY BELONGED TO VALUES THAT WERE CHANGED OR REMOVED
+	private int numUnusedBytes;
+
+	/**
+	 * This constructor sets up an empty column.
+	 */
+	public DBFCharacterColumn()
+	{
+		bytes = new byte[0];
+		numBytes = 0;
+		starts = new int[0];
+		lengths = new int[0];
+		numUnusedBytes = 0;
+	}
+
+	// ACCESSOR METHODS
+	public Object getData(int row)
+	{
+		return getString(row);
+	}
+
+	public String getString(int row)
+	{
+		checkRow(row);
+		if (nulls.get(row))
+			return null;
+		return new String(bytes, starts[row], lengths[row], CHARSET);
+	}
+
+	/**
+	 * This method copies the text of the value at row into destination,
+	 * starting at offset, copying no more than maxLength bytes.
+	 *
+	 * @return How many bytes were copied.
+	 */
+	int copyBytes(int row, byte[] destination, int offset, int maxLength)
+	{
+		checkRow(row);
+		int length = Math.min(lengths[row], maxLength);
+		System.arraycopy(bytes, starts[row], destination, offset, length);
+		return length;
+	}
+
+	/**
+	 * Accessor method for the value at row as a long, which must be
+	 * a whole number. Empty and null values are 0.
+	 */
+	public long getLong(int row)
+	{
+		String text = getString(row);
+		if ((text == null) || (text.length() == 0))
+			return 0;
+		return Long.parseLong(text.trim());
+	}
+
+	/**
+	 * Accessor method for the value at row as a double, which must
+	 * be a number. Empty and null values are 0.
+	 */
+	public double getDouble(int row)
+	{
+		String text = getString(row);
+		if ((text == null) || (text.length() == 0))
+			return 0;
+		return Double.parseDouble(text.trim());
+	}
+
+	public int compareRows(int row1, int row2)
+	{
+		checkRow(row1);
+		checkRow(row2);
+		if (nulls.get(row1) || nulls.get(row2))
+			return (nulls.get(row1) ? 0 : 1) - (nulls.get(row2) ? 0 : 1);
+
+		// NOTE THAT COMPARING THE BYTES WITHOUT THEIR SIGNS IS JUST
+		// LIKE COMPARING THE STRINGS THEY'D MAKE
+		int start1 = starts[row1];
+		int start2 = starts[row2];
+		int length = Math.min(lengths[row1], lengths[row2]);
+		for (int i = 0; i < length; i++)
+		{
+			int difference = (bytes[start1 + i] & 0xff) - (bytes[start2 + i] & 0xff);
+			if (difference != 0)
+				return difference;
+		}
+		return lengths[row1] - lengths[row2];
+	}
+
+	public int compareValue(int row, Object value)
+	{
+		checkRow(row);
+		if (nulls.get(row) || (value == null))
+			return (nulls.get(row) ? 0 : 1) - ((value == null) ? 0 : 1);
+		String text = value.toString();
+		int start = starts[row];
+		int length = Math.min(lengths[row], text.length());
+		for (int i = 0; i < length; i++)
+		{
+			int difference = (bytes[start + i] & 0xff) - text.charAt(i);
+			if (difference != 0)
+				return difference;
+		}
+		return lengths[row] - text.length();
+	}
+
+	/**
+	 * Note that this gives just what the String's hashCode would.
+	 */
+	public int rowHash(int row)
+	{
+		checkRow(row);
+		if (nulls.get(row))
+			return 0;
+		int hash = 0;
+		int end = starts[row] + lengths[row];
+		for (int i = starts[row]; i < end; i++)
+			hash = (31 * hash) + (bytes[i] & 0xff);
+		return hash;
+	}
+
+	public int valueHash(Object value)
+	{
+		if (value == null)
+			return 0;
+		return value.toString().hashCode();
+	}
+
+	// MUTATOR METHODS
+
+	/**
+	 * Mutator method for changing the value at row, which is stored as its
+	 * text. Note that characters that don't fit in a byte become '?'.
+	 *
+	 * @param row The index of the record whose value is being changed.
+	 *
+	 * @param data The new value, which may be null.
+	 */
+	public void setData(int row, Object data)
+	{
+		checkRow(row);
+		if (data == null)
+		{
+			numUnusedBytes += lengths[row];
+			lengths[row] = 0;
+			nulls.set(row);
+		}
+		else
+		{
+			byte[] text = data.toString().getBytes(CHARSET);
+			setBytes(row, text, 0, text.length);
+		}
+	}
+
+	/**
+	 * Mutator method for changing the value at row to the length bytes of
+	 * text found in source starting at offset.
+	 *
+	 * @param row The index of the record whose value is being changed.
+	 *
+	 * @param source Where the text is.
+	 *
+	 * @param offset Where the text starts in source.
+	 *
+	 * @param length How many bytes of text there are.
+	 */
+	public void setBytes(int row, byte[] source, int offset, int length)
+	{
+		checkRow(row);
+
+		// IF IT FITS WHERE THE OLD VALUE WAS, JUST PUT IT THERE
+		if (length <= lengths[row])
+		{
+			numUnusedBytes += lengths[row] - length;
+		}
+		// OTHERWISE IT GOES AT THE END, AND THE OLD VALUE ISN'T THIS
+		// ROW'S ANYMORE, SO COMPACTING WON'T KEEP IT
+		else
+		{
+			numUnusedBytes += lengths[row];
+			lengths[row] = 0;
+			if ((numUnusedBytes > (numBytes/2)) && (numUnusedBytes > 4096))
+				compact(length);
+			ensureByteCapacity(numBytes + length);
+			starts[row] = numBytes;
+			numBytes += length;
+		}
+		System.arraycopy(source, offset, bytes, starts[row], length);
+		lengths[row] = length;
+		nulls.clear(row);
+	}
+
+	/**
+	 * This method adds a new row to the end of the column whose value is
+	 * the length bytes of text found in source starting at offset.
+	 */
+	void addBytes(byte[] source, int offset, int length)
+	{
+		ensureCapacity(numRows + 1);
+		numRows++;
+		setBytes(numRows - 1, source, offset, length);
+	}
+
+	/**
+	 * This method shrinks the arrays used by this column to just what's
+	 * needed to store its values, throwing out any unused bytes.
+	 */
+	public void trimToSize()
+	{
+		if (numUnusedBytes > 0)
+			compact(0);
+		if (bytes.length > numBytes)
+		{
+			byte[] newBytes = new byte[numBytes];
+			System.arraycopy(bytes, 0, newBytes, 0, numBytes);
+			bytes = newBytes;
+		}
+		if (starts.length > numRows)
+		{
+			int[] newStarts = new int[numRows];
+			System.arraycopy(starts, 0, newStarts, 0, numRows);
+			starts = newStarts;
+			int[] newLengths = new int[numRows];
+			System.arraycopy(lengths, 0, newLengths, 0, numRows);
+			lengths = newLengths;
+		}
+	}
+
+	protected void ensureCapacity(int capacity)
+	{
+		if (capacity > starts.length)
+		{
+			int newLength = growLength(starts.length, capacity);
+			int[] newStarts = new int[newLength];
+			System.arraycopy(starts, 0, newStarts, 0, numRows);
+			starts = newStarts;
+			int[] newLengths = new int[newLength];
+			System.arraycopy(lengths, 0, newLengths, 0, numRows);
+			lengths = newLengths;
+		}
+	}
+
+	protected void removeRowData(int row)
+	{
+		numUnusedBytes += lengths[row];
+		System.arraycopy(starts, row + 1, starts, row, numRows - row - 1);
+		System.arraycopy(lengths, row + 1, lengths, row, numRows - row - 1);
+		lengths[numRows - 1] = 0;
+	}
+
+	/**
+	 * Note that the text itself doesn't move, just where each row's is.
+	 */
+	protected void reorderRowData(int[] order)
+	{
+		int[] newStarts = new int[starts.length];
+		int[] newLengths = new int[lengths.length];
+		for (int i = 0; i < numRows; i++)
+		{
+			newStarts[i] = starts[order[i]];
+			newLengths[i] = lengths[order[i]];
+		}
+		starts = newStarts;
+		lengths = newLengths;
+	}
+
+	protected int getEncodedRowDataLength()
+	{
+		return (numRows * 4) + 4 + getNumUsedBytes();
+	}
+
+	/**
+	 * Note that only the length of each row's text is put, followed by all
+	 * the text back to back, since that's enough to know where each starts.
+	 */
+	protected void encodeRowData(ByteBuffer buffer)
+	{
+		buffer.asIntBuffer().put(lengths, 0, numRows);
+		buffer.position(buffer.position() + (numRows * 4));
+		buffer.putInt(getNumUsedBytes());
+		for (int i = 0; i < numRows; i++)
+			buffer.put(bytes, starts[i], lengths[i]);
+	}
+
+	protected void decodeRowData(ByteBuffer buffer)
+	{
+		lengths = new int[numRows];
+		buffer.asIntBuffer().get(lengths);
+		buffer.position(buffer.position() + (numRows * 4));
+		starts = new int[numRows];
+		for (int i = 1; i < numRows; i++)
+			starts[i] = starts[i-1] + lengths[i-1];
+		numBytes = buffer.getInt();
+		bytes = new byte[numBytes];
+		buffer.get(bytes);
+		numUnusedBytes = 0;
+	}
+
+	/**
+	 * Every row's slot goes too, since none of the text it pointed at is
+	 * there anymore, and a row filled again must not be put back in it.
+	 */
+	protected void clearRowData()
+	{
+		Arrays.fill(starts, 0, numRows, 0);
+		Arrays.fill(lengths, 0, numRows, 0);
+		numBytes = 0;
+		numUnusedBytes = 0;
+	}
+
+	protected long estimateRowDataHeapBytes()
+	{
+		return 48 + bytes.length + ((starts.length + lengths.length) * 4L);
+	}
+
+	protected void appendRowData(DBFColumn other)
+	{
+		// ALL THE OTHER COLUMN'S TEXT GOES AT THE END OF OURS
+		DBFCharacterColumn otherText = (DBFCharacterColumn)other;
+		int numOtherRows = otherText.numRows;
+		ensureByteCapacity(numBytes + otherText.numBytes);
+		System.arraycopy(otherText.bytes, 0, bytes, numBytes, otherText.numBytes);
+		for (int i = 0; i < numOtherRows; i++)
+		{
+			starts[numRows + i] = numBytes + otherText.starts[i];
+			lengths[numRows + i] = otherText.lengths[i];
+		}
+		numBytes += otherText.numBytes;
+		numUnusedBytes += otherText.numUnusedBytes;
+	}
+
+	/**
+	 * This helper method adds up how long the text of all the rows is.
+	 */
+	private int getNumUsedBytes()
+	{
+		int numUsedBytes = 0;
+		for (int i = 0; i < numRows; i++)
+			numUsedBytes += lengths[i];
+		return numUsedBytes;
+	}
+
+	/**
+	 * This helper method makes sure bytes can hold at least capacity bytes.
+	 */
+	private void ensureByteCapacity(int capacity)
+	{
+		if (capacity > bytes.length)
+		{
+			byte[] newBytes = new byte[growLength(bytes.length, capacity)];
+			System.arraycopy(bytes, 0, newBytes, 0, numBytes);
+			bytes = newBytes;
+		}
+	}
+
+	/**
+	 * This helper method moves all the text still in use to the front of
+	 * a new bytes, getting rid of the unused bytes between them, leaving
+	 * room for spareBytes more.
+	 */
+	private void compact(int spareBytes)
+	{
+		byte[] newBytes = new byte[getNumUsedBytes() + spareBytes];
+		int newNumBytes = 0;
+		for (int i = 0; i < numRows; i++)
+		{
+			System.arraycopy(bytes, starts[i], newBytes, newNumBytes, lengths[i]);
+			starts[i] = newNumBytes;
+			newNumBytes += lengths[i];
+		}
+		bytes = newBytes;
+		numBytes = newNumBytes;
+		numUnusedBytes = 0;
+	}
+
+	/**
+	 * This helper method makes sure row is a row in this column, since
+	 * the arrays may be bigger than the number of rows.
+	 */
+	private void checkRow(int row)
+	{
+		if ((row < 0) || (row >= numRows))
+			throw new IndexOutOfBoundsException("Row: " + row + ", Rows: " + numRows);
+	}
+}
@@ -0,0 +1,402 @@
+package dbf_framework;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * A DBFColumn stores all the data for one field of a DBFTable, one value
+ * per record. Rather than having each record keep an Object for each of its
+ * fields, a table keeps one of these per field, which stores its values in
+ * primitive arrays, which takes far less memory and lets us go through a
+ * column's values quickly. Which values are null is kept in a bitmap.
+ */
+public abstract class DBFColumn
+{
+	// HOW MANY VALUES ARE IN THE COLUMN, ONE PER RECORD
+	protected int numRows;
+
+	// THE BIT FOR EACH ROW IS SET IF ITS VALUE IS NULL
+	protected BitSet nulls;
+
+	/**
+	 * This constructor sets up an empty column.
+	 */
+	protected DBFColumn()
+	{
+		numRows = 0;
+		nulls = new BitSet();
+	}
+
+	/**
+	 * This method makes and returns an empty column for storing
+	 * data of the fieldType argument.
+	 *
+	 * @param fieldType The type of the field the column is for.
+	 *
+	 * @return A new, empty column.
+	 */
+	public static DBFColumn createColumn(DBFFieldType fieldType)
+	{
+		if (fieldType == DBFFieldType.C)
+			return new DBFCharacterColumn();
+		else
+			return new DBFNumericColumn();
+	}
+
+	// ACCESSOR METHODS
+	public int		getNumRows()			{ return numRows;			}
+	public boolean	isNull(int row)			{ return nulls.get(row);	}
+
+	/**
+	 * Accessor method for the value at row as an object, meaning a String
+	 * for character columns and a Long or a Double for numeric columns,
+	 * just as a DBFRecord would provide.
+	 *
+	 * @param row The index of the record whose value we want.
+	 *
+	 * @return The value, which may be null.
+	 */
+	public abstract Object getData(int row);
+
+	/**
+	 * Accessor method for the value at row as a long, which is 0 if the
+	 * value is null.
+	 *
+	 * @param row The index of the record whose value we want.
+	 *
+	 * @return The value as a long.
+	 */
+	public abstract long getLong(int row);
+
+	/**
+	 * Accessor method for the value at row as a double, which is 0 if the
+	 * value is null.
+	 *
+	 * @param row The index of the record whose value we want.
+	 *
+	 * @return The value as a double.
+	 */
+	public abstract double getDouble(int row);
+
+	/**
+	 * Accessor method for the value at row as text.
+	 *
+	 * @param row The index of the record whose value we want.
+	 *
+	 * @return The value as a String, or null if it's null.
+	 */
+	public abstract String getString(int row);
+
+	// THESE ARE FOR COMPARING VALUES, WHICH IS WHAT INDEXES AND SORTING
+	// NEED, WITHOUT HAVING TO MAKE OBJECTS FOR THEM. NULLS COME FIRST
+
+	/**
+	 * This method compares the values at row1 and row2.
+	 *
+	 * @param row1 The index of the first record to compare.
+	 *
+	 * @param row2 The index of the second record to compare.
+	 *
+	 * @return A negative number if the value at row1 comes first, a
+	 * positive number if it comes second, or 0 if they're equal.
+	 */
+	public abstract int compareRows(int row1, int row2);
+
+	/**
+	 * This method compares the value at row to the value argument, which
+	 * is converted to what this column stores as needed.
+	 *
+	 * @param row The index of the record to compare.
+	 *
+	 * @param value The value to compare to, which may be null.
+	 *
+	 * @return A negative number if the value at row comes first, a
+	 * positive number if it comes second, or 0 if they're equal.
+	 */
+	public abstract int compareValue(int row, Object value);
+
+	/**
+	 * This method calculates a hash code for the value at row, which is
+	 * the same as valueHash gives for any value equal to it.
+	 *
+	 * @param row The index of the record whose value we want a hash for.
+	 *
+	 * @return The hash code, which is 0 for null.
+	 */
+	public abstract int rowHash(int row);
+
+	/**
+	 * This method calculates a hash code for the value argument, which is
+	 * the same as rowHash gives for any row with a value equal to it.
+	 *
+	 * @param value The value we want a hash for, which may be null.
+	 *
+	 * @return The hash code, which is 0 for null.
+	 */
+	public abstract int valueHash(Object value);
+
+	// MUTATOR METHODS
+
+	/**
+	 * Mutator method for changing the value at row. Values are converted
+	 * to what this column stores as needed.
+	 *
+	 * @param row The index of the record whose value is being changed.
+	 *
+	 * @param data The new value, which may be null.
+	 */
+	public abstract void setData(int row, Object data);
+
+	/**
+	 * This method adds a new row to the end of the column with the
+	 * data argument as its value.
+	 *
+	 * @param data The value for the new row, which may be null.
+	 */
+	public void addData(Object data)
+	{
+		ensureCapacity(numRows + 1);
+		numRows++;
+		setData(numRows - 1, data);
+	}
+
+	/**
+	 * This method adds numNulls rows to the end of the column, all
+	 * of them with null values.
+	 *
+	 * @param numNulls The number of rows to add.
+	 */
+	public void addNulls(int numNulls)
+	{
+		ensureCapacity(numRows + numNulls);
+		nulls.set(numRows, numRows + numNulls);
+		numRows += numNulls;
+	}
+
+	/**
+	 * This method removes all the rows from the column, keeping the
+	 * arrays it has so that they may be filled again.
+	 */
+	public void clear()
+	{
+		clearRowData();
+		nulls.clear();
+		numRows = 0;
+	}
+
+	/**
+	 * This method removes the value at row, moving all the values
+	 * after it up one row.
+	 *
+	 * @param row The index of the record being removed.
+	 */
+	public void removeRow(int row)
+	{
+		if ((row >= 0) && (row < numRows))
+		{
+			removeRowData(row);
+			for (int i = row; i < numRows - 1; i++)
+				nulls.set(i, nulls.get(i+1));
+			nulls.clear(numRows - 1);
+			numRows--;
+		}
+	}
+
+	/**
+	 * This method puts the rows of the column in a new order, such that
+	 * the row at i afterwards is the one that was at order[i].
+	 *
+	 * @param order The old row for each new row, which must have
+	 * every row exactly once.
+	 */
+	public void reorder(int[] order)
+	{
+		reorderRowData(order);
+		BitSet newNulls = new BitSet();
+		for (int i = 0; i < numRows; i++)
+		{
+			if (nulls.get(order[i]))
+				newNulls.set(i);
+		}
+		nulls = newNulls;
+	}
+
+	/**
+	 * This method adds all the rows of the other column to the end of this
+	 * one. Columns of the same kind just have their arrays copied, which
+	 * is how tables loaded a piece at a time get put together.
+	 *
+	 * @param other The column whose rows are to be added.
+	 */
+	public void appendColumn(DBFColumn other)
+	{
+		int numOtherRows = other.numRows;
+		ensureCapacity(numRows + numOtherRows);
+		if (getClass() != other.getClass())
+		{
+			for (int i = 0; i < numOtherRows; i++)
+				addData(other.getData(i));
+			return;
+		}
+		appendRowData(other);
+		for (int i = other.nulls.nextSetBit(0); (i >= 0) && (i < numOtherRows); i = other.nulls.nextSetBit(i + 1))
+			nulls.set(numRows + i);
+		numRows += numOtherRows;
+	}
+
+	// THESE ARE FOR ENCODING THE COLUMN AS ITS ARRAYS, SO IT CAN BE READ
+	// BACK WITHOUT PARSING ANY VALUES. SEE DBFFileIO.encodeTable
+
+	/**
+	 * This method calculates how many bytes encode will put.
+	 */
+	int getEncodedLength()
+	{
+		return 4 + getEncodedLength(nulls) + getEncodedRowDataLength();
+	}
+
+	/**
+	 * This method puts all the rows of the column into buffer, which
+	 * must be little endian and have room for them.
+	 */
+	void encode(ByteBuffer buffer)
+	{
+		buffer.putInt(numRows);
+		encodeBits(buffer, nulls);
+		encodeRowData(buffer);
+	}
+
+	/**
+	 * This method replaces all the rows of the column with the ones
+	 * put into buffer by encode.
+	 */
+	void decode(ByteBuffer buffer)
+	{
+		clear();
+		numRows = buffer.getInt();
+		nulls = decodeBits(buffer);
+		decodeRowData(buffer);
+	}
+
+	/**
+	 * This method estimates how many bytes of memory the column takes up,
+	 * counting the whole of the arrays it uses, not just the rows in use.
+	 *
+	 * @return The estimated size of the column.
+	 */
+	public long estimateHeapBytes()
+	{
+		return 32 + (nulls.size() / 8) + estimateRowDataHeapBytes();
+	}
+
+	/**
+	 * This method shrinks the arrays used by this column to just what's
+	 * needed to store its values, which is worth doing once a table is
+	 * done being loaded.
+	 */
+	public abstract void trimToSize();
+
+	/**
+	 * This method estimates how many bytes of memory the arrays the
+	 * column uses to store its values take up.
+	 */
+	protected abstract long estimateRowDataHeapBytes();
+
+	/**
+	 * This method makes sure the column has room for at least
+	 * capacity rows.
+	 *
+	 * @param capacity The number of rows needed.
+	 */
+	protected abstract void ensureCapacity(int capacity);
+
+	/**
+	 * This method moves all the values after row up one row in
+	 * the arrays the column uses to store them.
+	 *
+	 * @param row The index of the record being removed.
+	 */
+	protected abstract void removeRowData(int row);
+
+	/**
+	 * This method puts the values in the arrays the column uses to store
+	 * them in a new order, as described for reorder.
+	 *
+	 * @param order The old row for each new row.
+	 */
+	protected abstract void reorderRowData(int[] order);
+
+	/**
+	 * This method forgets all the values in the arrays the column uses
+	 * to store them, since all the rows are being removed.
+	 */
+	protected abstract void clearRowData();
+
+	/**
+	 * This method copies the values of the other column, which is the same
+	 * kind of column as this one, into the arrays used by this column
+	 * after its last row. Room has already been made for them.
+	 *
+	 * @param other The column whose values are to be copied.
+	 */
+	protected abstract void appendRowData(DBFColumn other);
+
+	/**
+	 * This method calculates how many bytes encodeRowData will put.
+	 */
+	protected abstract int getEncodedRowDataLength();
+
+	/**
+	 * This method puts the values of all the rows into buffer, just as
+	 * they're stored in the arrays the column uses.
+	 *
+	 * @param buffer Where to put them, which is little endian.
+	 */
+	protected abstract void encodeRowData(ByteBuffer buffer);
+
+	/**
+	 * This method replaces the arrays the column uses to store its values
+	 * with ones read from buffer, as put there by encodeRowData. Note that
+	 * numRows is already set to how many rows there are.
+	 *
+	 * @param buffer Where to get them, which is little endian.
+	 */
+	protected abstract void decodeRowData(ByteBuffer buffer);
+
+	/**
+	 * These helper methods encode a bitmap as the number of longs
+	 * it uses followed by those longs.
+	 */
+	protected static int getEncodedLength(BitSet bits)
+	{
+		return 4 + (((bits.length() + 63) / 64) * 8);
+	}
+
+	protected static void encodeBits(ByteBuffer buffer, BitSet bits)
+	{
+		long[] words = bits.toLongArray();
+		buffer.putInt(words.length);
+		buffer.asLongBuffer().put(words);
+		buffer.position(buffer.position() + (words.length * 8));
+	}
+
+	protected static BitSet decodeBits(ByteBuffer buffer)
+	{
+		long[] words = new long[buffer.getInt()];
+		buffer.asLongBuffer().get(words);
+		buffer.position(buffer.position() + (words.length * 8));
+		return BitSet.valueOf(words);
+	}
+
+	/**
+	 * This helper method calculates how big to make an array that
+	 * must grow from currentLength to hold at least capacity items.
+	 */
+	protected static int growLength(int currentLength, int capacity)
+	{
+		int newLength = Math.max(16, currentLength);
+		while (newLength < capacity)
+			newLength = Math.max(capacity, newLength + (newLength >> 1));
+		return newLength;
+	}
+}
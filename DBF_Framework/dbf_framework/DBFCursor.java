@@ -0,0 +1,261 @@
+package dbf_framework;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * A DBFCursor reads the records of a .dbf file one at a time, from first to
+ * last, without ever loading the whole table. Only a block of records is
+ * in memory at once, so tables far bigger than the heap may be scanned.
+ *
+ * Only the fields asked for when the cursor is opened are decoded, and a
+ * DBFRecordFilter may be used to skip records by looking at their raw bytes
+ * before anything is decoded at all. Cursors are opened using DBFFileIO's
+ * openCursor method, and must be closed when done with.
+ */
+public class DBFCursor implements Closeable
+{
+	// HOW MANY BYTES WE READ FROM A FILE AT A TIME
+	private static final int READ_BUFFER_SIZE = 65536;
+
+	// THE TABLE WITH THE FILE'S HEADER AND FIELDS, BUT NO RECORDS
+	private DBFTable table;
+
+	// WHERE WE'RE READING THE RECORDS FROM
+	private DataInputStream dis;
+
+	// WHICH FIELDS WE DECODE AND WHICH RECORDS WE STOP AT
+	private int[] fieldIndexes;
+	private DBFRecordFilter filter;
+
+	// WHERE EACH FIELD IS IN A RECORD
+	private DBFRecordDecoder decoder;
+	private int stride;
+
+	// THE BLOCK OF RECORDS READ FROM THE FILE
+	private byte[] block;
+	private int recordsInBlock;
+	private int blockRecord;
+	private int recordsLeft;
+
+	// THE RECORD WE'RE AT AND WHERE IT STARTS IN block
+	private int recordIndex;
+	private int recordStart;
+
+	// THE DECODED VALUES OF THE CURRENT RECORD, ONE ROW PER COLUMN,
+	// INDEXED BY FIELD, WITH NULL FOR FIELDS THAT AREN'T DECODED
+	private DBFColumn[] values;
+
+	/**
+	 * This constructor sets up the cursor to read the records of table from
+	 * the dis stream, which must be ready to read the first record.
+	 *
+	 * @param initTable The table whose header and fields are loaded.
+	 *
+	 * @param initDis The stream reading from the .dbf file.
+	 *
+	 * @param initFieldIndexes The indexes of the fields to decode, or
+	 * null for all of them.
+	 *
+	 * @param initFilter The filter for which records to stop at, or
+	 * null to stop at all of them.
+	 */
+	DBFCursor(DBFTable initTable, DataInputStream initDis, int[] initFieldIndexes, DBFRecordFilter initFilter)
+	{
+		table = initTable;
+		dis = initDis;
+		filter = initFilter;
+		decoder = new DBFRecordDecoder(table);
+		stride = Math.max(table.getDataRecordLength() & 0xffff, decoder.getRecordLength());
+
+		// IF NO FIELDS WERE ASKED FOR, WE'LL DECODE THEM ALL
+		if (initFieldIndexes == null)
+		{
+			initFieldIndexes = new int[table.getNumFields()];
+			for (int i = 0; i < initFieldIndexes.length; i++)
+				initFieldIndexes[i] = i;
+		}
+		fieldIndexes = initFieldIndexes.clone();
+		values = new DBFColumn[table.getNumFields()];
+		for (int i = 0; i < fieldIndexes.length; i++)
+		{
+			int fieldIndex = fieldIndexes[i];
+			if ((fieldIndex < 0) || (fieldIndex >= values.length))
+				throw new IndexOutOfBoundsException("Field: " + fieldIndex + ", Fields: " + values.length);
+			values[fieldIndex] = DBFColumn.createColumn(table.getField(fieldIndex).getType());
+		}
+
+		block = new byte[Math.max(1, READ_BUFFER_SIZE/stride) * stride];
+		recordsInBlock = 0;
+		blockRecord = -1;
+		recordsLeft = table.getNumberOfRecords();
+		recordIndex = -1;
+		recordStart = -1;
+	}
+
+	// ACCESSOR METHODS
+
+	/**
+	 * Accessor method for the table with the file's header and fields,
+	 * which has no records.
+	 */
+	public DBFTable getTable()			{ return table;			}
+
+	/**
+	 * Accessor method for the index of the record the cursor is at in the
+	 * file, counting the records the filter skipped.
+	 */
+	public int		getRecordIndex()	{ return recordIndex;	}
+
+	/**
+	 * This method moves the cursor to the next record the filter accepts,
+	 * decoding the fields that were asked for.
+	 *
+	 * @return true if the cursor is at a record, false if there
+	 * are no more records.
+	 *
+	 * @throws IOException Thrown when reading from the file fails.
+	 */
+	public boolean next() throws IOException
+	{
+		while (true)
+		{
+			// OUT OF RECORDS IN THIS BLOCK? THEN READ THE NEXT ONE
+			if ((blockRecord + 1) >= recordsInBlock)
+			{
+				if (recordsLeft == 0)
+				{
+					recordStart = -1;
+					return false;
+				}
+				recordsInBlock = Math.min(recordsLeft, block.length/stride);
+				dis.readFully(block, 0, recordsInBlock * stride);
+				recordsLeft -= recordsInBlock;
+				blockRecord = -1;
+			}
+			blockRecord++;
+			recordIndex++;
+			recordStart = blockRecord * stride;
+
+			// ONLY DECODE IT IF WE'RE KEEPING IT
+			if ((filter == null) || filter.accept(this))
+			{
+				for (int i = 0; i < fieldIndexes.length; i++)
+				{
+					int fieldIndex = fieldIndexes[i];
+					values[fieldIndex].clear();
+					DBFRecordDecoder.decodeField(	block, recordStart + decoder.getFieldOffset(fieldIndex),
+													decoder.getFieldLength(fieldIndex), values[fieldIndex]);
+				}
+				return true;
+			}
+		}
+	}
+
+	// THESE PROVIDE THE DECODED VALUES OF THE CURRENT RECORD, JUST LIKE
+	// A DBFRecord WOULD, BUT ONLY FOR THE FIELDS THAT WERE ASKED FOR
+	public Object	getData(int fieldIndex)		{ return getValues(fieldIndex).getData(0);		}
+	public long		getLong(int fieldIndex)		{ return getValues(fieldIndex).getLong(0);		}
+	public double	getDouble(int fieldIndex)	{ return getValues(fieldIndex).getDouble(0);	}
+	public String	getString(int fieldIndex)	{ return getValues(fieldIndex).getString(0);	}
+	public boolean	isNull(int fieldIndex)		{ return getValues(fieldIndex).isNull(0);		}
+
+	/**
+	 * This method makes and returns a record with the current record's
+	 * data. Fields that weren't asked for are null in it.
+	 *
+	 * @return A new record, not in any table.
+	 */
+	public DBFRecord getRecord()
+	{
+		DBFRecord record = new DBFRecord(values.length);
+		record.setMystery(getMystery());
+		for (int i = 0; i < fieldIndexes.length; i++)
+			record.setData(getData(fieldIndexes[i]), fieldIndexes[i]);
+		return record;
+	}
+
+	// THESE PROVIDE THE RAW BYTES OF THE CURRENT RECORD, WHICH IS
+	// WHAT FILTERS SHOULD USE SINCE NOTHING'S BEEN DECODED YET
+
+	/**
+	 * Accessor method for the bytes the current record is in. Note that
+	 * these are reused for the next block of records.
+	 */
+	public byte[]	getRawBytes()						{ checkRecord(); return block;												}
+	public int		getRawFieldStart(int fieldIndex)	{ checkRecord(); return recordStart + decoder.getFieldOffset(fieldIndex);	}
+	public int		getRawFieldLength(int fieldIndex)	{ return decoder.getFieldLength(fieldIndex);								}
+	public byte		getMystery()						{ checkRecord(); return block[recordStart];									}
+
+	/**
+	 * This method tests if the value of a field of the current record,
+	 * with its spaces trimmed, is the value argument, without decoding it.
+	 *
+	 * @param fieldIndex The field to test.
+	 *
+	 * @param value The text to compare to.
+	 *
+	 * @return true if the field has exactly that text, false otherwise.
+	 */
+	public boolean fieldEquals(int fieldIndex, String value)
+	{
+		int start = getRawFieldStart(fieldIndex);
+		int end = start + getRawFieldLength(fieldIndex);
+		while ((start < end) && ((block[start] & 0xff) <= ' '))
+			start++;
+		while ((end > start) && ((block[end-1] & 0xff) <= ' '))
+			end--;
+		if ((end - start) != value.length())
+			return false;
+		for (int i = 0; i < value.length(); i++)
+		{
+			if ((block[start + i] & 0xff) != value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This method tests if a field of the current record is all spaces.
+	 *
+	 * @param fieldIndex The field to test.
+	 *
+	 * @return true if the field has no text, false otherwise.
+	 */
+	public boolean fieldIsBlank(int fieldIndex)
+	{
+		return fieldEquals(fieldIndex, "");
+	}
+
+	/**
+	 * This method closes the file the cursor is reading from.
+	 *
+	 * @throws IOException Thrown when closing the file fails.
+	 */
+	public void close() throws IOException
+	{
+		dis.close();
+	}
+
+	/**
+	 * This helper method gets the column with the decoded value of
+	 * the field at fieldIndex for the current record.
+	 */
+	private DBFColumn getValues(int fieldIndex)
+	{
+		checkRecord();
+		if ((fieldIndex < 0) || (fieldIndex >= values.length) || (values[fieldIndex] == null))
+			throw new IllegalArgumentException("Field " + fieldIndex + " was not asked for by this cursor");
+		return values[fieldIndex];
+	}
+
+	/**
+	 * This helper method makes sure the cursor is at a record.
+	 */
+	private void checkRecord()
+	{
+		if (recordStart < 0)
+			throw new IllegalStateException("The cursor is not at a record");
+	}
+}
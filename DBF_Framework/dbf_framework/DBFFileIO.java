@@ -1,13 +1,29 @@
 package dbf_framework;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 /**
  * This class may be used for reading and writing data to and from
  * a .dbf file. Note that both processes must assume a similar DBF format.
@@ -17,9 +33,46 @@ import java.util.Iterator;
 
 public class DBFFileIO
 {
+	// HOW MANY BYTES WE READ FROM A FILE AT A TIME
+	private static final int READ_BUFFER_SIZE = 65536;
+
+	// AND HOW MANY WE WRITE AT A TIME
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	// THE LAST BYTE OF A .dbf FILE
+	public static final byte END_OF_FILE = 0x1A;
+
+	// TABLES WITH AT LEAST THIS MANY RECORDS ARE LOADED IN PARALLEL
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 100000;
+
+	// WHEN LOADING IN PARALLEL, EACH TASK DECODES ABOUT THIS MANY BYTES
+	private static final int PARALLEL_CHUNK_SIZE = 1 << 20;
+
+	// TABLES WITH AT LEAST THIS MANY RECORDS WILL BE LOADED IN PARALLEL,
+	// SMALLER ONES ARE LOADED ONE RECORD AFTER ANOTHER
+	private int parallelThreshold;
+
+	/**
+	 * This constructor sets up loading so that big tables are
+	 * loaded in parallel.
+	 */
+	public DBFFileIO()
+	{
+		parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	}
+
+	// ACCESSOR AND MUTATOR METHODS FOR WHEN TO LOAD IN PARALLEL
+	public int	getParallelThreshold()									{ return parallelThreshold;					}
+	public void	setParallelThreshold(int initParallelThreshold)		{ parallelThreshold = initParallelThreshold;	}
+
 	/**
 	 * This method saves the tableToSave argument to the file location. Note
-	 * that we are only writing C and N data types.
+	 * that we are only writing C and N data types. Values too long for their
+	 * field are cut off to fit.
+	 * 
+	 * The table is first written to a temporary file next to file, which is
+	 * then moved into its place, so if saving fails part way through, the
+	 * file is left just as it was.
 
 	 * @param tableToSave DBFTable data to save to the file.
 	 * 
@@ -30,21 +83,78 @@ public class DBFFileIO
 	 */
 	public void saveDBF(DBFTable tableToSave, File file) throws IOException
 	{
-		// WE ARE GOING TO WRITE RAW BYTE DATA
-		FileOutputStream fos = new FileOutputStream(file);
-		DataOutputStream dos = new DataOutputStream(fos);
+		// THE HEADER AND FIELDS ARE SMALL, SO WE PUT THEM TOGETHER IN MEMORY
+		byte[] headerBytes = saveTableHeader(tableToSave);
+
+		// WE'LL WRITE EVERYTHING TO A TEMPORARY FILE FIRST
+		File directory = file.getAbsoluteFile().getParentFile();
+		File tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+		boolean saved = false;
+		try
+		{
+			FileOutputStream fos = new FileOutputStream(tempFile);
+			try
+			{
+				FileChannel channel = fos.getChannel();
+				writeFully(channel, ByteBuffer.wrap(headerBytes));
+
+				// AND NOW SAVE THE ACTUAL DATA
+				saveRecords(channel, tableToSave);
+
+				// MAKE SURE IT'S ALL ON THE DISK BEFORE WE USE IT
+				channel.force(true);
+			}
+			finally
+			{
+				fos.close();
+			}
+
+			// NOW PUT IT WHERE IT BELONGS, ALL AT ONCE IF WE CAN
+			try
+			{
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException amnse)
+			{
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			saved = true;
+
+			// ANY TABLE CACHED FROM THE OLD FILE IS NOW OUT OF DATE
+			DBFTableCache.getSharedCache().invalidate(file);
+		}
+		finally
+		{
+			if (!saved)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * This helper method puts together the header, fields, and header
+	 * record terminator of a .dbf for the mapTable argument.
+	 * 
+	 * @param mapTable The dbf table being saved.
+	 * 
+	 * @return The bytes that go before the first record.
+	 * 
+	 * @throws IOException Thrown when the stream fails.
+	 */
+	private byte[] saveTableHeader(DBFTable mapTable) throws IOException
+	{
+		ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(headerBytes);
 
 		// SAVE THE FIRST 32 BYTES OF THE HEADER
-		saveHeader(dos, tableToSave);
+		saveHeader(dos, mapTable);
 
 		// SUBRECORDS (32-(positionOfFirstDataRecorded-3))
-		saveFields(dos, tableToSave);
+		saveFields(dos, mapTable);
 
 		// HEADER RECORD TERMINATOR (SHOULD BE 0x0D)
-		dos.writeByte(tableToSave.getTerminator());
-
-		// AND NOW SAVE THE ACTUAL DATA
-		saveRecords(dos, tableToSave);	
+		dos.writeByte(mapTable.getTerminator());
+		dos.flush();
+		return headerBytes.toByteArray();
 	}
 
 	/**
@@ -71,7 +181,7 @@ public class DBFFileIO
 		dos.writeByte(day);
 
 		// NUMBER OF RECORDS IN FILE (4-7)
-		int numberOfRecordsInFile = Integer.reverseBytes(mapTable.getNumberOfRecords());
+		int numberOfRecordsInFile = Integer.reverseBytes(mapTable.getNumRecords());
 		dos.writeInt(numberOfRecordsInFile);
 
 		// POSITION OF FIRST DATA RECORDED (8-9)
@@ -171,78 +281,64 @@ public class DBFFileIO
 
 	/**
 	 * This method saves all the records in the mapTable argument
-	 * using the dos stream.
+	 * using the channel, followed by the end of file marker. Whole
+	 * records are put together in a buffer, which is written out
+	 * whenever it fills up.
 	 * 
-	 * @param dos Output stream writing to the .dbf file.
+	 * @param channel Channel writing to the .dbf file.
 	 * 
 	 * @param mapTable The dbf table being saved.
 	 * 
-	 * @throws IOException Thrown when the stream fails.
+	 * @throws IOException Thrown when the channel fails.
 	 */
-	private void saveRecords(	DataOutputStream dos, DBFTable mapTable) throws IOException
+	private void saveRecords(	FileChannel channel, DBFTable mapTable) throws IOException
 	{
-		// WRITE ALL ROW DATA
-		for (int i = 0; i < mapTable.getNumberOfRecords(); i++)
-		{	
-			// HERE'S THE RECORD WE ARE SAVING
-			DBFRecord recordToSave = mapTable.getRecord(i);
+		// THIS KNOWS WHERE EACH FIELD GOES IN A RECORD
+		DBFRecordEncoder encoder = new DBFRecordEncoder(mapTable);
+		int stride = encoder.getStride();
 
-			// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
-			dos.writeByte(recordToSave.getMystery());
+		// WE'LL PUT AS MANY RECORDS AS FIT IN HERE BEFORE WRITING
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(1, WRITE_BUFFER_SIZE/stride) * stride);
+		byte[] bytes = buffer.array();
+		int position = 0;
 
-			// LOAD DATA FOR EACH FIELD
-			Iterator<DBFField> fieldsIt = mapTable.fieldsIterator();
-			int fieldsCounter = 0;
-			while (fieldsIt.hasNext())
+		// WRITE ALL ROW DATA
+		for (int i = 0; i < mapTable.getNumRecords(); i++)
+		{
+			// NO ROOM FOR ANOTHER RECORD? THEN WRITE WHAT WE HAVE
+			if ((position + stride) > bytes.length)
 			{
-				// WHAT TYPE OF FIELD IS IT (character data, numbers, etc.)?
-				DBFField field = fieldsIt.next();
-
-				// TEXT?
-				if (field.getType() == DBFFieldType.C)
-				{
-					int j = 0;
-					Object data = recordToSave.getData(fieldsCounter);
-					String text;
-					if (data == null)
-						text = "";
-					else
-						text = data.toString();
-					while (j < text.length())
-					{
-						dos.writeByte((byte)text.charAt(j));
-						j++;
-					}
-					while (j < field.getLength())
-					{
-						dos.writeByte((byte)' ');
-						j++;
-					}
-				}
-				// IT MUST BE AN 'N' TYPE, THOSE ARE THE ONLY TWO WE'RE USING
-				else
-				{
-					Object data = recordToSave.getData(fieldsCounter);
-					String numText;
-					if (data == null)
-						numText = "";
-					else
-						numText = data.toString();
-					int x = 0;
-					while (x < numText.length())
-					{
-						dos.writeByte((byte)numText.charAt(x));
-						x++;
-					}
-					while (x < field.getLength())
-					{
-						dos.writeByte((byte)' ');
-						x++;
-					}
-				}
-				fieldsCounter++;
+				buffer.limit(position);
+				writeFully(channel, buffer);
+				buffer.clear();
+				position = 0;
 			}
+			encoder.encodeRecord(i, bytes, position);
+			position += stride;
 		}
+
+		// AND NOW THE LAST OF THE RECORDS, FOLLOWED BY THE END OF THE FILE
+		if (position == bytes.length)
+		{
+			buffer.limit(position);
+			writeFully(channel, buffer);
+			buffer.clear();
+			position = 0;
+		}
+		bytes[position] = END_OF_FILE;
+		position++;
+		buffer.limit(position);
+		writeFully(channel, buffer);
+	}
+
+	/**
+	 * This helper method writes everything remaining in the buffer
+	 * argument using the channel.
+	 */
+	private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		while (buffer.hasRemaining())
+			channel.write(buffer);
 	}
 
 	/**
@@ -264,27 +360,258 @@ public class DBFFileIO
 		// THIS IS THE TABLE WE'RE GOING TO FILL AND THEN RETURN
 		DBFTable mapTable = new DBFTable();
 
-		// WE ARE GOING TO READ RAW BYTE DATA
+		// WE ARE GOING TO READ RAW BYTE DATA, BUFFERED SO THAT
+		// WE'RE NOT GOING TO THE DISK FOR EVERY LITTLE READ
 		FileInputStream fis = new FileInputStream(file);
-		DataInputStream dis = new DataInputStream(fis);
+		try
+		{
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(fis, READ_BUFFER_SIZE));
 
-		// LOAD THE FIRST 32 BYTES OF THE HEADER
-		loadHeader(dis, mapTable);
+			// LOAD THE FIRST 32 BYTES OF THE HEADER
+			loadHeader(dis, mapTable);
 
-		// SUBRECORDS (32-(positionOfFirstDataRecorded-3))
-		loadFields(dis, mapTable);
+			// SUBRECORDS (32-(positionOfFirstDataRecorded-3))
+			loadFields(dis, mapTable);
 
-		// HEADER RECORD TERMINATOR (SHOULD BE 0x0D)
-		byte terminator = dis.readByte();
-		mapTable.setTerminator(terminator);
+			// HEADER RECORD TERMINATOR (SHOULD BE 0x0D)
+			byte terminator = dis.readByte();
+			mapTable.setTerminator(terminator);
 
-		// AND NOW READ THE ACTUAL DATA
-		loadRecords(dis, mapTable);
+			// SOME FILES PAD THE HEADER, SO THE RECORDS START WHERE IT SAYS
+			skipToFirstRecord(dis, mapTable);
+
+			// AND NOW READ THE ACTUAL DATA, SPLITTING UP THE WORK IF
+			// THERE'S ENOUGH OF IT TO BE WORTH IT
+			if (mapTable.getNumberOfRecords() >= parallelThreshold)
+				loadRecordsInParallel(fis.getChannel(), mapTable);
+			else
+				loadRecords(dis, mapTable);
+		}
+		finally
+		{
+			fis.close();
+		}
 
 		// ALL DONE, NOW RETURN THE TABLE
 		return mapTable;
 	}	
 	
+	/**
+	 * This method opens a cursor for reading the records of the .dbf file
+	 * represented by the file argument one at a time, without loading the
+	 * whole table. The cursor's table has the file's header and fields.
+	 * 
+	 * @param file File location of .dbf to read.
+	 * 
+	 * @param fieldIndexes The indexes of the fields the cursor should
+	 * decode, or null for all of them.
+	 * 
+	 * @param filter Which records the cursor should stop at, or null
+	 * for all of them.
+	 * 
+	 * @return A cursor before the first record, which must be closed.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file's header.
+	 */
+	public DBFCursor openCursor(File file, int[] fieldIndexes, DBFRecordFilter filter) throws IOException
+	{
+		DBFTable mapTable = new DBFTable();
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(fis, READ_BUFFER_SIZE));
+			loadTableHeader(dis, mapTable);
+			return new DBFCursor(mapTable, dis, fieldIndexes, filter);
+		}
+		catch(IOException | RuntimeException e)
+		{
+			fis.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * This method memory maps the records of the .dbf file represented by
+	 * the file argument, such that any one record may be decoded when it's
+	 * asked for without reading or keeping the rest of the table.
+	 * 
+	 * @param file File location of .dbf to map.
+	 * 
+	 * @return A mapped table for getting the file's records.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file's header or mapping it.
+	 */
+	public MappedDBFTable mapDBF(File file) throws IOException
+	{
+		DBFTable mapTable = new DBFTable();
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			// FIRST GET THE HEADER AND FIELDS
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(fis, READ_BUFFER_SIZE));
+			loadTableHeader(dis, mapTable);
+
+			// THEN MAP ALL THE RECORDS, NOTE THAT THE MAPPING
+			// STAYS GOOD EVEN AFTER THE FILE IS CLOSED
+			FileChannel channel = fis.getChannel();
+			long firstRecordPosition = mapTable.getPositionOfFirstDataRecorded() & 0xffff;
+			int stride = Math.max(mapTable.getDataRecordLength() & 0xffff, new DBFRecordDecoder(mapTable).getRecordLength());
+			long recordsSize = (long)mapTable.getNumberOfRecords() * stride;
+			if (recordsSize > Integer.MAX_VALUE)
+				throw new IOException("Too many records to map in " + file);
+			if ((firstRecordPosition + recordsSize) > channel.size())
+				throw new EOFException("Expected " + mapTable.getNumberOfRecords() + " records in " + file);
+			MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, firstRecordPosition, recordsSize);
+			return new MappedDBFTable(mapTable, records, stride);
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+
+	/**
+	 * This method opens the .dbf file represented by the file argument for
+	 * changing its records right in the file, without loading the table.
+	 * 
+	 * @param file File location of .dbf to change.
+	 * 
+	 * @return An updatable table for changing the file's records,
+	 * which must be closed.
+	 * 
+	 * @throws IOException Thrown when an error is encountered reading
+	 * the .dbf file's header or opening it for writing.
+	 */
+	public UpdatableDBFTable openForUpdate(File file) throws IOException
+	{
+		// FIRST GET THE HEADER AND FIELDS
+		DBFTable mapTable = new DBFTable();
+		FileInputStream fis = new FileInputStream(file);
+		try
+		{
+			DataInputStream dis = new DataInputStream(new BufferedInputStream(fis, READ_BUFFER_SIZE));
+			loadTableHeader(dis, mapTable);
+		}
+		finally
+		{
+			fis.close();
+		}
+
+		// THEN OPEN IT FOR WRITING
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		return new UpdatableDBFTable(file, raf, mapTable);
+	}
+
+	/**
+	 * This method encodes the table argument into a new buffer that
+	 * decodeTable can turn back into the same table. Rather than records,
+	 * the buffer has the arrays each column stores its values in, little
+	 * endian, after the table's .dbf header, so decoding it only means
+	 * copying them. This is how tables are stored in prebuilt files that
+	 * need to be opened quickly, like ones that are memory mapped.
+	 * 
+	 * @param table The table to encode.
+	 * 
+	 * @return The encoded table, ready to be read or written.
+	 * 
+	 * @throws IOException Thrown when the table's header can't be made.
+	 */
+	public ByteBuffer encodeTable(DBFTable table) throws IOException
+	{
+		byte[] headerBytes = saveTableHeader(table);
+		long size = 4 + headerBytes.length + table.getEncodedRecordsLength();
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Table is too big to encode: " + size + " bytes");
+		ByteBuffer buffer = ByteBuffer.allocate((int)size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(headerBytes.length);
+		buffer.put(headerBytes);
+		table.encodeRecords(buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * This method makes a table from a buffer made by encodeTable.
+	 * 
+	 * @param buffer The encoded table, which isn't changed.
+	 * 
+	 * @return A constructed and initialized DBF table containing the
+	 * data found in the buffer.
+	 * 
+	 * @throws IOException Thrown when the buffer doesn't have a whole
+	 * encoded table in it.
+	 */
+	public DBFTable decodeTable(ByteBuffer buffer) throws IOException
+	{
+		ByteBuffer encoded = buffer.duplicate();
+		encoded.order(ByteOrder.LITTLE_ENDIAN);
+		DBFTable mapTable = new DBFTable();
+		try
+		{
+			// THE HEADER IS READ JUST LIKE A .dbf FILE'S
+			byte[] headerBytes = new byte[encoded.getInt()];
+			encoded.get(headerBytes);
+			loadTableHeader(new DataInputStream(new ByteArrayInputStream(headerBytes)), mapTable);
+
+			// BUT THE RECORDS ARE JUST COPIED
+			mapTable.decodeRecords(encoded);
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException e)
+		{
+			throw new EOFException("Encoded table is incomplete");
+		}
+		return mapTable;
+	}
+
+	/**
+	 * This helper method loads the header, fields, and header record
+	 * terminator of a .dbf into mapTable, leaving the dis argument
+	 * ready to read the first record.
+	 * 
+	 * @param dis The stream reading from the .dbf file.
+	 * 
+	 * @param mapTable The dbf table being loaded.
+	 * 
+	 * @throws IOException Thrown when the stream fails.
+	 */
+	private void loadTableHeader(DataInputStream dis, DBFTable mapTable) throws IOException
+	{
+		loadHeader(dis, mapTable);
+		loadFields(dis, mapTable);
+		mapTable.setTerminator(dis.readByte());
+		skipToFirstRecord(dis, mapTable);
+	}
+
+	/**
+	 * This helper method skips whatever is between the header record
+	 * terminator and the position of the first record given in the
+	 * header, which is where the records are read from when they're
+	 * mapped or read in parallel.
+	 * 
+	 * @param dis The stream reading from the .dbf file, right after
+	 * the header record terminator.
+	 * 
+	 * @param mapTable The dbf table being loaded, whose header and
+	 * fields are loaded.
+	 * 
+	 * @throws IOException Thrown when the stream fails or ends first.
+	 */
+	private void skipToFirstRecord(DataInputStream dis, DBFTable mapTable) throws IOException
+	{
+		int bytesRead = 32 + (mapTable.getNumFields() * 32) + 1;
+		int bytesToSkip = (mapTable.getPositionOfFirstDataRecorded() & 0xffff) - bytesRead;
+		while (bytesToSkip > 0)
+		{
+			int skipped = dis.skipBytes(bytesToSkip);
+			if (skipped <= 0)
+				throw new EOFException("The header is shorter than it says");
+			bytesToSkip -= skipped;
+		}
+	}
+
 	/**
 	 * This helper method loads just the .dbf file header portion
 	 * into the mapTable argument using the dis stream.
@@ -302,9 +629,9 @@ public class DBFFileIO
 		byte dbfFileType = dis.readByte();
 		mapTable.setFileType(dbfFileType);
 
-		// LAST UPDATE (1-3)
+		// LAST UPDATE (1-3), NOTE THE FILE'S MONTHS START AT 1 BUT THE CALENDAR'S AT 0
 		int year = 1900 + dis.readByte();
-		int month = dis.readByte();
+		int month = dis.readByte() - 1;
 		int day = dis.readByte();
 		mapTable.setLastModifiedDate(year, month, day);
 
@@ -426,7 +753,7 @@ public class DBFFileIO
 	 * This helper method reads and loads all the row data (records)
 	 * from the .dbf into the mapTable argument. Note that the dis argument
 	 * must be ready to read at the start of the records section, which is
-	 * right after the fields section.
+	 * at the position of the first record given in the header.
 	 * 
 	 * @param dis Input stream reading from the .dbf file.
 	 * 
@@ -437,65 +764,176 @@ public class DBFFileIO
 	private void loadRecords(	DataInputStream dis,
 				DBFTable mapTable) throws IOException
 	{
-		// READ ALL ROW DATA
-		for (int i = 0; i < mapTable.getNumberOfRecords(); i++)
-		{				
-			// HERE'S THE RECORD WE ARE LOADING
-			DBFRecord recordToAdd = new DBFRecord(mapTable.getNumFields());
+		// THIS WILL PUT THE DATA STRAIGHT INTO THE TABLE'S COLUMNS
+		DBFRecordDecoder decoder = new DBFRecordDecoder(mapTable);
+
+		// THE RECORDS ARE THIS FAR APART IN THE FILE
+		int stride = Math.max(mapTable.getDataRecordLength() & 0xffff, decoder.getRecordLength());
+
+		// READ A WHOLE BLOCK OF RECORDS AT A TIME
+		int numRecords = mapTable.getNumberOfRecords();
+		mapTable.ensureRecordCapacity(numRecords);
+		int recordsPerBlock = Math.max(1, READ_BUFFER_SIZE/stride);
+		byte[] block = new byte[Math.min(recordsPerBlock, Math.max(numRecords, 1)) * stride];
+		int recordsRead = 0;
+		while (recordsRead < numRecords)
+		{
+			int recordsToRead = Math.min(recordsPerBlock, numRecords - recordsRead);
+			dis.readFully(block, 0, recordsToRead * stride);
+			decoder.decodeRecords(block, 0, recordsToRead, stride);
+			recordsRead += recordsToRead;
+		}
 
-			// THERE IS A MYSTERY BYTE BEFORE EACH RECORD
-			byte mystery = dis.readByte();
-			recordToAdd.setMystery(mystery);
+		// AND LET THE TABLE LET GO OF ANY EXTRA SPACE IT GREW
+		mapTable.trimToSize();
+	}
 
-			// LOAD DATA FOR EACH FIELD
-			Iterator<DBFField> fieldsIt = mapTable.fieldsIterator();
-			int fieldsCounter = 0;
-			while (fieldsIt.hasNext())
-			{
-				// WHAT TYPE OF FIELD IS IT (character data, numbers, etc.)?
-				DBFField field = fieldsIt.next();
+	/**
+	 * This helper method loads all the records from the .dbf into the
+	 * mapTable argument just like loadRecords, except that it splits the
+	 * records up into chunks that are read and decoded in parallel. Since
+	 * all records are the same length, where each chunk is in the file is
+	 * known from the header. Each chunk is decoded into its own table, and
+	 * then they're all added to mapTable in order.
+	 * 
+	 * @param channel The channel for the .dbf file, which is read from
+	 * at the position of each chunk, so it doesn't matter where it's at.
+	 * 
+	 * @param mapTable The dbf table being loaded, whose header and fields
+	 * must already be loaded.
+	 * 
+	 * @throws IOException Thrown when reading fails.
+	 */
+	private void loadRecordsInParallel(	FileChannel channel,
+										DBFTable mapTable) throws IOException
+	{
+		// FIGURE OUT WHERE THE RECORDS ARE AND HOW TO SPLIT THEM UP
+		int numRecords = mapTable.getNumberOfRecords();
+		long firstRecordPosition = mapTable.getPositionOfFirstDataRecorded() & 0xffff;
+		int stride = Math.max(mapTable.getDataRecordLength() & 0xffff, new DBFRecordDecoder(mapTable).getRecordLength());
+		int recordsPerChunk = Math.max(1, PARALLEL_CHUNK_SIZE/stride);
+		int numChunks = (int)(((long)numRecords + recordsPerChunk - 1) / recordsPerChunk);
+
+		// DECODE ALL THE CHUNKS
+		DBFTable[] chunks = new DBFTable[numChunks];
+		LoadChunksTask task = new LoadChunksTask(channel, mapTable, chunks, 0, numChunks,
+				firstRecordPosition, stride, recordsPerChunk, numRecords);
+		try
+		{
+			ForkJoinPool.commonPool().invoke(task);
+		}
+		catch(UncheckedIOException uioe)
+		{
+			throw uioe.getCause();
+		}
 
-				// TEXT?
-				if (field.getType() == DBFFieldType.C)
+		// AND PUT THEM TOGETHER IN ORDER
+		mapTable.ensureRecordCapacity(numRecords);
+		for (int i = 0; i < numChunks; i++)
+		{
+			mapTable.appendRecords(chunks[i]);
+			chunks[i] = null;
+		}
+		mapTable.trimToSize();
+	}
+
+	/**
+	 * This helper class is a task for decoding a range of chunks of a .dbf
+	 * file's records, which it does by splitting the range in half until
+	 * there's just one chunk, which it reads and decodes into a table
+	 * with the same fields as the one being loaded.
+	 */
+	private static class LoadChunksTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private DBFTable mapTable;
+		private DBFTable[] chunks;
+		private int firstChunk;
+		private int lastChunk;
+		private long firstRecordPosition;
+		private int stride;
+		private int recordsPerChunk;
+		private int numRecords;
+
+		public LoadChunksTask(	FileChannel initChannel, DBFTable initMapTable, DBFTable[] initChunks,
+								int initFirstChunk, int initLastChunk, long initFirstRecordPosition,
+								int initStride, int initRecordsPerChunk, int initNumRecords)
+		{
+			channel = initChannel;
+			mapTable = initMapTable;
+			chunks = initChunks;
+			firstChunk = initFirstChunk;
+			lastChunk = initLastChunk;
+			firstRecordPosition = initFirstRecordPosition;
+			stride = initStride;
+			recordsPerChunk = initRecordsPerChunk;
+			numRecords = initNumRecords;
+		}
+
+		protected void compute()
+		{
+			// MORE THAN ONE CHUNK? THEN SPLIT THEM UP
+			if ((lastChunk - firstChunk) > 1)
+			{
+				int middleChunk = (firstChunk + lastChunk) >>> 1;
+				invokeAll(	new LoadChunksTask(channel, mapTable, chunks, firstChunk, middleChunk,
+								firstRecordPosition, stride, recordsPerChunk, numRecords),
+							new LoadChunksTask(channel, mapTable, chunks, middleChunk, lastChunk,
+								firstRecordPosition, stride, recordsPerChunk, numRecords));
+			}
+			else if (firstChunk < lastChunk)
+			{
+				try
+				{
+					chunks[firstChunk] = loadChunk(firstChunk);
+				}
+				catch(IOException ioe)
 				{
-					String text = "";
-					for (int counter = 0; counter < field.getLength(); counter++)
-					{
-						char c = (char)dis.readByte();
-						text += c;
-					}
-					text = text.trim();
-					recordToAdd.setData(text, fieldsCounter);
+					throw new UncheckedIOException(ioe);
 				}
-				// IT MUST BE AN 'N' TYPE SINCE THOSE ARE THE ONLY TWO WE'RE USING
-				else 
+			}
+		}
+
+		/**
+		 * This helper method reads and decodes the records of chunk
+		 * number chunkIndex into a new table, which it returns.
+		 */
+		private DBFTable loadChunk(int chunkIndex) throws IOException
+		{
+			// THE CHUNK GETS ITS OWN TABLE WITH THE SAME FIELDS
+			DBFTable chunk = new DBFTable();
+			Iterator<DBFField> fieldsIt = mapTable.fieldsIterator();
+			while (fieldsIt.hasNext())
+				chunk.addField(fieldsIt.next());
+			DBFRecordDecoder decoder = new DBFRecordDecoder(chunk);
+
+			// THESE ARE THE RECORDS IN THIS CHUNK
+			int firstRecord = chunkIndex * recordsPerChunk;
+			int numChunkRecords = Math.min(recordsPerChunk, numRecords - firstRecord);
+			chunk.ensureRecordCapacity(numChunkRecords);
+
+			// READ THEM A BLOCK AT A TIME
+			int recordsPerBlock = Math.max(1, READ_BUFFER_SIZE/stride);
+			ByteBuffer block = ByteBuffer.allocate(Math.min(recordsPerBlock, numChunkRecords) * stride);
+			int recordsRead = 0;
+			while (recordsRead < numChunkRecords)
+			{
+				int recordsToRead = Math.min(recordsPerBlock, numChunkRecords - recordsRead);
+				long position = firstRecordPosition + ((long)(firstRecord + recordsRead) * stride);
+				block.clear();
+				block.limit(recordsToRead * stride);
+				while (block.hasRemaining())
 				{
-					String text = "";
-					for (int counter = 0; counter < field.getLength(); counter++)
-					{
-						char c = (char)dis.readByte();
-						text += c;
-					}
-					text = text.trim();
-					if (text.contains("."))
-					{
-						double num = 0.0;
-						num = Double.parseDouble(text);
-						recordToAdd.setData(num, fieldsCounter);
-					}
-					else
-					{
-						long num = 0;
-						if (text.length() > 0)
-							num = Long.parseLong(text);
-						recordToAdd.setData(num, fieldsCounter);
-					}
+					if (channel.read(block, position + block.position()) < 0)
+						throw new EOFException();
 				}
-				fieldsCounter++;
+				decoder.decodeRecords(block.array(), 0, recordsToRead, stride);
+				recordsRead += recordsToRead;
 			}
-		//	Comparable key = (Comparable)recordToAdd.getData(mapTable.getKeyIndex());
-			mapTable.addRecord(recordToAdd);
-		}		
+			return chunk;
+		}
 	}
 
 	/**
@@ -0,0 +1,316 @@
+package dbf_framework;
+
+/**
+ * A DBFHashIndex finds the records with a given value for one field of a
+ * table in constant time. It's a hash table with one entry per distinct
+ * value, which leads to a chain of all the records with that value, in
+ * order. All of it is kept in int arrays, so it takes no objects per record.
+ */
+public class DBFHashIndex extends DBFIndex
+{
+	// FOR EACH SLOT IN THE HASH TABLE, THE FIRST AND LAST RECORDS WITH
+	// ITS VALUE AND ITS HASH. NOTE THAT RECORD INDEXES ARE STORED PLUS
+	// ONE SO THAT 0 MEANS AN EMPTY SLOT
+	private int[] heads;
+	private int[] tails;
+	private int[] hashes;
+	private int mask;
+	private int numKeys;
+
+	// FOR EACH RECORD, THE NEXT RECORD WITH THE SAME VALUE, PLUS ONE
+	private int[] next;
+
+	/**
+	 * This constructor builds the index for the field at initFieldIndex
+	 * of the initTable argument.
+	 *
+	 * @param initTable The table being indexed.
+	 *
+	 * @param initFieldIndex The field being indexed.
+	 */
+	DBFHashIndex(DBFTable initTable, int initFieldIndex)
+	{
+		super(initTable, initFieldIndex);
+		heads = new int[16];
+		tails = new int[16];
+		hashes = new int[16];
+		mask = 15;
+		numKeys = 0;
+		int numRecords = table.getNumRecords();
+		next = new int[Math.max(16, numRecords)];
+		for (int i = 0; i < numRecords; i++)
+			add(i);
+	}
+
+	// ACCESSOR METHODS
+	public int getNumKeys()		{ checkNotStale(); return numKeys;	}
+
+	/**
+	 * This method finds the first record whose value for the indexed field
+	 * equals the value argument.
+	 *
+	 * @param value The value to look for, which may be null.
+	 *
+	 * @return The index of the first record with that value,
+	 * or -1 if there isn't one.
+	 */
+	public int find(Object value)
+	{
+		checkNotStale();
+		int slot = findSlot(getColumn().valueHash(value), -1, value);
+		if (slot < 0)
+			return -1;
+		return heads[slot] - 1;
+	}
+
+	/**
+	 * This method finds all the records whose value for the indexed field
+	 * equals the value argument.
+	 *
+	 * @param value The value to look for, which may be null.
+	 *
+	 * @return The indexes of all records with that value, in order.
+	 */
+	public int[] findAll(Object value)
+	{
+		checkNotStale();
+		int slot = findSlot(getColumn().valueHash(value), -1, value);
+		if (slot < 0)
+			return new int[0];
+		int count = 0;
+		for (int r = heads[slot]; r != 0; r = next[r-1])
+			count++;
+		int[] recordIndexes = new int[count];
+		count = 0;
+		for (int r = heads[slot]; r != 0; r = next[r-1])
+			recordIndexes[count++] = r - 1;
+		return recordIndexes;
+	}
+
+	/**
+	 * This method numbers all the distinct values in the index from 0,
+	 * filling in the number of each record's value in keyNumbers.
+	 *
+	 * @param keyNumbers Where to put the number of each record's value,
+	 * which must have room for all the records.
+	 *
+	 * @return The index of the first record with each value, by number.
+	 */
+	int[] numberKeys(int[] keyNumbers)
+	{
+		checkNotStale();
+		int[] firstRecords = new int[numKeys];
+		int keyNumber = 0;
+		for (int i = 0; i < heads.length; i++)
+		{
+			if (heads[i] != 0)
+			{
+				firstRecords[keyNumber] = heads[i] - 1;
+				for (int r = heads[i]; r != 0; r = next[r-1])
+					keyNumbers[r-1] = keyNumber;
+				keyNumber++;
+			}
+		}
+		return firstRecords;
+	}
+
+	// THESE KEEP THE INDEX UP TO DATE
+
+	void recordAdded(int recordIndex)		{ add(recordIndex);		}
+	void valueChanging(int recordIndex)		{ remove(recordIndex);	}
+	void valueChanged(int recordIndex)		{ add(recordIndex);		}
+
+	void recordRemoving(int recordIndex)
+	{
+		remove(recordIndex);
+
+		// ALL THE RECORDS AFTER IT MOVE UP ONE
+		int numRecords = table.getNumRecords();
+		System.arraycopy(next, recordIndex + 1, next, recordIndex, numRecords - recordIndex - 1);
+		int removed = recordIndex + 1;
+		for (int i = 0; i < numRecords - 1; i++)
+		{
+			if (next[i] > removed)
+				next[i]--;
+		}
+		for (int i = 0; i < heads.length; i++)
+		{
+			if (heads[i] > removed)	heads[i]--;
+			if (tails[i] > removed)	tails[i]--;
+		}
+	}
+
+	/**
+	 * This helper method adds the record at recordIndex to the chain
+	 * for its value, keeping the chain in order.
+	 */
+	private void add(int recordIndex)
+	{
+		if (recordIndex >= next.length)
+		{
+			int[] newNext = new int[DBFColumn.growLength(next.length, recordIndex + 1)];
+			System.arraycopy(next, 0, newNext, 0, next.length);
+			next = newNext;
+		}
+		int hash = getColumn().rowHash(recordIndex);
+		int slot = findSlot(hash, recordIndex, null);
+		int entry = recordIndex + 1;
+
+		// A NEW VALUE GETS A NEW SLOT
+		if (slot < 0)
+		{
+			slot = ~slot;
+			heads[slot] = entry;
+			tails[slot] = entry;
+			hashes[slot] = hash;
+			next[recordIndex] = 0;
+			numKeys++;
+			if ((numKeys * 2) > heads.length)
+				rehash(heads.length * 2);
+		}
+		// MOST OF THE TIME IT GOES AT THE END
+		else if (entry > tails[slot])
+		{
+			next[tails[slot]-1] = entry;
+			tails[slot] = entry;
+			next[recordIndex] = 0;
+		}
+		// OR MAYBE AT THE START
+		else if (entry < heads[slot])
+		{
+			next[recordIndex] = heads[slot];
+			heads[slot] = entry;
+		}
+		// OTHERWISE FIND WHERE IT GOES
+		else
+		{
+			int r = heads[slot];
+			while ((next[r-1] != 0) && (next[r-1] < entry))
+				r = next[r-1];
+			next[recordIndex] = next[r-1];
+			next[r-1] = entry;
+		}
+	}
+
+	/**
+	 * This helper method removes the record at recordIndex from the chain
+	 * for its value, throwing out the slot if it was the last one.
+	 */
+	private void remove(int recordIndex)
+	{
+		int slot = findSlot(getColumn().rowHash(recordIndex), recordIndex, null);
+		if (slot < 0)
+			return;
+		int entry = recordIndex + 1;
+		if (heads[slot] == entry)
+		{
+			heads[slot] = next[recordIndex];
+			if (heads[slot] == 0)
+				removeSlot(slot);
+		}
+		else
+		{
+			int r = heads[slot];
+			while ((next[r-1] != 0) && (next[r-1] != entry))
+				r = next[r-1];
+			if (next[r-1] == entry)
+			{
+				next[r-1] = next[recordIndex];
+				if (tails[slot] == entry)
+					tails[slot] = r;
+			}
+		}
+		next[recordIndex] = 0;
+	}
+
+	/**
+	 * This helper method finds the slot for the value of the record at
+	 * recordIndex, or if that's -1, for the value argument. If there's no
+	 * slot for it, the complement of where one should go is returned.
+	 */
+	private int findSlot(int hash, int recordIndex, Object value)
+	{
+		DBFColumn column = getColumn();
+		int slot = mix(hash) & mask;
+		while (heads[slot] != 0)
+		{
+			if (hashes[slot] == hash)
+			{
+				int compare = (recordIndex >= 0)	? column.compareRows(heads[slot] - 1, recordIndex)
+													: column.compareValue(heads[slot] - 1, value);
+				if (compare == 0)
+					return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	/**
+	 * This helper method empties the slot argument, moving any slots after
+	 * it that would no longer be found back into its place.
+	 */
+	private void removeSlot(int slot)
+	{
+		numKeys--;
+		int empty = slot;
+		int i = slot;
+		while (true)
+		{
+			i = (i + 1) & mask;
+			if (heads[i] == 0)
+				break;
+			int home = mix(hashes[i]) & mask;
+			boolean movable = (i > empty) ? ((home <= empty) || (home > i)) : ((home <= empty) && (home > i));
+			if (movable)
+			{
+				heads[empty] = heads[i];
+				tails[empty] = tails[i];
+				hashes[empty] = hashes[i];
+				empty = i;
+			}
+		}
+		heads[empty] = 0;
+		tails[empty] = 0;
+		hashes[empty] = 0;
+	}
+
+	/**
+	 * This helper method moves all the slots into new arrays of the
+	 * newLength argument.
+	 */
+	private void rehash(int newLength)
+	{
+		int[] oldHeads = heads;
+		int[] oldTails = tails;
+		int[] oldHashes = hashes;
+		heads = new int[newLength];
+		tails = new int[newLength];
+		hashes = new int[newLength];
+		mask = newLength - 1;
+		for (int i = 0; i < oldHeads.length; i++)
+		{
+			if (oldHeads[i] != 0)
+			{
+				int slot = mix(oldHashes[i]) & mask;
+				while (heads[slot] != 0)
+					slot = (slot + 1) & mask;
+				heads[slot] = oldHeads[i];
+				tails[slot] = oldTails[i];
+				hashes[slot] = oldHashes[i];
+			}
+		}
+	}
+
+	/**
+	 * This helper method spreads out the bits of a hash code, since
+	 * similar values often have similar hash codes.
+	 */
+	private static int mix(int hash)
+	{
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash;
+	}
+}
@@ -0,0 +1,95 @@
+package dbf_framework;
+
+/**
+ * A DBFIndex is a secondary index on one field of a DBFTable, for finding
+ * records by their value for that field without going through the whole
+ * table. Indexes are made by the table when first asked for, and the table
+ * keeps them up to date as records are added, removed, and changed. Note
+ * that only changes made through the table, or its records, are seen, not
+ * changes made to a column directly. An index becomes stale when the table
+ * changes in a way it can't follow, like being sorted, after which using
+ * it throws an IllegalStateException and a new one must be asked for.
+ */
+public abstract class DBFIndex
+{
+	// THE TABLE AND FIELD THIS INDEXES
+	protected DBFTable table;
+	protected int fieldIndex;
+
+	// SET ONCE THE TABLE HAS CHANGED IN A WAY THIS CAN'T FOLLOW
+	private volatile boolean stale;
+
+	/**
+	 * This constructor sets up an index for the field at initFieldIndex
+	 * of the initTable argument.
+	 *
+	 * @param initTable The table being indexed.
+	 *
+	 * @param initFieldIndex The field being indexed.
+	 */
+	protected DBFIndex(DBFTable initTable, int initFieldIndex)
+	{
+		table = initTable;
+		fieldIndex = initFieldIndex;
+		stale = false;
+	}
+
+	// ACCESSOR METHODS
+	public DBFTable	getTable()		{ return table;			}
+	public int		getFieldIndex()	{ return fieldIndex;	}
+	public boolean	isStale()		{ return stale;			}
+
+	/**
+	 * This method makes sure the index can still be used, which subclasses
+	 * should do before answering any question about the table.
+	 *
+	 * @throws IllegalStateException If the index is stale.
+	 */
+	protected void checkNotStale()
+	{
+		if (stale)
+			throw new IllegalStateException("Index on field " + fieldIndex + " is stale, ask the table for a new one");
+	}
+
+	/**
+	 * Accessor method for the column whose values are indexed.
+	 */
+	protected DBFColumn getColumn()
+	{
+		return table.getColumn(fieldIndex);
+	}
+
+	// THESE ARE CALLED BY THE TABLE TO KEEP THE INDEX UP TO DATE
+
+	/**
+	 * Called when the table has changed in a way the index can't follow,
+	 * after which it's no longer used by the table.
+	 */
+	void invalidate()
+	{
+		stale = true;
+	}
+
+	/**
+	 * Called after the record at recordIndex is added to the table.
+	 */
+	abstract void recordAdded(int recordIndex);
+
+	/**
+	 * Called before the record at recordIndex is removed from the table.
+	 * Note that all the records after it will then be one index lower.
+	 */
+	abstract void recordRemoving(int recordIndex);
+
+	/**
+	 * Called before the value of the record at recordIndex for the
+	 * indexed field is changed.
+	 */
+	abstract void valueChanging(int recordIndex);
+
+	/**
+	 * Called after the value of the record at recordIndex for the
+	 * indexed field is changed.
+	 */
+	abstract void valueChanged(int recordIndex);
+}
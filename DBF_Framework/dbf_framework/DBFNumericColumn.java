@@ -0,0 +1,467 @@
+package dbf_framework;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * A DBFNumericColumn stores the values of an 'N' field. Whole numbers are
+ * kept in a long array. Since a numeric field may also have values with
+ * decimal places, those are kept in a double array, which isn't made until
+ * the first such value shows up, with a bitmap saying which rows use it.
+ */
+public class DBFNumericColumn extends DBFColumn
+{
+	// THE VALUES OF ROWS THAT ARE WHOLE NUMBERS
+	private long[] longValues;
+
+	// FOR DECODING NUMBERS WITH DECIMAL PLACES, THE POWERS OF TEN
+	// AND THE BIGGEST WHOLE NUMBER THAT ARE EXACT AS DOUBLES
+	private static final long MAX_EXACT_DIGITS = (1L << 53);
+	private static final double[] POWERS_OF_TEN = new double[19];
+	static
+	{
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+	}
+
+	// AND THE VALUES OF ROWS THAT HAVE DECIMAL PLACES
+	private double[] doubleValues;
+	private BitSet decimals;
+
+	/**
+	 * This constructor sets up an empty column.
+	 */
+	public DBFNumericColumn()
+	{
+		longValues = new long[0];
+		doubleValues = null;
+		decimals = new BitSet();
+	}
+
+	// ACCESSOR METHODS
+	public boolean isDecimal(int row)	{ return decimals.get(row);	}
+
+	public Object getData(int row)
+	{
+		checkRow(row);
+		if (nulls.get(row))
+			return null;
+		else if (decimals.get(row))
+			return Double.valueOf(doubleValues[row]);
+		else
+			return Long.valueOf(longValues[row]);
+	}
+
+	public long getLong(int row)
+	{
+		checkRow(row);
+		if (decimals.get(row))
+			return (long)doubleValues[row];
+		return longValues[row];
+	}
+
+	public double getDouble(int row)
+	{
+		checkRow(row);
+		if (decimals.get(row))
+			return doubleValues[row];
+		return longValues[row];
+	}
+
+	public String getString(int row)
+	{
+		Object data = getData(row);
+		if (data == null)
+			return null;
+		return data.toString();
+	}
+
+	public int compareRows(int row1, int row2)
+	{
+		checkRow(row1);
+		checkRow(row2);
+		if (nulls.get(row1) || nulls.get(row2))
+			return (nulls.get(row1) ? 0 : 1) - (nulls.get(row2) ? 0 : 1);
+		if (!decimals.get(row1) && !decimals.get(row2))
+			return Long.compare(longValues[row1], longValues[row2]);
+		return compareDoubles(getDouble(row1), getDouble(row2));
+	}
+
+	/**
+	 * Note that the value may be any Number, or text, which is read
+	 * just as setData would read it.
+	 */
+	public int compareValue(int row, Object value)
+	{
+		checkRow(row);
+		if (nulls.get(row) || (value == null))
+			return (nulls.get(row) ? 0 : 1) - ((value == null) ? 0 : 1);
+		Number number = toNumber(value);
+		if (!decimals.get(row) && !isDecimalNumber(number))
+			return Long.compare(longValues[row], number.longValue());
+		return compareDoubles(getDouble(row), number.doubleValue());
+	}
+
+	/**
+	 * Note that a value with decimal places that's really a whole
+	 * number gives the same hash as that whole number.
+	 */
+	public int rowHash(int row)
+	{
+		checkRow(row);
+		if (nulls.get(row))
+			return 0;
+		if (decimals.get(row))
+			return hashDouble(doubleValues[row]);
+		return Long.hashCode(longValues[row]);
+	}
+
+	public int valueHash(Object value)
+	{
+		if (value == null)
+			return 0;
+		Number number = toNumber(value);
+		if (isDecimalNumber(number))
+			return hashDouble(number.doubleValue());
+		return Long.hashCode(number.longValue());
+	}
+
+	// MUTATOR METHODS
+
+	/**
+	 * Mutator method for changing the value at row. Whole numbers are stored
+	 * as longs, and Doubles and Floats as doubles. Text is read just as it
+	 * would be from a .dbf file, as a double if it has a decimal point and
+	 * a long otherwise, with empty text being 0.
+	 *
+	 * @param row The index of the record whose value is being changed.
+	 *
+	 * @param data The new value, which may be null.
+	 */
+	public void setData(int row, Object data)
+	{
+		checkRow(row);
+		if (data == null)
+		{
+			longValues[row] = 0;
+			decimals.clear(row);
+			nulls.set(row);
+		}
+		else if ((data instanceof Double) || (data instanceof Float))
+		{
+			setDouble(row, ((Number)data).doubleValue());
+		}
+		else if (data instanceof Number)
+		{
+			setLong(row, ((Number)data).longValue());
+		}
+		else
+		{
+			String text = data.toString().trim();
+			if (text.contains("."))
+				setDouble(row, Double.parseDouble(text));
+			else if (text.length() > 0)
+				setLong(row, Long.parseLong(text));
+			else
+				setLong(row, 0);
+		}
+	}
+
+	/**
+	 * Mutator method for setting the value at row to a whole number.
+	 *
+	 * @param row The index of the record whose value is being changed.
+	 *
+	 * @param value The new value.
+	 */
+	public void setLong(int row, long value)
+	{
+		checkRow(row);
+		longValues[row] = value;
+		decimals.clear(row);
+		nulls.clear(row);
+	}
+
+	/**
+	 * Mutator method for setting the value at row to a number
+	 * with decimal places.
+	 *
+	 * @param row The index of the record whose value is being changed.
+	 *
+	 * @param value The new value.
+	 */
+	public void setDouble(int row, double value)
+	{
+		checkRow(row);
+		if (doubleValues == null)
+			doubleValues = new double[longValues.length];
+		doubleValues[row] = value;
+		longValues[row] = 0;
+		decimals.set(row);
+		nulls.clear(row);
+	}
+
+	/**
+	 * This method adds a new row to the end of the column whose value is
+	 * the number written as the length bytes of text found in source
+	 * starting at offset, which must already be trimmed. The value is read
+	 * just as setData would read it as text, but without making a String
+	 * unless it's too unusual to read directly.
+	 */
+	void addNumber(byte[] source, int offset, int length)
+	{
+		ensureCapacity(numRows + 1);
+		numRows++;
+		int row = numRows - 1;
+		int end = offset + length;
+		int i = offset;
+		boolean negative = false;
+		if ((i < end) && ((source[i] == '-') || (source[i] == '+')))
+		{
+			negative = (source[i] == '-');
+			i++;
+		}
+
+		// READ ALL THE DIGITS AS ONE WHOLE NUMBER, REMEMBERING HOW
+		// MANY CAME AFTER THE DECIMAL POINT, IF THERE IS ONE
+		long digits = 0;
+		int numDigits = 0;
+		int decimalPlaces = -1;
+		boolean readable = (i < end) || (length == 0);
+		for (; readable && (i < end); i++)
+		{
+			byte c = source[i];
+			if ((c >= '0') && (c <= '9') && (numDigits < 18))
+			{
+				digits = (digits * 10) + (c - '0');
+				numDigits++;
+				if (decimalPlaces >= 0)
+					decimalPlaces++;
+			}
+			else if ((c == '.') && (decimalPlaces < 0))
+				decimalPlaces = 0;
+			else
+				readable = false;
+		}
+		if ((numDigits == 0) && (length > 0))
+			readable = false;
+		else if ((decimalPlaces >= 0) && (digits > MAX_EXACT_DIGITS))
+			readable = false;
+
+		// ANYTHING ODD, LIKE AN EXPONENT OR A HUGE NUMBER, IS READ AS TEXT
+		if (!readable)
+			setData(row, new String(source, offset, length, DBFCharacterColumn.CHARSET));
+		else if (decimalPlaces < 0)
+			setLong(row, negative ? -digits : digits);
+		// NOTE THAT THIS GIVES EXACTLY WHAT Double.parseDouble WOULD,
+		// SINCE BOTH NUMBERS ARE EXACT AS DOUBLES AND DIVISION ROUNDS
+		else
+		{
+			double value = digits / POWERS_OF_TEN[decimalPlaces];
+			setDouble(row, negative ? -value : value);
+		}
+	}
+
+	/**
+	 * This method shrinks the arrays used by this column to just what's
+	 * needed to store its values.
+	 */
+	public void trimToSize()
+	{
+		if (longValues.length > numRows)
+		{
+			long[] newLongValues = new long[numRows];
+			System.arraycopy(longValues, 0, newLongValues, 0, numRows);
+			longValues = newLongValues;
+			if (doubleValues != null)
+			{
+				double[] newDoubleValues = new double[numRows];
+				System.arraycopy(doubleValues, 0, newDoubleValues, 0, numRows);
+				doubleValues = newDoubleValues;
+			}
+		}
+	}
+
+	protected void ensureCapacity(int capacity)
+	{
+		if (capacity > longValues.length)
+		{
+			int newLength = growLength(longValues.length, capacity);
+			long[] newLongValues = new long[newLength];
+			System.arraycopy(longValues, 0, newLongValues, 0, numRows);
+			longValues = newLongValues;
+			if (doubleValues != null)
+			{
+				double[] newDoubleValues = new double[newLength];
+				System.arraycopy(doubleValues, 0, newDoubleValues, 0, numRows);
+				doubleValues = newDoubleValues;
+			}
+		}
+	}
+
+	protected void removeRowData(int row)
+	{
+		System.arraycopy(longValues, row + 1, longValues, row, numRows - row - 1);
+		if (doubleValues != null)
+			System.arraycopy(doubleValues, row + 1, doubleValues, row, numRows - row - 1);
+		for (int i = row; i < numRows - 1; i++)
+			decimals.set(i, decimals.get(i+1));
+		decimals.clear(numRows - 1);
+	}
+
+	/**
+	 * This method tests if any of the values in the column
+	 * have decimal places.
+	 */
+	public boolean hasDecimals()
+	{
+		return !decimals.isEmpty();
+	}
+
+	protected int getEncodedRowDataLength()
+	{
+		int length = (numRows * 8) + getEncodedLength(decimals);
+		if (hasDecimals())
+			length += numRows * 8;
+		return length;
+	}
+
+	/**
+	 * Note that the double values are only put if there are any.
+	 */
+	protected void encodeRowData(ByteBuffer buffer)
+	{
+		buffer.asLongBuffer().put(longValues, 0, numRows);
+		buffer.position(buffer.position() + (numRows * 8));
+		encodeBits(buffer, decimals);
+		if (hasDecimals())
+		{
+			buffer.asDoubleBuffer().put(doubleValues, 0, numRows);
+			buffer.position(buffer.position() + (numRows * 8));
+		}
+	}
+
+	protected void decodeRowData(ByteBuffer buffer)
+	{
+		longValues = new long[numRows];
+		buffer.asLongBuffer().get(longValues);
+		buffer.position(buffer.position() + (numRows * 8));
+		decimals = decodeBits(buffer);
+		doubleValues = null;
+		if (hasDecimals())
+		{
+			doubleValues = new double[numRows];
+			buffer.asDoubleBuffer().get(doubleValues);
+			buffer.position(buffer.position() + (numRows * 8));
+		}
+	}
+
+	protected void reorderRowData(int[] order)
+	{
+		long[] newLongValues = new long[longValues.length];
+		for (int i = 0; i < numRows; i++)
+			newLongValues[i] = longValues[order[i]];
+		longValues = newLongValues;
+		if (doubleValues != null)
+		{
+			double[] newDoubleValues = new double[doubleValues.length];
+			BitSet newDecimals = new BitSet();
+			for (int i = 0; i < numRows; i++)
+			{
+				newDoubleValues[i] = doubleValues[order[i]];
+				if (decimals.get(order[i]))
+					newDecimals.set(i);
+			}
+			doubleValues = newDoubleValues;
+			decimals = newDecimals;
+		}
+	}
+
+	protected void clearRowData()
+	{
+		decimals.clear();
+	}
+
+	protected long estimateRowDataHeapBytes()
+	{
+		long numBytes = 16 + (longValues.length * 8L) + (decimals.size() / 8);
+		if (doubleValues != null)
+			numBytes += 16 + (doubleValues.length * 8L);
+		return numBytes;
+	}
+
+	protected void appendRowData(DBFColumn other)
+	{
+		DBFNumericColumn otherNumbers = (DBFNumericColumn)other;
+		int numOtherRows = otherNumbers.numRows;
+		System.arraycopy(otherNumbers.longValues, 0, longValues, numRows, numOtherRows);
+		if (otherNumbers.doubleValues != null)
+		{
+			if (doubleValues == null)
+				doubleValues = new double[longValues.length];
+			System.arraycopy(otherNumbers.doubleValues, 0, doubleValues, numRows, numOtherRows);
+			BitSet otherDecimals = otherNumbers.decimals;
+			for (int i = otherDecimals.nextSetBit(0); (i >= 0) && (i < numOtherRows); i = otherDecimals.nextSetBit(i + 1))
+				decimals.set(numRows + i);
+		}
+	}
+
+	/**
+	 * This helper method converts the value argument to a Number, reading
+	 * text just as setData would.
+	 */
+	private static Number toNumber(Object value)
+	{
+		if (value instanceof Number)
+			return (Number)value;
+		String text = value.toString().trim();
+		if (text.contains("."))
+			return Double.valueOf(Double.parseDouble(text));
+		else if (text.length() > 0)
+			return Long.valueOf(Long.parseLong(text));
+		else
+			return Long.valueOf(0);
+	}
+
+	/**
+	 * This helper method tests if number is a kind of Number that
+	 * has decimal places, rather than a whole number.
+	 */
+	private static boolean isDecimalNumber(Number number)
+	{
+		return !((number instanceof Long) || (number instanceof Integer)
+				|| (number instanceof Short) || (number instanceof Byte));
+	}
+
+	/**
+	 * This helper method compares two doubles, treating 0 and -0 as equal.
+	 */
+	private static int compareDoubles(double d1, double d2)
+	{
+		if (d1 < d2)		return -1;
+		else if (d1 > d2)	return 1;
+		else				return Double.compare(d1 + 0.0, d2 + 0.0);
+	}
+
+	/**
+	 * This helper method calculates the hash of a value with decimal places,
+	 * which is the hash of the whole number if that's what it really is.
+	 */
+	private static int hashDouble(double d)
+	{
+		if (d == (long)d)
+			return Long.hashCode((long)d);
+		return Double.hashCode(d);
+	}
+
+	/**
+	 * This helper method makes sure row is a row in this column, since
+	 * the arrays may be bigger than the number of rows.
+	 */
+	private void checkRow(int row)
+	{
+		if ((row < 0) || (row >= numRows))
+			throw new IndexOutOfBoundsException("Row: " + row + ", Rows: " + numRows);
+	}
+}
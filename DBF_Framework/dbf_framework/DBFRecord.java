@@ -4,14 +4,23 @@ package dbf_framework;
  * An object of this class stores all of the data
  * for a single row in a .dbf file for our table.
  * 
+ * Note that once a record is in a table, its data is actually stored by
+ * the table's columns, and the record just provides access to its row of
+ * them. A record that hasn't been added to a table yet stores its own data.
+ * 
  * @author Richard McKenna
  */
 public class DBFRecord
 {
+	// THE TABLE THIS RECORD IS A ROW OF, AND WHICH ROW,
+	// OR NULL IF IT ISN'T IN A TABLE
+	private DBFTable table;
+	private int recordIndex;
+
 	// WHAT IS THIS BYTE OF DATA FROM THE FILE BEFORE EACH RECORD?
 	private byte mystery;
 	
-	// HERE'S ALL THE DATA FOR THIS ROW
+	// HERE'S ALL THE DATA FOR THIS ROW, IF IT'S NOT IN A TABLE
 	private Object[] fieldData;
 
 	/**
@@ -23,29 +32,136 @@ public class DBFRecord
 	 */
 	public DBFRecord(int numFields)
 	{
+		table = null;
+		recordIndex = -1;
 		fieldData = new Object[numFields];
 		for (int i = 0; i < fieldData.length; i++)
 			fieldData[i] = null;
 	}
 	
+	/**
+	 * This constructor makes a record for the row at initRecordIndex of
+	 * the initTable argument, which is where its data will be found.
+	 * 
+	 * @param initTable The table the record is in.
+	 * 
+	 * @param initRecordIndex The row of the table the record is.
+	 */
+	DBFRecord(DBFTable initTable, int initRecordIndex)
+	{
+		table = initTable;
+		recordIndex = initRecordIndex;
+		fieldData = null;
+	}
+
 	// ACCESSOR METHODS
-	public int 		getNumFields() 		{ return fieldData.length;	}	
-	public Object[] getAllData()		{ return fieldData; 		}
-	public byte 	getMystery()		{ return mystery;			}
-	public Object 	getData(int index) 	{ return fieldData[index];	}
-	public Long 	getEV()				{ return (Long)fieldData[2];}
+	public DBFTable	getTable()			{ return table;				}
+	public int		getRecordIndex()	{ return recordIndex;		}
+	public Long 	getEV()				{ return (Long)getData(2);	}
+
+	public int getNumFields()
+	{
+		if (table != null)
+			return table.getNumFields();
+		return fieldData.length;
+	}
+
+	/**
+	 * Note that for a record in a table, this makes and returns
+	 * a copy of the data, so changing it won't change the table.
+	 */
+	public Object[] getAllData()
+	{
+		if (table == null)
+			return fieldData;
+		Object[] allData = new Object[table.getNumFields()];
+		for (int i = 0; i < allData.length; i++)
+			allData[i] = table.getData(recordIndex, i);
+		return allData;
+	}
+
+	public byte getMystery()
+	{
+		if (table != null)
+			return table.getMystery(recordIndex);
+		return mystery;
+	}
+
+	public Object getData(int index)
+	{
+		if (table != null)
+			return table.getData(recordIndex, index);
+		return fieldData[index];
+	}
+
+	// THESE PROVIDE DATA WITHOUT MAKING OBJECTS FOR IT, WHICH IS
+	// FASTER FOR RECORDS IN A TABLE. NULL NUMBERS ARE 0
+	public long getLong(int index)
+	{
+		if (table != null)
+			return table.getLong(recordIndex, index);
+		return (fieldData[index] == null) ? 0 : ((Number)fieldData[index]).longValue();
+	}
+
+	public double getDouble(int index)
+	{
+		if (table != null)
+			return table.getDouble(recordIndex, index);
+		return (fieldData[index] == null) ? 0 : ((Number)fieldData[index]).doubleValue();
+	}
+
+	public String getString(int index)
+	{
+		if (table != null)
+			return table.getString(recordIndex, index);
+		return (fieldData[index] == null) ? null : fieldData[index].toString();
+	}
+
+	public boolean isNull(int index)
+	{
+		if (table != null)
+			return table.isNull(recordIndex, index);
+		return fieldData[index] == null;
+	}
 
 	// MUTATOR METHODS
-	public void setData(Object data, int index) { fieldData[index] = data;	}
-	public void setMystery(byte initMystery)	{ mystery = initMystery;	}
+	public void setData(Object data, int index)
+	{
+		if (table != null)
+			table.setData(recordIndex, index, data);
+		else
+			fieldData[index] = data;
+	}
+
+	public void setMystery(byte initMystery)
+	{
+		if (table != null)
+			table.setMystery(recordIndex, initMystery);
+		else
+			mystery = initMystery;
+	}
+
+	/**
+	 * Called by the table when this record is added to it, after which
+	 * its data is in the table, not in this record.
+	 */
+	void attach(DBFTable initTable, int initRecordIndex)
+	{
+		table = initTable;
+		recordIndex = initRecordIndex;
+		fieldData = null;
+	}
 
 	/**
 	 * This method is used for updating this record whenever a field
 	 * is added to the table. When that happens, we have to increase our
-	 * array of data by one to accommodate it.
+	 * array of data by one to accommodate it. Note that records in a
+	 * table don't need this, the table takes care of it.
 	 */
 	public void addField()
 	{
+		if (table != null)
+			return;
 		Object[] updatedArray = new Object[fieldData.length + 1];
 		for (int i = 0; i < fieldData.length; i++)
 			updatedArray[i] = fieldData[i];
@@ -55,14 +171,15 @@ public class DBFRecord
 	/**
 	 * This method is used for updating this record whenever a field
 	 * is removed from the table. When that happens, we have to decrease our
-	 * array of data by one.
+	 * array of data by one. Note that records in a table don't need this,
+	 * the table takes care of it.
 	 * 
 	 * @param index The index of the field to be removed from this record.
 	 */
 	public void removeField(int index)
 	{
 		// MAKE SURE IT'S A VALID FIELD INDEX
-		if ((fieldData.length > 0) && (index >= 0) && (index < fieldData.length))
+		if ((table == null) && (fieldData.length > 0) && (index >= 0) && (index < fieldData.length))
 		{
 			Object[] updatedArray = new Object[fieldData.length-1];
 			
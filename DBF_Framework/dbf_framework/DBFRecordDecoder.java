@@ -0,0 +1,111 @@
+package dbf_framework;
+
+/**
+ * This class decodes records of a .dbf file straight from the bytes read
+ * from the file into the columns of a table, without making a String or
+ * other object for each value. It's used by DBFFileIO, which reads many
+ * records at a time into a byte array and then has this decode them.
+ *
+ * Note that where each field is in a record is figured out by adding up
+ * the lengths of the fields before it, since many .dbf files don't fill
+ * in each field's displacement.
+ */
+class DBFRecordDecoder
+{
+	// THE TABLE WE'RE DECODING INTO
+	private DBFTable table;
+
+	// FOR EACH FIELD, ITS COLUMN AND WHERE IT IS IN A RECORD
+	private DBFColumn[] columns;
+	private int[] fieldOffsets;
+	private int[] fieldLengths;
+
+	// HOW MANY BYTES EACH RECORD TAKES, INCLUDING THE MYSTERY BYTE
+	private int recordLength;
+
+	/**
+	 * This constructor sets up decoding into the table argument, whose
+	 * fields must all already be loaded.
+	 *
+	 * @param initTable The table to decode records into.
+	 */
+	public DBFRecordDecoder(DBFTable initTable)
+	{
+		table = initTable;
+		int numFields = table.getNumFields();
+		columns = new DBFColumn[numFields];
+		fieldOffsets = new int[numFields];
+		fieldLengths = new int[numFields];
+
+		// THE MYSTERY BYTE COMES FIRST, THEN ALL THE FIELDS IN ORDER
+		int offset = 1;
+		for (int i = 0; i < numFields; i++)
+		{
+			columns[i] = table.getColumn(i);
+			fieldOffsets[i] = offset;
+			fieldLengths[i] = table.getField(i).getLength();
+			offset += fieldLengths[i];
+		}
+		recordLength = offset;
+	}
+
+	// ACCESSOR METHODS
+	public int getRecordLength()				{ return recordLength;				}
+	public int getFieldOffset(int fieldIndex)	{ return fieldOffsets[fieldIndex];	}
+	public int getFieldLength(int fieldIndex)	{ return fieldLengths[fieldIndex];	}
+
+	/**
+	 * This method decodes numRecords records found back to back in buffer,
+	 * starting at offset, adding them to the end of the table.
+	 *
+	 * @param buffer The bytes read from the file.
+	 *
+	 * @param offset Where the first record starts in buffer.
+	 *
+	 * @param numRecords How many records to decode.
+	 *
+	 * @param stride How many bytes apart the records are, which is the
+	 * record length in the file's header.
+	 */
+	public void decodeRecords(byte[] buffer, int offset, int numRecords, int stride)
+	{
+		int firstRecordIndex = table.getNumRecords();
+		for (int r = 0; r < numRecords; r++)
+		{
+			int recordStart = offset + (r * stride);
+			for (int i = 0; i < columns.length; i++)
+				decodeField(buffer, recordStart + fieldOffsets[i], fieldLengths[i], columns[i]);
+			table.addDecodedRecord(buffer[recordStart]);
+		}
+		table.recordsAdded(firstRecordIndex);
+	}
+
+	/**
+	 * This method decodes a single field value found in buffer, adding it
+	 * as a new row at the end of the column argument.
+	 *
+	 * @param buffer The bytes read from the file.
+	 *
+	 * @param start Where the field starts in buffer.
+	 *
+	 * @param length How many bytes long the field is.
+	 *
+	 * @param column The column to add the value to.
+	 */
+	public static void decodeField(byte[] buffer, int start, int length, DBFColumn column)
+	{
+		// ALL VALUES HAVE THEIR SPACES TRIMMED
+		int end = start + length;
+		while ((start < end) && ((buffer[start] & 0xff) <= ' '))
+			start++;
+		while ((end > start) && ((buffer[end-1] & 0xff) <= ' '))
+			end--;
+
+		if (column instanceof DBFCharacterColumn)
+			((DBFCharacterColumn)column).addBytes(buffer, start, end - start);
+		else if (column instanceof DBFNumericColumn)
+			((DBFNumericColumn)column).addNumber(buffer, start, end - start);
+		else
+			column.addData(new String(buffer, start, end - start, DBFCharacterColumn.CHARSET));
+	}
+}
@@ -0,0 +1,191 @@
+package dbf_framework;
+
+import java.util.Arrays;
+
+/**
+ * This class encodes records into the bytes they're stored as in a .dbf
+ * file, the opposite of what DBFRecordDecoder does. Each field is written
+ * left justified and padded with spaces, and values too long for their
+ * field are cut off to fit. It's used by DBFFileIO for saving whole tables
+ * and by UpdatableDBFTable for writing single records.
+ */
+class DBFRecordEncoder
+{
+	// THE TABLE WITH THE FIELDS OF THE RECORDS WE'RE ENCODING
+	private DBFTable table;
+
+	// FOR EACH FIELD, ITS TYPE AND WHERE IT IS IN A RECORD
+	private DBFFieldType[] fieldTypes;
+	private int[] fieldOffsets;
+	private int[] fieldLengths;
+
+	// HOW MANY BYTES EACH RECORD TAKES IN THE FILE
+	private int stride;
+
+	/**
+	 * This constructor sets up encoding records with the fields of the
+	 * table argument, whose fields must all already be loaded.
+	 *
+	 * @param initTable The table whose records are to be encoded.
+	 */
+	public DBFRecordEncoder(DBFTable initTable)
+	{
+		table = initTable;
+		DBFRecordDecoder layout = new DBFRecordDecoder(table);
+		int numFields = table.getNumFields();
+		fieldTypes = new DBFFieldType[numFields];
+		fieldOffsets = new int[numFields];
+		fieldLengths = new int[numFields];
+		for (int i = 0; i < numFields; i++)
+		{
+			fieldTypes[i] = table.getField(i).getType();
+			fieldOffsets[i] = layout.getFieldOffset(i);
+			fieldLengths[i] = layout.getFieldLength(i);
+		}
+		stride = Math.max(table.getDataRecordLength() & 0xffff, layout.getRecordLength());
+	}
+
+	// ACCESSOR METHODS
+	public int getStride()						{ return stride;					}
+	public int getFieldOffset(int fieldIndex)	{ return fieldOffsets[fieldIndex];	}
+	public int getFieldLength(int fieldIndex)	{ return fieldLengths[fieldIndex];	}
+
+	/**
+	 * This method encodes the row at recordIndex of the table this encoder
+	 * was made for into bytes, starting at offset, getting the data right
+	 * from the table's columns.
+	 *
+	 * @param recordIndex The row of the table to encode.
+	 *
+	 * @param bytes Where to put the encoded record, which must have
+	 * room for stride bytes after offset.
+	 *
+	 * @param offset Where the record starts in bytes.
+	 */
+	public void encodeRecord(int recordIndex, byte[] bytes, int offset)
+	{
+		// THERE IS A MYSTERY BYTE BEFORE EACH RECORD, AND ANY SPACE
+		// LEFT AFTER THE FIELDS, OR IN THEM, IS FILLED WITH SPACES
+		bytes[offset] = table.getMystery(recordIndex);
+		Arrays.fill(bytes, offset + 1, offset + stride, (byte)' ');
+
+		for (int i = 0; i < fieldTypes.length; i++)
+		{
+			DBFColumn column = table.getColumn(i);
+			int fieldStart = offset + fieldOffsets[i];
+			if (column.isNull(recordIndex))
+				continue;
+
+			// TEXT?
+			if ((fieldTypes[i] == DBFFieldType.C) && (column instanceof DBFCharacterColumn))
+				((DBFCharacterColumn)column).copyBytes(recordIndex, bytes, fieldStart, fieldLengths[i]);
+			// WHOLE NUMBERS WE CAN WRITE OURSELVES
+			else if ((column instanceof DBFNumericColumn) && !((DBFNumericColumn)column).isDecimal(recordIndex))
+				encodeLong(column.getLong(recordIndex), bytes, fieldStart, fieldLengths[i]);
+			// ANYTHING ELSE IS WRITTEN AS ITS TEXT
+			else
+				encodeText(column.getString(recordIndex), bytes, fieldStart, fieldLengths[i]);
+		}
+	}
+
+	/**
+	 * This method encodes the record argument into bytes, starting at
+	 * offset. The record need not be in a table.
+	 *
+	 * @param record The record to encode.
+	 *
+	 * @param bytes Where to put the encoded record, which must have
+	 * room for stride bytes after offset.
+	 *
+	 * @param offset Where the record starts in bytes.
+	 */
+	public void encodeRecord(DBFRecord record, byte[] bytes, int offset)
+	{
+		bytes[offset] = record.getMystery();
+		Arrays.fill(bytes, offset + 1, offset + stride, (byte)' ');
+		for (int i = 0; (i < fieldTypes.length) && (i < record.getNumFields()); i++)
+			encodeField(i, record.getData(i), bytes, offset + fieldOffsets[i]);
+	}
+
+	/**
+	 * This method encodes just the data argument as the value of the field
+	 * at fieldIndex into bytes, starting at offset, filling the rest of
+	 * the field with spaces.
+	 *
+	 * @param fieldIndex The field the data is for.
+	 *
+	 * @param data The value to encode, which may be null.
+	 *
+	 * @param bytes Where to put the encoded value, which must have
+	 * room for the field's length after offset.
+	 *
+	 * @param offset Where the field starts in bytes.
+	 */
+	public void encodeField(int fieldIndex, Object data, byte[] bytes, int offset)
+	{
+		int fieldLength = fieldLengths[fieldIndex];
+		Arrays.fill(bytes, offset, offset + fieldLength, (byte)' ');
+		if (data == null)
+			return;
+
+		// NUMBERS ARE WRITTEN JUST AS A NUMERIC COLUMN WOULD STORE THEM
+		if ((fieldTypes[fieldIndex] != DBFFieldType.C) && (data instanceof Number))
+		{
+			if ((data instanceof Double) || (data instanceof Float))
+				encodeText(Double.toString(((Number)data).doubleValue()), bytes, offset, fieldLength);
+			else
+				encodeLong(((Number)data).longValue(), bytes, offset, fieldLength);
+		}
+		else
+			encodeText(data.toString(), bytes, offset, fieldLength);
+	}
+
+	/**
+	 * This helper method writes the digits of value into bytes starting
+	 * at offset, writing no more than maxLength of them.
+	 */
+	private void encodeLong(long value, byte[] bytes, int offset, int maxLength)
+	{
+		// THE SMALLEST LONG CAN'T BE NEGATED, SO LET Long DO IT
+		if (value == Long.MIN_VALUE)
+		{
+			encodeText(Long.toString(value), bytes, offset, maxLength);
+			return;
+		}
+
+		// COUNT THE DIGITS FIRST SO WE KNOW WHERE THE LAST ONE GOES
+		int numDigits = 1;
+		long magnitude = Math.abs(value);
+		for (long n = magnitude; n >= 10; n /= 10)
+			numDigits++;
+		int length = numDigits;
+		if (value < 0)
+		{
+			length++;
+			if (maxLength > 0)
+				bytes[offset] = (byte)'-';
+		}
+
+		// THEN WRITE THEM FROM LAST TO FIRST, SKIPPING ANY THAT DON'T FIT
+		for (int i = length - 1; i >= (length - numDigits); i--)
+		{
+			if (i < maxLength)
+				bytes[offset + i] = (byte)('0' + (magnitude % 10));
+			magnitude /= 10;
+		}
+	}
+
+	/**
+	 * This helper method writes text into bytes starting at offset, one
+	 * byte per character, writing no more than maxLength of them.
+	 */
+	private void encodeText(String text, byte[] bytes, int offset, int maxLength)
+	{
+		int length = Math.min(text.length(), maxLength);
+		for (int i = 0; i < length; i++)
+		{
+			char c = text.charAt(i);
+			bytes[offset + i] = (c <= 0xff) ? (byte)c : (byte)'?';
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package dbf_framework;
+
+/**
+ * A DBFRecordFilter decides which records a DBFCursor stops at. It's asked
+ * about each record before any of the record's data is decoded, so it
+ * should test the record using the cursor's raw byte methods, like
+ * fieldEquals, which don't make any objects.
+ */
+public interface DBFRecordFilter
+{
+	/**
+	 * This method tests the record the cursor argument is currently at.
+	 *
+	 * @param cursor The cursor, whose raw byte methods may be used
+	 * to look at the record.
+	 *
+	 * @return true if the cursor should stop at the record, false
+	 * if it should skip it.
+	 */
+	public boolean accept(DBFCursor cursor);
+}
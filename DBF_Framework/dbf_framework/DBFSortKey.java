@@ -0,0 +1,32 @@
+package dbf_framework;
+
+/**
+ * A DBFSortKey says one of the fields to sort a table's records by, and
+ * in which direction. Sorting by more than one key sorts by the first,
+ * then the second for records whose first are equal, and so on.
+ */
+public class DBFSortKey
+{
+	// THE FIELD TO SORT BY AND WHICH WAY
+	private int fieldIndex;
+	private boolean increasing;
+
+	/**
+	 * This constructor sets up the key.
+	 *
+	 * @param initFieldIndex The index of the field to sort by.
+	 *
+	 * @param initIncreasing If true, records will be sorted in increasing
+	 * order of this field, with nulls first. It will use decreasing order,
+	 * with nulls last, otherwise.
+	 */
+	public DBFSortKey(int initFieldIndex, boolean initIncreasing)
+	{
+		fieldIndex = initFieldIndex;
+		increasing = initIncreasing;
+	}
+
+	// ACCESSOR METHODS
+	public int		getFieldIndex()	{ return fieldIndex;	}
+	public boolean	isIncreasing()	{ return increasing;	}
+}
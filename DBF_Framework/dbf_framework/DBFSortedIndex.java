@@ -0,0 +1,239 @@
+package dbf_framework;
+
+import java.util.Arrays;
+
+/**
+ * A DBFSortedIndex keeps the records of a table in order of their values
+ * for one field, for finding all the records with values in a range using
+ * binary search. Records with equal values are kept in their table order,
+ * and records with null values come first.
+ */
+public class DBFSortedIndex extends DBFIndex
+{
+	// ALL THE RECORD INDEXES, IN ORDER OF THEIR VALUES
+	private int[] order;
+	private int numRecords;
+
+	/**
+	 * This constructor builds the index for the field at initFieldIndex
+	 * of the initTable argument.
+	 *
+	 * @param initTable The table being indexed.
+	 *
+	 * @param initFieldIndex The field being indexed.
+	 */
+	DBFSortedIndex(DBFTable initTable, int initFieldIndex)
+	{
+		super(initTable, initFieldIndex);
+		numRecords = table.getNumRecords();
+		order = new int[Math.max(16, numRecords)];
+		for (int i = 0; i < numRecords; i++)
+			order[i] = i;
+		sort(order, new int[numRecords], 0, numRecords);
+	}
+
+	// ACCESSOR METHODS
+	public int getNumRecords()				{ checkNotStale(); return numRecords;		}
+	public int getRecordIndex(int position)	{ checkNotStale(); return order[position];	}
+
+	/**
+	 * This method finds all the records whose values for the indexed field
+	 * are from the from argument through the to argument.
+	 *
+	 * @param from The smallest value to find, or null to start
+	 * with the first record.
+	 *
+	 * @param to The biggest value to find, or null to go through
+	 * the last record.
+	 *
+	 * @return The indexes of the records found, in order of their values.
+	 */
+	public int[] findRange(Object from, Object to)
+	{
+		checkNotStale();
+		int start = (from == null) ? 0 : lowerBound(from);
+		int end = (to == null) ? numRecords : upperBound(to);
+		if (end <= start)
+			return new int[0];
+		return Arrays.copyOfRange(order, start, end);
+	}
+
+	/**
+	 * This method finds all the records whose value for the indexed field
+	 * equals the value argument.
+	 *
+	 * @param value The value to look for, which may be null.
+	 *
+	 * @return The indexes of all records with that value, in order.
+	 */
+	public int[] findAll(Object value)
+	{
+		return Arrays.copyOfRange(order, lowerBound(value), Math.max(lowerBound(value), upperBound(value)));
+	}
+
+	/**
+	 * This method finds the position in the index of the first record
+	 * whose value isn't less than the value argument.
+	 *
+	 * @param value The value to look for, which may be null.
+	 *
+	 * @return A position from 0 through getNumRecords().
+	 */
+	public int lowerBound(Object value)
+	{
+		checkNotStale();
+		DBFColumn column = getColumn();
+		int low = 0;
+		int high = numRecords;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (column.compareValue(order[middle], value) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * This method finds the position in the index of the first record
+	 * whose value is greater than the value argument.
+	 *
+	 * @param value The value to look for, which may be null.
+	 *
+	 * @return A position from 0 through getNumRecords().
+	 */
+	public int upperBound(Object value)
+	{
+		checkNotStale();
+		DBFColumn column = getColumn();
+		int low = 0;
+		int high = numRecords;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (column.compareValue(order[middle], value) <= 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	// THESE KEEP THE INDEX UP TO DATE
+
+	void recordAdded(int recordIndex)		{ insert(recordIndex);	}
+	void valueChanging(int recordIndex)		{ delete(recordIndex);	}
+	void valueChanged(int recordIndex)		{ insert(recordIndex);	}
+
+	void recordRemoving(int recordIndex)
+	{
+		delete(recordIndex);
+
+		// ALL THE RECORDS AFTER IT MOVE UP ONE
+		for (int i = 0; i < numRecords; i++)
+		{
+			if (order[i] > recordIndex)
+				order[i]--;
+		}
+	}
+
+	/**
+	 * This helper method puts the record at recordIndex where it
+	 * belongs in the order.
+	 */
+	private void insert(int recordIndex)
+	{
+		if (numRecords == order.length)
+			order = Arrays.copyOf(order, DBFColumn.growLength(order.length, numRecords + 1));
+		int position = findPosition(recordIndex);
+		System.arraycopy(order, position, order, position + 1, numRecords - position);
+		order[position] = recordIndex;
+		numRecords++;
+	}
+
+	/**
+	 * This helper method takes the record at recordIndex out of the order.
+	 */
+	private void delete(int recordIndex)
+	{
+		int position = findPosition(recordIndex);
+		if ((position < numRecords) && (order[position] == recordIndex))
+		{
+			System.arraycopy(order, position + 1, order, position, numRecords - position - 1);
+			numRecords--;
+		}
+	}
+
+	/**
+	 * This helper method finds the position in the order where the record
+	 * at recordIndex is, or where it would go if it's not there.
+	 */
+	private int findPosition(int recordIndex)
+	{
+		int low = 0;
+		int high = numRecords;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (compare(order[middle], recordIndex) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * This helper method compares the records at recordIndex1 and
+	 * recordIndex2 by their values, and by where they are in the
+	 * table if their values are equal.
+	 */
+	private int compare(int recordIndex1, int recordIndex2)
+	{
+		int result = getColumn().compareRows(recordIndex1, recordIndex2);
+		if (result == 0)
+			result = Integer.compare(recordIndex1, recordIndex2);
+		return result;
+	}
+
+	/**
+	 * This helper method merge sorts the record indexes in recordIndexes
+	 * from start up to end, using temp, which must be as big, for merging.
+	 */
+	private void sort(int[] recordIndexes, int[] temp, int start, int end)
+	{
+		// SMALL RANGES ARE QUICKER TO JUST INSERTION SORT
+		if ((end - start) <= 16)
+		{
+			for (int i = start + 1; i < end; i++)
+			{
+				int recordIndex = recordIndexes[i];
+				int j = i - 1;
+				while ((j >= start) && (compare(recordIndexes[j], recordIndex) > 0))
+				{
+					recordIndexes[j+1] = recordIndexes[j];
+					j--;
+				}
+				recordIndexes[j+1] = recordIndex;
+			}
+			return;
+		}
+		int middle = (start + end) >>> 1;
+		sort(recordIndexes, temp, start, middle);
+		sort(recordIndexes, temp, middle, end);
+		if (compare(recordIndexes[middle-1], recordIndexes[middle]) <= 0)
+			return;
+		System.arraycopy(recordIndexes, start, temp, start, end - start);
+		int i = start;
+		int j = middle;
+		for (int k = start; k < end; k++)
+		{
+			if ((j >= end) || ((i < middle) && (compare(temp[i], temp[j]) <= 0)))
+				recordIndexes[k] = temp[i++];
+			else
+				recordIndexes[k] = temp[j++];
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package dbf_framework;
+
+import java.util.Arrays;
+
+/**
+ * This class works out the order a table's records would be in if sorted
+ * by one or more DBFSortKeys. Rather than comparing records, which would
+ * make objects for their values every time, each key's column is turned
+ * once into a rank per record, which is where its value would come among
+ * all the column's distinct values. Then the records are sorted by rank
+ * one key at a time, last key first, using Arrays.parallelSort on longs
+ * made of each record's rank and current position. Since the position is
+ * part of what gets sorted, each pass keeps records with the same rank in
+ * the order the last pass put them, which is what makes the result right
+ * for the earlier keys, and what keeps equal records in table order.
+ */
+class DBFSorter
+{
+	// THE TABLE WHOSE RECORDS WE'RE SORTING
+	private DBFTable table;
+
+	/**
+	 * This constructor sets up sorting the records of initTable.
+	 *
+	 * @param initTable The table to sort.
+	 */
+	public DBFSorter(DBFTable initTable)
+	{
+		table = initTable;
+	}
+
+	/**
+	 * This method works out the sorted order of the records.
+	 *
+	 * @param keys What to sort by, most important first.
+	 *
+	 * @return The index of the record that would be at each position,
+	 * from first to last.
+	 */
+	public int[] sort(DBFSortKey[] keys)
+	{
+		int numRecords = table.getNumRecords();
+		int[] order = new int[numRecords];
+		for (int i = 0; i < numRecords; i++)
+			order[i] = i;
+
+		long[] sortValues = new long[numRecords];
+		int[] ranks = new int[numRecords];
+		for (int k = keys.length - 1; k >= 0; k--)
+		{
+			int maxRank = rankRecords(keys[k].getFieldIndex(), ranks);
+
+			// THE RANK GOES IN THE HIGH BITS SO IT'S WHAT'S SORTED BY,
+			// THE POSITION IN THE LOW BITS TO KEEP TIES IN ORDER
+			for (int i = 0; i < numRecords; i++)
+			{
+				int rank = ranks[order[i]];
+				if (!keys[k].isIncreasing())
+					rank = maxRank - rank;
+				sortValues[i] = ((long)rank << 32) | i;
+			}
+			Arrays.parallelSort(sortValues);
+
+			int[] newOrder = new int[numRecords];
+			for (int i = 0; i < numRecords; i++)
+				newOrder[i] = order[(int)sortValues[i]];
+			order = newOrder;
+		}
+		return order;
+	}
+
+	/**
+	 * This method ranks the value of the fieldIndex field of every record,
+	 * such that records with equal values get the same rank and smaller
+	 * values get smaller ranks. Nulls are ranked 0.
+	 *
+	 * @param fieldIndex The field whose values we're ranking.
+	 *
+	 * @param ranks Where to put each record's rank.
+	 *
+	 * @return The largest rank.
+	 */
+	private int rankRecords(int fieldIndex, int[] ranks)
+	{
+		DBFColumn column = table.getColumn(fieldIndex);
+		if (column instanceof DBFNumericColumn)
+			return rankNumbers((DBFNumericColumn)column, ranks);
+		return rankText(fieldIndex, ranks);
+	}
+
+	/**
+	 * This helper method ranks a numeric column's values by sorting a
+	 * long for each one, then finding where each is among them.
+	 */
+	private int rankNumbers(DBFNumericColumn column, int[] ranks)
+	{
+		int numRecords = column.getNumRows();
+		boolean useDoubles = column.hasDecimals();
+		long[] sortValues = new long[numRecords];
+		int numValues = 0;
+		for (int i = 0; i < numRecords; i++)
+		{
+			if (!column.isNull(i))
+			{
+				sortValues[i] = useDoubles ? toSortableLong(column.getDouble(i)) : column.getLong(i);
+				numValues++;
+			}
+		}
+
+		// SORT THE VALUES, LEAVING OUT THE NULLS, AND
+		// THROW OUT THE ONES WE HAVE MORE THAN ONCE
+		long[] distinctValues = new long[numValues];
+		for (int i = 0, j = 0; i < numRecords; i++)
+		{
+			if (!column.isNull(i))
+				distinctValues[j++] = sortValues[i];
+		}
+		Arrays.parallelSort(distinctValues);
+		int numDistinctValues = 0;
+		for (int i = 0; i < numValues; i++)
+		{
+			if ((i == 0) || (distinctValues[i] != distinctValues[numDistinctValues - 1]))
+				distinctValues[numDistinctValues++] = distinctValues[i];
+		}
+
+		for (int i = 0; i < numRecords; i++)
+		{
+			if (column.isNull(i))
+				ranks[i] = 0;
+			else
+				ranks[i] = Arrays.binarySearch(distinctValues, 0, numDistinctValues, sortValues[i]) + 1;
+		}
+		return numDistinctValues;
+	}
+
+	/**
+	 * This helper method ranks a character column's values. A hash index
+	 * groups the records by value, so only one String per distinct value
+	 * needs to be made and sorted. The index is only for this, so it isn't
+	 * given to the table, which would otherwise keep it up to date forever.
+	 */
+	private int rankText(int fieldIndex, int[] ranks)
+	{
+		DBFColumn column = table.getColumn(fieldIndex);
+		int[] keyNumbers = new int[column.getNumRows()];
+		int[] firstRecords = new DBFHashIndex(table, fieldIndex).numberKeys(keyNumbers);
+
+		String[] values = new String[firstRecords.length];
+		int numValues = 0;
+		for (int i = 0; i < firstRecords.length; i++)
+		{
+			values[i] = column.getString(firstRecords[i]);
+			if (values[i] != null)
+				numValues++;
+		}
+		String[] sortedValues = new String[numValues];
+		for (int i = 0, j = 0; i < values.length; i++)
+		{
+			if (values[i] != null)
+				sortedValues[j++] = values[i];
+		}
+		Arrays.parallelSort(sortedValues);
+
+		int[] keyRanks = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			if (values[i] != null)
+				keyRanks[i] = Arrays.binarySearch(sortedValues, values[i]) + 1;
+		}
+		for (int i = 0; i < keyNumbers.length; i++)
+			ranks[i] = keyRanks[keyNumbers[i]];
+		return numValues;
+	}
+
+	/**
+	 * This helper method turns a double into a long such that the
+	 * longs sort in the same order the doubles would.
+	 */
+	private static long toSortableLong(double value)
+	{
+		// ADDING 0 TURNS -0.0 INTO 0.0 SO THEY'RE EQUAL
+		long bits = Double.doubleToLongBits(value + 0.0);
+		return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+	}
+}
@@ -1,11 +1,14 @@
 package dbf_framework;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
 /**
@@ -13,6 +16,19 @@ import java.util.TreeMap;
  * found in a single .dbf file. Note that the columns data would be stored
  * in fields and records, just as in a database table.
  * 
+ * The data itself is stored by column, with one DBFColumn per field, rather
+ * than as an object per value. DBFRecord objects provided by the table are
+ * just views of a row, made as they are asked for, so note that a record
+ * refers to a row position, which changes if an earlier record is removed.
+ * 
+ * Records may be found by value using hash and sorted indexes on any field,
+ * which are built when first asked for and then kept up to date. Changes
+ * that move records around, like sorting, make the indexes stale instead,
+ * after which they throw if used, and new ones are built when asked for.
+ * The indexes are only ever built, updated, or made stale while holding
+ * the table's lock, so they may be asked for from more than one thread,
+ * but the table itself should still only be changed by one at a time.
+ * 
  * @author Richard McKenna
  */
 public class DBFTable 
@@ -20,10 +36,18 @@ public class DBFTable
 	// COLUMN HEADERS
 	private ArrayList<DBFField> fields;
 	
-	// ROW DATA
-	private ArrayList<DBFRecord> records;
+	// ROW DATA, ONE COLUMN PER FIELD, PLUS THE MYSTERY BYTE OF EACH ROW
+	private ArrayList<DBFColumn> columns;
+	private byte[] mysteries;
+	private int numRows;
 	private int keyIndex;
 
+	// FOR FINDING FIELDS BY NAME, MADE WHEN FIRST NEEDED
+	private HashMap<String, Integer> fieldNameIndexes;
+
+	// ALL THE INDEXES THAT HAVE BEEN BUILT FOR FINDING RECORDS BY VALUE
+	private ArrayList<DBFIndex> indexes;
+
 	// DBF FILE DESCRIPTION
 	private byte fileType;
 	private GregorianCalendar lastModifiedDate;
@@ -40,13 +64,17 @@ public class DBFTable
 	private byte terminator;
 
 	/**
-	 * This default constructor simply sets up the fields and records ArrayLists.
+	 * This default constructor simply sets up the fields and columns ArrayLists.
 	 */
 	public DBFTable()
 	{
 		// INITIALIZE OUR DATA STRUCTURES
 		fields = new ArrayList<DBFField>();
-		records = new ArrayList<DBFRecord>();
+		columns = new ArrayList<DBFColumn>();
+		mysteries = new byte[0];
+		numRows = 0;
+		fieldNameIndexes = null;
+		indexes = new ArrayList<DBFIndex>();
 		
 		// BY DEFAULT THE KEY INDEX IS 0
 		keyIndex = 0;
@@ -69,8 +97,45 @@ public class DBFTable
 	public byte					getTerminator()						{ return terminator;					}
 	public DBFField 			getField(int index)					{ return fields.get(index); 			}
 	public int 					getNumFields()						{ return fields.size();					}
-	public int 					getNumRecords()						{ return records.size();				}
-	public ArrayList <DBFRecord> getTree()							{ return records; 						}
+	public int 					getNumRecords()						{ return numRows;						}
+
+	/**
+	 * Accessor method for a list of all the records in the table. Note that
+	 * this makes a new list each time, so getRecord should be used instead
+	 * to get individual records.
+	 * 
+	 * @return A list with a record for each row of the table.
+	 */
+	public ArrayList <DBFRecord> getTree()
+	{
+		ArrayList<DBFRecord> records = new ArrayList<DBFRecord>(numRows);
+		for (int i = 0; i < numRows; i++)
+			records.add(new DBFRecord(this, i));
+		return records;
+	}
+
+	/**
+	 * Accessor method for the column storing all the data for the field
+	 * at fieldIndex, which provides the fastest way to go through it.
+	 * 
+	 * @param fieldIndex The index of the field whose column we want.
+	 * 
+	 * @return The column for that field.
+	 */
+	public DBFColumn getColumn(int fieldIndex)
+	{
+		ensureColumns();
+		return columns.get(fieldIndex);
+	}
+
+	// THESE PROVIDE THE DATA IN A PARTICULAR CELL OF THE TABLE, THE
+	// PRIMITIVE ONES DO SO WITHOUT HAVING TO MAKE AN OBJECT FOR IT
+	public Object	getData(int recordIndex, int fieldIndex)	{ return getColumn(fieldIndex).getData(recordIndex);	}
+	public long		getLong(int recordIndex, int fieldIndex)	{ return getColumn(fieldIndex).getLong(recordIndex);	}
+	public double	getDouble(int recordIndex, int fieldIndex)	{ return getColumn(fieldIndex).getDouble(recordIndex);	}
+	public String	getString(int recordIndex, int fieldIndex)	{ return getColumn(fieldIndex).getString(recordIndex);	}
+	public boolean	isNull(int recordIndex, int fieldIndex)		{ return getColumn(fieldIndex).isNull(recordIndex);		}
+	public byte		getMystery(int recordIndex)					{ checkRecordIndex(recordIndex); return mysteries[recordIndex];	}
 	/**
 	 * This accessor method gets the index of a specific column with a header
 	 * name equivalent to that of the testFieldName index. If no column is
@@ -79,23 +144,79 @@ public class DBFTable
 	 * @param testFieldName The name of the field that we want the index of.
 	 * 
 	 * @return The index of the testFieldName per the order of fields in the table. Note
-	 * that fields are not sorted alphabetically, so this uses the rather unfortunate
-	 * sequential search.
+	 * that this uses a map of names to indexes, so there's no sequential search.
 	 */
 	public int getFieldIndex(String testFieldName)
 	{
-		// BOO, SEQUENTIAL SEARCH
-		int index = 0;
-		Iterator<DBFField> fieldsIt = fieldsIterator();
-		while(fieldsIt.hasNext())
+		if (fieldNameIndexes == null)
+			updateFieldNameIndexes();
+		Integer index = fieldNameIndexes.get(testFieldName);
+		if ((index != null) && (index < fields.size()) && fields.get(index).getName().equals(testFieldName))
+			return index;
+
+		// A FIELD'S NAME MAY HAVE BEEN CHANGED SINCE WE MADE
+		// THE MAP, SO MAKE IT AGAIN TO BE SURE
+		updateFieldNameIndexes();
+		index = fieldNameIndexes.get(testFieldName);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 * This method finds the first record whose value for the field at
+	 * fieldIndex equals the value argument, using a hash index.
+	 * 
+	 * @param fieldIndex The field to look at.
+	 * 
+	 * @param value The value to look for, which may be null.
+	 * 
+	 * @return The index of the first record with that value, or -1
+	 * if there isn't one.
+	 */
+	public int findRecord(int fieldIndex, Object value)
+	{
+		return getHashIndex(fieldIndex).find(value);
+	}
+
+	/**
+	 * Accessor method for the hash index on the field at fieldIndex, for
+	 * finding records with a value in constant time. It's built the first
+	 * time it's asked for.
+	 * 
+	 * @param fieldIndex The field to index.
+	 * 
+	 * @return The hash index for the field.
+	 */
+	public synchronized DBFHashIndex getHashIndex(int fieldIndex)
+	{
+		for (DBFIndex index : indexes)
+		{
+			if ((index instanceof DBFHashIndex) && (index.getFieldIndex() == fieldIndex))
+				return (DBFHashIndex)index;
+		}
+		DBFHashIndex index = new DBFHashIndex(this, fieldIndex);
+		indexes.add(index);
+		return index;
+	}
+
+	/**
+	 * Accessor method for the sorted index on the field at fieldIndex, for
+	 * finding records with values in a range. It's built the first
+	 * time it's asked for.
+	 * 
+	 * @param fieldIndex The field to index.
+	 * 
+	 * @return The sorted index for the field.
+	 */
+	public synchronized DBFSortedIndex getSortedIndex(int fieldIndex)
+	{
+		for (DBFIndex index : indexes)
 		{
-			DBFField field = fieldsIt.next();
-			if (field.getName().equals(testFieldName))
-				return index;
-			else
-				index++;
+			if ((index instanceof DBFSortedIndex) && (index.getFieldIndex() == fieldIndex))
+				return (DBFSortedIndex)index;
 		}
-		return -1;
+		DBFSortedIndex index = new DBFSortedIndex(this, fieldIndex);
+		indexes.add(index);
+		return index;
 	}
 	
 	/**
@@ -120,14 +241,74 @@ public class DBFTable
 	 */
 	public DBFRecord getRecord(int key)
 	{
-		return records.get(key);
+		checkRecordIndex(key);
+		return new DBFRecord(this, key);
 	}
 		
 	// ITERATOR METHODS - THESE WILL RETURN ITERATORS FOR GOING THROUGH ALL THE DATA IN THE TABLE
 	public Iterator<DBFField> 	fieldsIterator() 	{ return fields.iterator(); 	}
-	public Iterator<DBFRecord> 	recordsIterator()	{ return records.iterator();	}
+	public Iterator<DBFRecord> 	recordsIterator()
+	{
+		return new Iterator<DBFRecord>()
+		{
+			private int nextIndex = 0;
+
+			public boolean hasNext()
+			{
+				return nextIndex < numRows;
+			}
+
+			public DBFRecord next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return new DBFRecord(DBFTable.this, nextIndex++);
+			}
+
+			public void remove()
+			{
+				if (nextIndex == 0)
+					throw new IllegalStateException();
+				nextIndex--;
+				removeRecord(nextIndex);
+			}
+		};
+	}
 	
 	// MUTATOR METHODS		
+	public synchronized void setData(int recordIndex, int fieldIndex, Object data)
+	{
+		DBFColumn column = getColumn(fieldIndex);
+		checkRecordIndex(recordIndex);
+		for (DBFIndex index : indexes)
+		{
+			if (index.getFieldIndex() == fieldIndex)
+				index.valueChanging(recordIndex);
+		}
+
+		// IF THE VALUE CAN'T BE SET, LIKE TEXT IN A NUMERIC FIELD, THE OLD
+		// ONE IS STILL THERE, AND THE INDEXES MUST GET IT BACK
+		try
+		{
+			column.setData(recordIndex, data);
+		}
+		finally
+		{
+			for (DBFIndex index : indexes)
+			{
+				if (index.getFieldIndex() == fieldIndex)
+					index.valueChanged(recordIndex);
+			}
+		}
+	}
+
+	public void setMystery(int recordIndex, byte mystery)
+	{
+		checkRecordIndex(recordIndex);
+		mysteries[recordIndex] = mystery;
+	}
+
+
 	public void setKeyIndex(int initKeyIndex)
 	{
 		if ((initKeyIndex >= 0) && (initKeyIndex < fields.size()))
@@ -201,12 +382,233 @@ public class DBFTable
 	
 	// TABLE BUILDING METHODS - THESE SHOULD ONLY BE USED FOR LOADING FROM A FILE
 	// SINCE THEY DO NOT UPDATE ALL RELATED VARIABLES
-	public void addField(DBFField dbf)		{ fields.add(dbf);		}
+	public void addField(DBFField dbf)
+	{
+		fields.add(dbf);
+		fieldNameIndexes = null;
+	}
+
+	/**
+	 * This method adds the data of the dbr argument as a new row at the end
+	 * of the table. If dbr isn't already in a table, it becomes the record
+	 * for the new row, so changing it changes the table.
+	 * 
+	 * @param dbr The record to add.
+	 */
 	public void addRecord(DBFRecord dbr)		
 	{ 
-		records.add(dbr);
+		ensureColumns();
+		for (int i = 0; i < columns.size(); i++)
+		{
+			Object data = (i < dbr.getNumFields()) ? dbr.getData(i) : null;
+			columns.get(i).addData(data);
+		}
+		if (numRows == mysteries.length)
+		{
+			byte[] newMysteries = new byte[DBFColumn.growLength(mysteries.length, numRows + 1)];
+			System.arraycopy(mysteries, 0, newMysteries, 0, numRows);
+			mysteries = newMysteries;
+		}
+		mysteries[numRows] = dbr.getMystery();
+		numRows++;
+		if (dbr.getTable() == null)
+			dbr.attach(this, numRows - 1);
+		recordsAdded(numRows - 1);
 	}	
 
+	/**
+	 * This method is used by DBFRecordDecoder, which adds the data for a new
+	 * row straight to each column, to finish adding the row. The indexes
+	 * aren't told until the decoder calls recordsAdded for all its rows.
+	 * 
+	 * @param mystery The mystery byte found before the record in the file.
+	 */
+	void addDecodedRecord(byte mystery)
+	{
+		if (numRows == mysteries.length)
+		{
+			byte[] newMysteries = new byte[DBFColumn.growLength(mysteries.length, numRows + 1)];
+			System.arraycopy(mysteries, 0, newMysteries, 0, numRows);
+			mysteries = newMysteries;
+		}
+		mysteries[numRows] = mystery;
+		numRows++;
+	}
+
+	/**
+	 * This method adds all the records of the other table, which must have
+	 * the same fields, to the end of this one. This copies the other table's
+	 * data, so the other table may be thrown out afterwards.
+	 * 
+	 * @param other The table whose records are to be added.
+	 */
+	public void appendRecords(DBFTable other)
+	{
+		ensureColumns();
+		int numOtherRows = other.getNumRecords();
+		for (int i = 0; i < columns.size(); i++)
+			columns.get(i).appendColumn(other.getColumn(i));
+		ensureRecordCapacity(numRows + numOtherRows);
+		System.arraycopy(other.mysteries, 0, mysteries, numRows, numOtherRows);
+		numRows += numOtherRows;
+		recordsAdded(numRows - numOtherRows);
+	}
+
+	/**
+	 * This helper method tells all the indexes about the records from
+	 * firstRecordIndex to the end of the table, which were just added.
+	 */
+	synchronized void recordsAdded(int firstRecordIndex)
+	{
+		for (DBFIndex index : indexes)
+		{
+			for (int i = firstRecordIndex; i < numRows; i++)
+				index.recordAdded(i);
+		}
+	}
+
+	/**
+	 * This helper method makes all the indexes stale and forgets them,
+	 * for when the records have moved around. New indexes will be built
+	 * when asked for, but any already handed out will throw if used.
+	 */
+	private synchronized void invalidateIndexes()
+	{
+		for (DBFIndex index : indexes)
+			index.invalidate();
+		indexes.clear();
+	}
+
+	/**
+	 * This method makes sure the table has room for at least numRecords
+	 * records without having to grow, which is worth doing before adding
+	 * lots of records when we know how many there will be.
+	 * 
+	 * @param numRecords The number of records the table will have.
+	 */
+	public void ensureRecordCapacity(int numRecords)
+	{
+		ensureColumns();
+		for (DBFColumn column : columns)
+			column.ensureCapacity(numRecords);
+		if (numRecords > mysteries.length)
+		{
+			byte[] newMysteries = new byte[numRecords];
+			System.arraycopy(mysteries, 0, newMysteries, 0, numRows);
+			mysteries = newMysteries;
+		}
+	}
+
+	/**
+	 * This method estimates how many bytes of memory the table's data takes
+	 * up, which is used for deciding how many tables may be kept loaded.
+	 * Note that indexes aren't counted, since they're only built as needed.
+	 *
+	 * @return The estimated size of the table.
+	 */
+	public long estimateHeapBytes()
+	{
+		ensureColumns();
+		long numBytes = 256 + (fields.size() * 128L) + mysteries.length;
+		for (DBFColumn column : columns)
+			numBytes += column.estimateHeapBytes();
+		return numBytes;
+	}
+
+	/**
+	 * This method shrinks all the arrays used to store the table's data to
+	 * just what's needed, which is worth doing once it's done being loaded.
+	 */
+	public void trimToSize()
+	{
+		ensureColumns();
+		for (DBFColumn column : columns)
+			column.trimToSize();
+		if (mysteries.length > numRows)
+		{
+			byte[] newMysteries = new byte[numRows];
+			System.arraycopy(mysteries, 0, newMysteries, 0, numRows);
+			mysteries = newMysteries;
+		}
+	}
+
+	/**
+	 * This method calculates how many bytes encodeRecords will put.
+	 */
+	long getEncodedRecordsLength()
+	{
+		ensureColumns();
+		long length = 4 + numRows;
+		for (DBFColumn column : columns)
+			length += column.getEncodedLength();
+		return length;
+	}
+
+	/**
+	 * This method puts all the records into buffer, which must be little
+	 * endian and have room for them, as the arrays each column stores its
+	 * values in. See DBFFileIO.encodeTable.
+	 */
+	void encodeRecords(ByteBuffer buffer)
+	{
+		ensureColumns();
+		buffer.putInt(numRows);
+		buffer.put(mysteries, 0, numRows);
+		for (DBFColumn column : columns)
+			column.encode(buffer);
+	}
+
+	/**
+	 * This method replaces all the records with the ones put into buffer
+	 * by encodeRecords. The fields must already be loaded.
+	 */
+	void decodeRecords(ByteBuffer buffer)
+	{
+		ensureColumns();
+		invalidateIndexes();
+		numRows = buffer.getInt();
+		mysteries = new byte[numRows];
+		buffer.get(mysteries);
+		for (DBFColumn column : columns)
+			column.decode(buffer);
+	}
+
+	/**
+	 * This helper method makes columns for any fields that don't have them
+	 * yet. Columns aren't made when fields are first added, since fields
+	 * loaded from a file don't get their types until after they're added.
+	 */
+	private void ensureColumns()
+	{
+		while (columns.size() < fields.size())
+		{
+			DBFColumn column = DBFColumn.createColumn(fields.get(columns.size()).getType());
+			column.addNulls(numRows);
+			columns.add(column);
+		}
+	}
+
+	/**
+	 * This helper method makes the map of field names to field indexes.
+	 * If two fields have the same name, the first one is the one found.
+	 */
+	private void updateFieldNameIndexes()
+	{
+		fieldNameIndexes = new HashMap<String, Integer>();
+		for (int i = fields.size() - 1; i >= 0; i--)
+			fieldNameIndexes.put(fields.get(i).getName(), i);
+	}
+
+	/**
+	 * This helper method makes sure the recordIndex argument is a row
+	 * in the table.
+	 */
+	private void checkRecordIndex(int recordIndex)
+	{
+		if ((recordIndex < 0) || (recordIndex >= numRows))
+			throw new IndexOutOfBoundsException("Index: " + recordIndex + ", Size: " + numRows);
+	}
+
 	// TABLE MODIFICATION METHODS //
 	
 	/**
@@ -231,13 +633,8 @@ public class DBFTable
 		// PUT IT IN THE TABLE
 		addField(fieldToAdd);
 		
-		// AND UPDATE ALL THE RECORDS
-		Iterator<DBFRecord> it = recordsIterator();
-		while(it.hasNext())
-		{
-			DBFRecord rec = it.next();
-			rec.addField();
-		}
+		// AND GIVE IT A COLUMN, WHICH WILL START OUT WITH ALL NULLS
+		ensureColumns();
 		
 		// UPDATE TABLE STATS
 		update();
@@ -286,10 +683,20 @@ public class DBFTable
 	public void removeRecord(int recordIndex)
 	{
 		// MAKE SURE IT'S A LEGAL TABLE INDEX
-		if ((recordIndex >= 0) && (recordIndex < records.size()))
+		if ((recordIndex >= 0) && (recordIndex < numRows))
 		{
-			// TAKE IT OUT OF THE TABLE
-			records.remove(recordIndex);
+			// TAKE IT OUT OF ANY INDEXES
+			synchronized (this)
+			{
+				for (DBFIndex index : indexes)
+					index.recordRemoving(recordIndex);
+			}
+
+			// AND OUT OF THE TABLE
+			for (int i = 0; i < columns.size(); i++)
+				columns.get(i).removeRow(recordIndex);
+			System.arraycopy(mysteries, recordIndex + 1, mysteries, recordIndex, numRows - recordIndex - 1);
+			numRows--;
 			numberOfRecords--;
 			
 			// AND UPDATE THE TABLE STATS
@@ -352,14 +759,15 @@ public class DBFTable
 		{
 			// REMOVE THE FIELD
 			fields.remove(fieldIndex);
+			fieldNameIndexes = null;
+
+			// THE INDEXES ARE FOR FIELDS BY INDEX, SO THEY'D NOW BE FOR
+			// THE WRONG FIELDS, THEY'LL BE BUILT AGAIN WHEN ASKED FOR
+			invalidateIndexes();
 			
-			// GO THROUGH ALL THE RECORDS AND UPDATE THEM
-			Iterator<DBFRecord> it = recordsIterator();
-			while(it.hasNext())
-			{
-				DBFRecord recordToUpdate = it.next();
-				recordToUpdate.removeField(fieldIndex);
-			}
+			// AND ALL ITS DATA
+			if (fieldIndex < columns.size())
+				columns.remove(fieldIndex);
 			
 			// AND UPDATE THE TABLE STATS
 			update();
@@ -380,128 +788,63 @@ public class DBFTable
 	public void sortRecords(String fieldName, boolean increasing)
 	{
 		// FIND THE SORTING CRITERIA INDEX
-		int fieldIndex = -1;
-		int index = 0;
-		while ((fieldIndex < 0) && (index < fields.size()))
-		{
-			DBFField testField = fields.get(index);
-			if (testField.getName().equals(fieldName))
-				fieldIndex = index;
-			index++;
-		}
+		int fieldIndex = getFieldIndex(fieldName);
 
 		// ONLY SORT IF IT'S FOUND
 		if (fieldIndex >= 0)
-		{
-			DBFRowSorter rowSorter = new DBFRowSorter(fieldIndex, increasing);
-			
-			// UPDATE THE TABLE STATS
-			update();
-		}
-	}	
+			sortRecords(new DBFSortKey(fieldIndex, increasing));
+	}
 
 	/**
-	 * This helper class performs all comparisons between
-	 * objects during table sorting.
+	 * This method sorts the records in this table by the keys argument,
+	 * first by the first key, then by the second for records whose first
+	 * are equal, and so on. Records that are equal for all the keys stay
+	 * in the order they were in. Note that this moves the table's data,
+	 * so DBFRecords gotten before sorting will be for different records
+	 * afterwards. Use getSortedOrder to see the records in sorted order
+	 * without moving them.
+	 * 
+	 * @param keys What to sort the records by.
 	 */
-	private class DBFRowSorter implements Comparator
+	public void sortRecords(DBFSortKey... keys)
 	{
-		// THESE DICTATE THE SORTING CRITERIA
-		private int sortingIndex;
-		private boolean increasing;
+		int[] order = getSortedOrder(keys);
+		for (int i = 0; i < columns.size(); i++)
+			columns.get(i).reorder(order);
+		byte[] newMysteries = new byte[mysteries.length];
+		for (int i = 0; i < numRows; i++)
+			newMysteries[i] = mysteries[order[i]];
+		mysteries = newMysteries;
 
-		/**
-		 * This constructor sets up this object for sorting. Note that
-		 * we'll construct a temp one each time we sort, so I didn't 
-		 * provide any mutator methods.
-		 * 
-		 * @param initSortingIndex Field index to use for sorting criteria.
-		 * 
-		 * @param initIncreasing Used to initialize whether this will be for
-		 * increasing sorting or not.
-		 */
-		public DBFRowSorter(int initSortingIndex, boolean initIncreasing)
+		// THE SORTED INDEXES WOULD STILL BE RIGHT, BUT FOR THE WRONG
+		// RECORDS, SO THEY'LL BE BUILT AGAIN WHEN ASKED FOR
+		invalidateIndexes();
+
+		// UPDATE THE TABLE STATS
+		update();
+	}
+
+	/**
+	 * This method works out the order the records in this table would be
+	 * in if sorted by the keys argument, as sortRecords would sort them,
+	 * without moving them. This is what to use for showing a table's
+	 * records in order, like a ranked list of counties, since the table
+	 * is left as it is.
+	 * 
+	 * @param keys What to sort the records by.
+	 * 
+	 * @return The index of the record that comes at each position in
+	 * sorted order, from first to last.
+	 */
+	public int[] getSortedOrder(DBFSortKey... keys)
+	{
+		for (DBFSortKey key : keys)
 		{
-			sortingIndex = initSortingIndex;
-			increasing = initIncreasing;
+			if ((key.getFieldIndex() < 0) || (key.getFieldIndex() >= fields.size()))
+				throw new IndexOutOfBoundsException("Index: " + key.getFieldIndex() + ", Size: " + fields.size());
 		}
-		
-		/**
-		 * Here's the method that does the real work. Ito compares the
-		 * two Object arguments and returns 0 if they are equivalent. -1 if
-		 * obj1 is "smaller" than obj2, and 1 otherwise.
-		 * 
-		 * @param obj1 The first record being compared.
-		 * 
-		 * @param obj2 The second record being compared.
-		 */
-		public int compare(Object obj1, Object obj2) 
-		{
-			DBFRecord record1 = (DBFRecord)obj1;
-			DBFRecord record2 = (DBFRecord)obj2;
-			int result;
-
-			// ARE WE COMPARING TEXT?
-			if (record1.getData(sortingIndex) instanceof String)
-			{
-				String text1 = (String)record1.getData(sortingIndex);
-				String text2 = (String)record2.getData(sortingIndex);
-				result = text2.compareTo(text1);
-			}
-			// TREAT EVERYTHING ELSE AS A DOUBLE
-			else
-			{
-				Double double1 = 0.0;
-				Double double2 = 0.0;
-				if (record1.getData(sortingIndex) instanceof Double)
-				{
-					double1 = (Double)record1.getData(sortingIndex);
-					if (record2.getData(sortingIndex) instanceof Long)
-					{
-						Long tempLong = (Long)record2.getData(sortingIndex);
-						double2 = (double)tempLong;
-					}
-					else
-					{
-						double2 = (Double)record2.getData(sortingIndex);						
-					}
-				}
-				// EVEN IF IT'S ACTUALLY A LONG, IT MAKES COMPARISONS EASIER
-				else
-				{
-					Long tempLong = (Long)record1.getData(sortingIndex);
-					if (tempLong == null)
-						double1 = new Double(0);
-					else
-						double1 = (double)tempLong;
-					if (record2.getData(sortingIndex) instanceof Long)
-					{
-						tempLong = (Long)record2.getData(sortingIndex);
-						if (tempLong == null)
-							double2 = new Double(0);
-						else
-							double2 = (double)tempLong;
-					}
-					else
-					{
-						Double tempDouble = (Double)record2.getData(sortingIndex);
-						if (tempDouble == null)
-							double2 = new Double(0);
-						else
-							double2 = (Double)record2.getData(sortingIndex);
-					}
-				}
-				if (double1 == null) double1 = 0.0;
-				if (double2 == null) double2 = 0.0;
-				if (double1 < double2) result = 1;
-				else if (double1 > double2) result = -1;
-				else result = 0;
-			}
-			// IF INCREASING, JUST REVERSE THE RESULTS
-			if (increasing)
-				result *= -1;
-			return result;
-		}	
+		ensureColumns();
+		return new DBFSorter(this).sort(keys);
 	}
 
 	/**
@@ -517,23 +860,13 @@ public class DBFTable
 	 */
 	public boolean containsNamedColumn(String testName)
 	{
-		// SEARCH THROUGH ALL THE FIELDS
-		Iterator<DBFField> it = fieldsIterator();
-		while (it.hasNext())
-		{
-			DBFField field = it.next();
-			if (field.getName().equals(testName))
-			{
-				return true;
-			}
-		}
-		return false;
+		return getFieldIndex(testName) >= 0;
 	}
 	
 	/**
 	 * Used for comparing two records to enable sorting of records. Note
-	 * that this is redundant since we already have DBFRowSorter. This simply
-	 * provides an implementation using record keys, where DBFRowSorter uses
+	 * that this is redundant since we already have sortRecords. This simply
+	 * provides an implementation using record keys, where sortRecords uses
 	 * a more flexible implementation.
 	 */
 	class RecordComparator implements Comparator
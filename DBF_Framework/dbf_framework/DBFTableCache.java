@@ -0,0 +1,211 @@
+package dbf_framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DBFTableCache - This class keeps recently loaded tables in memory so that
+ * code that asks for the same .dbf file over and over again, like rendering
+ * code, does not have to parse it from disk every time. Tables are keyed
+ * by file and are reloaded whenever that file's last modified time or size
+ * changes. Only a limited number of tables are kept, with the least recently
+ * used one being thrown out first.
+ *
+ * Note that the tables handed out are shared, so callers should treat them
+ * as read only.
+ */
+public class DBFTableCache
+{
+	// BY DEFAULT WE'LL KEEP THIS MANY TABLES AROUND
+	public static final int DEFAULT_MAX_TABLES = 16;
+
+	// WE WON'T ASK THE FILE SYSTEM ABOUT A FILE MORE OFTEN THAN THIS
+	public static final long REVALIDATE_INTERVAL_MILLIS = 1000;
+
+	// THE ONE MOST OF THE APPLICATION WILL USE
+	private static DBFTableCache sharedCache;
+
+	// HERE ARE ALL THE CACHED TABLES, IN LEAST TO MOST RECENTLY USED ORDER
+	private LinkedHashMap<String, CacheEntry> entries;
+	private int maxTables;
+
+	// AND THIS DOES THE ACTUAL LOADING
+	private DBFFileIO loader;
+
+	/**
+	 * This constructor sets up an empty cache that will hold up to
+	 * maxTables tables at a time.
+	 *
+	 * @param initMaxTables The most tables this cache may hold before it
+	 * starts evicting the least recently used ones.
+	 */
+	public DBFTableCache(int initMaxTables)
+	{
+		maxTables = Math.max(1, initMaxTables);
+		loader = new DBFFileIO();
+
+		// ACCESS ORDER MEANS THE ELDEST ENTRY IS THE LEAST RECENTLY USED
+		entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+		{
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+			{
+				return size() > maxTables;
+			}
+		};
+	}
+
+	/**
+	 * Accessor method for the cache shared by the whole application.
+	 *
+	 * @return The shared cache, which is constructed on first use.
+	 */
+	public static synchronized DBFTableCache getSharedCache()
+	{
+		if (sharedCache == null)
+			sharedCache = new DBFTableCache(DEFAULT_MAX_TABLES);
+		return sharedCache;
+	}
+
+	// ACCESSOR METHODS
+	public synchronized int getMaxTables()		{ return maxTables;			}
+	public synchronized int getNumTables()		{ return entries.size();	}
+
+	/**
+	 * This method gets the table stored in the file argument. If it is
+	 * already in the cache and the file has not changed since it was loaded,
+	 * no file reading is done at all.
+	 *
+	 * @param file File location of the .dbf to get.
+	 *
+	 * @return The table found in the file.
+	 *
+	 * @throws IOException Thrown when the table is not cached and
+	 * loading it from the file fails.
+	 */
+	public DBFTable getTable(File file) throws IOException
+	{
+		String key = file.getAbsolutePath();
+		synchronized(this)
+		{
+			CacheEntry entry = entries.get(key);
+			if ((entry != null) && entry.isCurrent(file))
+				return entry.table;
+		}
+
+		// IT'S NOT HERE, OR IT'S OUT OF DATE, SO LOAD IT, BUT
+		// DON'T HOLD THE LOCK WHILE WE DO SINCE THAT MAY TAKE A WHILE
+		long lastModified = file.lastModified();
+		long length = file.length();
+		DBFTable table = loader.loadDBF(file);
+		synchronized(this)
+		{
+			entries.put(key, new CacheEntry(table, lastModified, length));
+		}
+		return table;
+	}
+
+	// MUTATOR METHODS
+
+	/**
+	 * This method puts a table that was gotten some other way than by loading
+	 * the file argument, like from a prebuilt copy of it, into the cache as if
+	 * it had been. It's thrown out like any other if the file changes.
+	 *
+	 * @param file File location of the .dbf the table is for.
+	 *
+	 * @param table The table found in the file.
+	 */
+	public synchronized void putTable(File file, DBFTable table)
+	{
+		entries.put(file.getAbsolutePath(), new CacheEntry(table, file.lastModified(), file.length()));
+	}
+
+	/**
+	 * This method changes how many tables may be cached, evicting the
+	 * least recently used ones if there are now too many.
+	 *
+	 * @param initMaxTables The new cache limit.
+	 */
+	public synchronized void setMaxTables(int initMaxTables)
+	{
+		maxTables = Math.max(1, initMaxTables);
+		while (entries.size() > maxTables)
+		{
+			String eldest = entries.keySet().iterator().next();
+			entries.remove(eldest);
+		}
+	}
+
+	/**
+	 * This method throws out the cached table for the file argument, if
+	 * there is one, such that it will be reloaded the next time it's asked for.
+	 *
+	 * @param file File location of the .dbf to forget.
+	 */
+	public synchronized void invalidate(File file)
+	{
+		entries.remove(file.getAbsolutePath());
+	}
+
+	/**
+	 * This method throws out the cached table for the file argument, but
+	 * only if it's the table argument, so that the table can be let go of
+	 * by whatever was using it without throwing out a newer one.
+	 *
+	 * @param file File location of the .dbf to forget.
+	 *
+	 * @param table The table to forget.
+	 */
+	public synchronized void invalidate(File file, DBFTable table)
+	{
+		String key = file.getAbsolutePath();
+		CacheEntry entry = entries.get(key);
+		if ((entry != null) && (entry.table == table))
+			entries.remove(key);
+	}
+
+	/**
+	 * This method empties the cache.
+	 */
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+
+	/**
+	 * This helper class stores a cached table along with what we knew
+	 * about its file when we loaded it.
+	 */
+	private class CacheEntry
+	{
+		private DBFTable table;
+		private long lastModified;
+		private long length;
+		private long lastValidated;
+
+		public CacheEntry(DBFTable initTable, long initLastModified, long initLength)
+		{
+			table = initTable;
+			lastModified = initLastModified;
+			length = initLength;
+			lastValidated = System.currentTimeMillis();
+		}
+
+		/**
+		 * Tests to see if the file has changed since we loaded it. Note that
+		 * we only go to the file system if we haven't checked recently.
+		 */
+		public boolean isCurrent(File file)
+		{
+			long now = System.currentTimeMillis();
+			if ((now - lastValidated) < REVALIDATE_INTERVAL_MILLIS)
+				return true;
+			if ((file.lastModified() != lastModified) || (file.length() != length))
+				return false;
+			lastValidated = now;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package dbf_framework;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A MappedDBFTable provides the records of a .dbf file whose records have
+ * been memory mapped, rather than loaded. Since all records are the same
+ * length, where any record is in the file is known right away, so getting
+ * one only decodes that one record, and getting a single value only decodes
+ * that one field. The rest of the table is never read into the heap.
+ *
+ * Mapped tables are read only, and are made using DBFFileIO's mapDBF method.
+ */
+public class MappedDBFTable
+{
+	// THE TABLE WITH THE FILE'S HEADER AND FIELDS, BUT NO RECORDS
+	private DBFTable table;
+
+	// ALL THE RECORDS, MAPPED FROM THE FILE
+	private ByteBuffer records;
+	private int stride;
+	private int numRecords;
+
+	// WHERE EACH FIELD IS IN A RECORD
+	private DBFRecordDecoder decoder;
+
+	// WE COPY A RECORD'S BYTES HERE TO DECODE THEM
+	private byte[] recordBytes;
+
+	// AND DECODE EACH FIELD INTO ITS OWN ONE ROW COLUMN
+	private DBFColumn[] values;
+
+	/**
+	 * This constructor sets up the table for getting the records found
+	 * in the records argument.
+	 *
+	 * @param initTable The table whose header and fields are loaded.
+	 *
+	 * @param initRecords The mapped records, starting with the first.
+	 *
+	 * @param initStride How many bytes apart the records are.
+	 */
+	MappedDBFTable(DBFTable initTable, ByteBuffer initRecords, int initStride)
+	{
+		table = initTable;
+		records = initRecords;
+		stride = initStride;
+		numRecords = table.getNumberOfRecords();
+		decoder = new DBFRecordDecoder(table);
+		recordBytes = new byte[stride];
+		values = new DBFColumn[table.getNumFields()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = DBFColumn.createColumn(table.getField(i).getType());
+	}
+
+	// ACCESSOR METHODS
+	public DBFTable	getTable()		{ return table;				}
+	public int		getNumRecords()	{ return numRecords;		}
+	public int		getNumFields()	{ return values.length;		}
+
+	public synchronized Object	getData(int recordIndex, int fieldIndex)	{ return decodeField(recordIndex, fieldIndex).getData(0);		}
+	public synchronized long	getLong(int recordIndex, int fieldIndex)	{ return decodeField(recordIndex, fieldIndex).getLong(0);		}
+	public synchronized double	getDouble(int recordIndex, int fieldIndex)	{ return decodeField(recordIndex, fieldIndex).getDouble(0);		}
+	public synchronized String	getString(int recordIndex, int fieldIndex)	{ return decodeField(recordIndex, fieldIndex).getString(0);		}
+	public synchronized boolean	isNull(int recordIndex, int fieldIndex)		{ return decodeField(recordIndex, fieldIndex).isNull(0);		}
+
+	public byte getMystery(int recordIndex)
+	{
+		checkRecordIndex(recordIndex);
+		return records.get(recordIndex * stride);
+	}
+
+	/**
+	 * This method decodes the record at recordIndex, making and returning
+	 * a record with all of its data.
+	 *
+	 * @param recordIndex The index of the record to get.
+	 *
+	 * @return A new record, not in any table, so changing it won't
+	 * change the file.
+	 */
+	public synchronized DBFRecord getRecord(int recordIndex)
+	{
+		checkRecordIndex(recordIndex);
+		copyBytes(recordIndex * stride, stride);
+		DBFRecord record = new DBFRecord(values.length);
+		record.setMystery(recordBytes[0]);
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i].clear();
+			DBFRecordDecoder.decodeField(recordBytes, decoder.getFieldOffset(i), decoder.getFieldLength(i), values[i]);
+			record.setData(values[i].getData(0), i);
+		}
+		return record;
+	}
+
+	/**
+	 * This helper method decodes just the field at fieldIndex of the record
+	 * at recordIndex, returning the column its value was decoded into.
+	 */
+	private DBFColumn decodeField(int recordIndex, int fieldIndex)
+	{
+		checkRecordIndex(recordIndex);
+		if ((fieldIndex < 0) || (fieldIndex >= values.length))
+			throw new IndexOutOfBoundsException("Field: " + fieldIndex + ", Fields: " + values.length);
+		int fieldLength = decoder.getFieldLength(fieldIndex);
+		copyBytes((recordIndex * stride) + decoder.getFieldOffset(fieldIndex), fieldLength);
+		values[fieldIndex].clear();
+		DBFRecordDecoder.decodeField(recordBytes, 0, fieldLength, values[fieldIndex]);
+		return values[fieldIndex];
+	}
+
+	/**
+	 * This helper method copies length bytes of the mapped records,
+	 * starting at position, to the front of recordBytes.
+	 */
+	private void copyBytes(int position, int length)
+	{
+		// NOTE THIS IS ONLY USED BY SYNCHRONIZED METHODS, SO
+		// NOTHING ELSE IS MOVING THE POSITION AROUND
+		records.position(position);
+		records.get(recordBytes, 0, length);
+	}
+
+	/**
+	 * This helper method makes sure the recordIndex argument is a record
+	 * in the table.
+	 */
+	private void checkRecordIndex(int recordIndex)
+	{
+		if ((recordIndex < 0) || (recordIndex >= numRecords))
+			throw new IndexOutOfBoundsException("Index: " + recordIndex + ", Size: " + numRecords);
+	}
+}
@@ -0,0 +1,223 @@
+package dbf_framework;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+
+/**
+ * An UpdatableDBFTable changes the records of a .dbf file right in the
+ * file, without loading or rewriting the whole table. Since all records
+ * are the same length, where any record is in the file is known right away,
+ * so changing a record or a single value only writes those bytes. New
+ * records are written after the last one, with the header's record count
+ * and last update date changed to match.
+ *
+ * Since the file changes out from under any table loaded from it, the
+ * shared DBFTableCache is told to forget it whenever it's changed.
+ * Updatable tables are made using DBFFileIO's openForUpdate method,
+ * and must be closed when done with.
+ */
+public class UpdatableDBFTable implements Closeable
+{
+	// WHERE IN THE HEADER THE LAST UPDATE DATE AND RECORD COUNT ARE
+	private static final int LAST_UPDATE_POSITION = 1;
+	private static final int NUMBER_OF_RECORDS_POSITION = 4;
+
+	// THE FILE WE'RE CHANGING
+	private File file;
+	private RandomAccessFile raf;
+	private FileChannel channel;
+
+	// THE TABLE WITH THE FILE'S HEADER AND FIELDS, BUT NO RECORDS
+	private DBFTable table;
+
+	// THIS PUTS RECORDS INTO THE BYTES THEY'RE WRITTEN AS
+	private DBFRecordEncoder encoder;
+
+	// WHERE THE RECORDS ARE AND HOW MANY THERE ARE
+	private long firstRecordPosition;
+	private int stride;
+	private int numRecords;
+
+	// WE PUT EACH RECORD WE WRITE HERE FIRST, WITH ROOM FOR THE
+	// END OF FILE MARKER AFTER IT IN CASE IT'S THE LAST RECORD
+	private ByteBuffer recordBuffer;
+
+	// HAS THE HEADER'S LAST UPDATE DATE BEEN CHANGED YET?
+	private boolean dateUpdated;
+
+	/**
+	 * This constructor sets up the table for changing the records of
+	 * the file argument, which raf has open for reading and writing.
+	 *
+	 * @param initFile The .dbf file.
+	 *
+	 * @param initRaf The file, opened for reading and writing.
+	 *
+	 * @param initTable The table whose header and fields are loaded.
+	 */
+	UpdatableDBFTable(File initFile, RandomAccessFile initRaf, DBFTable initTable)
+	{
+		file = initFile;
+		raf = initRaf;
+		channel = raf.getChannel();
+		table = initTable;
+		encoder = new DBFRecordEncoder(table);
+		firstRecordPosition = table.getPositionOfFirstDataRecorded() & 0xffff;
+		stride = encoder.getStride();
+		numRecords = table.getNumberOfRecords();
+		recordBuffer = ByteBuffer.allocate(stride + 1);
+		dateUpdated = false;
+	}
+
+	// ACCESSOR METHODS
+	public DBFTable	getTable()		{ return table;			}
+	public int		getNumRecords()	{ return numRecords;	}
+
+	/**
+	 * This method replaces the record at recordIndex in the file with
+	 * the record argument.
+	 *
+	 * @param recordIndex The index of the record to replace.
+	 *
+	 * @param record The new data for the record.
+	 *
+	 * @throws IOException Thrown when writing to the file fails.
+	 */
+	public void updateRecord(int recordIndex, DBFRecord record) throws IOException
+	{
+		checkRecordIndex(recordIndex);
+		recordBuffer.clear();
+		encoder.encodeRecord(record, recordBuffer.array(), 0);
+		recordBuffer.limit(stride);
+		write(recordBuffer, getRecordPosition(recordIndex));
+		modified();
+	}
+
+	/**
+	 * This method replaces just the value of the field at fieldIndex of
+	 * the record at recordIndex in the file with the data argument.
+	 *
+	 * @param recordIndex The index of the record to change.
+	 *
+	 * @param fieldIndex The field to change.
+	 *
+	 * @param data The new value, which may be null.
+	 *
+	 * @throws IOException Thrown when writing to the file fails.
+	 */
+	public void updateField(int recordIndex, int fieldIndex, Object data) throws IOException
+	{
+		checkRecordIndex(recordIndex);
+		if ((fieldIndex < 0) || (fieldIndex >= table.getNumFields()))
+			throw new IndexOutOfBoundsException("Field: " + fieldIndex + ", Fields: " + table.getNumFields());
+		recordBuffer.clear();
+		encoder.encodeField(fieldIndex, data, recordBuffer.array(), 0);
+		recordBuffer.limit(encoder.getFieldLength(fieldIndex));
+		write(recordBuffer, getRecordPosition(recordIndex) + encoder.getFieldOffset(fieldIndex));
+		modified();
+	}
+
+	/**
+	 * This method adds the record argument to the end of the file, after
+	 * which the header's record count is changed to include it.
+	 *
+	 * @param record The record to add.
+	 *
+	 * @return The index of the new record.
+	 *
+	 * @throws IOException Thrown when writing to the file fails.
+	 */
+	public int appendRecord(DBFRecord record) throws IOException
+	{
+		// THE NEW RECORD GOES WHERE THE END OF FILE MARKER WAS, IF THERE WAS
+		// ONE, AND THE MARKER GOES AFTER IT. NOTE THAT THE RECORD IS WRITTEN
+		// BEFORE THE COUNT CHANGES, SO IF WE FAIL PART WAY THROUGH, THE FILE
+		// STILL HAS ITS OLD RECORDS AND NOTHING ELSE
+		recordBuffer.clear();
+		encoder.encodeRecord(record, recordBuffer.array(), 0);
+		recordBuffer.put(stride, DBFFileIO.END_OF_FILE);
+		write(recordBuffer, getRecordPosition(numRecords));
+		numRecords++;
+
+		// NOW THE HEADER
+		ByteBuffer count = ByteBuffer.allocate(4);
+		count.putInt(0, Integer.reverseBytes(numRecords));
+		write(count, NUMBER_OF_RECORDS_POSITION);
+		table.setNumberOfRecords(numRecords);
+		modified();
+		return numRecords - 1;
+	}
+
+	/**
+	 * This method makes sure everything written has made it to the disk
+	 * and then closes the file.
+	 *
+	 * @throws IOException Thrown when writing to or closing the file fails.
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			channel.force(true);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * This helper method is called after the file is changed. The first time,
+	 * it changes the header's last update date to today. It always tells the
+	 * table cache to forget the file, since it's no longer what was loaded.
+	 */
+	private void modified() throws IOException
+	{
+		if (!dateUpdated)
+		{
+			Calendar today = Calendar.getInstance();
+			ByteBuffer date = ByteBuffer.allocate(3);
+			date.put(0, (byte)(today.get(Calendar.YEAR)-1900));
+			date.put(1, (byte)(today.get(Calendar.MONTH)+1));
+			date.put(2, (byte)(today.get(Calendar.DATE)));
+			write(date, LAST_UPDATE_POSITION);
+			table.setLastModifiedDate(today.get(Calendar.YEAR), today.get(Calendar.MONTH), today.get(Calendar.DATE));
+			dateUpdated = true;
+		}
+		DBFTableCache.getSharedCache().invalidate(file);
+	}
+
+	/**
+	 * This helper method writes everything remaining in the buffer
+	 * argument to the file, starting at position.
+	 */
+	private void write(ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * This helper method calculates where the record at recordIndex
+	 * starts in the file.
+	 */
+	private long getRecordPosition(int recordIndex)
+	{
+		return firstRecordPosition + ((long)recordIndex * stride);
+	}
+
+	/**
+	 * This helper method makes sure the recordIndex argument is a record
+	 * in the file.
+	 */
+	private void checkRecordIndex(int recordIndex)
+	{
+		if ((recordIndex < 0) || (recordIndex >= numRecords))
+			throw new IndexOutOfBoundsException("Index: " + recordIndex + ", Size: " + numRecords);
+	}
+}
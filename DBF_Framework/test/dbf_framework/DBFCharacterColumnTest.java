@@ -0,0 +1,169 @@
+package dbf_framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This program tests DBFCharacterColumn, which keeps all of a 'C' field's
+ * text in one byte array, by checking it against a plain list of Strings
+ * while values grow, shrink, go null and are removed, which leaves unused
+ * bytes that compacting has to throw out without losing any in use. It
+ * throws an AssertionError at the first thing that's wrong.
+ */
+public class DBFCharacterColumnTest
+{
+	public static void main(String[] args)
+	{
+		testGrowAfterTrim();
+		testRefillAfterClear();
+		testRandomChanges();
+		System.out.println("DBFCharacterColumnTest passed");
+	}
+
+	/**
+	 * A value that outgrows its slot once rows have been removed from a
+	 * trimmed column is what makes it compact while the value's old text
+	 * still counts as unused.
+	 */
+	private static void testGrowAfterTrim()
+	{
+		DBFTable table = makeTable(200);
+		ArrayList<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 100; i++)
+		{
+			String value = repeat((char)('A' + (i % 26)), 100);
+			addRecord(table, value);
+			expected.add(value);
+		}
+		DBFHashIndex index = table.getHashIndex(0);
+		table.trimToSize();
+		for (int i = 0; i < 60; i++)
+		{
+			table.removeRecord(table.getNumRecords() - 1);
+			expected.remove(expected.size() - 1);
+		}
+		String longer = repeat('z', 150);
+		table.setData(0, 0, longer);
+		expected.set(0, longer);
+		checkColumn(table, expected, index);
+	}
+
+	/**
+	 * Rows filled again after the column is cleared each get their own
+	 * text, rather than the slots the old rows had.
+	 */
+	private static void testRefillAfterClear()
+	{
+		DBFColumn column = new DBFCharacterColumn();
+		column.addData("hello");
+		column.addData("world!");
+		column.clear();
+		check(column.numRows == 0, "no rows after clearing");
+		String[] values = { "abc", "de", "zzzzzzzz" };
+		for (String value : values)
+			column.addData(value);
+		for (int i = 0; i < values.length; i++)
+			check(values[i].equals(column.getString(i)), "row " + i + ": expected " + values[i] + " but got " + column.getString(i));
+	}
+
+	/**
+	 * Random changes, checking everything every so often.
+	 */
+	private static void testRandomChanges()
+	{
+		Random random = new Random(10);
+		DBFTable table = makeTable(254);
+		ArrayList<String> expected = new ArrayList<String>();
+		DBFHashIndex index = table.getHashIndex(0);
+		for (int i = 0; i < 20000; i++)
+		{
+			int change = random.nextInt(10);
+			if ((change < 3) || (expected.size() == 0))
+			{
+				String value = randomValue(random);
+				addRecord(table, value);
+				expected.add(value);
+			}
+			else if (change < 8)
+			{
+				int row = random.nextInt(expected.size());
+				String value = (random.nextInt(20) == 0) ? null : randomValue(random);
+				table.setData(row, 0, value);
+				expected.set(row, value);
+			}
+			else if (change < 9)
+			{
+				int row = random.nextInt(expected.size());
+				table.removeRecord(row);
+				expected.remove(row);
+			}
+			else if (random.nextInt(50) == 0)
+			{
+				table.trimToSize();
+			}
+			if ((i % 500) == 0)
+				checkColumn(table, expected, index);
+		}
+		checkColumn(table, expected, index);
+	}
+
+	/**
+	 * This helper method checks every value of the column, and that the
+	 * index finds each one where it is.
+	 */
+	private static void checkColumn(DBFTable table, ArrayList<String> expected, DBFHashIndex index)
+	{
+		check(table.getNumRecords() == expected.size(), expected.size() + " records, not " + table.getNumRecords());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			String value = table.getString(i, 0);
+			check((expected.get(i) == null) ? (value == null) : expected.get(i).equals(value),
+					"row " + i + ": expected " + expected.get(i) + " but got " + value);
+			check(Arrays.binarySearch(index.findAll(value), i) >= 0, "the index finds row " + i);
+		}
+	}
+
+	/**
+	 * This helper method makes a value of up to 200 characters,
+	 * mostly short ones.
+	 */
+	private static String randomValue(Random random)
+	{
+		int length = random.nextBoolean() ? random.nextInt(12) : random.nextInt(200);
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++)
+			chars[i] = (char)('a' + random.nextInt(26));
+		return new String(chars);
+	}
+
+	private static String repeat(char c, int length)
+	{
+		char[] chars = new char[length];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	/**
+	 * This helper method makes a table with one character field.
+	 */
+	private static DBFTable makeTable(int length)
+	{
+		DBFTable table = new DBFTable();
+		table.addField("TEXT", DBFFieldType.C, length);
+		return table;
+	}
+
+	private static void addRecord(DBFTable table, String value)
+	{
+		DBFRecord record = new DBFRecord(1);
+		record.setData(value, 0);
+		table.addRecord(record);
+	}
+
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError(what);
+	}
+}
@@ -0,0 +1,239 @@
+package dbf_framework;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * This program tests that tables come back from DBFFileIO the way they went
+ * in, both saved to and loaded from a .dbf file and encoded to and decoded
+ * from a buffer, which is how the map bundle stores them. That includes the
+ * last update date, whose month is stored starting at 1 but kept in a
+ * calendar starting at 0. It throws an AssertionError at the first thing
+ * that's wrong.
+ */
+public class DBFFileIOTest
+{
+	public static void main(String[] args) throws IOException
+	{
+		testLastModifiedDate();
+		testFileRoundTrip();
+		testPaddedHeader();
+		testEncodedRoundTrip();
+		System.out.println("DBFFileIOTest passed");
+	}
+
+	/**
+	 * The date is written with a month from 1 to 12, and is the same
+	 * after any number of saves and loads.
+	 */
+	private static void testLastModifiedDate() throws IOException
+	{
+		DBFFileIO dbfIO = new DBFFileIO();
+		DBFTable table = makeTable();
+		table.setLastModifiedDate(2008, Calendar.NOVEMBER, 4);
+		File file = File.createTempFile("DBFFileIOTest", ".dbf");
+		try
+		{
+			for (int i = 0; i < 3; i++)
+			{
+				dbfIO.saveDBF(table, file);
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try
+				{
+					raf.seek(1);
+					check(raf.readByte() == 108, "year byte after save " + i);
+					check(raf.readByte() == 11, "November is written as 11 after save " + i);
+					check(raf.readByte() == 4, "day byte after save " + i);
+				}
+				finally
+				{
+					raf.close();
+				}
+				table = dbfIO.loadDBF(file);
+				check(table.getLastModifiedDate().equals(new GregorianCalendar(2008, Calendar.NOVEMBER, 4)),
+						"date after load " + i + " is " + table.getLastModifiedDate().getTime());
+			}
+
+			// JANUARY AND DECEMBER ARE THE ONES THAT WOULD FALL OFF THE ENDS
+			for (int month : new int[] { Calendar.JANUARY, Calendar.DECEMBER })
+			{
+				table.setLastModifiedDate(1999, month, 31);
+				dbfIO.saveDBF(table, file);
+				Calendar date = dbfIO.loadDBF(file).getLastModifiedDate();
+				check(date.get(Calendar.MONTH) == month, "month " + month + " came back as " + date.get(Calendar.MONTH));
+				check(date.get(Calendar.DATE) == 31, "day 31 came back as " + date.get(Calendar.DATE));
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Everything in the records survives being saved and loaded, except
+	 * that nulls are saved blank, so they're loaded as "" or 0, as they
+	 * always have been.
+	 */
+	private static void testFileRoundTrip() throws IOException
+	{
+		DBFFileIO dbfIO = new DBFFileIO();
+		DBFTable table = makeTable();
+		File file = File.createTempFile("DBFFileIOTest", ".dbf");
+		try
+		{
+			dbfIO.saveDBF(table, file);
+			checkSameTable(table, dbfIO.loadDBF(file), false);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * A header padded past its terminator is skipped the same way whether
+	 * the records are read one block after another or in parallel.
+	 */
+	private static void testPaddedHeader() throws IOException
+	{
+		DBFFileIO dbfIO = new DBFFileIO();
+		DBFTable table = makeTable();
+		File file = File.createTempFile("DBFFileIOTest", ".dbf");
+		try
+		{
+			dbfIO.saveDBF(table, file);
+
+			// PUT 17 BYTES OF PADDING AFTER THE TERMINATOR, AND SAY SO IN THE HEADER
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			int headerLength = (bytes[8] & 0xff) | ((bytes[9] & 0xff) << 8);
+			int paddedLength = headerLength + 17;
+			byte[] padded = new byte[bytes.length + 17];
+			System.arraycopy(bytes, 0, padded, 0, headerLength);
+			Arrays.fill(padded, headerLength, paddedLength, (byte)' ');
+			System.arraycopy(bytes, headerLength, padded, paddedLength, bytes.length - headerLength);
+			padded[8] = (byte)paddedLength;
+			padded[9] = (byte)(paddedLength >> 8);
+			FileOutputStream fos = new FileOutputStream(file);
+			try
+			{
+				fos.write(padded);
+			}
+			finally
+			{
+				fos.close();
+			}
+
+			dbfIO.setParallelThreshold(Integer.MAX_VALUE);
+			checkSameTable(table, dbfIO.loadDBF(file), false);
+			dbfIO.setParallelThreshold(1);
+			checkSameTable(table, dbfIO.loadDBF(file), false);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Everything survives being encoded and decoded, but a buffer that's
+	 * cut short is an IOException rather than a partial table.
+	 */
+	private static void testEncodedRoundTrip() throws IOException
+	{
+		DBFFileIO dbfIO = new DBFFileIO();
+		DBFTable table = makeTable();
+		table.setLastModifiedDate(2012, Calendar.DECEMBER, 31);
+		ByteBuffer encoded = dbfIO.encodeTable(table);
+		DBFTable decoded = dbfIO.decodeTable(encoded);
+		checkSameTable(table, decoded, true);
+		check(decoded.getLastModifiedDate().equals(table.getLastModifiedDate()), "decoded date");
+
+		// DECODING DOESN'T USE UP THE BUFFER, SO IT CAN BE DONE AGAIN
+		checkSameTable(table, dbfIO.decodeTable(encoded), true);
+
+		ByteBuffer truncated = encoded.duplicate();
+		truncated.limit(encoded.limit() - 5);
+		try
+		{
+			dbfIO.decodeTable(truncated.slice());
+			throw new AssertionError("a truncated table was decoded");
+		}
+		catch (IOException ioe)
+		{
+			// EXPECTED
+		}
+	}
+
+	/**
+	 * This helper method checks that two tables have the same fields
+	 * and records, where nulls may have to have become "" or 0.
+	 */
+	private static void checkSameTable(DBFTable expected, DBFTable actual, boolean keepsNulls)
+	{
+		check(actual.getNumFields() == expected.getNumFields(), "number of fields");
+		for (int i = 0; i < expected.getNumFields(); i++)
+		{
+			DBFField expectedField = expected.getField(i);
+			DBFField actualField = actual.getField(i);
+			check(actualField.getName().equals(expectedField.getName()), "name of field " + i);
+			check(actualField.getType() == expectedField.getType(), "type of field " + i);
+			check(actualField.getLength() == expectedField.getLength(), "length of field " + i);
+		}
+		check(actual.getNumRecords() == expected.getNumRecords(), "number of records");
+		for (int i = 0; i < expected.getNumRecords(); i++)
+		{
+			Object[] expectedData = expected.getRecord(i).getAllData();
+			for (int j = 0; j < expectedData.length; j++)
+			{
+				if ((expectedData[j] == null) && !keepsNulls)
+					expectedData[j] = (expected.getField(j).getType() == DBFFieldType.N) ? (Object)Long.valueOf(0) : "";
+			}
+			Object[] actualData = actual.getRecord(i).getAllData();
+			check(Arrays.equals(expectedData, actualData),
+					"record " + i + ": expected " + Arrays.toString(expectedData) + " but got " + Arrays.toString(actualData));
+		}
+	}
+
+	/**
+	 * This helper method makes a table with text, whole numbers and
+	 * numbers with decimal places in it, with some nulls. Tables are
+	 * normally loaded, so the header has to be filled in by hand.
+	 */
+	private static DBFTable makeTable()
+	{
+		DBFTable table = new DBFTable();
+		table.setFileType((byte)3);
+		table.setLastModifiedDate(2008, Calendar.NOVEMBER, 4);
+		table.setMup(new int[3]);
+		table.setTerminator((byte)0x0D);
+		table.addField("NAME", DBFFieldType.C, 12);
+		table.addField("VOTES", DBFFieldType.N, 10);
+		table.addField("SHARE", DBFFieldType.N, 10);
+		String[] names = { "Cook", "Kane", null, "Lake", "DuPage" };
+		Long[] votes = { Long.valueOf(1629024), Long.valueOf(-7), Long.valueOf(0), null, Long.valueOf(314) };
+		Double[] shares = { Double.valueOf(0.755), null, Double.valueOf(-1.5), Double.valueOf(12.25), Double.valueOf(0.5) };
+		for (int i = 0; i < names.length; i++)
+		{
+			DBFRecord record = new DBFRecord(3);
+			record.setData(names[i], 0);
+			record.setData(votes[i], 1);
+			record.setData(shares[i], 2);
+			table.addRecord(record);
+		}
+		return table;
+	}
+
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError(what);
+	}
+}
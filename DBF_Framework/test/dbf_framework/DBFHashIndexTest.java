@@ -0,0 +1,229 @@
+package dbf_framework;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This program tests DBFHashIndex by checking everything it finds against
+ * a plain search of the table, while values are added, changed and removed.
+ * Taking out the last record with a value empties its slot, which has to
+ * move the slots after it back so they can still be found, so there are
+ * enough values here for lots of them to share probe runs. It throws an
+ * AssertionError at the first thing that's wrong.
+ */
+public class DBFHashIndexTest
+{
+	public static void main(String[] args)
+	{
+		testFind();
+		testSlotRemoval();
+		testRecordRemoval();
+		testStale();
+		testFailedChange();
+		System.out.println("DBFHashIndexTest passed");
+	}
+
+	/**
+	 * Values and nulls are found in both kinds of column, with
+	 * their records in table order.
+	 */
+	private static void testFind()
+	{
+		DBFTable table = makeTable();
+		String[] names = { "Cook", null, "Kane", "Cook", "Lake", null, "Cook" };
+		for (int i = 0; i < names.length; i++)
+			addRecord(table, names[i], (long)(i % 3));
+
+		DBFHashIndex nameIndex = table.getHashIndex(0);
+		check(nameIndex.getNumKeys() == 4, "4 keys counting null, not " + nameIndex.getNumKeys());
+		checkEquals(new int[] { 0, 3, 6 }, nameIndex.findAll("Cook"), "Cook");
+		checkEquals(new int[] { 1, 5 }, nameIndex.findAll(null), "null");
+		check(nameIndex.find("Lake") == 4, "Lake is record 4");
+		check(nameIndex.find("Will") == -1, "there's no Will");
+		checkEquals(new int[0], nameIndex.findAll("Will"), "Will");
+
+		DBFHashIndex numberIndex = table.getHashIndex(1);
+		checkEquals(new int[] { 2, 5 }, numberIndex.findAll(Long.valueOf(2)), "2");
+		check(table.findRecord(1, Long.valueOf(1)) == 1, "first 1 is record 1");
+	}
+
+	/**
+	 * Values are moved around and emptied out in random order, checking
+	 * the whole index after each change.
+	 */
+	private static void testSlotRemoval()
+	{
+		DBFTable table = makeTable();
+		int numRecords = 600;
+		for (int i = 0; i < numRecords; i++)
+			addRecord(table, "R" + (i % 200), Long.valueOf(i));
+		DBFHashIndex index = table.getHashIndex(0);
+		checkIndex(table, index);
+
+		// GIVE EVERY RECORD A NEW VALUE, SOME SHARED, SOME ALONE, WHICH
+		// EMPTIES AND FILLS SLOTS ALL OVER THE TABLE
+		Random random = new Random(17);
+		for (int i = 0; i < numRecords; i++)
+		{
+			int recordIndex = random.nextInt(numRecords);
+			String value = random.nextBoolean() ? ("S" + random.nextInt(50)) : ("U" + i);
+			table.setData(recordIndex, 0, value);
+			if ((i % 20) == 0)
+				checkIndex(table, index);
+		}
+		checkIndex(table, index);
+
+		// THEN DOWN TO ONE VALUE, WHICH EMPTIES ALL BUT ONE SLOT
+		for (int i = 0; i < numRecords; i++)
+		{
+			table.setData(i, 0, "LAST");
+			if ((i % 20) == 0)
+				checkIndex(table, index);
+		}
+		checkIndex(table, index);
+		check(index.getNumKeys() == 1, "1 key left, not " + index.getNumKeys());
+	}
+
+	/**
+	 * Removing records takes them out of their chains and moves all the
+	 * records after them up one.
+	 */
+	private static void testRecordRemoval()
+	{
+		DBFTable table = makeTable();
+		for (int i = 0; i < 300; i++)
+			addRecord(table, "R" + (i % 70), Long.valueOf(i));
+		DBFHashIndex index = table.getHashIndex(0);
+
+		Random random = new Random(4);
+		while (table.getNumRecords() > 0)
+		{
+			table.removeRecord(random.nextInt(table.getNumRecords()));
+			checkIndex(table, index);
+		}
+		check(index.getNumKeys() == 0, "no keys left, not " + index.getNumKeys());
+
+		// AND IT STILL WORKS ONCE THE TABLE HAS GROWN AGAIN
+		for (int i = 0; i < 40; i++)
+			addRecord(table, "R" + (i % 7), Long.valueOf(i));
+		checkIndex(table, index);
+	}
+
+	/**
+	 * An index the table lets go of says so rather than answering wrong.
+	 */
+	private static void testStale()
+	{
+		DBFTable table = makeTable();
+		for (int i = 0; i < 10; i++)
+			addRecord(table, "R" + (9 - i), Long.valueOf(i));
+		DBFHashIndex index = table.getHashIndex(0);
+		table.sortRecords("NAME", true);
+		check(index.isStale(), "sorting makes the index stale");
+		try
+		{
+			index.find("R0");
+			throw new AssertionError("a stale index was searched");
+		}
+		catch (IllegalStateException ise)
+		{
+			// EXPECTED
+		}
+		DBFHashIndex newIndex = table.getHashIndex(0);
+		check(newIndex != index, "the table makes a new index");
+		check(newIndex.find("R0") == 0, "R0 is first after sorting");
+	}
+
+	/**
+	 * A value that can't be set leaves the old one in the index.
+	 */
+	private static void testFailedChange()
+	{
+		DBFTable table = makeTable();
+		for (int i = 0; i < 5; i++)
+			addRecord(table, "R" + i, Long.valueOf(i));
+		DBFHashIndex index = table.getHashIndex(1);
+		try
+		{
+			table.setData(3, 1, "not a number");
+			throw new AssertionError("text was put in a numeric field");
+		}
+		catch (NumberFormatException nfe)
+		{
+			// EXPECTED
+		}
+		check(index.find(Long.valueOf(3)) == 3, "3 is still found at record 3");
+		check(index.getNumKeys() == 5, "still 5 keys, not " + index.getNumKeys());
+	}
+
+	/**
+	 * This helper method checks that the index finds exactly the records
+	 * a plain search of the table does, for every value in the table.
+	 */
+	private static void checkIndex(DBFTable table, DBFHashIndex index)
+	{
+		int numRecords = table.getNumRecords();
+		int numKeys = 0;
+		for (int i = 0; i < numRecords; i++)
+		{
+			String value = table.getString(i, 0);
+			int count = 0;
+			boolean first = true;
+			for (int j = 0; j < i; j++)
+			{
+				if (value.equals(table.getString(j, 0)))
+					first = false;
+			}
+			for (int j = 0; j < numRecords; j++)
+			{
+				if (value.equals(table.getString(j, 0)))
+					count++;
+			}
+			int[] expected = new int[count];
+			count = 0;
+			for (int j = 0; j < numRecords; j++)
+			{
+				if (value.equals(table.getString(j, 0)))
+					expected[count++] = j;
+			}
+			checkEquals(expected, index.findAll(value), value);
+			if (first)
+				numKeys++;
+		}
+		check(index.getNumKeys() == numKeys, numKeys + " keys, not " + index.getNumKeys());
+	}
+
+	/**
+	 * This helper method makes a table with a name and a number field.
+	 */
+	private static DBFTable makeTable()
+	{
+		DBFTable table = new DBFTable();
+		table.addField("NAME", DBFFieldType.C, 10);
+		table.addField("NUMBER", DBFFieldType.N, 8);
+		return table;
+	}
+
+	/**
+	 * This helper method adds a record to a table made by makeTable.
+	 */
+	private static void addRecord(DBFTable table, String name, Long number)
+	{
+		DBFRecord record = new DBFRecord(2);
+		record.setData(name, 0);
+		record.setData(number, 1);
+		table.addRecord(record);
+	}
+
+	private static void checkEquals(int[] expected, int[] actual, String what)
+	{
+		if (!Arrays.equals(expected, actual))
+			throw new AssertionError(what + ": expected " + Arrays.toString(expected) + " but got " + Arrays.toString(actual));
+	}
+
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError(what);
+	}
+}
@@ -0,0 +1,179 @@
+package dbf_framework;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * This program tests sorting tables by DBFSortKeys, which DBFSorter does
+ * by ranking each key's values, against a plain stable sort that compares
+ * the values themselves. The tables have text, whole numbers and numbers
+ * with decimal places, with repeats and nulls, sorted both ways by one
+ * and several keys. It throws an AssertionError at the first thing that's
+ * wrong.
+ */
+public class DBFSorterTest
+{
+	// THE FIELDS OF THE TEST TABLES
+	private static final int NAME = 0;
+	private static final int COUNT = 1;
+	private static final int SHARE = 2;
+
+	public static void main(String[] args)
+	{
+		testSmall();
+		testRandom();
+		testSortRecords();
+		System.out.println("DBFSorterTest passed");
+	}
+
+	/**
+	 * A small table whose order is worked out by hand.
+	 */
+	private static void testSmall()
+	{
+		DBFTable table = makeTable();
+		addRecord(table, "Kane",	Long.valueOf(3),	Double.valueOf(0.5));
+		addRecord(table, null,		Long.valueOf(-2),	null);
+		addRecord(table, "Cook",	null,				Double.valueOf(0.0));
+		addRecord(table, "Kane",	Long.valueOf(-2),	Double.valueOf(-0.0));
+		addRecord(table, "Adams",	Long.valueOf(3),	Double.valueOf(-1.25));
+
+		// NULLS COME FIRST GOING UP, AND LAST GOING DOWN
+		checkEquals(new int[] { 1, 4, 2, 0, 3 }, table.getSortedOrder(new DBFSortKey(NAME, true)), "name up");
+		checkEquals(new int[] { 0, 3, 2, 4, 1 }, table.getSortedOrder(new DBFSortKey(NAME, false)), "name down");
+		checkEquals(new int[] { 2, 1, 3, 0, 4 }, table.getSortedOrder(new DBFSortKey(COUNT, true)), "count up");
+
+		// 0.0 AND -0.0 ARE EQUAL, SO THEY STAY IN TABLE ORDER
+		checkEquals(new int[] { 1, 4, 2, 3, 0 }, table.getSortedOrder(new DBFSortKey(SHARE, true)), "share up");
+
+		// TIES ON THE FIRST KEY ARE BROKEN BY THE SECOND
+		checkEquals(new int[] { 2, 3, 1, 0, 4 },
+				table.getSortedOrder(new DBFSortKey(COUNT, true), new DBFSortKey(NAME, false)), "count up, name down");
+		checkEquals(new int[] { 1, 4, 2, 3, 0 },
+				table.getSortedOrder(new DBFSortKey(NAME, true), new DBFSortKey(SHARE, true)), "name up, share up");
+	}
+
+	/**
+	 * Random tables, sorted by random keys, compared to a plain sort.
+	 */
+	private static void testRandom()
+	{
+		Random random = new Random(18);
+		for (int t = 0; t < 20; t++)
+		{
+			DBFTable table = makeTable();
+			int numRecords = random.nextInt(2000);
+			int numValues = 1 + random.nextInt(50);
+			for (int i = 0; i < numRecords; i++)
+			{
+				String name = (random.nextInt(10) == 0) ? null : ("N" + random.nextInt(numValues));
+				Long count = (random.nextInt(10) == 0) ? null : Long.valueOf(random.nextInt(numValues) - (numValues / 2));
+				Double share = (random.nextInt(10) == 0) ? null : Double.valueOf((random.nextInt(numValues) - (numValues / 2)) / 4.0);
+				addRecord(table, name, count, share);
+			}
+
+			// THE TABLE'S OWN HASH INDEX MUST BE LEFT ALONE BY SORTING
+			DBFHashIndex index = table.getHashIndex(NAME);
+
+			int numKeys = 1 + random.nextInt(3);
+			DBFSortKey[] keys = new DBFSortKey[numKeys];
+			for (int k = 0; k < numKeys; k++)
+				keys[k] = new DBFSortKey(random.nextInt(3), random.nextBoolean());
+			checkEquals(sortPlainly(table, keys), table.getSortedOrder(keys), "random table " + t);
+			check(!index.isStale() && (table.getHashIndex(NAME) == index), "sorting keeps the table's index");
+		}
+	}
+
+	/**
+	 * Sorting the records moves their data into sorted order.
+	 */
+	private static void testSortRecords()
+	{
+		DBFTable table = makeTable();
+		Random random = new Random(5);
+		for (int i = 0; i < 500; i++)
+			addRecord(table, "N" + random.nextInt(30), Long.valueOf(i), Double.valueOf(random.nextInt(8)));
+		DBFSortKey[] keys = { new DBFSortKey(SHARE, false), new DBFSortKey(NAME, true) };
+		int[] order = table.getSortedOrder(keys);
+		Object[][] expected = new Object[order.length][];
+		for (int i = 0; i < order.length; i++)
+			expected[i] = table.getRecord(order[i]).getAllData();
+
+		table.sortRecords(keys);
+		for (int i = 0; i < order.length; i++)
+			check(Arrays.equals(expected[i], table.getRecord(i).getAllData()), "record " + i + " after sorting");
+	}
+
+	/**
+	 * This helper method sorts the records by comparing their values,
+	 * nulls before everything else, which is what the ranks should give.
+	 */
+	private static int[] sortPlainly(final DBFTable table, final DBFSortKey[] keys)
+	{
+		Integer[] order = new Integer[table.getNumRecords()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = Integer.valueOf(i);
+		Arrays.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer r1, Integer r2)
+			{
+				for (DBFSortKey key : keys)
+				{
+					int compare = compareValues(table.getData(r1, key.getFieldIndex()), table.getData(r2, key.getFieldIndex()));
+					if (compare != 0)
+						return key.isIncreasing() ? compare : -compare;
+				}
+				return 0;
+			}
+		});
+		int[] recordIndexes = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			recordIndexes[i] = order[i];
+		return recordIndexes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compareValues(Object value1, Object value2)
+	{
+		if ((value1 == null) || (value2 == null))
+			return (value1 == null) ? ((value2 == null) ? 0 : -1) : 1;
+		if ((value1 instanceof Number) && (value2 instanceof Number))
+			return Double.compare(((Number)value1).doubleValue() + 0.0, ((Number)value2).doubleValue() + 0.0);
+		return ((Comparable<Object>)value1).compareTo(value2);
+	}
+
+	/**
+	 * This helper method makes a table with a name, a whole number
+	 * and a number with decimal places field.
+	 */
+	private static DBFTable makeTable()
+	{
+		DBFTable table = new DBFTable();
+		table.addField("NAME", DBFFieldType.C, 10);
+		table.addField("COUNT", DBFFieldType.N, 8);
+		table.addField("SHARE", DBFFieldType.N, 8);
+		return table;
+	}
+
+	private static void addRecord(DBFTable table, String name, Long count, Double share)
+	{
+		DBFRecord record = new DBFRecord(3);
+		record.setData(name, NAME);
+		record.setData(count, COUNT);
+		record.setData(share, SHARE);
+		table.addRecord(record);
+	}
+
+	private static void checkEquals(int[] expected, int[] actual, String what)
+	{
+		if (!Arrays.equals(expected, actual))
+			throw new AssertionError(what + ": expected " + Arrays.toString(expected) + " but got " + Arrays.toString(actual));
+	}
+
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError(what);
+	}
+}
@@ -0,0 +1,138 @@
+package dbf_framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+
+/**
+ * This program tests DBFTableCache: that a cached table is handed out
+ * again without loading its file, that it's loaded again once its file
+ * changes, that the least recently used table is the one thrown out, and
+ * that a table is only forgotten by whatever it was given to. It throws an
+ * AssertionError at the first thing that's wrong.
+ */
+public class DBFTableCacheTest
+{
+	public static void main(String[] args) throws IOException, InterruptedException
+	{
+		File[] files = new File[3];
+		try
+		{
+			for (int i = 0; i < files.length; i++)
+			{
+				files[i] = File.createTempFile("DBFTableCacheTest", ".dbf");
+				new DBFFileIO().saveDBF(makeTable(i + 1), files[i]);
+			}
+			testReuse(files[0]);
+			testReload(files[0]);
+			testEviction(files);
+			testInvalidate(files[0]);
+		}
+		finally
+		{
+			for (File file : files)
+			{
+				if (file != null)
+					file.delete();
+			}
+		}
+		System.out.println("DBFTableCacheTest passed");
+	}
+
+	/**
+	 * Asking for the same file again gets the same table.
+	 */
+	private static void testReuse(File file) throws IOException
+	{
+		DBFTableCache cache = new DBFTableCache(4);
+		DBFTable table = cache.getTable(file);
+		check(table.getNumRecords() == 1, "the table was loaded");
+		check(cache.getTable(file) == table, "the same table the second time");
+		check(cache.getTable(new File(file.getParentFile(), file.getName())) == table, "the same table by another File");
+		check(cache.getNumTables() == 1, "one table cached");
+	}
+
+	/**
+	 * A file that changes is loaded again, once the cache looks at it.
+	 */
+	private static void testReload(File file) throws IOException, InterruptedException
+	{
+		DBFTableCache cache = new DBFTableCache(4);
+		DBFTable table = cache.getTable(file);
+		new DBFFileIO().saveDBF(makeTable(5), file);
+		Thread.sleep(DBFTableCache.REVALIDATE_INTERVAL_MILLIS + 100);
+		DBFTable newTable = cache.getTable(file);
+		check(newTable != table, "a new table once the file changed");
+		check(newTable.getNumRecords() == 5, "the new table has what's in the file now");
+		check(cache.getTable(file) == newTable, "which is then cached");
+		new DBFFileIO().saveDBF(makeTable(1), file);
+	}
+
+	/**
+	 * The least recently used tables are thrown out first.
+	 */
+	private static void testEviction(File[] files) throws IOException
+	{
+		DBFTableCache cache = new DBFTableCache(2);
+		DBFTable table0 = cache.getTable(files[0]);
+		DBFTable table1 = cache.getTable(files[1]);
+		check(cache.getTable(files[0]) == table0, "table 0 is still cached");
+
+		// TABLE 1 IS THE LEAST RECENTLY USED, SO IT GOES
+		cache.getTable(files[2]);
+		check(cache.getNumTables() == 2, "only two tables cached");
+		check(cache.getTable(files[0]) == table0, "table 0 was kept");
+		check(cache.getTable(files[1]) != table1, "table 1 was thrown out");
+
+		cache.setMaxTables(1);
+		check(cache.getNumTables() == 1, "one table cached after shrinking");
+		DBFTable table1Again = cache.getTable(files[1]);
+		check(cache.getTable(files[1]) == table1Again, "the most recent table was kept");
+	}
+
+	/**
+	 * Forgetting a table that's no longer the cached one leaves the
+	 * cached one alone.
+	 */
+	private static void testInvalidate(File file) throws IOException
+	{
+		DBFTableCache cache = new DBFTableCache(4);
+		DBFTable table = cache.getTable(file);
+		DBFTable otherTable = makeTable(2);
+		cache.invalidate(file, otherTable);
+		check(cache.getTable(file) == table, "another table doesn't throw out the cached one");
+		cache.invalidate(file, table);
+		check(cache.getNumTables() == 0, "the cached table was thrown out");
+
+		cache.putTable(file, otherTable);
+		check(cache.getTable(file) == otherTable, "a table put in the cache is handed out");
+		cache.invalidate(file);
+		check(cache.getTable(file) != otherTable, "and loaded again once invalidated");
+	}
+
+	/**
+	 * This helper method makes a table with numRecords records.
+	 */
+	private static DBFTable makeTable(int numRecords)
+	{
+		DBFTable table = new DBFTable();
+		table.setFileType((byte)3);
+		table.setLastModifiedDate(2008, Calendar.NOVEMBER, 4);
+		table.setMup(new int[3]);
+		table.setTerminator((byte)0x0D);
+		table.addField("NAME", DBFFieldType.C, 10);
+		for (int i = 0; i < numRecords; i++)
+		{
+			DBFRecord record = new DBFRecord(1);
+			record.setData("R" + i, 0);
+			table.addRecord(record);
+		}
+		return table;
+	}
+
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError(what);
+	}
+}
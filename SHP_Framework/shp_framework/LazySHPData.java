@@ -0,0 +1,254 @@
+package shp_framework;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+import shp_framework.geometry.SHPPolyType;
+import shp_framework.geometry.SHPShape;
+/**
+ * LazySHPData - This class stores the same map data as SHPData, except that
+ * it doesn't load a shape's parts and points until that shape is first asked
+ * for. Only each shape's bounding box and colors are kept in memory the whole
+ * time. Loaded shapes are kept in a cache of limited size, so memory use
+ * depends on how many shapes are actually being used, not on the size of the
+ * map. Shapes thrown out of the cache are simply reloaded when needed again.
+ *
+ * The shapes are found using the offsets in the shapefile's .shx index,
+ * which the SHPDataLoader reads when constructing this object.
+ */
+public class LazySHPData extends SHPData
+{
+	// BY DEFAULT WE'LL KEEP THIS MANY LOADED SHAPES AROUND
+	public static final int DEFAULT_MAX_LOADED_SHAPES = 4096;
+
+	// THE MAPPED SHAPEFILE WE LOAD SHAPES FROM
+	private SHPFileMapping mapping;
+	private SHPDataLoader loader;
+
+	// WHERE EACH SHAPE'S RECORD IS, IN BYTES FROM THE START OF THE
+	// FILE, AND HOW LONG IT IS, IN 16-BIT WORDS, PER THE .shx FILE
+	private long[] recordOffsets;
+	private int[] recordLengths;
+
+	// HERE'S WHAT WE ALWAYS KEEP FOR EVERY SHAPE
+	private double[][] boundingBoxes;
+	private Color[] fillColors;
+	private Color[] lineColors;
+
+	// AND HERE ARE THE SHAPES THAT ARE CURRENTLY LOADED
+	private LinkedHashMap<Integer, SHPShape> loadedShapes;
+	private int maxLoadedShapes;
+
+	/**
+	 * This constructor sets up the data using the already read .shx
+	 * index. It reads only the bounding box of each shape.
+	 */
+	LazySHPData(SHPFileMapping initMapping,
+				long[] initRecordOffsets,
+				int[] initRecordLengths) throws IOException
+	{
+		mapping = initMapping;
+		loader = new SHPDataLoader();
+		recordOffsets = initRecordOffsets;
+		recordLengths = initRecordLengths;
+
+		// THE BOUNDING BOX COMES 4 BYTES INTO EACH RECORD'S BODY,
+		// WHICH IS ITSELF AFTER AN 8 BYTE RECORD HEADER
+		int numShapes = recordOffsets.length;
+		boundingBoxes = new double[numShapes][];
+		for (int i = 0; i < numShapes; i++)
+		{
+			ByteBuffer box = mapping.region(recordOffsets[i] + 12, 32);
+			boundingBoxes[i] = loader.extract2DBoundingBox(box);
+		}
+		fillColors = new Color[numShapes];
+		lineColors = new Color[numShapes];
+
+		maxLoadedShapes = DEFAULT_MAX_LOADED_SHAPES;
+		loadedShapes = new LinkedHashMap<Integer, SHPShape>(16, 0.75f, true)
+		{
+			protected boolean removeEldestEntry(Map.Entry<Integer, SHPShape> eldest)
+			{
+				if (size() <= maxLoadedShapes)
+					return false;
+
+				// REMEMBER THE COLORS BEFORE THE SHAPE IS GONE
+				saveColors(eldest.getKey(), eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	// ACCESSOR METHODS
+	public synchronized int	getMaxLoadedShapes()	{ return maxLoadedShapes;		}
+	public synchronized int	getNumLoadedShapes()	{ return loadedShapes.size();	}
+	public int				getNumShapes()			{ return recordOffsets.length;	}
+	public double[] 		getShapeBoundingBox(int index)	{ return boundingBoxes[index];	}
+
+	/**
+	 * Accessor method for the shape at index, which is loaded from the
+	 * shapefile if it's not already in memory.
+	 */
+	public synchronized SHPShape getShape(int index)
+	{
+		Integer key = Integer.valueOf(index);
+		SHPShape shape = loadedShapes.get(key);
+		if (shape == null)
+		{
+			try
+			{
+				shape = loadShape(index);
+			}
+			catch(IOException ioe)
+			{
+				throw new IllegalStateException("Error loading shape " + index, ioe);
+			}
+			loadedShapes.put(key, shape);
+		}
+		return shape;
+	}
+
+	/**
+	 * Note that only the shapes that are loaded right now are counted,
+	 * along with what's always kept for every shape.
+	 */
+	protected synchronized long estimateShapesHeapBytes()
+	{
+		// THE OFFSET, LENGTH, BOUNDING BOX AND COLORS OF EVERY SHAPE
+		long numBytes = getNumShapes() * (8L + 4 + 16 + 32 + 8);
+		for (SHPShape shape : loadedShapes.values())
+			numBytes += 48 + shape.estimateHeapBytes();
+		return numBytes;
+	}
+
+	/**
+	 * Note that this loads every shape in the map, so getShape or
+	 * shapesIterator should be used instead wherever possible.
+	 */
+	public Vector<SHPShape> getShapes()
+	{
+		Vector<SHPShape> allShapes = new Vector<SHPShape>(getNumShapes());
+		for (int i = 0; i < getNumShapes(); i++)
+			allShapes.add(getShape(i));
+		return allShapes;
+	}
+
+	// ITERATOR - THIS LOADS SHAPES ONE AT A TIME AS IT REACHES THEM
+	public Iterator<SHPShape> shapesIterator()
+	{
+		return new Iterator<SHPShape>()
+		{
+			private int index = 0;
+
+			public boolean hasNext()
+			{
+				return index < getNumShapes();
+			}
+
+			public SHPShape next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getShape(index++);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	// MUTATOR METHODS
+
+	/**
+	 * Sets the fill color of the shape at index without loading it.
+	 */
+	public synchronized void setShapeFillColor(int index, Color initFillColor)
+	{
+		fillColors[index] = initFillColor;
+		SHPShape shape = loadedShapes.get(Integer.valueOf(index));
+		if (shape != null)
+			shape.setFillColor(initFillColor);
+	}
+
+	/**
+	 * Changes how many loaded shapes are kept in memory.
+	 */
+	public synchronized void setMaxLoadedShapes(int initMaxLoadedShapes)
+	{
+		maxLoadedShapes = Math.max(1, initMaxLoadedShapes);
+		Iterator<Map.Entry<Integer, SHPShape>> it = loadedShapes.entrySet().iterator();
+		while ((loadedShapes.size() > maxLoadedShapes) && it.hasNext())
+		{
+			Map.Entry<Integer, SHPShape> eldest = it.next();
+			saveColors(eldest.getKey(), eldest.getValue());
+			it.remove();
+		}
+	}
+
+	// SHAPES ARE THROWN OUT AND RELOADED, WHICH WOULD LOSE THEIR SIMPLIFIED
+	// COPIES, AND MAKING THEM WOULD MEAN LOADING EVERY SHAPE ANYWAY
+	public void buildDetailLevels()
+	{
+	}
+
+	// THE SHAPES OF THIS MAP COME FROM THE FILE, SO THEY CAN'T BE CHANGED
+	public void addShape(SHPShape shapeToAdd)
+	{
+		throw new UnsupportedOperationException("Shapes of a lazily loaded map can't be changed");
+	}
+
+	public void setShapes(Vector<SHPShape> initShapes)
+	{
+		throw new UnsupportedOperationException("Shapes of a lazily loaded map can't be changed");
+	}
+
+	/**
+	 * Closes the shapefile. Note that shapes not already loaded
+	 * can't be used after this.
+	 */
+	public synchronized void close() throws IOException
+	{
+		mapping.close();
+	}
+
+	/**
+	 * This helper method reads the shape at index from the shapefile,
+	 * giving it the colors it had when it was last thrown out, if any.
+	 */
+	protected SHPShape loadShape(int index) throws IOException
+	{
+		// THE RECORD HEADER IS BIG ENDIAN
+		ByteBuffer recordHeader = mapping.region(recordOffsets[index], 8);
+		recordHeader.order(ByteOrder.BIG_ENDIAN);
+		int recordNumber = recordHeader.getInt();
+
+		// AND THE RECORD ITSELF IS LITTLE ENDIAN
+		ByteBuffer recordBody = mapping.region(recordOffsets[index] + 8, recordLengths[index] * 2);
+		SHPPolyType poly = loader.extractPolyType(recordBody, getShapeType());
+		poly.setRecordNumber(recordNumber);
+		poly.setRecordLength(recordLengths[index]);
+		if (fillColors[index] != null)
+			poly.setFillColor(fillColors[index]);
+		if (lineColors[index] != null)
+			poly.setLineColor(lineColors[index]);
+		return poly;
+	}
+
+	/**
+	 * This helper method remembers the colors of a shape being thrown out.
+	 */
+	private void saveColors(int index, SHPShape shape)
+	{
+		fillColors[index] = shape.getFillColor();
+		lineColors[index] = shape.getLineColor();
+	}
+}
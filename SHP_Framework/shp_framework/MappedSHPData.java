@@ -0,0 +1,448 @@
+package shp_framework;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+import shp_framework.geometry.SHPPolyType;
+import shp_framework.geometry.SHPPolygon;
+import shp_framework.geometry.SHPPolyline;
+import shp_framework.geometry.SHPShape;
+import shp_framework.geometry.SHPSimplifier;
+/**
+ * MappedSHPData - This class stores the same map data as SHPData, except that
+ * it's read from a buffer made by the encode method, which is normally part
+ * of a memory mapped file, rather than from a shapefile. Nothing has to be
+ * parsed, since the buffer stores the points, parts and bounding boxes of
+ * all the shapes as flat little endian arrays, so a shape is made by just
+ * copying its piece of each array the first time it's asked for. The
+ * simplified levels of detail are stored the same way, so they don't have to
+ * be made again either.
+ *
+ * The buffer is laid out as follows, with all the arrays back to back:
+ *
+ * 	the shapefile header: shape type, file code, file length, version and the
+ * 	5 unused ints, then the MBR, Z bounds and M bounds as doubles
+ * 	the number of shapes, n, and the number of levels, 1 for just the full
+ * 	points or 1 + SHPSimplifier.NUM_DETAIL_LEVELS
+ * 	n record numbers, n record lengths and n byte counts
+ * 	4n doubles for the bounding boxes
+ * 	then, for each level, starting with the full points:
+ * 		the total number of parts and points in it
+ * 		n + 1 ints saying where each shape's parts start
+ * 		n + 1 ints saying where each shape's points start
+ * 		all the parts, then all the x coordinates, then all the y coordinates
+ */
+public class MappedSHPData extends SHPData
+{
+	// THE ENCODED DATA
+	private ByteBuffer buffer;
+	private int numShapes;
+	private int numLevels;
+
+	// WHERE EACH ARRAY STARTS IN buffer
+	private int recordNumbersPosition;
+	private int recordLengthsPosition;
+	private int numBytesPosition;
+	private int[] partStartsPositions;
+	private int[] pointStartsPositions;
+	private int[] partsPositions;
+	private int[] xPointsPositions;
+	private int[] yPointsPositions;
+
+	// THE BOUNDING BOXES ARE ALWAYS NEEDED, SO WE GET THEM RIGHT AWAY
+	private double[][] boundingBoxes;
+
+	// AND THE SHAPES ARE MADE WHEN FIRST ASKED FOR, WITH ANY COLOR
+	// GIVEN TO A SHAPE BEFORE THEN KEPT UNTIL IT'S MADE
+	private SHPShape[] shapes;
+	private Color[] fillColors;
+
+	/**
+	 * This constructor sets up the data found in initBuffer, reading
+	 * only the header and the bounding boxes.
+	 */
+	public MappedSHPData(ByteBuffer initBuffer)
+	{
+		buffer = initBuffer.duplicate();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(0);
+
+		// THE SHAPEFILE HEADER
+		setShapeType(buffer.getInt());
+		setFileCode(buffer.getInt());
+		setFileLength(buffer.getInt());
+		setVersion(buffer.getInt());
+		int[] unusedBytes = new int[5];
+		for (int i = 0; i < 5; i++)
+			unusedBytes[i] = buffer.getInt();
+		setUnusedBytes(unusedBytes);
+		setMBR(getDoubles(buffer.position(), 4));
+		setZBounds(getDoubles(buffer.position() + 32, 2));
+		setMBounds(getDoubles(buffer.position() + 48, 2));
+		buffer.position(buffer.position() + 64);
+
+		// THE SHAPES
+		numShapes = buffer.getInt();
+		numLevels = buffer.getInt();
+		recordNumbersPosition = buffer.position();
+		recordLengthsPosition = recordNumbersPosition + (numShapes * 4);
+		numBytesPosition = recordLengthsPosition + (numShapes * 4);
+		int boxesPosition = numBytesPosition + (numShapes * 4);
+		double[] boxes = getDoubles(boxesPosition, numShapes * 4);
+		boundingBoxes = new double[numShapes][];
+		for (int i = 0; i < numShapes; i++)
+		{
+			boundingBoxes[i] = new double[4];
+			System.arraycopy(boxes, i * 4, boundingBoxes[i], 0, 4);
+		}
+
+		// AND WHERE EACH LEVEL'S ARRAYS ARE
+		partStartsPositions = new int[numLevels];
+		pointStartsPositions = new int[numLevels];
+		partsPositions = new int[numLevels];
+		xPointsPositions = new int[numLevels];
+		yPointsPositions = new int[numLevels];
+		int position = boxesPosition + (numShapes * 32);
+		for (int level = 0; level < numLevels; level++)
+		{
+			int totalParts = buffer.getInt(position);
+			int totalPoints = buffer.getInt(position + 4);
+			partStartsPositions[level] = position + 8;
+			pointStartsPositions[level] = partStartsPositions[level] + ((numShapes + 1) * 4);
+			partsPositions[level] = pointStartsPositions[level] + ((numShapes + 1) * 4);
+			xPointsPositions[level] = partsPositions[level] + (totalParts * 4);
+			yPointsPositions[level] = xPointsPositions[level] + (totalPoints * 8);
+			position = yPointsPositions[level] + (totalPoints * 8);
+		}
+
+		shapes = new SHPShape[numShapes];
+		fillColors = new Color[numShapes];
+	}
+
+	// ACCESSOR METHODS
+	public int				getNumShapes()					{ return numShapes;				}
+	public double[] 		getShapeBoundingBox(int index)	{ return boundingBoxes[index];	}
+
+	/**
+	 * Accessor method for the shape at index, which is made from the
+	 * buffer if it hasn't been already.
+	 */
+	public synchronized SHPShape getShape(int index)
+	{
+		if (shapes[index] == null)
+		{
+			if (buffer == null)
+				throw new IllegalStateException("Shape " + index + " can't be made once the data is closed");
+			shapes[index] = makeShape(index);
+		}
+		return shapes[index];
+	}
+
+	/**
+	 * Note that the buffer isn't counted, since it's not in the heap, only
+	 * the shapes that have been made from it so far.
+	 */
+	protected synchronized long estimateShapesHeapBytes()
+	{
+		// THE BOUNDING BOX, SHAPE AND COLOR OF EVERY SHAPE
+		long numBytes = numShapes * (16L + 32 + 4 + 4);
+		for (int i = 0; i < numShapes; i++)
+		{
+			if (shapes[i] != null)
+				numBytes += shapes[i].estimateHeapBytes();
+		}
+		return numBytes;
+	}
+
+	/**
+	 * Note that this makes every shape in the map, so getShape or
+	 * shapesIterator should be used instead wherever possible.
+	 */
+	public Vector<SHPShape> getShapes()
+	{
+		Vector<SHPShape> allShapes = new Vector<SHPShape>(getNumShapes());
+		for (int i = 0; i < getNumShapes(); i++)
+			allShapes.add(getShape(i));
+		return allShapes;
+	}
+
+	// ITERATOR - THIS MAKES SHAPES ONE AT A TIME AS IT REACHES THEM
+	public Iterator<SHPShape> shapesIterator()
+	{
+		return new Iterator<SHPShape>()
+		{
+			private int index = 0;
+
+			public boolean hasNext()
+			{
+				return index < getNumShapes();
+			}
+
+			public SHPShape next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return getShape(index++);
+			}
+
+			public void remove()
+			{
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	// MUTATOR METHODS
+
+	/**
+	 * Sets the fill color of the shape at index without making it.
+	 */
+	public synchronized void setShapeFillColor(int index, Color initFillColor)
+	{
+		fillColors[index] = initFillColor;
+		if (shapes[index] != null)
+			shapes[index].setFillColor(initFillColor);
+	}
+
+	// THE LEVELS OF DETAIL ARE NORMALLY IN THE BUFFER ALREADY, SO THEY
+	// ONLY HAVE TO BE MADE IF THE DATA WAS ENCODED WITHOUT THEM
+	public void buildDetailLevels()
+	{
+		if (numLevels == 1)
+			super.buildDetailLevels();
+	}
+
+	// THE SHAPES OF THIS MAP COME FROM THE BUFFER, SO THEY CAN'T BE CHANGED
+	public void addShape(SHPShape shapeToAdd)
+	{
+		throw new UnsupportedOperationException("Shapes of a mapped map can't be changed");
+	}
+
+	public void setShapes(Vector<SHPShape> initShapes)
+	{
+		throw new UnsupportedOperationException("Shapes of a mapped map can't be changed");
+	}
+
+	/**
+	 * Lets go of the buffer, so that shapes not already made can't be made
+	 * after this. Java can't unmap a buffer on demand, so if it's mapped,
+	 * the mapping goes away once the buffer is garbage collected, which
+	 * this lets happen even if this data is still referred to.
+	 */
+	public synchronized void close()
+	{
+		buffer = null;
+	}
+
+	/**
+	 * This method encodes all the data argument's shapes into a new buffer
+	 * that this class can read, see above. Note that the shapes' levels of
+	 * detail are included if they've all been made.
+	 */
+	public static ByteBuffer encode(SHPData data)
+	{
+		// FIRST FIGURE OUT HOW BIG EVERYTHING IS
+		int numShapes = data.getNumShapes();
+		SHPPolyType[] polys = new SHPPolyType[numShapes];
+		boolean hasDetailLevels = true;
+		for (int i = 0; i < numShapes; i++)
+		{
+			SHPShape shape = data.getShape(i);
+			if (shape instanceof SHPPolyType)
+			{
+				polys[i] = (SHPPolyType)shape;
+				hasDetailLevels &= polys[i].hasDetailLevels();
+			}
+		}
+		int numLevels = hasDetailLevels ? (1 + SHPSimplifier.NUM_DETAIL_LEVELS) : 1;
+		int[] totalParts = new int[numLevels];
+		int[] totalPoints = new int[numLevels];
+		long size = 36 + 64 + 8 + (numShapes * 12L) + (numShapes * 32L);
+		for (int level = 0; level < numLevels; level++)
+		{
+			for (int i = 0; i < numShapes; i++)
+			{
+				if (polys[i] != null)
+				{
+					totalParts[level] += polys[i].getNumParts();
+					totalPoints[level] += getXPoints(polys[i], level).length;
+				}
+			}
+			size += 8 + ((numShapes + 1) * 8L) + (totalParts[level] * 4L) + (totalPoints[level] * 16L);
+		}
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Map is too big to encode: " + size + " bytes");
+
+		// THE SHAPEFILE HEADER
+		ByteBuffer buffer = ByteBuffer.allocate((int)size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(data.getShapeType());
+		buffer.putInt(data.getFileCode());
+		buffer.putInt(data.getFileLength());
+		buffer.putInt(data.getVersion());
+		int[] unusedBytes = data.getUnusedBytes();
+		for (int i = 0; i < 5; i++)
+			buffer.putInt(((unusedBytes != null) && (i < unusedBytes.length)) ? unusedBytes[i] : 0);
+		putDoubles(buffer, data.getMBR(), 4);
+		putDoubles(buffer, data.getZBounds(), 2);
+		putDoubles(buffer, data.getMBounds(), 2);
+
+		// THE SHAPES
+		buffer.putInt(numShapes);
+		buffer.putInt(numLevels);
+		for (int i = 0; i < numShapes; i++)
+			buffer.putInt(data.getShape(i).getRecordNumber());
+		for (int i = 0; i < numShapes; i++)
+			buffer.putInt(data.getShape(i).getRecordLength());
+		for (int i = 0; i < numShapes; i++)
+			buffer.putInt((polys[i] == null) ? 0 : polys[i].getNumBytes());
+		for (int i = 0; i < numShapes; i++)
+			putDoubles(buffer, data.getShapeBoundingBox(i), 4);
+
+		// AND EACH LEVEL
+		for (int level = 0; level < numLevels; level++)
+		{
+			buffer.putInt(totalParts[level]);
+			buffer.putInt(totalPoints[level]);
+			int start = 0;
+			for (int i = 0; i < numShapes; i++)
+			{
+				buffer.putInt(start);
+				start += (polys[i] == null) ? 0 : polys[i].getNumParts();
+			}
+			buffer.putInt(start);
+			start = 0;
+			for (int i = 0; i < numShapes; i++)
+			{
+				buffer.putInt(start);
+				start += (polys[i] == null) ? 0 : getXPoints(polys[i], level).length;
+			}
+			buffer.putInt(start);
+			for (int i = 0; i < numShapes; i++)
+			{
+				if (polys[i] != null)
+				{
+					int[] parts = (level == 0) ? polys[i].getParts() : polys[i].getDetailParts(level - 1);
+					for (int j = 0; j < polys[i].getNumParts(); j++)
+						buffer.putInt(parts[j]);
+				}
+			}
+			for (int i = 0; i < numShapes; i++)
+			{
+				if (polys[i] != null)
+					putDoubles(buffer, getXPoints(polys[i], level), getXPoints(polys[i], level).length);
+			}
+			for (int i = 0; i < numShapes; i++)
+			{
+				if (polys[i] != null)
+					putDoubles(buffer, getYPoints(polys[i], level), getYPoints(polys[i], level).length);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * This helper method makes the shape at index from the buffer.
+	 */
+	private SHPShape makeShape(int index)
+	{
+		int[][] levelParts = new int[numLevels][];
+		double[][] levelX = new double[numLevels][];
+		double[][] levelY = new double[numLevels][];
+		for (int level = 0; level < numLevels; level++)
+		{
+			int partStart = buffer.getInt(partStartsPositions[level] + (index * 4));
+			int numParts = buffer.getInt(partStartsPositions[level] + ((index + 1) * 4)) - partStart;
+			int pointStart = buffer.getInt(pointStartsPositions[level] + (index * 4));
+			int numPoints = buffer.getInt(pointStartsPositions[level] + ((index + 1) * 4)) - pointStart;
+			levelParts[level] = getInts(partsPositions[level] + (partStart * 4), numParts);
+			levelX[level] = getDoubles(xPointsPositions[level] + (pointStart * 8), numPoints);
+			levelY[level] = getDoubles(yPointsPositions[level] + (pointStart * 8), numPoints);
+		}
+
+		// WHICH IS IT? POLYLINE OR POLYGON?
+		int numBytes = buffer.getInt(numBytesPosition + (index * 4));
+		SHPPolyType poly;
+		if (getShapeType() == SHPDataLoader.POLYLINE)
+			poly = new SHPPolyline(boundingBoxes[index], numBytes, levelParts[0].length, levelX[0].length, levelParts[0], levelX[0], levelY[0]);
+		else
+			poly = new SHPPolygon(boundingBoxes[index], numBytes, levelParts[0].length, levelX[0].length, levelParts[0], levelX[0], levelY[0]);
+
+		// THE LEVELS OF DETAIL COME AFTER THE FULL POINTS
+		if (numLevels > 1)
+		{
+			int[][] detailParts = new int[numLevels - 1][];
+			double[][] detailX = new double[numLevels - 1][];
+			double[][] detailY = new double[numLevels - 1][];
+			System.arraycopy(levelParts, 1, detailParts, 0, numLevels - 1);
+			System.arraycopy(levelX, 1, detailX, 0, numLevels - 1);
+			System.arraycopy(levelY, 1, detailY, 0, numLevels - 1);
+			poly.setDetailLevels(detailParts, detailX, detailY);
+		}
+		poly.setRecordNumber(buffer.getInt(recordNumbersPosition + (index * 4)));
+		poly.setRecordLength(buffer.getInt(recordLengthsPosition + (index * 4)));
+		if (fillColors[index] != null)
+			poly.setFillColor(fillColors[index]);
+		return poly;
+	}
+
+	/**
+	 * This helper method copies count ints found at position in the buffer.
+	 */
+	private int[] getInts(int position, int count)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.order(ByteOrder.LITTLE_ENDIAN);
+		view.position(position);
+		int[] ints = new int[count];
+		view.asIntBuffer().get(ints);
+		return ints;
+	}
+
+	/**
+	 * This helper method copies count doubles found at position in the buffer.
+	 */
+	private double[] getDoubles(int position, int count)
+	{
+		ByteBuffer view = buffer.duplicate();
+		view.order(ByteOrder.LITTLE_ENDIAN);
+		view.position(position);
+		double[] doubles = new double[count];
+		view.asDoubleBuffer().get(doubles);
+		return doubles;
+	}
+
+	/**
+	 * This helper method puts count doubles into buffer, using 0
+	 * for any that values doesn't have.
+	 */
+	private static void putDoubles(ByteBuffer buffer, double[] values, int count)
+	{
+		for (int i = 0; i < count; i++)
+			buffer.putDouble(((values != null) && (i < values.length)) ? values[i] : 0);
+	}
+
+	/**
+	 * These helper methods get the x or y coordinates of poly for the level
+	 * argument, where level 0 is the full points and the rest are the
+	 * levels of detail, in order.
+	 */
+	private static double[] getXPoints(SHPPolyType poly, int level)
+	{
+		if (level == 0)
+			return poly.getXPointsData();
+		return poly.getDetailXPointsData(level - 1);
+	}
+
+	private static double[] getYPoints(SHPPolyType poly, int level)
+	{
+		if (level == 0)
+			return poly.getYPointsData();
+		return poly.getDetailYPointsData(level - 1);
+	}
+}
@@ -1,8 +1,11 @@
 package shp_framework;
 
+import java.awt.Color;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.Vector;
 import shp_framework.geometry.SHPShape;
+import shp_framework.geometry.SHPSimplifier;
 /**
  * SHPData - This class stores all of the geometric data for a given map. Note
  * that a map is made up of shapes, each of which may have many parts. Note that
@@ -27,6 +30,9 @@ public class SHPData
 	private double[] zBounds;
 	private double[] mBounds;
 
+	// THIS HELPS US QUICKLY FIND SHAPES BY LOCATION, IT'S BUILT WHEN FIRST NEEDED
+	private SHPSpatialIndex spatialIndex;
+
 	/**
 	 * This constructor just sets up our shapes data structure. The geometric
 	 * data will be loaded and unloaded as needed.
@@ -42,27 +48,132 @@ public class SHPData
 	public double[]				getMBounds()		{ return mBounds;			}
 	public double[]				getMBR()			{ return mbr;				}
 	public SHPShape 			getShape(int index)	{ return shapes.get(index);	}
+	public int					getNumShapes()		{ return shapes.size();		}
 	public int					getShapeType()		{ return shapeType;			}
 	public Vector<SHPShape> 	getShapes()			{ return shapes; 			}
 	public int[]				getUnusedBytes()	{ return unusedBytes;		}
 	public int					getVersion()		{ return version;			}
 	public double[]				getZBounds()		{ return zBounds;			}
 
+	/**
+	 * Accessor method for the bounding box of the shape at index. Note
+	 * that this may be used without the shape itself being loaded.
+	 */
+	public double[] getShapeBoundingBox(int index)
+	{
+		return shapes.get(index).getBoundingBox();
+	}
+
+	/**
+	 * Accessor method for the spatial index of this map's shapes, which
+	 * is built the first time it's needed.
+	 */
+	public synchronized SHPSpatialIndex getSpatialIndex()
+	{
+		if (spatialIndex == null)
+			spatialIndex = new SHPSpatialIndex(this);
+		return spatialIndex;
+	}
+
+	/**
+	 * This method finds the shapes whose bounding boxes contain the (x, y)
+	 * point, in geographic coordinates, putting their indices into results.
+	 * Note that the shapes themselves must still be tested to see if the
+	 * point is actually inside them.
+	 */
+	public void findShapes(double x, double y, SHPIndexResults results)
+	{
+		getSpatialIndex().search(x, y, results);
+	}
+
+	/**
+	 * This method finds the shapes whose bounding boxes overlap the region
+	 * argument, in geographic coordinates, putting their indices into results.
+	 */
+	public void findShapes(	double minX, double minY,
+							double maxX, double maxY,
+							SHPIndexResults results)
+	{
+		getSpatialIndex().search(minX, minY, maxX, maxY, results);
+	}
+
+	/**
+	 * Releases whatever file this data is read from, after which shapes
+	 * that haven't been read yet can't be used. All the shapes of plain
+	 * SHPData are already in memory, so there's nothing to release, but
+	 * subclasses that read shapes as needed override this.
+	 */
+	public void close() throws IOException
+	{
+	}
+
+	/**
+	 * This method estimates how many bytes of memory this map takes up,
+	 * which is what's used for deciding how many maps may be kept loaded.
+	 * Note that only what's actually in memory is counted, so for maps whose
+	 * shapes are loaded as needed this is only the shapes loaded so far.
+	 */
+	public long estimateHeapBytes()
+	{
+		long numBytes = estimateShapesHeapBytes();
+		synchronized(this)
+		{
+			if (spatialIndex != null)
+				numBytes += spatialIndex.estimateHeapBytes();
+		}
+		return numBytes;
+	}
+
+	/**
+	 * This method estimates how many bytes of memory the shapes take up,
+	 * along with whatever else is kept for them, like their bounding boxes.
+	 * Subclasses that don't keep all the shapes should override it.
+	 */
+	protected long estimateShapesHeapBytes()
+	{
+		long numBytes = 16 + (shapes.size() * 4L);
+		Iterator<SHPShape> it = shapes.iterator();
+		while (it.hasNext())
+			numBytes += it.next().estimateHeapBytes();
+		return numBytes;
+	}
+
+	/**
+	 * This method makes the simplified copies of all the shapes that are
+	 * rendered instead of them when zoomed out, see SHPSimplifier.
+	 */
+	public void buildDetailLevels()
+	{
+		new SHPSimplifier().simplify(shapesIterator());
+	}
+
 	// ITERATOR - FOR GOING THROUGH ALL THE SHAPES ONE AT A TIME	
 	public Iterator<SHPShape> shapesIterator()
 	{
 		return shapes.iterator();
 	}
 
-	// MUTATOR METHODS
-	public void addShape(SHPShape shapeToAdd)
+	// MUTATOR METHODS - THESE THROW OUT THE SPATIAL INDEX, SO THEY HOLD
+	// THE SAME LOCK AS getSpatialIndex, WHICH MIGHT BE BUILDING IT
+	public synchronized void addShape(SHPShape shapeToAdd)
 	{
 		shapes.add(shapeToAdd);
+		spatialIndex = null;
 	}
 
-	public void setShapes(Vector<SHPShape> initShapes)
+	public synchronized void setShapes(Vector<SHPShape> initShapes)
 	{
 		shapes = initShapes;
+		spatialIndex = null;
+	}
+
+	/**
+	 * Sets the fill color of the shape at index. Note that this may be
+	 * used without the shape itself being loaded.
+	 */
+	public void setShapeFillColor(int index, Color initFillColor)
+	{
+		shapes.get(index).setFillColor(initFillColor);
 	}
 	
 	public void setFileCode(int initFileCode)
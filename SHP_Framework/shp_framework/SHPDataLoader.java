@@ -5,11 +5,21 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import shp_framework.geometry.SHPPolyType;
 import shp_framework.geometry.SHPPolygon;
 import shp_framework.geometry.SHPPolyline;
+import shp_framework.geometry.SHPShape;
 /**
  * SHPDataLoader - This class can be used to load shapefiles (.shp). 
  * Provided with a File, this method reads, constructs and builds SHPMap 
@@ -39,9 +49,32 @@ public class SHPDataLoader
 	public static final int MULTIPOINTM = 28;
 	public static final int MULTIPATCH = 31;
 
+	// SHAPEFILES WITH A .shx INDEX AND AT LEAST THIS MANY SHAPES ARE
+	// DECODED IN PARALLEL, SINCE THE INDEX SAYS WHERE EVERY SHAPE IS
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 10000;
+
+	// WHEN DECODING IN PARALLEL, THE SHAPES ARE SPLIT UP INTO
+	// PIECES OF AT MOST THIS MANY FOR EACH TASK
+	public static final int SHAPES_PER_TASK = 512;
+
 	// THIS IS A SILLY UTILITY VARIABLE USED FOR MASKING
 	private long[] longMasks;
 
+	// IF TRUE, SHAPEFILES ARE READ BY MEMORY MAPPING THEM RATHER
+	// THAN THROUGH A STREAM
+	private boolean memoryMapped;
+
+	// SHAPEFILES AT LEAST THIS MANY BYTES LONG THAT HAVE A .shx INDEX
+	// ARE LOADED LAZILY, MEANING SHAPES ARE ONLY READ WHEN NEEDED
+	private long lazyLoadingThreshold;
+
+	// SHAPEFILES WITH AN INDEX AND AT LEAST THIS MANY
+	// SHAPES ARE DECODED IN PARALLEL
+	private int parallelThreshold;
+
+	// WE'LL RECYCLE THIS FOR BULK READING POINTS WHEN MEMORY MAPPED
+	private double[] pointsBuffer;
+
 	/**
 	 * This constructor only initializes the mask. This loader class
 	 * is used more for functionality than for storing data.
@@ -49,7 +82,19 @@ public class SHPDataLoader
 	public SHPDataLoader()
 	{
 		longMasks = initLongMasks();
+		memoryMapped = false;
+		lazyLoadingThreshold = Long.MAX_VALUE;
+		parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+		pointsBuffer = new double[0];
 	}
+
+	// ACCESSOR AND MUTATOR METHODS FOR THE LOADING MODES
+	public boolean	isMemoryMapped()							{ return memoryMapped;					}
+	public long		getLazyLoadingThreshold()					{ return lazyLoadingThreshold;			}
+	public int		getParallelThreshold()						{ return parallelThreshold;				}
+	public void		setMemoryMapped(boolean initMemoryMapped)	{ memoryMapped = initMemoryMapped;		}
+	public void		setLazyLoadingThreshold(long initThreshold)	{ lazyLoadingThreshold = initThreshold;	}
+	public void		setParallelThreshold(int initThreshold)		{ parallelThreshold = initThreshold;	}
 	
 	/**
 	 * This method takes a file that represents a shapefile as an
@@ -57,11 +102,78 @@ public class SHPDataLoader
 	 */	
 	public SHPMap loadShapefile(File shapeFile) throws IOException
 	{
-		SHPData data = loadShapefileData(shapeFile);
+		// BIG FILES WITH AN INDEX ARE BETTER OFF LOADED LAZILY
+		File indexFile = findIndexFile(shapeFile);
+		if ((shapeFile.length() >= lazyLoadingThreshold) && (indexFile != null))
+			return loadShapefileLazily(shapeFile);
+
+		// AND FILES WITH AN INDEX AND LOTS OF SHAPES ARE
+		// QUICKER TO DECODE A PIECE AT A TIME IN PARALLEL
+		SHPData data;
+		if ((indexFile != null) && (SHPRecordIndex.countRecords(indexFile) >= parallelThreshold))
+			data = loadShapefileDataInParallel(shapeFile, indexFile);
+		else if (memoryMapped)
+			data = loadMappedShapefileData(shapeFile);
+		else
+			data = loadShapefileData(shapeFile);
+
+		// BUILD THE SPATIAL INDEX AND THE SIMPLIFIED SHAPES
+		// NOW SO THEY'RE READY WHEN THE MAP IS USED
+		data.getSpatialIndex();
+		data.buildDetailLevels();
 		SHPMap shapefile = new SHPMap(shapeFile.getName(), data);
 		return shapefile;
 	}
 	
+	/**
+	 * This method returns an SHPMap for the shapeFile argument whose shapes
+	 * are only read from the file when they are first used. Only the file
+	 * header and the bounding box of each shape are read right away. Note
+	 * that the shapefile's .shx index must be in the same directory.
+	 */
+	public SHPMap loadShapefileLazily(File shapeFile) throws IOException
+	{
+		File indexFile = findIndexFile(shapeFile);
+		if (indexFile == null)
+			throw new FileNotFoundException("No .shx index found for " + shapeFile);
+
+		// FIRST READ ALL THE RECORD LOCATIONS FROM THE INDEX
+		SHPRecordIndex recordIndex = new SHPRecordIndex(indexFile);
+
+		// THEN SETUP THE DATA, WHICH KEEPS THE SHAPEFILE OPEN
+		SHPFileMapping mapping = new SHPFileMapping(shapeFile);
+		try
+		{
+			LazySHPData data = new LazySHPData(mapping, recordIndex.getRecordOffsets(), recordIndex.getRecordLengths());
+			loadMappedHeader(mapping.region(0, 100), data);
+			data.getSpatialIndex();
+			return new SHPMap(shapeFile.getName(), data);
+		}
+		catch(IOException ioe)
+		{
+			mapping.close();
+			throw ioe;
+		}
+	}
+
+	/**
+	 * This method returns the .shx index file that goes with the
+	 * shapeFile argument, or null if there isn't one.
+	 */
+	public static File findIndexFile(File shapeFile)
+	{
+		String name = shapeFile.getName();
+		int dotIndex = name.lastIndexOf('.');
+		String baseName = (dotIndex < 0) ? name : name.substring(0, dotIndex);
+		File lowerCase = new File(shapeFile.getParentFile(), baseName + ".shx");
+		if (lowerCase.exists())
+			return lowerCase;
+		File upperCase = new File(shapeFile.getParentFile(), baseName + ".SHX");
+		if (upperCase.exists())
+			return upperCase;
+		return null;
+	}
+
 	/**
 	 * This method loads all the shapefile data found in shapeFile
 	 * into an SHPData object that is then returned. Note again, that
@@ -148,6 +260,288 @@ public class SHPDataLoader
 		return shapefileData;
 	}
 
+	/**
+	 * This method loads all the shapefile data found in shapeFile into
+	 * an SHPData object just like loadShapefileData, except that it does
+	 * so by memory mapping the file, which lets the operating system do
+	 * the reading and lets us pull little endian data straight out of it.
+	 * This also works for files larger than 2 GB.
+	 */
+	private SHPData loadMappedShapefileData(File shapeFile) throws IOException
+	{
+		// THIS IS WHERE WE'LL LOAD THE DATA INTO
+		SHPData shapefileData = new SHPData();
+		SHPFileMapping mapping = new SHPFileMapping(shapeFile);
+		try
+		{
+			// THE FIRST 100 BYTES ARE THE FILE HEADER
+			ByteBuffer header = mapping.region(0, 100);
+			int shapeType = loadMappedHeader(header, shapefileData);
+
+			// FILE LENGTH IS IN 16-BIT WORDS, WE'LL CONVERT IT
+			// TO BYTES TO FIGURE OUT WHEN WE'VE READ ALL DATA
+			long fileLength = Math.min((shapefileData.getFileLength() & 0xffffffffL) * 2, mapping.getFileSize());
+			long position = 100;
+			while (position + 8 <= fileLength)
+			{
+				// THE RECORD HEADER IS BIG ENDIAN
+				ByteBuffer recordHeader = mapping.region(position, 8);
+				recordHeader.order(ByteOrder.BIG_ENDIAN);
+				int recordNumber = recordHeader.getInt();
+				int recordLength = recordHeader.getInt();
+
+				// BUT THE RECORD ITSELF IS LITTLE ENDIAN
+				ByteBuffer recordBody = mapping.region(position + 8, recordLength * 2);
+				SHPPolyType poly = extractPolyType(recordBody, shapeType);
+				shapefileData.addShape(poly);
+				poly.setRecordNumber(recordNumber);
+				poly.setRecordLength(recordLength);
+				position += 8 + (recordLength * 2L);
+			}
+		}
+		finally
+		{
+			mapping.close();
+		}
+		return shapefileData;
+	}
+
+	/**
+	 * This method loads all the shapefile data found in shapeFile into an
+	 * SHPData object just like loadMappedShapefileData, except that it uses
+	 * the .shx index found in indexFile to know where every shape is, so
+	 * the shapes can be split up into pieces that are decoded at the same
+	 * time on the common fork join pool. Each shape is put in its place in
+	 * an array sized for all of them, so they end up in the file's order.
+	 */
+	private SHPData loadShapefileDataInParallel(File shapeFile, File indexFile) throws IOException
+	{
+		SHPRecordIndex recordIndex = new SHPRecordIndex(indexFile);
+		SHPData shapefileData = new SHPData();
+		SHPFileMapping mapping = new SHPFileMapping(shapeFile);
+		try
+		{
+			int shapeType = loadMappedHeader(mapping.region(0, 100), shapefileData);
+			SHPShape[] shapes = new SHPShape[recordIndex.getNumRecords()];
+			LoadShapesTask task = new LoadShapesTask(mapping, recordIndex, shapeType, shapes, 0, shapes.length);
+			try
+			{
+				ForkJoinPool.commonPool().invoke(task);
+			}
+			catch(UncheckedIOException uioe)
+			{
+				throw uioe.getCause();
+			}
+			shapefileData.setShapes(new Vector<SHPShape>(Arrays.asList(shapes)));
+		}
+		finally
+		{
+			mapping.close();
+		}
+		return shapefileData;
+	}
+
+	/**
+	 * This task decodes the shapes from firstShape up to lastShape, splitting
+	 * them up into smaller tasks if there are more than SHAPES_PER_TASK.
+	 * Since extractPolyType reuses a buffer, each piece gets its own loader,
+	 * and each piece maps just the part of the file its records are in, so
+	 * the pieces never wait on each other for the mapping's window.
+	 */
+	private static class LoadShapesTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private SHPFileMapping mapping;
+		private SHPRecordIndex recordIndex;
+		private int shapeType;
+		private SHPShape[] shapes;
+		private int firstShape;
+		private int lastShape;
+
+		public LoadShapesTask(	SHPFileMapping initMapping, SHPRecordIndex initRecordIndex,
+								int initShapeType, SHPShape[] initShapes,
+								int initFirstShape, int initLastShape)
+		{
+			mapping = initMapping;
+			recordIndex = initRecordIndex;
+			shapeType = initShapeType;
+			shapes = initShapes;
+			firstShape = initFirstShape;
+			lastShape = initLastShape;
+		}
+
+		protected void compute()
+		{
+			// TOO MANY SHAPES? THEN SPLIT THEM UP
+			if ((lastShape - firstShape) > SHAPES_PER_TASK)
+			{
+				int middleShape = (firstShape + lastShape) >>> 1;
+				invokeAll(	new LoadShapesTask(mapping, recordIndex, shapeType, shapes, firstShape, middleShape),
+							new LoadShapesTask(mapping, recordIndex, shapeType, shapes, middleShape, lastShape));
+			}
+			else
+			{
+				try
+				{
+					loadShapes();
+				}
+				catch(IOException ioe)
+				{
+					throw new UncheckedIOException(ioe);
+				}
+			}
+		}
+
+		/**
+		 * This helper method decodes this task's shapes into the shapes array.
+		 */
+		private void loadShapes() throws IOException
+		{
+			if (firstShape >= lastShape)
+				return;
+
+			// FIND WHERE IN THE FILE OUR RECORDS ARE. IF THEY'RE TOO SPREAD
+			// OUT TO MAP AT ONCE, WHICH ONLY A STRANGE .shx WOULD DO, WE'LL
+			// HAVE TO GO THROUGH THE SHARED WINDOW INSTEAD
+			long sliceStart = Long.MAX_VALUE;
+			long sliceEnd = 0;
+			for (int i = firstShape; i < lastShape; i++)
+			{
+				long recordOffset = recordIndex.getRecordOffset(i);
+				sliceStart = Math.min(sliceStart, recordOffset);
+				sliceEnd = Math.max(sliceEnd, recordOffset + 8 + (recordIndex.getRecordLength(i) * 2L));
+			}
+			ByteBuffer slice = null;
+			if ((sliceEnd - sliceStart) <= Integer.MAX_VALUE)
+				slice = mapping.map(sliceStart, (int)(sliceEnd - sliceStart));
+
+			SHPDataLoader loader = new SHPDataLoader();
+			for (int i = firstShape; i < lastShape; i++)
+			{
+				// THE RECORD HEADER IS BIG ENDIAN
+				long recordOffset = recordIndex.getRecordOffset(i);
+				int recordLength = recordIndex.getRecordLength(i);
+				ByteBuffer recordHeader = region(slice, sliceStart, recordOffset, 8);
+				recordHeader.order(ByteOrder.BIG_ENDIAN);
+				int recordNumber = recordHeader.getInt();
+
+				// BUT THE RECORD ITSELF IS LITTLE ENDIAN
+				ByteBuffer recordBody = region(slice, sliceStart, recordOffset + 8, recordLength * 2);
+				SHPPolyType poly = loader.extractPolyType(recordBody, shapeType);
+				poly.setRecordNumber(recordNumber);
+				poly.setRecordLength(recordLength);
+				shapes[i] = poly;
+			}
+		}
+
+		/**
+		 * This helper method gets the length bytes at position in the file,
+		 * out of slice, which was mapped from sliceStart, if there is one.
+		 */
+		private ByteBuffer region(ByteBuffer slice, long sliceStart, long position, int length) throws IOException
+		{
+			if (slice == null)
+				return mapping.region(position, length);
+			return SHPFileMapping.slice(slice, (int)(position - sliceStart), length);
+		}
+	}
+
+	/**
+	 * This helper method reads the 100 byte shapefile header found in the
+	 * header buffer argument into shapefileData, returning the shape type.
+	 * Note that the file header is partly big and partly little endian.
+	 */
+	int loadMappedHeader(ByteBuffer header, SHPData shapefileData)
+	{
+		// GET THE FILE CODE, IT SHOULD BE 0x0000270a
+		header.order(ByteOrder.BIG_ENDIAN);
+		shapefileData.setFileCode(header.getInt());
+
+		// NOW 5 UNUSED INTS (20 BYTES)
+		int[] unusedBytes = new int[5];
+		for (int i = 0; i < 5; i++)
+			unusedBytes[i] = header.getInt();
+		shapefileData.setUnusedBytes(unusedBytes);
+
+		// FILE LENGTH
+		shapefileData.setFileLength(header.getInt());
+
+		// EVERYTHING ELSE IS LITTLE ENDIAN
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		shapefileData.setVersion(header.getInt());
+		int shapeType = header.getInt();
+		shapefileData.setShapeType(shapeType);
+
+		// MBR - Minimum Bounding Rectangle
+		shapefileData.setMBR(extract2DBoundingBox(header));
+
+		// Z AND M BOUNDS
+		double[] zBounds = new double[2];
+		zBounds[0] = header.getDouble();
+		zBounds[1] = header.getDouble();
+		shapefileData.setZBounds(zBounds);
+		double[] mBounds = new double[2];
+		mBounds[0] = header.getDouble();
+		mBounds[1] = header.getDouble();
+		shapefileData.setMBounds(mBounds);
+		return shapeType;
+	}
+
+	/**
+	 * This helper method gets the bounding box data from a little
+	 * endian buffer positioned at the start of it.
+	 */
+	public double[] extract2DBoundingBox(ByteBuffer buffer)
+	{
+		double[] boundingBox = new double[4];
+		buffer.asDoubleBuffer().get(boundingBox);
+		buffer.position(buffer.position() + 32);
+		return boundingBox;
+	}
+
+	/**
+	 * This method loads a poly type from a little endian buffer containing
+	 * just the record's body, like extractPolyType does for streams. Note
+	 * that the points are bulk read through a DoubleBuffer view rather than
+	 * one at a time.
+	 */
+	public SHPPolyType extractPolyType(ByteBuffer body, int shapeType)
+	{
+		// THE FIRST 44 BYTES
+		int verifyShapeType = body.getInt();
+		double[] boundingBox = extract2DBoundingBox(body);
+		int numParts = body.getInt();
+		int numPoints = body.getInt();
+		int numBytes = 44 + (numParts * 4) + (numPoints * 16);
+
+		// PARTS MAY BE COUNTRIES OR STATES OR COUNTIES
+		int[] parts = new int[numParts];
+		body.asIntBuffer().get(parts);
+		body.position(body.position() + (numParts * 4));
+
+		// THE POINTS ARE STORED AS X,Y PAIRS, SO WE'LL READ THEM ALL
+		// AT ONCE AND THEN SPLIT THEM UP
+		int numCoordinates = numPoints * 2;
+		if (pointsBuffer.length < numCoordinates)
+			pointsBuffer = new double[numCoordinates];
+		DoubleBuffer points = body.asDoubleBuffer();
+		points.get(pointsBuffer, 0, numCoordinates);
+		double[] pointsX = new double[numPoints];
+		double[] pointsY = new double[numPoints];
+		for (int j = 0; j < numPoints; j++)
+		{
+			pointsX[j] = pointsBuffer[j*2];
+			pointsY[j] = pointsBuffer[(j*2) + 1];
+		}
+
+		// WHICH IS IT? POLYLINE OR POLYGON?
+		if (shapeType == POLYLINE)
+			return new SHPPolyline(boundingBox, numBytes, numParts, numPoints, parts, pointsX, pointsY);
+		else
+			return new SHPPolygon(boundingBox, numBytes, numParts, numPoints, parts, pointsX, pointsY);
+	}
+
 	/**
 	 * This helper method gets the bounding box data from the
 	 * shapefile via the input stream argument and uses it to
@@ -0,0 +1,120 @@
+package shp_framework;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * SHPFileMapping - This class provides memory mapped access to a shapefile
+ * (or its .shx index). Since a single mapping can't be larger than 2 GB,
+ * the file is mapped one window at a time, with a new window being mapped
+ * whenever a region is asked for that isn't inside the current one. Reading
+ * through a file from front to back thus only maps each part of it once.
+ * Windows start on a WINDOW_ALIGNMENT boundary, so going back a little,
+ * like when records are read in .shx order, usually stays in the window.
+ */
+class SHPFileMapping
+{
+	// THE MOST OF THE FILE WE'LL MAP AT ONCE
+	public static final long WINDOW_SIZE = 1L << 30;
+
+	// AND WHERE A WINDOW MAY START, IT'S ALWAYS A MULTIPLE OF THIS
+	public static final long WINDOW_ALIGNMENT = 1L << 26;
+
+	// THE FILE WE'RE MAPPING
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private long fileSize;
+
+	// AND THE PART OF IT THAT'S CURRENTLY MAPPED
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long windowEnd;
+
+	/**
+	 * This constructor opens the file, but doesn't map any of it
+	 * until a region is first asked for.
+	 */
+	public SHPFileMapping(File fileToMap) throws IOException
+	{
+		file = new RandomAccessFile(fileToMap, "r");
+		channel = file.getChannel();
+		fileSize = channel.size();
+	}
+
+	// ACCESSOR METHOD
+	public long getFileSize()	{ return fileSize;	}
+
+	/**
+	 * This method returns a buffer containing just the length bytes found
+	 * at position in the file. The returned buffer is little endian, since
+	 * that's what most shapefile data is, and is independent of any other
+	 * buffer returned by this method, so it may be used by other threads.
+	 */
+	public synchronized ByteBuffer region(long position, int length) throws IOException
+	{
+		if ((position < 0) || (length < 0) || (position + length > fileSize))
+			throw new EOFException("Region " + position + "+" + length + " is past the end of the file");
+
+		// DO WE NEED TO MAP A NEW WINDOW?
+		if ((window == null) || (position < windowStart) || (position + length > windowEnd))
+		{
+			// START AT THE BOUNDARY BEFORE THE REGION, BUT STILL COVER ALL OF IT
+			long start = position - (position % WINDOW_ALIGNMENT);
+			long size = Math.min(Math.max(WINDOW_SIZE, position + length - start), fileSize - start);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+			windowStart = start;
+			windowEnd = start + size;
+		}
+
+		// NOW CUT OUT JUST WHAT WAS ASKED FOR
+		return slice(window, (int)(position - windowStart), length);
+	}
+
+	/**
+	 * This method maps the length bytes found at position in the file on
+	 * their own, without touching the current window, so it doesn't need
+	 * to lock. This is for a thread that will read lots of regions close
+	 * together, like a task decoding a run of records, which can then cut
+	 * them out of the returned buffer with slice. The buffer is little
+	 * endian, like those returned by region.
+	 */
+	public ByteBuffer map(long position, int length) throws IOException
+	{
+		if ((position < 0) || (length < 0) || (position + length > fileSize))
+			throw new EOFException("Region " + position + "+" + length + " is past the end of the file");
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	/**
+	 * This method returns a little endian buffer containing just the length
+	 * bytes found at start in the buffer argument, without changing it.
+	 */
+	public static ByteBuffer slice(ByteBuffer buffer, int start, int length)
+	{
+		ByteBuffer region = buffer.duplicate();
+		region.limit(start + length);
+		region.position(start);
+		region = region.slice();
+		region.order(ByteOrder.LITTLE_ENDIAN);
+		return region;
+	}
+
+	/**
+	 * Closes the file. Note that buffers already returned by region
+	 * remain usable.
+	 */
+	public void close() throws IOException
+	{
+		window = null;
+		channel.close();
+		file.close();
+	}
+}
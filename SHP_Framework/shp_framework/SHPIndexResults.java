@@ -0,0 +1,43 @@
+package shp_framework;
+
+/**
+ * SHPIndexResults - This class collects the indices of the shapes found
+ * by an SHPSpatialIndex search. It's meant to be recycled from search to
+ * search, so it only ever grows, and clearing it doesn't free anything.
+ */
+public class SHPIndexResults
+{
+	// THE SHAPE INDICES FOUND, IN NO PARTICULAR ORDER
+	private int[] shapeIndices;
+	private int size;
+
+	/**
+	 * This constructor sets up an empty results list.
+	 */
+	public SHPIndexResults()
+	{
+		shapeIndices = new int[16];
+		size = 0;
+	}
+
+	// ACCESSOR METHODS
+	public int	getSize()			{ return size;					}
+	public int	get(int index)		{ return shapeIndices[index];	}
+
+	// MUTATOR METHODS
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public void add(int shapeIndex)
+	{
+		if (size == shapeIndices.length)
+		{
+			int[] biggerArray = new int[shapeIndices.length * 2];
+			System.arraycopy(shapeIndices, 0, biggerArray, 0, size);
+			shapeIndices = biggerArray;
+		}
+		shapeIndices[size++] = shapeIndex;
+	}
+}
@@ -0,0 +1,65 @@
+package shp_framework;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * SHPLoaderBenchmark - This little program times how long it takes to load
+ * shapefiles with each of the SHPDataLoader loading modes. Provide it the
+ * .shp files to time as arguments, like a national county-level map and
+ * a precinct-level map. Note that the parallel mode needs each file's .shx.
+ */
+public class SHPLoaderBenchmark
+{
+	// EACH FILE IS LOADED THIS MANY TIMES PER MODE, AFTER
+	// ONE WARM UP LOAD, AND THE BEST TIME IS REPORTED
+	public static final int NUM_RUNS = 5;
+
+	/**
+	 * Loads each file argument with each mode and prints the timings.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length == 0)
+		{
+			System.out.println("Usage: SHPLoaderBenchmark file1.shp [file2.shp ...]");
+			return;
+		}
+		for (int i = 0; i < args.length; i++)
+		{
+			File shapeFile = new File(args[i]);
+			double streamTime = timeLoading(shapeFile, false, false);
+			double mappedTime = timeLoading(shapeFile, true, false);
+			System.out.printf("%s (%d bytes): stream %.1f ms, mapped %.1f ms, %.1fx%n",
+					shapeFile.getName(), shapeFile.length(),
+					streamTime, mappedTime, streamTime/mappedTime);
+			if (SHPDataLoader.findIndexFile(shapeFile) != null)
+			{
+				double parallelTime = timeLoading(shapeFile, true, true);
+				System.out.printf("%s: parallel %.1f ms, %.1fx%n",
+						shapeFile.getName(), parallelTime, streamTime/parallelTime);
+			}
+		}
+	}
+
+	/**
+	 * Helper method that returns the best time in milliseconds that it took
+	 * to load shapeFile using the memoryMapped mode, decoding in parallel
+	 * if the parallel argument is true.
+	 */
+	private static double timeLoading(File shapeFile, boolean memoryMapped, boolean parallel) throws IOException
+	{
+		SHPDataLoader loader = new SHPDataLoader();
+		loader.setMemoryMapped(memoryMapped);
+		loader.setParallelThreshold(parallel ? 0 : Integer.MAX_VALUE);
+		loader.loadShapefile(shapeFile);
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < NUM_RUNS; i++)
+		{
+			long start = System.nanoTime();
+			loader.loadShapefile(shapeFile);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best/1000000.0;
+	}
+}
@@ -43,6 +43,15 @@ public class SHPMap
 		return shapefileData.shapesIterator();
 	}
 
+	/**
+	 * This method finds the shapes whose bounding boxes contain the (x, y)
+	 * point, in geographic coordinates, putting their indices into results.
+	 */
+	public void findShapes(double x, double y, SHPIndexResults results)
+	{
+		shapefileData.findShapes(x, y, results);
+	}
+
 	// MUTATOR METHOD
 	public void setVisible(boolean initVisible)
 	{
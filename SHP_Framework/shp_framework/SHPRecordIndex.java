@@ -0,0 +1,62 @@
+package shp_framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SHPRecordIndex - This class stores what a shapefile's .shx index says
+ * about where each of its records is. Since that lets any record be found
+ * without reading the ones before it, it's what lets shapes be loaded
+ * lazily or decoded in parallel.
+ */
+class SHPRecordIndex
+{
+	// WHERE EACH RECORD IS, IN BYTES FROM THE START OF THE SHAPEFILE,
+	// AND HOW LONG ITS BODY IS, IN 16-BIT WORDS
+	private long[] recordOffsets;
+	private int[] recordLengths;
+
+	/**
+	 * This constructor reads all the record locations from indexFile.
+	 */
+	public SHPRecordIndex(File indexFile) throws IOException
+	{
+		SHPFileMapping indexMapping = new SHPFileMapping(indexFile);
+		try
+		{
+			int numRecords = (int)((indexMapping.getFileSize() - 100) / 8);
+			recordOffsets = new long[numRecords];
+			recordLengths = new int[numRecords];
+			ByteBuffer index = indexMapping.region(100, numRecords * 8);
+			index.order(ByteOrder.BIG_ENDIAN);
+			for (int i = 0; i < numRecords; i++)
+			{
+				// BOTH ARE IN 16-BIT WORDS
+				recordOffsets[i] = (index.getInt() & 0xffffffffL) * 2;
+				recordLengths[i] = index.getInt();
+			}
+		}
+		finally
+		{
+			indexMapping.close();
+		}
+	}
+
+	// ACCESSOR METHODS
+	public int		getNumRecords()				{ return recordOffsets.length;	}
+	public long		getRecordOffset(int index)	{ return recordOffsets[index];	}
+	public int		getRecordLength(int index)	{ return recordLengths[index];	}
+	public long[]	getRecordOffsets()			{ return recordOffsets;			}
+	public int[]	getRecordLengths()			{ return recordLengths;			}
+
+	/**
+	 * This method returns how many records the indexFile argument
+	 * has, without reading it.
+	 */
+	public static int countRecords(File indexFile)
+	{
+		return (int)Math.max(0, (indexFile.length() - 100) / 8);
+	}
+}
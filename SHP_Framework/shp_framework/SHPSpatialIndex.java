@@ -0,0 +1,304 @@
+package shp_framework;
+
+/**
+ * SHPSpatialIndex - This class is an R-tree built over the bounding boxes of
+ * all the shapes in a map, which lets us quickly find just those shapes whose
+ * boxes contain a point, or overlap a region, rather than testing every shape.
+ * The tree is bulk loaded all at once using Sort-Tile-Recursive packing,
+ * which sorts the boxes into vertical slices by their x centers, each slice
+ * by y centers, and then packs them into full nodes, doing the same for each
+ * level of nodes until we get to the root.
+ *
+ * Note that the index doesn't change if shapes are added to the map later,
+ * a new one would have to be built.
+ */
+public class SHPSpatialIndex
+{
+	// THE MOST CHILDREN ANY NODE MAY HAVE
+	public static final int NODE_CAPACITY = 16;
+
+	// THE BOUNDING BOXES OF ALL THE SHAPES, 4 VALUES PER SHAPE
+	// IN THE SAME ORDER AS SHPShape.getBoundingBox()
+	private double[] shapeBoxes;
+
+	// ALL THE NODES, LEAVES FIRST, THEN EACH LEVEL ABOVE
+	// THEM, SO THE ROOT IS THE LAST NODE
+	private double[] nodeBoxes;
+	private int[] firstChild;
+	private int[] numChildren;
+	private int numNodes;
+	private int numLeaves;
+
+	// THE CHILDREN OF THE LEAVES ARE SHAPE INDICES, STORED
+	// HERE SUCH THAT EACH LEAF'S SHAPES ARE TOGETHER
+	private int[] leafEntries;
+
+	/**
+	 * This constructor builds the index for all the shapes in the data
+	 * argument. Note that only the shapes' bounding boxes are used, so
+	 * the shapes of lazily loaded maps don't get loaded.
+	 */
+	public SHPSpatialIndex(SHPData data)
+	{
+		int numShapes = data.getNumShapes();
+		shapeBoxes = new double[numShapes * 4];
+		for (int i = 0; i < numShapes; i++)
+			System.arraycopy(data.getShapeBoundingBox(i), 0, shapeBoxes, i * 4, 4);
+
+		// THERE CAN'T BE MORE NODES THAN THIS
+		int maxNodes = 0;
+		for (int levelSize = numShapes; levelSize > 1; )
+		{
+			levelSize = (levelSize + NODE_CAPACITY - 1) / NODE_CAPACITY;
+			maxNodes += levelSize;
+		}
+		maxNodes = Math.max(maxNodes, 1);
+		nodeBoxes = new double[maxNodes * 4];
+		firstChild = new int[maxNodes];
+		numChildren = new int[maxNodes];
+		numNodes = 0;
+		if (numShapes == 0)
+		{
+			leafEntries = new int[0];
+			return;
+		}
+
+		// FIRST PACK ALL THE SHAPES INTO LEAVES
+		leafEntries = new int[numShapes];
+		for (int i = 0; i < numShapes; i++)
+			leafEntries[i] = i;
+		sortTileRecursive(leafEntries, numShapes, shapeBoxes);
+		int levelStart = 0;
+		for (int i = 0; i < numShapes; i += NODE_CAPACITY)
+			addNode(i, Math.min(NODE_CAPACITY, numShapes - i), leafEntries, shapeBoxes);
+		numLeaves = numNodes;
+
+		// THEN KEEP PACKING EACH LEVEL OF NODES INTO THE
+		// LEVEL ABOVE IT UNTIL THERE'S JUST ONE, THE ROOT
+		while ((numNodes - levelStart) > 1)
+		{
+			int levelSize = numNodes - levelStart;
+			sortLevel(levelStart, levelSize);
+			int nextLevelStart = numNodes;
+			for (int i = 0; i < levelSize; i += NODE_CAPACITY)
+				addNode(levelStart + i, Math.min(NODE_CAPACITY, levelSize - i), null, nodeBoxes);
+			levelStart = nextLevelStart;
+		}
+	}
+
+	// ACCESSOR METHODS
+	public int	getNumShapes()		{ return shapeBoxes.length / 4;	}
+	public int	getNumNodes()		{ return numNodes;				}
+
+	/**
+	 * This method estimates how many bytes of memory the index takes up.
+	 */
+	public long estimateHeapBytes()
+	{
+		return 64 + ((shapeBoxes.length + nodeBoxes.length) * 8L)
+				+ ((firstChild.length + numChildren.length + leafEntries.length) * 4L);
+	}
+
+	/**
+	 * This method finds all the shapes whose bounding boxes contain the
+	 * (x, y) point, which is in geographic coordinates, putting their
+	 * indices into results.
+	 */
+	public void search(double x, double y, SHPIndexResults results)
+	{
+		search(x, y, x, y, results);
+	}
+
+	/**
+	 * This method finds all the shapes whose bounding boxes overlap the
+	 * region argument, which is in geographic coordinates, putting their
+	 * indices into results.
+	 */
+	public void search(	double minX, double minY,
+						double maxX, double maxY,
+						SHPIndexResults results)
+	{
+		results.clear();
+		if (numNodes > 0)
+			search(numNodes - 1, minX, minY, maxX, maxY, results);
+	}
+
+	/**
+	 * Recursive helper method for searching the tree starting at node.
+	 */
+	private void search(int node,
+						double minX, double minY,
+						double maxX, double maxY,
+						SHPIndexResults results)
+	{
+		if (!overlaps(nodeBoxes, node, minX, minY, maxX, maxY))
+			return;
+		int first = firstChild[node];
+		int last = first + numChildren[node];
+
+		// LEAVES HAVE SHAPES FOR CHILDREN
+		if (node < numLeaves)
+		{
+			for (int i = first; i < last; i++)
+			{
+				int shapeIndex = leafEntries[i];
+				if (overlaps(shapeBoxes, shapeIndex, minX, minY, maxX, maxY))
+					results.add(shapeIndex);
+			}
+		}
+		// AND EVERY OTHER NODE HAS NODES
+		else
+		{
+			for (int i = first; i < last; i++)
+				search(i, minX, minY, maxX, maxY, results);
+		}
+	}
+
+	/**
+	 * Helper method for testing whether the box at index in the boxes array
+	 * overlaps the region argument.
+	 */
+	private static boolean overlaps(double[] boxes, int index,
+									double minX, double minY,
+									double maxX, double maxY)
+	{
+		int i = index * 4;
+		return (boxes[i] <= maxX) && (boxes[i+2] >= minX)
+			&& (boxes[i+1] <= maxY) && (boxes[i+3] >= minY);
+	}
+
+	/**
+	 * Helper method that adds a node whose children are the count items
+	 * starting at first, where items maps child positions to indices into
+	 * the itemBoxes array, or is null if they're the same. The new node's
+	 * box surrounds all its children.
+	 */
+	private void addNode(int first, int count, int[] items, double[] itemBoxes)
+	{
+		int node = numNodes++;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = first; i < first + count; i++)
+		{
+			int box = ((items == null) ? i : items[i]) * 4;
+			minX = Math.min(minX, itemBoxes[box]);
+			minY = Math.min(minY, itemBoxes[box+1]);
+			maxX = Math.max(maxX, itemBoxes[box+2]);
+			maxY = Math.max(maxY, itemBoxes[box+3]);
+		}
+		nodeBoxes[node*4] = minX;
+		nodeBoxes[node*4+1] = minY;
+		nodeBoxes[node*4+2] = maxX;
+		nodeBoxes[node*4+3] = maxY;
+		firstChild[node] = first;
+		numChildren[node] = count;
+	}
+
+	/**
+	 * Helper method that puts the levelSize nodes starting at levelStart
+	 * into Sort-Tile-Recursive order, moving them around in the node arrays.
+	 * Note that their children don't move, so this is safe to do before
+	 * any nodes above them exist.
+	 */
+	private void sortLevel(int levelStart, int levelSize)
+	{
+		double[] levelBoxes = new double[levelSize * 4];
+		System.arraycopy(nodeBoxes, levelStart * 4, levelBoxes, 0, levelSize * 4);
+		int[] levelFirstChild = new int[levelSize];
+		System.arraycopy(firstChild, levelStart, levelFirstChild, 0, levelSize);
+		int[] levelNumChildren = new int[levelSize];
+		System.arraycopy(numChildren, levelStart, levelNumChildren, 0, levelSize);
+
+		int[] order = new int[levelSize];
+		for (int i = 0; i < levelSize; i++)
+			order[i] = i;
+		sortTileRecursive(order, levelSize, levelBoxes);
+		for (int i = 0; i < levelSize; i++)
+		{
+			int node = levelStart + i;
+			System.arraycopy(levelBoxes, order[i] * 4, nodeBoxes, node * 4, 4);
+			firstChild[node] = levelFirstChild[order[i]];
+			numChildren[node] = levelNumChildren[order[i]];
+		}
+	}
+
+	/**
+	 * Helper method that orders the count items such that each consecutive
+	 * group of NODE_CAPACITY of them makes for a tight node. Items are first
+	 * sorted by the x centers of their boxes, then cut into vertical slices,
+	 * with each slice sorted by the y centers of its boxes.
+	 */
+	private static void sortTileRecursive(int[] items, int count, double[] itemBoxes)
+	{
+		double[] centersX = new double[itemBoxes.length / 4];
+		double[] centersY = new double[itemBoxes.length / 4];
+		for (int i = 0; i < centersX.length; i++)
+		{
+			centersX[i] = (itemBoxes[i*4] + itemBoxes[i*4+2]) / 2;
+			centersY[i] = (itemBoxes[i*4+1] + itemBoxes[i*4+3]) / 2;
+		}
+		sort(items, 0, count, centersX);
+
+		int numGroups = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int numSlices = (int)Math.ceil(Math.sqrt(numGroups));
+		int sliceSize = numSlices * NODE_CAPACITY;
+		for (int start = 0; start < count; start += sliceSize)
+			sort(items, start, Math.min(start + sliceSize, count), centersY);
+	}
+
+	/**
+	 * Helper method that sorts items from index (inclusive) to index
+	 * (exclusive) by their keys, using quicksort.
+	 */
+	private static void sort(int[] items, int from, int to, double[] keys)
+	{
+		while ((to - from) > 16)
+		{
+			// PARTITION AROUND THE MIDDLE ITEM
+			double pivot = keys[items[(from + to) >>> 1]];
+			int i = from;
+			int j = to - 1;
+			while (i <= j)
+			{
+				while (keys[items[i]] < pivot) i++;
+				while (keys[items[j]] > pivot) j--;
+				if (i <= j)
+				{
+					int temp = items[i];
+					items[i] = items[j];
+					items[j] = temp;
+					i++;
+					j--;
+				}
+			}
+
+			// RECURSE ON THE SMALLER SIDE, LOOP ON THE BIGGER ONE
+			if ((j - from) < (to - i))
+			{
+				sort(items, from, j + 1, keys);
+				from = i;
+			}
+			else
+			{
+				sort(items, i, to, keys);
+				to = j + 1;
+			}
+		}
+
+		// SMALL RANGES ARE FASTER WITH AN INSERTION SORT
+		for (int i = from + 1; i < to; i++)
+		{
+			int item = items[i];
+			double key = keys[item];
+			int j = i - 1;
+			while ((j >= from) && (keys[items[j]] > key))
+			{
+				items[j+1] = items[j];
+				j--;
+			}
+			items[j+1] = item;
+		}
+	}
+}
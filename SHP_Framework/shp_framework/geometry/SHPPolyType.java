@@ -16,8 +16,25 @@ public abstract class SHPPolyType extends SHPShape
 	protected double[] xPointsData;	// X COORDINATES FOR ALL POINTS
 	protected double[] yPointsData;	// Y COORDINATES FOR ALL POINTS
 	protected int numBytes;			// SIZE 
-	protected int[] xRenderData;	// 
-	protected int[] yRenderData;
+
+	// THE POINTS OF EACH PART CONVERTED INTO PIXELS, AND THE VIEWPORT THEY
+	// WERE CONVERTED FOR. THESE ARE ONLY RECALCULATED WHEN THE VIEWPORT CHANGES
+	protected int[][] xRenderData;
+	protected int[][] yRenderData;
+	private double renderZoomScale;
+	private double renderViewportCenterX;
+	private double renderViewportCenterY;
+	private int renderPanelWidth;
+	private int renderPanelHeight;
+	private int renderDetailLevel;
+
+	// SIMPLIFIED COPIES OF THE POINTS, ONE PER LEVEL OF DETAIL, THAT ARE
+	// RENDERED INSTEAD OF THE FULL POINTS WHEN ZOOMED OUT FAR ENOUGH. THESE
+	// ARE MADE BY SHPSimplifier, AND ARE NULL UNTIL THEN. NOTE THAT HIT
+	// TESTING ALWAYS USES THE FULL POINTS
+	protected int[][] detailParts;
+	protected double[][] detailXPointsData;
+	protected double[][] detailYPointsData;
 
 	/**
 	 * This constructor initializes all data needed to render.
@@ -37,8 +54,11 @@ public abstract class SHPPolyType extends SHPShape
 		parts = initParts;
 		xPointsData = initXPointsData;
 		yPointsData = initYPointsData;
-		xRenderData = new int[xPointsData.length];
-		yRenderData = new int[yPointsData.length];
+
+		// THE RENDER DATA IS MADE WHEN FIRST NEEDED
+		xRenderData = null;
+		yRenderData = null;
+		renderDetailLevel = SHPSimplifier.FULL_DETAIL;
 	}
 
 	// ACCESSOR METHODS
@@ -49,8 +69,50 @@ public abstract class SHPPolyType extends SHPShape
 	public int[] 	getParts() 			{ return parts; 		}
 	public double[] getXPointsData() 	{ return xPointsData; 	}
 	public double[] getYPointsData()	{ return yPointsData;	}
-	public int[]	getXRenderData()	{ return xRenderData;	}
-	public int[]	getYRenderData()	{ return yRenderData;	}
+	public int[]	getXRenderData(int partsIndex)	{ return xRenderData[partsIndex];	}
+	public int[]	getYRenderData(int partsIndex)	{ return yRenderData[partsIndex];	}
+	public int		getRenderDetailLevel()			{ return renderDetailLevel;			}
+	public boolean	hasDetailLevels()				{ return detailParts != null;		}
+	public int[]	getDetailParts(int level)			{ return detailParts[level];		}
+	public double[]	getDetailXPointsData(int level)		{ return detailXPointsData[level];	}
+	public double[]	getDetailYPointsData(int level)		{ return detailYPointsData[level];	}
+
+	/**
+	 * Note that this counts the simplified copies and the pixels last
+	 * rendered too, since they take up at least as much as the points.
+	 */
+	public long estimateHeapBytes()
+	{
+		long numBytes = super.estimateHeapBytes() + 64;
+		numBytes += estimateArrayBytes(parts, xPointsData, yPointsData);
+		if (detailParts != null)
+		{
+			for (int i = 0; i < detailParts.length; i++)
+				numBytes += estimateArrayBytes(detailParts[i], detailXPointsData[i], detailYPointsData[i]);
+		}
+		if (xRenderData != null)
+		{
+			for (int i = 0; i < xRenderData.length; i++)
+				numBytes += estimateArrayBytes(xRenderData[i], null, null) + estimateArrayBytes(yRenderData[i], null, null);
+		}
+		return numBytes;
+	}
+
+	/**
+	 * This helper method estimates the bytes taken up by a parts array and
+	 * the points arrays that go with it, any of which may be null.
+	 */
+	private static long estimateArrayBytes(int[] someParts, double[] someX, double[] someY)
+	{
+		long numBytes = 0;
+		if (someParts != null)
+			numBytes += 16 + (someParts.length * 4L);
+		if (someX != null)
+			numBytes += 16 + (someX.length * 8L);
+		if (someY != null)
+			numBytes += 16 + (someY.length * 8L);
+		return numBytes;
+	}
 	
 	/**
 	 * This method calculates and returns the number of points in the poly
@@ -66,6 +128,35 @@ public abstract class SHPPolyType extends SHPShape
 			return numPoints - parts[partsIndex];
 	}
 
+	/**
+	 * This method returns the number of points in the part at partsIndex
+	 * for the level argument, which may be SHPSimplifier.FULL_DETAIL.
+	 */
+	public int calculateSize(int partsIndex, int level)
+	{
+		if (level == SHPSimplifier.FULL_DETAIL)
+			return calculateSize(partsIndex);
+		if (partsIndex < (numParts-1))
+			return detailParts[level][partsIndex+1] - detailParts[level][partsIndex];
+		else
+			return detailXPointsData[level].length - detailParts[level][partsIndex];
+	}
+
+	/**
+	 * This method provides the simplified copies of the points, one per
+	 * level of detail, with the parts of each level starting at the indices
+	 * in initDetailParts.
+	 */
+	public void setDetailLevels(int[][] initDetailParts,
+								double[][] initDetailXPointsData,
+								double[][] initDetailYPointsData)
+	{
+		detailParts = initDetailParts;
+		detailXPointsData = initDetailXPointsData;
+		detailYPointsData = initDetailYPointsData;
+		invalidateRenderData();
+	}
+
 	/**
 	 * We add bytes to keep track of the full file size.
 	 */
@@ -74,6 +165,79 @@ public abstract class SHPPolyType extends SHPShape
 		numBytes += bytesToAdd;
 	}
 	
+	/**
+	 * This method makes sure the render data, meaning the points of every
+	 * part in pixel coordinates, is ready for the provided viewport. Since
+	 * most repaints don't change the viewport, the points are only converted
+	 * if it has changed since the last time, otherwise nothing is done. If
+	 * this shape has levels of detail, the coarsest one that's off by less
+	 * than a pixel for this viewport is what gets converted.
+	 * 
+	 * @return true if the points had to be converted, false otherwise.
+	 */
+	public boolean updateRenderData(double zoomScale,
+									double viewportCenterX, double viewportCenterY,
+									int panelWidth, int panelHeight)
+	{
+		int detailLevel = SHPSimplifier.FULL_DETAIL;
+		if (detailParts != null)
+			detailLevel = Math.min(	SHPSimplifier.chooseDetailLevel(zoomScale, panelWidth, panelHeight),
+									detailParts.length - 1);
+
+		// ARE THEY ALREADY DONE FOR THIS VIEWPORT?
+		if ((xRenderData != null)
+				&& (detailLevel == renderDetailLevel)
+				&& (zoomScale == renderZoomScale)
+				&& (viewportCenterX == renderViewportCenterX)
+				&& (viewportCenterY == renderViewportCenterY)
+				&& (panelWidth == renderPanelWidth)
+				&& (panelHeight == renderPanelHeight))
+			return false;
+
+		// MAKE THE ARRAYS THE FIRST TIME THROUGH, OR FOR A NEW LEVEL OF DETAIL
+		if ((xRenderData == null) || (detailLevel != renderDetailLevel))
+		{
+			xRenderData = new int[numParts][];
+			yRenderData = new int[numParts][];
+			for (int a = 0; a < numParts; a++)
+			{
+				xRenderData[a] = new int[calculateSize(a, detailLevel)];
+				yRenderData[a] = new int[calculateSize(a, detailLevel)];
+			}
+		}
+
+		// CONVERT ALL THE PARTS
+		for (int a = 0; a < numParts; a++)
+		{
+			if (detailLevel == SHPSimplifier.FULL_DETAIL)
+				fillData(a, calculateSize(a), xRenderData[a], yRenderData[a], zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+			else
+				convertPoints(	detailXPointsData[detailLevel], detailYPointsData[detailLevel],
+								detailParts[detailLevel][a], xRenderData[a].length,
+								xRenderData[a], yRenderData[a],
+								zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+		}
+
+		// AND REMEMBER WHAT THEY WERE CONVERTED FOR
+		renderDetailLevel = detailLevel;
+		renderZoomScale = zoomScale;
+		renderViewportCenterX = viewportCenterX;
+		renderViewportCenterY = viewportCenterY;
+		renderPanelWidth = panelWidth;
+		renderPanelHeight = panelHeight;
+		return true;
+	}
+
+	/**
+	 * This method throws out the render data, such that it will be
+	 * converted again the next time it's needed.
+	 */
+	public void invalidateRenderData()
+	{
+		xRenderData = null;
+		yRenderData = null;
+	}
+
 	/**
 	 * This method fills in the xData and yData arrays with the necessary
 	 * points data for rendering.
@@ -84,6 +248,21 @@ public abstract class SHPPolyType extends SHPShape
 							double zoomScale,
 							double viewportCenterX, double viewportCenterY,
 							int panelWidth, int panelHeight)
+	{
+		convertPoints(	xPointsData, yPointsData, parts[partsIndex], size, xData, yData,
+						zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+	}
+
+	/**
+	 * This helper method converts the size points starting at start in the
+	 * xPoints and yPoints arrays into pixels, putting them in xData and yData.
+	 */
+	private void convertPoints(	double[] xPoints, double[] yPoints,
+								int start, int size,
+								int[] xData, int[] yData,
+								double zoomScale,
+								double viewportCenterX, double viewportCenterY,
+								int panelWidth, int panelHeight)
 	{
 		// GET SOME RENDERING CONVERSION INFO
 		double longWidth = 360/zoomScale;
@@ -93,10 +272,10 @@ public abstract class SHPPolyType extends SHPShape
 		int index = 0;
 
 		// GET THE DATA
-		for (int i = parts[partsIndex]; i < parts[partsIndex] + size; i++)
+		for (int i = start; i < start + size; i++)
 		{
-			double coordX = xPointsData[i];
-			double coordY = yPointsData[i];
+			double coordX = xPoints[i];
+			double coordY = yPoints[i];
 		
 			// SCALE THE COORDINATES
 			double percentX = (coordX - minLong)/longWidth;
@@ -23,6 +23,45 @@ public class SHPPolygon extends SHPPolyType
 		super(initBoundingBox, initNumBytes, initNumParts, initNumPoints, initParts, initXPointsData, initYPointsData);
 	}
 
+	/**
+	 * This method tests to see if the (x, y) point, in geographic coordinates,
+	 * is inside this polygon. It counts how many times a ray going right from
+	 * the point crosses the edges of all the parts, with an odd number meaning
+	 * it's inside. Note that this means points inside holes, which are parts
+	 * inside other parts, are correctly found to be outside.
+	 */
+	public boolean contains(double x, double y)
+	{
+		// IF IT'S NOT IN THE BOUNDING BOX IT CAN'T BE IN THE POLYGON
+		if ((x < boundingBox[0]) || (x > boundingBox[2]) || (y < boundingBox[1]) || (y > boundingBox[3]))
+			return false;
+
+		boolean inside = false;
+		for (int a = 0; a < numParts; a++)
+		{
+			int partStart = parts[a];
+			int partEnd = partStart + calculateSize(a);
+
+			// j IS ALWAYS THE POINT BEFORE i, STARTING WITH THE LAST ONE,
+			// SO THE PART IS CLOSED EVEN IF ITS FIRST POINT ISN'T REPEATED
+			for (int i = partStart, j = partEnd - 1; i < partEnd; j = i++)
+			{
+				double yI = yPointsData[i];
+				double yJ = yPointsData[j];
+
+				// DOES THIS EDGE STRADDLE THE RAY, AND IF SO,
+				// DOES IT CROSS IT TO THE RIGHT OF THE POINT?
+				if ((yI > y) != (yJ > y))
+				{
+					double crossingX = xPointsData[j] + ((y - yJ) * (xPointsData[i] - xPointsData[j]) / (yI - yJ));
+					if (x < crossingX)
+						inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
 	/**
 	 * This method provides the implementation for rendering polygons. Note that
 	 * it will go through and render each part.
@@ -32,20 +71,35 @@ public class SHPPolygon extends SHPPolyType
 						double viewportCenterX, double viewportCenterY,
 						int panelWidth, int panelHeight) 
 	{
+		// MAKE SURE OUR POINTS ARRAYS HAVE DATA FOR THIS VIEWPORT
+		updateRenderData(zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+
 		// FOR ALL PARTS (POLYGONS)
 		for (int a = 0; a < numParts; a++)
 		{
 			// DETERMINE HOW MANY POINTS ARE IN THIS PART
-			int size = calculateSize(a);
-
-			// AND FILL OUR POINTS ARRAYS WITH DATA
-			this.fillData(a, size, xRenderData, yRenderData, zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+			int size = xRenderData[a].length;
 
 			// THEN USE THEM TO RENDER
 			g2.setColor(fillColor);
-			g2.fillPolygon(xRenderData, yRenderData, size);
+			g2.fillPolygon(xRenderData[a], yRenderData[a], size);
 			g2.setColor(lineColor);
-			g2.drawPolygon(xRenderData, yRenderData, size);
+			g2.drawPolygon(xRenderData[a], yRenderData[a], size);
 		}
 	}
+
+	/**
+	 * This method renders just the outline of this polygon, using whatever
+	 * color and stroke g2 is already set to, which is useful for drawing
+	 * a highlight over a map that's already been rendered.
+	 */
+	public void renderOutline(	Graphics2D g2,
+								double zoomScale,
+								double viewportCenterX, double viewportCenterY,
+								int panelWidth, int panelHeight)
+	{
+		updateRenderData(zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+		for (int a = 0; a < numParts; a++)
+			g2.drawPolygon(xRenderData[a], yRenderData[a], xRenderData[a].length);
+	}
 }
\ No newline at end of file
@@ -32,22 +32,20 @@ public class SHPPolyline extends SHPPolyType
 						double viewportCenterX, double viewportCenterY,
 						int panelWidth, int panelHeight)
 	{
+		// MAKE SURE OUR POINTS ARRAYS HAVE DATA FOR THIS VIEWPORT
+		updateRenderData(zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+
 		// GO THROUGH ALL THE LINES
 		for (int a = 0; a < numParts; a++)
 		{
 			// FIGURE OUT HOW MANY POINTS THIS PART HAS
-			int size = calculateSize(a);
-			
-			// AND LOAD THE DATA INTO OUR ARRAYS
-			int[] xData = new int[size];
-			int[] yData = new int[size];
-			fillData(a, size, xData, yData, zoomScale, viewportCenterX, viewportCenterY, panelWidth, panelHeight);
+			int size = xRenderData[a].length;
 			
 			// AND USE THEM FOR RENDERING
 			g2.setColor(fillColor);
-			g2.fillPolygon(xData, yData, size);
+			g2.fillPolygon(xRenderData[a], yRenderData[a], size);
 			g2.setColor(lineColor);
-			g2.drawPolygon(xData, yData, size);
+			g2.drawPolygon(xRenderData[a], yRenderData[a], size);
 		}
 	}
 }
\ No newline at end of file
@@ -69,4 +69,15 @@ public abstract class SHPShape
 	{
 		fillColor = initFillColor;
 	}
+
+	/**
+	 * This method estimates how many bytes of memory this shape takes up,
+	 * which is used for deciding how many maps may be kept loaded. Subclasses
+	 * should add whatever data they have.
+	 */
+	public long estimateHeapBytes()
+	{
+		// THE OBJECT ITSELF AND ITS BOUNDING BOX, THE COLORS ARE SHARED
+		return 48 + 16 + (boundingBox == null ? 0 : (boundingBox.length * 8));
+	}
 }
\ No newline at end of file
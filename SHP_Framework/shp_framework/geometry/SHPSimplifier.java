@@ -0,0 +1,513 @@
+package shp_framework.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * SHPSimplifier - This class makes the simplified copies of a map's poly
+ * types that are rendered instead of the full data when zoomed out, since
+ * there's no point in drawing thousands of points that all land on the
+ * same pixel. Each shape gets one copy per level of detail, made using the
+ * Douglas-Peucker algorithm, with each level allowed 4 times the error of
+ * the one before it.
+ *
+ * Neighboring shapes share borders, so to keep from opening up gaps or
+ * overlaps between them, all the shapes of a map are simplified together.
+ * Points where three or more borders meet, which we call junctions, are
+ * always kept, and every border between two junctions is simplified the
+ * same way no matter which shape it belongs to or in which direction it
+ * goes, so shapes sharing it end up sharing the same simplified border.
+ */
+public class SHPSimplifier
+{
+	// HOW FAR, IN DEGREES, A SIMPLIFIED BORDER MAY BE FROM THE REAL ONE AT
+	// THE FIRST LEVEL, AND HOW MUCH MORE EACH FOLLOWING LEVEL IS ALLOWED
+	public static final double BASE_TOLERANCE = 0.001;
+	public static final double TOLERANCE_FACTOR = 4;
+	public static final int NUM_DETAIL_LEVELS = 5;
+
+	// MEANS RENDER THE FULL DATA, NOT A SIMPLIFIED COPY
+	public static final int FULL_DETAIL = -1;
+
+	// ALL THE DIFFERENT POINTS IN THE MAP ARE PUT IN A HASH TABLE, SO
+	// THE SAME POINT IN DIFFERENT SHAPES GETS THE SAME VERTEX ID
+	private double[] tableX;
+	private double[] tableY;
+	private int[] tableIds;
+	private int numVertices;
+
+	// THE NEIGHBORS OF EACH VERTEX ALONG THE BORDERS IT'S ON. ONLY TWO
+	// ARE KEPT, SINCE A VERTEX WITH MORE THAN THAT IS A JUNCTION
+	private int[] neighbors1;
+	private int[] neighbors2;
+	private boolean[] junctions;
+
+	// THESE ARE RECYCLED FOR SIMPLIFYING EACH BORDER
+	private double[] arcX;
+	private double[] arcY;
+	private double[] arcSignificance;
+	private int[] stackFirst;
+	private int[] stackLast;
+	private double[] stackSignificance;
+
+	/**
+	 * This constructor just sets up an empty simplifier, which may be used
+	 * for any number of maps.
+	 */
+	public SHPSimplifier()
+	{
+		arcX = new double[16];
+		arcY = new double[16];
+		arcSignificance = new double[16];
+		stackFirst = new int[16];
+		stackLast = new int[16];
+		stackSignificance = new double[16];
+	}
+
+	/**
+	 * This method returns the error allowed for the level argument, in degrees.
+	 */
+	public static double getTolerance(int level)
+	{
+		return BASE_TOLERANCE * Math.pow(TOLERANCE_FACTOR, level);
+	}
+
+	/**
+	 * This method picks the coarsest level of detail whose error is smaller
+	 * than a pixel for the provided viewport, or FULL_DETAIL if even the
+	 * first level is too coarse.
+	 */
+	public static int chooseDetailLevel(double zoomScale, int panelWidth, int panelHeight)
+	{
+		double degreesPerPixel = Math.min((360/zoomScale)/panelWidth, (180/zoomScale)/panelHeight);
+		int level = FULL_DETAIL;
+		while ((level < (NUM_DETAIL_LEVELS-1)) && (getTolerance(level+1) < degreesPerPixel))
+			level++;
+		return level;
+	}
+
+	/**
+	 * This method makes all the levels of detail for all the poly types
+	 * found in shapes, giving each one its simplified copies. Other kinds
+	 * of shapes are skipped.
+	 */
+	public void simplify(Iterator<SHPShape> shapes)
+	{
+		ArrayList<SHPPolyType> polys = new ArrayList<SHPPolyType>();
+		int totalPoints = 0;
+		while (shapes.hasNext())
+		{
+			SHPShape shape = shapes.next();
+			if (shape instanceof SHPPolyType)
+			{
+				SHPPolyType poly = (SHPPolyType)shape;
+				polys.add(poly);
+				totalPoints += poly.getNumPoints();
+			}
+		}
+
+		// FIRST GIVE EVERY POINT ITS VERTEX ID
+		initVertexTable(totalPoints);
+		int[][] vertexIds = new int[polys.size()][];
+		for (int i = 0; i < polys.size(); i++)
+		{
+			SHPPolyType poly = polys.get(i);
+			vertexIds[i] = new int[poly.getNumPoints()];
+			for (int j = 0; j < poly.getNumPoints(); j++)
+				vertexIds[i][j] = findVertex(poly.getXPointsData()[j], poly.getYPointsData()[j]);
+		}
+
+		// THEN FIND THE JUNCTIONS BY LOOKING AT EVERY VERTEX'S NEIGHBORS
+		neighbors1 = new int[numVertices];
+		neighbors2 = new int[numVertices];
+		junctions = new boolean[numVertices];
+		Arrays.fill(neighbors1, -1);
+		Arrays.fill(neighbors2, -1);
+		for (int i = 0; i < polys.size(); i++)
+		{
+			SHPPolyType poly = polys.get(i);
+			for (int a = 0; a < poly.getNumParts(); a++)
+			{
+				int start = poly.getParts()[a];
+				int end = start + poly.calculateSize(a);
+				for (int j = start + 1; j < end; j++)
+				{
+					addNeighbor(vertexIds[i][j-1], vertexIds[i][j]);
+					addNeighbor(vertexIds[i][j], vertexIds[i][j-1]);
+				}
+
+				// THE ENDS OF LINES THAT AREN'T RINGS MUST STAY TOO
+				if ((end > start) && !isRing(vertexIds[i], start, end))
+				{
+					junctions[vertexIds[i][start]] = true;
+					junctions[vertexIds[i][end-1]] = true;
+				}
+			}
+		}
+
+		// NOW WE CAN SIMPLIFY EACH SHAPE
+		for (int i = 0; i < polys.size(); i++)
+			simplify(polys.get(i), vertexIds[i]);
+
+		// AND THE TABLE ISN'T NEEDED ANYMORE
+		tableX = null;
+		tableY = null;
+		tableIds = null;
+		neighbors1 = null;
+		neighbors2 = null;
+		junctions = null;
+	}
+
+	/**
+	 * This helper method makes all the levels of detail for the poly argument,
+	 * whose points have the vertex ids argument.
+	 */
+	private void simplify(SHPPolyType poly, int[] ids)
+	{
+		double[] x = poly.getXPointsData();
+		double[] y = poly.getYPointsData();
+		int numParts = poly.getNumParts();
+		int[] parts = poly.getParts();
+
+		// HOW IMPORTANT EACH POINT IS, A POINT IS KEPT BY ALL
+		// LEVELS WHOSE TOLERANCE IS LESS THAN THIS
+		double[] significance = new double[poly.getNumPoints()];
+		for (int a = 0; a < numParts; a++)
+			calculateSignificance(x, y, ids, parts[a], parts[a] + poly.calculateSize(a), significance);
+
+		// NOW MAKE EACH LEVEL FROM THE POINTS SIGNIFICANT ENOUGH FOR IT
+		int[][] levelParts = new int[NUM_DETAIL_LEVELS][numParts];
+		double[][] levelX = new double[NUM_DETAIL_LEVELS][];
+		double[][] levelY = new double[NUM_DETAIL_LEVELS][];
+		for (int level = 0; level < NUM_DETAIL_LEVELS; level++)
+		{
+			double tolerance = getTolerance(level);
+			int count = 0;
+			for (int a = 0; a < numParts; a++)
+			{
+				int start = parts[a];
+				int end = start + poly.calculateSize(a);
+				boolean ring = isRing(ids, start, end);
+				for (int j = start; j < (ring ? end-1 : end); j++)
+					if (significance[j] > tolerance)
+						count++;
+				if (ring)
+					count++;
+			}
+			levelX[level] = new double[count];
+			levelY[level] = new double[count];
+
+			int index = 0;
+			for (int a = 0; a < numParts; a++)
+			{
+				int start = parts[a];
+				int end = start + poly.calculateSize(a);
+				boolean ring = isRing(ids, start, end);
+				levelParts[level][a] = index;
+				int first = index;
+				for (int j = start; j < (ring ? end-1 : end); j++)
+				{
+					if (significance[j] > tolerance)
+					{
+						levelX[level][index] = x[j];
+						levelY[level][index] = y[j];
+						index++;
+					}
+				}
+
+				// RINGS END WHERE THEY START
+				if (ring)
+				{
+					levelX[level][index] = levelX[level][first];
+					levelY[level][index] = levelY[level][first];
+					index++;
+				}
+			}
+		}
+		poly.setDetailLevels(levelParts, levelX, levelY);
+	}
+
+	/**
+	 * This helper method calculates the significance of the points from
+	 * start (inclusive) to end (exclusive), which make up one part. The
+	 * part is cut into borders at its junctions, and each is simplified.
+	 */
+	private void calculateSignificance(	double[] x, double[] y, int[] ids,
+										int start, int end,
+										double[] significance)
+	{
+		if (end <= start)
+			return;
+
+		// THE LAST POINT OF A RING IS THE SAME AS THE FIRST,
+		// SO WE'LL GO AROUND IT WITHOUT THE LAST ONE
+		boolean ring = isRing(ids, start, end);
+		int size = ring ? (end - start - 1) : (end - start);
+
+		// FIND ALL THE JUNCTIONS
+		int numKept = 0;
+		int firstKept = -1;
+		for (int j = 0; j < size; j++)
+		{
+			if (junctions[ids[start + j]])
+			{
+				significance[start + j] = Double.POSITIVE_INFINITY;
+				if (firstKept == -1)
+					firstKept = j;
+				numKept++;
+			}
+			else
+				significance[start + j] = 0;
+		}
+		if (ring)
+			significance[end-1] = 0;
+
+		// A RING WITHOUT JUNCTIONS, LIKE AN ISLAND, STILL NEEDS A POINT TO
+		// START FROM, AND ANY SHAPE SHARING IT MUST PICK THE SAME ONE
+		if (numKept == 0)
+		{
+			firstKept = 0;
+			for (int j = 1; j < size; j++)
+				if (compare(x, y, start + j, start + firstKept) < 0)
+					firstKept = j;
+			significance[start + firstKept] = Double.POSITIVE_INFINITY;
+			numKept = 1;
+		}
+
+		// A RING WITH JUST ONE KEPT POINT GOES AROUND FROM IT BACK TO IT,
+		// SO WE ALSO KEEP THE POINT FARTHEST FROM IT, SPLITTING IT IN TWO
+		if (ring && (numKept == 1))
+		{
+			int anchor = start + firstKept;
+			int farthest = -1;
+			double farthestDistance = -1;
+			for (int j = 1; j < size; j++)
+			{
+				int index = start + ((firstKept + j) % size);
+				double dx = x[index] - x[anchor];
+				double dy = y[index] - y[anchor];
+				double distance = (dx * dx) + (dy * dy);
+				if ((distance > farthestDistance)
+					|| ((distance == farthestDistance) && (compare(x, y, index, farthest) < 0)))
+				{
+					farthest = index;
+					farthestDistance = distance;
+				}
+			}
+			if (farthest != -1)
+				significance[farthest] = Double.POSITIVE_INFINITY;
+		}
+
+		// NOW SIMPLIFY THE BORDERS BETWEEN EACH PAIR OF KEPT POINTS
+		if (ring)
+		{
+			int from = firstKept;
+			for (int j = 1; j <= size; j++)
+			{
+				int to = firstKept + j;
+				if (significance[start + (to % size)] == Double.POSITIVE_INFINITY)
+				{
+					simplifyArc(x, y, start, size, from, to, significance);
+					from = to;
+				}
+			}
+		}
+		else
+		{
+			significance[start] = Double.POSITIVE_INFINITY;
+			significance[end-1] = Double.POSITIVE_INFINITY;
+			int from = 0;
+			for (int j = 1; j < size; j++)
+			{
+				if (significance[start + j] == Double.POSITIVE_INFINITY)
+				{
+					simplifyArc(x, y, start, size, from, j, significance);
+					from = j;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This helper method runs Douglas-Peucker on the border going from the
+	 * from point to the to point of the part that starts at start and has
+	 * size points, wrapping around for rings. Rather than throwing points
+	 * out for one tolerance, it records the largest tolerance each point
+	 * would survive. The border is always done in the same direction, so
+	 * borders shared by two shapes are simplified the same for both.
+	 */
+	private void simplifyArc(	double[] x, double[] y,
+								int start, int size,
+								int from, int to,
+								double[] significance)
+	{
+		int length = to - from + 1;
+		if (length <= 2)
+			return;
+		if (arcX.length < length)
+		{
+			arcX = new double[length * 2];
+			arcY = new double[length * 2];
+			arcSignificance = new double[length * 2];
+			stackFirst = new int[length * 2];
+			stackLast = new int[length * 2];
+			stackSignificance = new double[length * 2];
+		}
+
+		// COPY THE BORDER OUT, REVERSED IF NEED BE
+		boolean reversed = compare(x, y, start + (from % size), start + (to % size)) > 0;
+		for (int i = 0; i < length; i++)
+		{
+			int index = start + ((reversed ? (to - i) : (from + i)) % size);
+			arcX[i] = x[index];
+			arcY[i] = y[index];
+			arcSignificance[i] = 0;
+		}
+
+		// THEN SIMPLIFY IT, WITHOUT RECURSION SINCE BORDERS CAN BE LONG
+		int top = 0;
+		stackFirst[top] = 0;
+		stackLast[top] = length - 1;
+		stackSignificance[top] = Double.POSITIVE_INFINITY;
+		top++;
+		while (top > 0)
+		{
+			top--;
+			int first = stackFirst[top];
+			int last = stackLast[top];
+			double parentSignificance = stackSignificance[top];
+			int farthest = -1;
+			double farthestDistance = -1;
+			for (int i = first + 1; i < last; i++)
+			{
+				double distance = segmentDistance(arcX[i], arcY[i], arcX[first], arcY[first], arcX[last], arcY[last]);
+				if (distance > farthestDistance)
+				{
+					farthest = i;
+					farthestDistance = distance;
+				}
+			}
+			if (farthest == -1)
+				continue;
+
+			// A POINT CAN'T SURVIVE A TOLERANCE ITS PARENT DOESN'T
+			double pointSignificance = Math.min(farthestDistance, parentSignificance);
+			arcSignificance[farthest] = pointSignificance;
+			stackFirst[top] = first;
+			stackLast[top] = farthest;
+			stackSignificance[top] = pointSignificance;
+			top++;
+			stackFirst[top] = farthest;
+			stackLast[top] = last;
+			stackSignificance[top] = pointSignificance;
+			top++;
+		}
+
+		// AND COPY THE RESULTS BACK, LEAVING THE ENDS ALONE
+		for (int i = 1; i < length - 1; i++)
+		{
+			int index = start + ((reversed ? (to - i) : (from + i)) % size);
+			significance[index] = arcSignificance[i];
+		}
+	}
+
+	/**
+	 * This helper method returns the distance from the (px, py) point to
+	 * the line segment from (x1, y1) to (x2, y2).
+	 */
+	private static double segmentDistance(	double px, double py,
+											double x1, double y1,
+											double x2, double y2)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double lengthSquared = (dx * dx) + (dy * dy);
+		double t = 0;
+		if (lengthSquared > 0)
+			t = Math.max(0, Math.min(1, (((px - x1) * dx) + ((py - y1) * dy)) / lengthSquared));
+		double cx = x1 + (t * dx) - px;
+		double cy = y1 + (t * dy) - py;
+		return Math.sqrt((cx * cx) + (cy * cy));
+	}
+
+	/**
+	 * This helper method orders points first by x, then by y, returning
+	 * a negative number, zero, or a positive number if the point at index1
+	 * comes before, is the same as, or comes after the one at index2.
+	 */
+	private static int compare(double[] x, double[] y, int index1, int index2)
+	{
+		if (x[index1] != x[index2])
+			return (x[index1] < x[index2]) ? -1 : 1;
+		if (y[index1] != y[index2])
+			return (y[index1] < y[index2]) ? -1 : 1;
+		return 0;
+	}
+
+	/**
+	 * This helper method tests whether the part from start (inclusive) to
+	 * end (exclusive) is a ring, meaning it ends where it starts.
+	 */
+	private static boolean isRing(int[] ids, int start, int end)
+	{
+		return ((end - start) >= 4) && (ids[start] == ids[end-1]);
+	}
+
+	/**
+	 * This helper method sets up an empty vertex table big enough
+	 * for numPoints points.
+	 */
+	private void initVertexTable(int numPoints)
+	{
+		int capacity = 16;
+		while (capacity < (numPoints * 2))
+			capacity *= 2;
+		tableX = new double[capacity];
+		tableY = new double[capacity];
+		tableIds = new int[capacity];
+		Arrays.fill(tableIds, -1);
+		numVertices = 0;
+	}
+
+	/**
+	 * This helper method returns the vertex id for the (x, y) point,
+	 * giving it a new one if it's not yet in the table.
+	 */
+	private int findVertex(double x, double y)
+	{
+		// -0.0 AND 0.0 ARE THE SAME POINT
+		long bitsX = Double.doubleToLongBits(x + 0.0);
+		long bitsY = Double.doubleToLongBits(y + 0.0);
+		long hash = (bitsX * 0x9E3779B97F4A7C15L) ^ (bitsY * 0xC2B2AE3D27D4EB4FL);
+		int mask = tableIds.length - 1;
+		int slot = (int)(hash ^ (hash >>> 32)) & mask;
+		while (tableIds[slot] != -1)
+		{
+			if ((tableX[slot] == x) && (tableY[slot] == y))
+				return tableIds[slot];
+			slot = (slot + 1) & mask;
+		}
+		tableX[slot] = x;
+		tableY[slot] = y;
+		tableIds[slot] = numVertices;
+		return numVertices++;
+	}
+
+	/**
+	 * This helper method records that the neighbor vertex comes right
+	 * before or after the vertex argument on some border. A vertex with
+	 * more than two different neighbors is a junction.
+	 */
+	private void addNeighbor(int vertex, int neighbor)
+	{
+		if ((vertex == neighbor) || (neighbors1[vertex] == neighbor) || (neighbors2[vertex] == neighbor))
+			return;
+		if (neighbors1[vertex] == -1)
+			neighbors1[vertex] = neighbor;
+		else if (neighbors2[vertex] == -1)
+			neighbors2[vertex] = neighbor;
+		else
+			junctions[vertex] = true;
+	}
+}
@@ -0,0 +1,220 @@
+package shp_framework;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import shp_framework.geometry.SHPPolyType;
+import shp_framework.geometry.SHPPolygon;
+import shp_framework.geometry.SHPPolyline;
+import shp_framework.geometry.SHPShape;
+import shp_framework.geometry.SHPSimplifier;
+
+/**
+ * This program tests that maps encoded by MappedSHPData come back from it
+ * with the same header and the same shapes, point for point, including
+ * their levels of detail, and that encoding what comes back gives the very
+ * same bytes. It throws an AssertionError at the first thing that's wrong.
+ */
+public class MappedSHPDataTest
+{
+	public static void main(String[] args)
+	{
+		testRoundTrip(SHPDataLoader.POLYGON, true);
+		testRoundTrip(SHPDataLoader.POLYGON, false);
+		testRoundTrip(SHPDataLoader.POLYLINE, true);
+		testEmpty();
+		testFillColors();
+		testClose();
+		System.out.println("MappedSHPDataTest passed");
+	}
+
+	/**
+	 * A random map of the shapeType argument, with or without levels of
+	 * detail, survives being encoded and decoded.
+	 */
+	private static void testRoundTrip(int shapeType, boolean detailLevels)
+	{
+		SHPData data = makeData(shapeType, 300, new Random(shapeType));
+		if (detailLevels)
+			data.buildDetailLevels();
+		ByteBuffer encoded = MappedSHPData.encode(data);
+		MappedSHPData mapped = new MappedSHPData(encoded);
+
+		check(mapped.getShapeType() == data.getShapeType(), "shape type");
+		check(mapped.getFileCode() == data.getFileCode(), "file code");
+		check(mapped.getFileLength() == data.getFileLength(), "file length");
+		check(mapped.getVersion() == data.getVersion(), "version");
+		check(Arrays.equals(mapped.getUnusedBytes(), data.getUnusedBytes()), "unused bytes");
+		check(Arrays.equals(mapped.getMBR(), data.getMBR()), "MBR");
+		check(Arrays.equals(mapped.getZBounds(), data.getZBounds()), "Z bounds");
+		check(Arrays.equals(mapped.getMBounds(), data.getMBounds()), "M bounds");
+		check(mapped.getNumShapes() == data.getNumShapes(), "number of shapes");
+
+		// THE BOUNDING BOXES ARE THERE BEFORE ANY SHAPE IS MADE
+		for (int i = 0; i < data.getNumShapes(); i++)
+			check(Arrays.equals(mapped.getShapeBoundingBox(i), data.getShapeBoundingBox(i)), "bounding box " + i);
+
+		// MAKE THE SHAPES OUT OF ORDER, SINCE THAT'S HOW THEY'RE USED
+		for (int i = data.getNumShapes() - 1; i >= 0; i -= 2)
+			checkSameShape((SHPPolyType)data.getShape(i), (SHPPolyType)mapped.getShape(i), i);
+		for (int i = 0; i < data.getNumShapes(); i++)
+		{
+			SHPPolyType poly = (SHPPolyType)mapped.getShape(i);
+			check(poly == mapped.getShape(i), "shape " + i + " is only made once");
+			check((shapeType == SHPDataLoader.POLYLINE) ? (poly instanceof SHPPolyline) : (poly instanceof SHPPolygon),
+					"shape " + i + " is the right type");
+			checkSameShape((SHPPolyType)data.getShape(i), poly, i);
+		}
+
+		// AND ENCODING IT AGAIN GIVES THE SAME BYTES
+		check(encoded.equals(MappedSHPData.encode(mapped)), "encoding the decoded map");
+	}
+
+	/**
+	 * A map with no shapes still has its header.
+	 */
+	private static void testEmpty()
+	{
+		SHPData data = makeData(SHPDataLoader.POLYGON, 0, new Random(0));
+		MappedSHPData mapped = new MappedSHPData(MappedSHPData.encode(data));
+		check(mapped.getNumShapes() == 0, "no shapes");
+		check(Arrays.equals(mapped.getMBR(), data.getMBR()), "MBR of an empty map");
+		check(!mapped.shapesIterator().hasNext(), "nothing to iterate");
+	}
+
+	/**
+	 * Colors given before a shape is made end up on it.
+	 */
+	private static void testFillColors()
+	{
+		MappedSHPData mapped = new MappedSHPData(MappedSHPData.encode(makeData(SHPDataLoader.POLYGON, 10, new Random(1))));
+		mapped.setShapeFillColor(3, Color.BLUE);
+		check(Color.BLUE.equals(mapped.getShape(3).getFillColor()), "color given before the shape was made");
+		mapped.setShapeFillColor(3, Color.RED);
+		check(Color.RED.equals(mapped.getShape(3).getFillColor()), "color given after the shape was made");
+	}
+
+	/**
+	 * Once closed, shapes already made are still there, but
+	 * no more can be made.
+	 */
+	private static void testClose()
+	{
+		MappedSHPData mapped = new MappedSHPData(MappedSHPData.encode(makeData(SHPDataLoader.POLYGON, 10, new Random(2))));
+		SHPShape shape = mapped.getShape(0);
+		mapped.close();
+		check(mapped.getShape(0) == shape, "a shape made before closing");
+		try
+		{
+			mapped.getShape(1);
+			throw new AssertionError("a shape was made after closing");
+		}
+		catch (IllegalStateException ise)
+		{
+			// EXPECTED
+		}
+	}
+
+	/**
+	 * This helper method checks that two shapes have the same points,
+	 * parts and levels of detail.
+	 */
+	private static void checkSameShape(SHPPolyType expected, SHPPolyType actual, int index)
+	{
+		String what = "shape " + index + ": ";
+		check(actual.getRecordNumber() == expected.getRecordNumber(), what + "record number");
+		check(actual.getRecordLength() == expected.getRecordLength(), what + "record length");
+		check(actual.getNumBytes() == expected.getNumBytes(), what + "number of bytes");
+		check(Arrays.equals(actual.getBoundingBox(), expected.getBoundingBox()), what + "bounding box");
+		check(actual.getNumParts() == expected.getNumParts(), what + "number of parts");
+		check(actual.getNumPoints() == expected.getNumPoints(), what + "number of points");
+		check(Arrays.equals(actual.getParts(), expected.getParts()), what + "parts");
+		check(Arrays.equals(actual.getXPointsData(), expected.getXPointsData()), what + "x points");
+		check(Arrays.equals(actual.getYPointsData(), expected.getYPointsData()), what + "y points");
+		check(actual.hasDetailLevels() == expected.hasDetailLevels(), what + "levels of detail");
+		if (expected.hasDetailLevels())
+		{
+			for (int level = 0; level < SHPSimplifier.NUM_DETAIL_LEVELS; level++)
+			{
+				check(Arrays.equals(actual.getDetailParts(level), expected.getDetailParts(level)), what + "parts at level " + level);
+				check(Arrays.equals(actual.getDetailXPointsData(level), expected.getDetailXPointsData(level)), what + "x points at level " + level);
+				check(Arrays.equals(actual.getDetailYPointsData(level), expected.getDetailYPointsData(level)), what + "y points at level " + level);
+			}
+		}
+	}
+
+	/**
+	 * This helper method makes a map of numShapes random shapes, each a
+	 * few rough rings, which is what the simplifier has something to do
+	 * with.
+	 */
+	private static SHPData makeData(int shapeType, int numShapes, Random random)
+	{
+		SHPData data = new SHPData();
+		data.setShapeType(shapeType);
+		data.setFileCode(9994);
+		data.setVersion(1000);
+		data.setUnusedBytes(new int[] { 0, 1, 2, 3, 4 });
+		data.setZBounds(new double[] { 0, 0 });
+		data.setMBounds(new double[] { -1, 1 });
+		double[] mbr = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		int fileLength = 50;
+		for (int i = 0; i < numShapes; i++)
+		{
+			int numParts = 1 + random.nextInt(3);
+			int[] parts = new int[numParts];
+			int numPoints = 0;
+			int[] partSizes = new int[numParts];
+			for (int p = 0; p < numParts; p++)
+			{
+				parts[p] = numPoints;
+				partSizes[p] = 4 + random.nextInt(60);
+				numPoints += partSizes[p];
+			}
+			double centerX = -120 + random.nextDouble() * 50;
+			double centerY = 25 + random.nextDouble() * 20;
+			double[] x = new double[numPoints];
+			double[] y = new double[numPoints];
+			double[] box = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+			for (int p = 0; p < numParts; p++)
+			{
+				double radius = 0.05 + random.nextDouble();
+				for (int j = 0; j < partSizes[p]; j++)
+				{
+					double angle = (2 * Math.PI * j) / (partSizes[p] - 1);
+					double r = radius * (0.9 + random.nextDouble() * 0.2);
+					int k = parts[p] + j;
+					x[k] = centerX + (r * Math.cos(angle));
+					y[k] = centerY + (r * Math.sin(angle));
+					box[0] = Math.min(box[0], x[k]);
+					box[1] = Math.min(box[1], y[k]);
+					box[2] = Math.max(box[2], x[k]);
+					box[3] = Math.max(box[3], y[k]);
+				}
+			}
+			int numBytes = 44 + (numParts * 4) + (numPoints * 16);
+			SHPPolyType poly = (shapeType == SHPDataLoader.POLYLINE)
+					? new SHPPolyline(box, numBytes, numParts, numPoints, parts, x, y)
+					: new SHPPolygon(box, numBytes, numParts, numPoints, parts, x, y);
+			poly.setRecordNumber(i + 1);
+			poly.setRecordLength(numBytes / 2);
+			data.addShape(poly);
+			fileLength += 4 + (numBytes / 2);
+			mbr[0] = Math.min(mbr[0], box[0]);
+			mbr[1] = Math.min(mbr[1], box[1]);
+			mbr[2] = Math.max(mbr[2], box[2]);
+			mbr[3] = Math.max(mbr[3], box[3]);
+		}
+		data.setMBR(mbr);
+		data.setFileLength(fileLength);
+		return data;
+	}
+
+	private static void check(boolean condition, String what)
+	{
+		if (!condition)
+			throw new AssertionError(what);
+	}
+}
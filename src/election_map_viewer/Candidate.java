@@ -1,30 +1,29 @@
 package election_map_viewer;
 
 import java.awt.Color;
-import java.io.IOException;
-import java.math.BigDecimal;
-
-import dbf_framework.DBFRecord;
-import dbf_framework.DBFTable;
 //@author Aaron Meltzer
 public class Candidate {
 	//keep track of various candidate attributes
 	private String name;
-	private BigDecimal votes;
+	private long votes;
+	private int percent;
 	private int position;
 	private Color theColor;
 	/*@params- position:int name:String theColor:Color
 	 */
-	public Candidate(int position, String name, Color theColor) throws IOException{
+	public Candidate(int position, String name, Color theColor){
 		this.position=position; 
 		this.name = name;
 		this.theColor = theColor;
-		this.votes = BigDecimal.ZERO;
+		this.votes = 0;
+		this.percent = 0;
 	}
 	//@return: String
 	public String getName(){ return name;	}
-	//@return: BigDecimal
-	public BigDecimal getVotes(){return votes;	}
+	//@return: long
+	public long getVotes(){return votes;	}
+	//@return: int
+	public int getPercent(){return percent;	}
 	//@return: int
 	public int getPosition(){return position;	}
 	//@return: Color
@@ -33,25 +32,18 @@ public class Candidate {
 	//@params: name:String
 	public void setName(String name){this.name=name;	}
 	
-	/*@params- currentTable:DBFTable, currentRecord:DBFRecord, position:int
-	 * @throws- IOException
-	 * depending on which info is given the votes are either added up or simply set form a specific position.
+	/*@params- results:ElectionResults, recordIndex:int, candidate:int
+	 * sets the votes and percent for this candidate from the already added up results, either for
+	 * a single record or, if recordIndex is ElectionResults.WHOLE_TABLE, for all of them.
 	 */
-	public void setVotes(DBFTable currentTable,DBFRecord currentRecord, int position) throws IOException
+	public void setVotes(ElectionResults results, int recordIndex, int candidate)
 	{
-		if(currentTable==null){
-			this.votes= new BigDecimal((Long)currentRecord.getData(position));
-		}
-		else{
-			for(int i=0; i<currentTable.getNumberOfRecords(); i++){
-				Long data = (Long)currentTable.getRecord(i).getData(position);
-				this.votes=this.votes.add(new BigDecimal(data));
-			}
-		}
+		this.votes = results.getVotes(candidate, recordIndex);
+		this.percent = results.getPercent(candidate, recordIndex);
 	}
 	/*
-	 * @params- votes:BigDecimal 
+	 * @params- votes:long 
 	 * in case the votes just need to be set
 	 */
-	public void setDefaultVotes(BigDecimal votes) {this.votes=votes;	}
-}
\ No newline at end of file
+	public void setDefaultVotes(long votes) {this.votes=votes;	}
+}
@@ -0,0 +1,195 @@
+package election_map_viewer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import dbf_framework.DBFTable;
+
+import shp_framework.SHPMap;
+
+/**
+ * This program renders maps to .png images without showing anything, so
+ * the result images can be made again after every update. Each map is
+ * colored and drawn, with its title, flag and legend, exactly like the
+ * viewer does, but into an image the size of the viewer's window. Several
+ * maps are rendered at once, each by its own data model and renderer, on a
+ * fixed number of threads, and how long each one took is printed as it's
+ * done.
+ **/
+public class ElectionMapBatchRenderer
+{
+	// WHERE THE IMAGES GO IF NOT TOLD OTHERWISE
+	public static final String DEFAULT_OUTPUT_DIR = "./results/";
+
+	// THE SIZE OF THE VIEWER'S WINDOW, WHICH THE LEGEND IS PLACED FOR
+	public static final int IMAGE_WIDTH = 1280;
+	public static final int IMAGE_HEIGHT = 800;
+	public static final String IMAGE_FORMAT = "png";
+
+	// THESE ARE SHARED BY ALL THE MAPS BEING RENDERED
+	private ElectionMapFileManager fileManager;
+	private ElectionMapFlagCache flagCache;
+
+	// WHERE THE IMAGES GO
+	private File outputDir;
+
+	/*@params- initOutputDir:File
+	 * @throws- IOException
+	 * sets up the file manager and indexes the flags, like the viewer does at startup
+	 */
+	public ElectionMapBatchRenderer(File initOutputDir) throws IOException{
+		outputDir = initOutputDir;
+		fileManager = new ElectionMapFileManager(new ElectionMapDataModel());
+		flagCache = new ElectionMapFlagCache(new File(ElectionMapFileManager.FLAGS_DIR));
+		flagCache.indexFlags();
+
+		// EVERY FLAG IS DRAWN ONCE, SO THERE'S NO POINT IN THROWING ANY OUT
+		flagCache.setMaxCachedBytes(Long.MAX_VALUE);
+	}
+
+	/*@params- args:String[]
+	 * @throws- Exception
+	 * renders maps into the output directory, which may be given first, on as many threads as may
+	 * be given second, by default one per processor. Any other arguments are the maps to render,
+	 * by default every map in the maps directory
+	 */
+	public static void main(String[] args) throws Exception{
+		// THERE'S NOTHING TO SHOW, SO NEVER NEED A DISPLAY
+		System.setProperty("java.awt.headless", "true");
+		File outputDir = new File((args.length > 0) ? args[0] : DEFAULT_OUTPUT_DIR);
+		int numThreads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		List<String> abbrs = new ArrayList<String>();
+		for(int i=2; i<args.length; i++)
+			abbrs.add(args[i]);
+		if(abbrs.isEmpty())
+			abbrs = ElectionMapBundleCompiler.findMaps(new File(ElectionMapFileManager.MAPS_DIR));
+
+		long start = System.nanoTime();
+		int numFailed = new ElectionMapBatchRenderer(outputDir).renderAll(abbrs, numThreads);
+		System.out.printf("Rendered %d maps into %s on %d threads in %.1f s%n",
+				abbrs.size() - numFailed, outputDir, numThreads, (System.nanoTime() - start)/1e9);
+		if(numFailed > 0){
+			System.err.printf("%d maps failed%n", numFailed);
+			System.exit(1);
+		}
+	}
+
+	/*@params- abbrs:List<String>, numThreads:int
+	 * @returns- int
+	 * @throws- IOException, InterruptedException
+	 * renders every map in abbrs, each only once, on numThreads threads, returning how many failed.
+	 * A map that fails doesn't stop the others
+	 */
+	public int renderAll(List<String> abbrs, int numThreads) throws IOException, InterruptedException{
+		if(!outputDir.isDirectory() && !outputDir.mkdirs())
+			throw new IOException("Could not make " + outputDir);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads), new ThreadFactory(){
+			private int numThreads = 0;
+			public synchronized Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "Map renderer-" + (++numThreads));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try{
+			List<Future<File>> renders = new ArrayList<Future<File>>();
+			for(final String abbr : new LinkedHashSet<String>(abbrs)){
+				renders.add(executor.submit(new Callable<File>(){
+					public File call() throws Exception{
+						return render(abbr);
+					}
+				}));
+			}
+			int numFailed = 0;
+			for(Future<File> render : renders){
+				try{
+					render.get();
+				}
+				catch(ExecutionException ee){
+					ee.getCause().printStackTrace();
+					numFailed++;
+				}
+			}
+			return numFailed;
+		}
+		finally{
+			executor.shutdownNow();
+		}
+	}
+
+	/*@params- abbr:String
+	 * @returns- File
+	 * @throws- IOException
+	 * loads, colors and renders the abbr map into its image, returning the image file. This is
+	 * called on one of the rendering threads, so everything that changes is its own
+	 */
+	public File render(String abbr) throws IOException{
+		long start = System.nanoTime();
+		SHPMap map = fileManager.loadMapGeometry(abbr);
+		DBFTable table;
+		try{
+			table = fileManager.loadMapTable(abbr);
+		}
+		catch(IOException | RuntimeException e){
+			map.getShapefileData().close();
+			throw e;
+		}
+
+		// THE MAP IS CLOSED ONCE IT'S DRAWN, WHICH CLOSES ITS .shp AND THROWS
+		// ITS TABLE OUT OF THE SHARED CACHE, SO A WHOLE BATCH ISN'T KEPT OPEN
+		ElectionMapData mapData = new ElectionMapData(abbr, map, table);
+		try{
+			// THE CACHE ONLY KEEPS FLAGS SOFTLY, SO HOLD ON TO THEM UNTIL THE MAP
+			// IS DRAWN, OR THE RENDERER MIGHT FIND THEM GONE AND DRAW NONE
+			BufferedImage flag = flagCache.loadFlag(abbr);
+			BufferedImage miniFlag = flagCache.loadMiniFlag(abbr);
+			long loaded = System.nanoTime();
+
+			// SET UP A DATA MODEL AND RENDERER JUST FOR THIS MAP, LIKE THE VIEWER
+			// WOULD IF IT WAS SHOWING IT. THE SHARED FLAG CACHE IS ONLY GIVEN TO IT
+			// AFTER init, SO IT NEVER GETS ONE OF init's GUI LISTENERS
+			ElectionMapDataModel dataModel = new ElectionMapDataModel();
+			ElectionMapRenderer renderer = new ElectionMapRenderer(dataModel);
+			dataModel.init(renderer, fileManager);
+			dataModel.setFlagCache(flagCache);
+			dataModel.initShapeColors(map, table);
+			dataModel.setCurrentSHP(map);
+			dataModel.setTable(table);
+			dataModel.setCurrentMapAbbr(abbr);
+			dataModel.setOverallMapAbbr(abbr);
+			dataModel.setCurrentMapName(abbr);
+			dataModel.setCurrentStateAbbr(abbr);
+			renderer.setFile(mapData.getDBFFile());
+			renderer.setSize(IMAGE_WIDTH, IMAGE_HEIGHT);
+
+			BufferedImage image = new BufferedImage(IMAGE_WIDTH, IMAGE_HEIGHT, BufferedImage.TYPE_INT_RGB);
+			renderer.renderToImage(image);
+			long rendered = System.nanoTime();
+			if((flag==null) || (miniFlag==null))
+				System.err.printf("%s: no flag, so it was drawn without one%n", abbr);
+
+			File imageFile = new File(outputDir, abbr + "." + IMAGE_FORMAT);
+			if(!ImageIO.write(image, IMAGE_FORMAT, imageFile))
+				throw new IOException("No writer for " + IMAGE_FORMAT);
+			long encoded = System.nanoTime();
+			System.out.printf("%s: load %.1f ms, render %.1f ms, encode %.1f ms, total %.1f ms%n",
+					abbr, (loaded - start)/1e6, (rendered - loaded)/1e6, (encoded - rendered)/1e6, (encoded - start)/1e6);
+			return imageFile;
+		}
+		finally{
+			ElectionMapRepository.close(mapData);
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package election_map_viewer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import dbf_framework.DBFFileIO;
+import dbf_framework.DBFTable;
+
+import shp_framework.MappedSHPData;
+import shp_framework.SHPMap;
+
+/**
+ * This class reads a map bundle, which is a single file with all the maps
+ * of the application already compiled by ElectionMapBundleCompiler, so
+ * that they can be opened without parsing any .shp or .dbf files. Each map
+ * has a geometry section, as made by MappedSHPData.encode, and a table
+ * section, as made by DBFFileIO.encodeTable. Sections are memory mapped
+ * only when their map is asked for, and then only read as they're used.
+ *
+ * The file starts with a little endian directory: MAGIC, FORMAT_VERSION and
+ * the number of maps, then for each map its name, the last modified time and
+ * length of the .shp and .dbf it was compiled from, and where its sections
+ * are. Sections start on 8 byte boundaries.
+ **/
+public class ElectionMapBundle implements Closeable
+{
+	// "EMB1" WHEN READ AS A LITTLE ENDIAN INT
+	public static final int MAGIC = 0x31424D45;
+	public static final int FORMAT_VERSION = 1;
+
+	// MAP NAMES ARE STORED ONE BYTE PER CHARACTER
+	public static final Charset NAME_CHARSET = Charset.forName("ISO-8859-1");
+
+	// THE BUNDLE FILE
+	private File bundleFile;
+	private RandomAccessFile file;
+	private FileChannel channel;
+
+	// WHAT THE DIRECTORY SAYS ABOUT EACH MAP, BY NAME
+	private TreeMap<String, Entry> entries;
+
+	/*@params- initBundleFile:File
+	 * @throws- IOException
+	 * opens the bundle and reads its directory, failing if it isn't a bundle this version can read
+	 */
+	public ElectionMapBundle(File initBundleFile) throws IOException
+	{
+		bundleFile = initBundleFile;
+		file = new RandomAccessFile(bundleFile, "r");
+		channel = file.getChannel();
+		entries = new TreeMap<String, Entry>();
+		try
+		{
+			ByteBuffer header = read(0, 12);
+			if ((header.getInt() != MAGIC) || (header.getInt() != FORMAT_VERSION))
+				throw new IOException(bundleFile + " is not a map bundle this version can read");
+			int numMaps = header.getInt();
+			long position = 12;
+			for (int i = 0; i < numMaps; i++)
+			{
+				int nameLength = read(position, 2).getShort() & 0xffff;
+				ByteBuffer entryData = read(position + 2, nameLength + Entry.LENGTH);
+				Entry entry = Entry.read(entryData, nameLength);
+				entries.put(entry.name, entry);
+				position += 2 + nameLength + Entry.LENGTH;
+			}
+		}
+		catch(IOException ioe)
+		{
+			close();
+			throw ioe;
+		}
+	}
+
+	// ACCESSOR METHODS
+	public File			getBundleFile()			{ return bundleFile;			}
+	public Set<String>	getMapNames()			{ return entries.keySet();		}
+	public boolean		hasMap(String name)		{ return entries.containsKey(name);	}
+
+	/*@params- name:String, shpFile:File, dbfFile:File
+	 * @returns- boolean
+	 * tests whether the bundled copy of the map is still what its .shp and .dbf hold. A file that
+	 * isn't there doesn't count against it, so a bundle can be used without the files it came from
+	 */
+	public boolean isCurrent(String name, File shpFile, File dbfFile){
+		Entry entry = entries.get(name);
+		if(entry==null)
+			return false;
+		return isCurrent(shpFile, entry.shpModified, entry.shpLength)
+				&& isCurrent(dbfFile, entry.dbfModified, entry.dbfLength);
+	}
+
+	/*@params- name:String
+	 * @returns- SHPMap
+	 * @throws- IOException
+	 * maps the named map's geometry. Only the bounding boxes are read now, the shapes are made
+	 * when they're first used
+	 */
+	public SHPMap loadMap(String name) throws IOException{
+		Entry entry = getEntry(name);
+		ByteBuffer geometry = map(entry.geometryPosition, entry.geometryLength);
+		return new SHPMap(name + ".shp", new MappedSHPData(geometry));
+	}
+
+	/*@params- name:String
+	 * @returns- DBFTable
+	 * @throws- IOException
+	 * makes the named map's table, which is just copying its columns out of the bundle
+	 */
+	public DBFTable loadTable(String name) throws IOException{
+		Entry entry = getEntry(name);
+		return new DBFFileIO().decodeTable(map(entry.tablePosition, entry.tableLength));
+	}
+
+	/**
+	 * Closes the bundle. Note that maps and tables already loaded
+	 * from it can still be used.
+	 **/
+	public void close() throws IOException
+	{
+		channel.close();
+		file.close();
+	}
+
+	/*@params- names:List<String>
+	 * @returns- long
+	 * how many bytes the directory of a bundle with the named maps takes, which is where
+	 * the first section may start
+	 */
+	static long getDirectoryLength(List<String> names){
+		long length = 12;
+		for(String name : names)
+			length += 2 + name.getBytes(NAME_CHARSET).length + Entry.LENGTH;
+		return align(length);
+	}
+
+	/*@params- entries:List<Entry>
+	 * @returns- ByteBuffer
+	 * puts together the directory for the entries, ready to be written at the start of a bundle
+	 */
+	static ByteBuffer makeDirectory(List<Entry> entries){
+		ArrayList<String> names = new ArrayList<String>();
+		for(Entry entry : entries)
+			names.add(entry.name);
+		ByteBuffer directory = ByteBuffer.allocate((int)getDirectoryLength(names));
+		directory.order(ByteOrder.LITTLE_ENDIAN);
+		directory.putInt(MAGIC);
+		directory.putInt(FORMAT_VERSION);
+		directory.putInt(entries.size());
+		for(Entry entry : entries)
+			entry.write(directory);
+		directory.position(0);
+		return directory;
+	}
+
+	/*@params- position:long
+	 * @returns- long
+	 * rounds position up to the next 8 byte boundary
+	 */
+	static long align(long position){
+		return (position + 7) & ~7L;
+	}
+
+	/*
+	 * helper that gets the directory entry for a map, which must be in the bundle
+	 */
+	private Entry getEntry(String name) throws IOException{
+		Entry entry = entries.get(name);
+		if(entry==null)
+			throw new IOException("No map named " + name + " in " + bundleFile);
+		return entry;
+	}
+
+	/*
+	 * helper that tests one source file against what the directory says about it
+	 */
+	private static boolean isCurrent(File sourceFile, long modified, long length){
+		if(!sourceFile.exists())
+			return true;
+		return (sourceFile.lastModified()==modified) && (sourceFile.length()==length);
+	}
+
+	/*
+	 * helper that reads length bytes at position into a little endian buffer
+	 */
+	private ByteBuffer read(long position, int length) throws IOException{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		while(buffer.hasRemaining()){
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException(bundleFile + " ends in the middle of its directory");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/*
+	 * helper that memory maps one section of the bundle
+	 */
+	private ByteBuffer map(long position, long length) throws IOException{
+		if((length > Integer.MAX_VALUE) || (position + length > channel.size()))
+			throw new EOFException(bundleFile + " doesn't have the whole section at " + position);
+		ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		section.order(ByteOrder.LITTLE_ENDIAN);
+		return section;
+	}
+
+	/**
+	 * This class stores what the directory says about one map.
+	 **/
+	static class Entry
+	{
+		// HOW MANY BYTES AN ENTRY TAKES AFTER ITS NAME
+		static final int LENGTH = 8 * 8;
+
+		String name;
+		long shpModified;
+		long shpLength;
+		long dbfModified;
+		long dbfLength;
+		long geometryPosition;
+		long geometryLength;
+		long tablePosition;
+		long tableLength;
+
+		/*
+		 * writes the entry into the directory
+		 */
+		void write(ByteBuffer directory){
+			byte[] nameBytes = name.getBytes(NAME_CHARSET);
+			directory.putShort((short)nameBytes.length);
+			directory.put(nameBytes);
+			directory.putLong(shpModified);
+			directory.putLong(shpLength);
+			directory.putLong(dbfModified);
+			directory.putLong(dbfLength);
+			directory.putLong(geometryPosition);
+			directory.putLong(geometryLength);
+			directory.putLong(tablePosition);
+			directory.putLong(tableLength);
+		}
+
+		/*
+		 * reads an entry from the directory, starting just after its name's length
+		 */
+		static Entry read(ByteBuffer entryData, int nameLength){
+			Entry entry = new Entry();
+			byte[] nameBytes = new byte[nameLength];
+			entryData.get(nameBytes);
+			entry.name = new String(nameBytes, NAME_CHARSET);
+			entry.shpModified = entryData.getLong();
+			entry.shpLength = entryData.getLong();
+			entry.dbfModified = entryData.getLong();
+			entry.dbfLength = entryData.getLong();
+			entry.geometryPosition = entryData.getLong();
+			entry.geometryLength = entryData.getLong();
+			entry.tablePosition = entryData.getLong();
+			entry.tableLength = entryData.getLong();
+			return entry;
+		}
+	}
+}
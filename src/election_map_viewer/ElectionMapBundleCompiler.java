@@ -0,0 +1,157 @@
+package election_map_viewer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import dbf_framework.DBFFileIO;
+import dbf_framework.DBFTable;
+
+import shp_framework.MappedSHPData;
+import shp_framework.SHPDataLoader;
+import shp_framework.SHPMap;
+
+/**
+ * This program compiles every map in a directory, meaning each .shp that
+ * has a .dbf with the same name, into a single map bundle that the viewer
+ * can open without parsing anything, see ElectionMapBundle. It should be
+ * run again whenever the maps change, although the viewer will go back to
+ * the .shp and .dbf of any map whose files have changed since.
+ **/
+public class ElectionMapBundleCompiler
+{
+	// FOR LOADING THE MAPS, FULLY, SO THEIR LEVELS OF DETAIL GET MADE
+	private SHPDataLoader shpLoader;
+	private DBFFileIO dbfLoader;
+
+	/*
+	 * sets up the loaders
+	 */
+	public ElectionMapBundleCompiler(){
+		shpLoader = new SHPDataLoader();
+		shpLoader.setMemoryMapped(true);
+		dbfLoader = new DBFFileIO();
+	}
+
+	/*@params- args:String[]
+	 * @throws- IOException
+	 * compiles the maps directory, which may be given first, into the bundle file, which may be
+	 * given second. They default to where the viewer looks for them
+	 */
+	public static void main(String[] args) throws IOException{
+		File mapsDir = new File((args.length > 0) ? args[0] : ElectionMapFileManager.MAPS_DIR);
+		File bundleFile = new File((args.length > 1) ? args[1] : ElectionMapFileManager.MAPS_BUNDLE);
+		long start = System.nanoTime();
+		int numMaps = new ElectionMapBundleCompiler().compile(mapsDir, bundleFile);
+		System.out.printf("Compiled %d maps into %s (%d bytes) in %.1f s%n",
+				numMaps, bundleFile, bundleFile.length(), (System.nanoTime() - start)/1e9);
+	}
+
+	/*@params- mapsDir:File, bundleFile:File
+	 * @returns- int
+	 * @throws- IOException
+	 * compiles every map in mapsDir into bundleFile, returning how many there were. The bundle is
+	 * written to a temporary file first, so a bundle that's already there is only replaced once
+	 * the new one is done
+	 */
+	public int compile(File mapsDir, File bundleFile) throws IOException{
+		ArrayList<String> names = findMaps(mapsDir);
+		ArrayList<ElectionMapBundle.Entry> entries = new ArrayList<ElectionMapBundle.Entry>();
+		File directory = bundleFile.getAbsoluteFile().getParentFile();
+		File tempFile = File.createTempFile(bundleFile.getName(), ".tmp", directory);
+		boolean compiled = false;
+		try{
+			FileOutputStream fos = new FileOutputStream(tempFile);
+			try{
+				//the sections go after the directory, which is written last since
+				//that's when we know where they all are
+				FileChannel channel = fos.getChannel();
+				long position = ElectionMapBundle.getDirectoryLength(names);
+				for(String name : names){
+					File shpFile = new File(mapsDir, name + ".shp");
+					File dbfFile = new File(mapsDir, name + ".dbf");
+					ElectionMapBundle.Entry entry = new ElectionMapBundle.Entry();
+					entry.name = name;
+					entry.shpModified = shpFile.lastModified();
+					entry.shpLength = shpFile.length();
+					entry.dbfModified = dbfFile.lastModified();
+					entry.dbfLength = dbfFile.length();
+
+					//one map at a time, so only one is ever in memory
+					SHPMap map = shpLoader.loadShapefile(shpFile);
+					entry.geometryPosition = position;
+					entry.geometryLength = write(channel, MappedSHPData.encode(map.getShapefileData()), position);
+					position = ElectionMapBundle.align(position + entry.geometryLength);
+					DBFTable table = dbfLoader.loadDBF(dbfFile);
+					entry.tablePosition = position;
+					entry.tableLength = write(channel, dbfLoader.encodeTable(table), position);
+					position = ElectionMapBundle.align(position + entry.tableLength);
+					entries.add(entry);
+				}
+				write(channel, ElectionMapBundle.makeDirectory(entries), 0);
+				channel.force(true);
+			}
+			finally{
+				fos.close();
+			}
+
+			//now put it where it belongs, all at once if we can
+			try{
+				Files.move(tempFile.toPath(), bundleFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch(AtomicMoveNotSupportedException amnse){
+				Files.move(tempFile.toPath(), bundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			compiled = true;
+		}
+		finally{
+			if(!compiled)
+				tempFile.delete();
+		}
+		return entries.size();
+	}
+
+	/*@params- mapsDir:File
+	 * @returns- ArrayList<String>
+	 * @throws- IOException
+	 * the names of all the maps in mapsDir, meaning the .shp files that have a .dbf, in order
+	 */
+	static ArrayList<String> findMaps(File mapsDir) throws IOException{
+		File[] shpFiles = mapsDir.listFiles(new FilenameFilter(){
+			public boolean accept(File dir, String name){
+				return name.toLowerCase().endsWith(".shp");
+			}
+		});
+		if(shpFiles==null)
+			throw new IOException("Can't list the maps in " + mapsDir);
+		Arrays.sort(shpFiles);
+		ArrayList<String> names = new ArrayList<String>();
+		for(File shpFile : shpFiles){
+			String name = shpFile.getName().substring(0, shpFile.getName().length() - 4);
+			if(new File(mapsDir, name + ".dbf").exists())
+				names.add(name);
+		}
+		return names;
+	}
+
+	/*@params- channel:FileChannel, buffer:ByteBuffer, position:long
+	 * @returns- long
+	 * @throws- IOException
+	 * writes all of buffer at position, returning how many bytes that was
+	 */
+	private long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		long length = buffer.remaining();
+		long written = 0;
+		while(buffer.hasRemaining())
+			written += channel.write(buffer, position + written);
+		return length;
+	}
+}
@@ -0,0 +1,52 @@
+package election_map_viewer;
+
+import java.io.File;
+import java.io.IOException;
+
+import dbf_framework.DBFTable;
+import dbf_framework.DBFTableCache;
+
+import shp_framework.SHPMap;
+
+/**
+ * This class holds everything needed to show one map, meaning its shapes,
+ * already colored with the winner of each region, and its election results
+ * table, so that a map can be loaded off of the event dispatch thread and
+ * then shown all at once. Once a map is no longer wanted it should be closed,
+ * which lets go of the file its shapes are read from and of its table.
+ **/
+public class ElectionMapData
+{
+	// THE MAP'S ABBREVIATION, WHICH IS ALSO THE NAME OF ITS FILES
+	private String abbr;
+
+	// ITS SHAPES AND ITS TABLE
+	private SHPMap map;
+	private DBFTable table;
+
+	/*@params- initAbbr:String, initMap:SHPMap, initTable:DBFTable
+	 */
+	public ElectionMapData(String initAbbr, SHPMap initMap, DBFTable initTable)
+	{
+		abbr = initAbbr;
+		map = initMap;
+		table = initTable;
+	}
+
+	// ACCESSOR METHODS
+	public String	getAbbr()		{ return abbr;		}
+	public SHPMap	getMap()		{ return map;		}
+	public DBFTable	getTable()		{ return table;		}
+	public File		getSHPFile()	{ return new File(ElectionMapFileManager.MAPS_DIR + abbr + ".shp");	}
+	public File		getDBFFile()	{ return new File(ElectionMapFileManager.MAPS_DIR + abbr + ".dbf");	}
+
+	/*@throws- IOException
+	 * closes the file the shapes are read from, if they're read as needed, and throws the table
+	 * out of the shared table cache, if it's still there, so neither is kept any longer. Shapes that
+	 * haven't been read can't be used after this
+	 */
+	public void close() throws IOException{
+		DBFTableCache.getSharedCache().invalidate(getDBFFile(), table);
+		map.getShapefileData().close();
+	}
+}
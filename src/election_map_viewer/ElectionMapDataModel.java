@@ -1,23 +1,20 @@
 package election_map_viewer;
 
 import java.awt.Color;
-import java.awt.Image;
-import java.awt.Polygon;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import javax.swing.JOptionPane;
 
-import dbf_framework.DBFFileIO;
-import dbf_framework.DBFRecord;
 import dbf_framework.DBFTable;
+import dbf_framework.DBFTableCache;
 
 import shp_framework.SHPData;
+import shp_framework.SHPIndexResults;
 import shp_framework.SHPMap;
 import shp_framework.geometry.SHPPolygon;
-import shp_framework.geometry.SHPShape;
 
 import static election_map_viewer.ElectionMapRenderer.*;
 /**
@@ -31,6 +28,8 @@ public class ElectionMapDataModel
 {
 	//the DBFTable of a DBF File
 	private DBFTable sections;
+	//the added up results of each table, built once per loaded table
+	private WeakHashMap<DBFTable, ElectionResults> resultsCache;
 	// HERE'S THE MAP'S RENDERER, WHICH WE NEED TO NOTIFY WHENEVER
 	// THERE ARE CHANGES TO DATA SO THAT IT REPAINTS ITSELF\
 	private ElectionMapRenderer renderer;
@@ -55,13 +54,12 @@ public class ElectionMapDataModel
 	// THIS IS FOR HIGHLIGHTING A PART OF A POLYGON (LIKE A COUNTY OR STATE)
 	private SHPPolygon highlightedPolygon;
 	
-	// WE'LL RECYCLE THIS POLYGON SO WE DON'T HAVE TO
-	// KEEP CONSTRUCTING IT FOR OUR TESTS
-	private Polygon testPoly;
+	// WE'LL RECYCLE THIS FOR GETTING THE SHAPES UNDER
+	// THE MOUSE FROM THE SPATIAL INDEX
+	private SHPIndexResults shapesFound;
 	
-	// THIS WILL STORE ALL OF OUR STATE FLAGS
-	private TreeMap<String, Image> flags;
-	private TreeMap<String, Image> miniFlags;
+	// THIS PROVIDES ALL OF OUR STATE FLAGS, LOADING THEM AS NEEDED
+	private ElectionMapFlagCache flagCache;
 
 	// USED FOR TITLES AND THE USA MAP
 	public static final String MAP_TITLE = " 2008 Presidential Election Results";
@@ -83,14 +81,14 @@ public class ElectionMapDataModel
 	public ElectionMapDataModel()
 	{
 		// AND INITIALIZE OUR DATA STRUCTURES
-		testPoly = new Polygon();
-		flags = new TreeMap<String, Image>();
-		miniFlags = new TreeMap<String, Image>();
+		shapesFound = new SHPIndexResults();
+		flagCache = new ElectionMapFlagCache(new File(ElectionMapFileManager.FLAGS_DIR));
 		stateAbbr = "USA";
 		
 		// THE MAP HAS NOT YET BEEN RENDERED
 		mapRendered = false;
 		sections = new DBFTable();
+		resultsCache = new WeakHashMap<DBFTable, ElectionResults>();
 	}
 
 	// SIMPLE ACCESSOR METHODS
@@ -101,9 +99,9 @@ public class ElectionMapDataModel
 	public boolean 	isMapLoaded() 			{ return currentMapName != null; 		}
 	public boolean	isMapRendered()			{ return mapRendered;					}
 	public boolean 	isRegionHighlighted()	{ return highlightedPolygon != null; 	}
-	public TreeMap<String, Image> getFlags()  { return flags;							}
-	public TreeMap<String, Image> getMiniFlags() { return miniFlags;				}
+	public ElectionMapFlagCache getFlagCache() { return flagCache;				}
 	public ElectionMapRenderer getRenderer() { return renderer;					}
+	public ElectionMapFileManager getFileManager() { return fileManager;		}
 	public DBFTable getTable()				 { return sections;					}
 	public void setCurrentStateAbbr(String abbr)		{ this.stateAbbr =abbr;}
 	public String getStateAbbr()	{return this.stateAbbr;}
@@ -111,12 +109,23 @@ public class ElectionMapDataModel
 	
 	/**
 	 * For accessing the large flag of the map currently being rendered.
+	 * Note that this is null until it's loaded, at which point the
+	 * renderer is repainted.
 	 **/
-	public Image getCurrentFlag()
+	public BufferedImage getCurrentFlag()
 	{
-		return flags.get(currentMapAbbr);
+		return flagCache.getFlag(currentMapAbbr);
 	}	
 	
+	/**
+	 * For accessing the mini flag of the abbr map region, which is
+	 * null until it's loaded, just like getCurrentFlag.
+	 **/
+	public BufferedImage getMiniFlag(String abbr)
+	{
+		return flagCache.getMiniFlag(abbr);
+	}
+	
 	/**
 	 * For accessing the SHPMap that corresponds to the the map that
 	 * is currently being rendered.
@@ -133,6 +142,26 @@ public class ElectionMapDataModel
 	public void setCurrentSHP(SHPMap map){
 		currentSHP=map;
 	}
+	/*
+	 * @params- table:DBFTable
+	 * the table of the current map, whose shapes should already be colored for it
+	 */
+	public void setTable(DBFTable table){
+		sections=table;
+	}
+	/*
+	 * @params- name:String
+	 */
+	public void setCurrentMapName(String name){
+		this.currentMapName = name;
+	}
+	/*
+	 * @params- initFlagCache:ElectionMapFlagCache
+	 * replaces where flags come from, so that a cache can be shared, like when rendering in batch
+	 */
+	public void setFlagCache(ElectionMapFlagCache initFlagCache){
+		flagCache = initFlagCache;
+	}
 	/*
 	 * @params- abbr:Sstring
 	 */
@@ -145,105 +174,82 @@ public class ElectionMapDataModel
 	public void setOverallMapAbbr(String abbr){
 		this.currentOverallAbbr = abbr;
 	}
+	/*@params- file:File
+	 * @returns- ElectionResults
+	 * @throws- IOException
+	 * gets the added up results for the table in the file. They are only added up the first time
+	 * a given table is asked for.
+	 */
+	public ElectionResults getResults(File file) throws IOException{
+		return getResults(DBFTableCache.getSharedCache().getTable(file));
+	}
+	/*@params- table:DBFTable
+	 * @returns- ElectionResults
+	 * this is synchronized since the results for the USA map are first added up while it's being
+	 * loaded at startup, which isn't done on the event dispatch thread
+	 */
+	public synchronized ElectionResults getResults(DBFTable table){
+		ElectionResults results = resultsCache.get(table);
+		if(results==null){
+			results = new ElectionResults(table);
+			resultsCache.put(table, results);
+		}
+		return results;
+	}
 	/*@params- candidates:Candidate[], file:File
 	 * @returns- String[]
 	 * @throws- IOException
-	 * This function takes an array of candidates and a file, extracts information from the file and adds them to the
-	 * correct candidate. It then constructs the string for a specific candidate and stores it in an array.
+	 * This function takes an array of candidates whose votes have already been set and constructs
+	 * the string for each candidate and stores it in an array.
 	 * Finally it returns the array of Strings for future use
 	 */
 	public String[]  buildStrings(Candidate[] candidates, File file) throws IOException{
 		String[] votes = new String[candidates.length];
-		DBFRecord theRecord;
-		DBFTable currentTable = (new DBFFileIO().loadDBF(file));
-		//if a state is selected
-		if(renderer.getPolyLocation()!=-1)
-			theRecord = (currentTable.getRecord(renderer.getPolyLocation()));
-		else
-			theRecord = currentTable.getRecord(0);//default record, only to satisfy the arguments
 		//for each candidate create a string
 		for(int i=0; i<candidates.length; i++){
-			BigDecimal divisor = totalVotes(file, theRecord);
-			BigDecimal numerator = candidates[i].getVotes();
-			if(divisor.intValue()==0){
-				divisor=BigDecimal.ONE;
-				numerator=BigDecimal.ZERO;
-			}
 			votes[i] = candidates[i].getName() +": " + addCommas(candidates[i].getVotes()) + " Votes ("
-			+ (numerator.divide(divisor,new MathContext(2))).multiply(new BigDecimal(100)).intValue()
-					+"%)";
+					+ candidates[i].getPercent() +"%)";
 		}
 		return votes;
 	}
-	/*@params number:BigDecimal
+	/*@params number:long
 	 * @returns- String
 	 * this function takes in a number, makes it a string and adds in the commas
 	 */
-	public String addCommas(BigDecimal number){
-		String numberString=number.toString();
-		int[] commaPositions = new int[4];
-		int inversePosition=0;
-		int commaIterator=0;
-		//find out where the commas should be placed
-		for(int i= numberString.length()-1; i>=0; i--){
-			if(inversePosition%3==0 && inversePosition!=0){
-				commaPositions[commaIterator]=i;
-				commaIterator++;
-			}
-			inversePosition++;
-		}
-		//since the above array will be done backward go to the last useful number int he array
-		for(int i=0; i<commaPositions.length; i++){
-			if(commaPositions[i]==0)
-				break;
-			commaIterator= i;
-		}
-		//if numberString.length()%3==1 then a comma needs to be added after the zero place, so move on to the next 0
-		if(numberString.length() % 3==1){
-			commaIterator++;
-		}
-		String temp = "";
-		//add the commas
+	public String addCommas(long number){
+		String numberString=Long.toString(number);
+		StringBuilder temp = new StringBuilder(numberString.length() + numberString.length()/3);
+		int firstDigit = (number<0) ? 1 : 0;
+		//add the commas, one before every group of three digits counting from the right
 		for(int i=0; i<numberString.length(); i++){
-			temp= temp.concat(Character.toString(numberString.charAt(i)));
-			if(commaIterator>-1 && i == commaPositions[commaIterator]){
-				temp=temp.concat(",");
-				commaIterator--;
-			}
+			int digitsLeft = numberString.length()-i;
+			if(i>firstDigit && digitsLeft%3==0)
+				temp.append(',');
+			temp.append(numberString.charAt(i));
 		}
-		return temp;
+		return temp.toString();
 	}
 	/*@params- candidate:int, file:File
-	 * @returns- BigDecimal
+	 * @returns- long
+	 * the total votes for the candidate, which is the candidate's position among the
+	 * last three columns of the table
 	 */
-	public BigDecimal candidateVotes(int candidate, File file) throws IOException{
-		//start at 0
-		BigDecimal candidateVotes = BigDecimal.ZERO;
-		Iterator<DBFRecord> iterator = (new DBFFileIO()).loadDBF(file).getTree().iterator();
-		//add the candidates votes together. A candidate has a specific point in the array, which the calling
-		//function will be responsible for telling this function.
-		while(iterator.hasNext()){
-			DBFRecord next = iterator.next();
-			candidateVotes = candidateVotes.add(new BigDecimal((Long)next.getData(candidate)));
-		}
-		return candidateVotes;
+	public long candidateVotes(int candidate, File file) throws IOException{
+		return getResults(file).getVotes(candidate, ElectionResults.WHOLE_TABLE);
 	}
 	/*@params- array:Candidate[]
 	 * @returns- Candidate[]
-	 * @throws- IOException
 	 * sorts the candidate array based on who has the most votes
 	 */
-	public Candidate[] sortArray(Candidate[] array) throws IOException{
+	public Candidate[] sortArray(Candidate[] array){
 		for(int i=0; i<array.length; i++){
-			Candidate temp = new Candidate(2, "temp", Color.black);
-			temp.setDefaultVotes(new BigDecimal(-1));
-			int k=0;
-			for(int j=i; j<array.length; j++){
-				if(temp.getVotes().compareTo(array[j].getVotes())<0){
-					temp = array[j];
+			int k=i;
+			for(int j=i+1; j<array.length; j++){
+				if(array[k].getVotes()<array[j].getVotes()){
 					k=j;
 				}
 			}
+			Candidate temp = array[k];
 			array[k]=array[i];
 			array[i]=temp;
 		}
@@ -255,56 +261,29 @@ public class ElectionMapDataModel
 	 * take info from the file, finds the total number of votes and constructs the string
 	 */
 	public String totalVotesString(File file) throws IOException{
-		String votes ="";
-		//the table
-		DBFTable currentTable = (new DBFFileIO()).loadDBF(file);
-		DBFRecord theRecord=null;
-		//if not selecting a county/state get a certain record
-		if(renderer.getPolyLocation()!=-1)
-			theRecord = (currentTable.getRecord(renderer.getPolyLocation()));
-		else
-			theRecord = currentTable.getRecord(0);//default record, only to satisfy the arguments
-		BigDecimal totalVotes = totalVotes(file, theRecord);
 		//construct string
-		votes = "Total: " + this.addCommas(totalVotes) + "Votes (100%)";
-		return votes;
+		return "Total: " + this.addCommas(totalVotes(file)) + "Votes (100%)";
 	}
-	/*@params- theRecord:DBFRecord, file:File
-	 * @returns- BigDecimal
+	/*@params- file:File
+	 * @returns- long
 	 * @throws- IOException
-	 * A helper method for the method above this calculates the total votes.
+	 * A helper method for the method above this gets the total votes, either for the
+	 * selected county/state or for the whole table if nothing is selected.
 	 */
-	public BigDecimal totalVotes(File file, DBFRecord theRecord) throws IOException{
-		BigDecimal totalVotes = BigDecimal.ZERO;
-		if(renderer.getPolyLocation()==-1){
-			Iterator<DBFRecord> record= (new DBFFileIO()).loadDBF(file).getTree().iterator();
-			while(record.hasNext()){
-				DBFRecord next = record.next();
-				for(int i=0; i<3; i++){
-					totalVotes = totalVotes.add(new BigDecimal((Long)next.getData(next.getNumFields()-(3-i))));
-				}
-			}
-		}
-		else{
-			for(int i=0; i<3; i++)
-				totalVotes = totalVotes.add(new BigDecimal((Long)theRecord.getData(theRecord.getNumFields()-(3-i))));
-		}
-			
-		return totalVotes;
+	public long totalVotes(File file) throws IOException{
+		return getResults(file).getTotalVotes(renderer.getPolyLocation());
 	}
 	// MUTATOR METHODS
 	
 	/**
 	 * Called whenever a different territory is highlighted, this updates
 	 * our data model so it knows what is highlighted for rendering
-	 * purposes.
+	 * purposes. Note that the polygon's own colors aren't changed, the
+	 * renderer draws the highlight over the rest of the map.
 	 **/
 	public void setHighlightedRegion(SHPPolygon poly)
 	{
-		if (highlightedPolygon != null)
-			highlightedPolygon.setLineColor(DEFAULT_BORDER_COLOR);
 		highlightedPolygon = poly;
-		poly.setLineColor(DEFAULT_HIGHLIGHT_COLOR);		
 	}
 	
 	/**
@@ -320,28 +299,17 @@ public class ElectionMapDataModel
 	// SERVICE METHODS - THESE METHODS PROVIDE ADDITIONAL DATA PROCESSING
 	// SERVICES, IN PARTICULAR FOR THE EVENT HANDLERS.
 	
-	/**
-	 * This method adds the flag argument to the proper data structure
-	 * for storage. Note that this method properly filters the images
-	 * into their proper container, with .png files going to flags, and
-	 * .gif files going to miniFlags.
-	 **/
-	public void addFlag(String name, String flagAbbr, Image flag)
-	{
-		if (name.endsWith(MINI_FLAG_EXT))
-			miniFlags.put(flagAbbr, flag);
-		else
-			flags.put(flagAbbr, flag);
-	}
-
 	/**
 	 * Called in reponse to mouse motion, this method tests to see
 	 * if the current mouse's x,y position overlaps any of the current
 	 * map's polygons, and if it does, makes that the highlighted
-	 * map region. Note that this method forces a renderer repaint.
+	 * map region. Note that this method forces a renderer repaint, but
+	 * only if the highlighted region actually changed.
 	 **/
 	public void highlightMapRegion(int x, int y)
 	{
+		SHPPolygon oldPolygon = highlightedPolygon;
+		int oldPolyLocation = renderer.getPolyLocation();
 		boolean polySelected = selectPolygonAt(x, y);
 		if (!polySelected)
 		{
@@ -350,8 +318,9 @@ public class ElectionMapDataModel
 			resetHighlightedRegion();
 		}
 		
-		// UPDATE THE VIEW
-		renderer.repaint();		
+		// UPDATE THE VIEW, JUST WHERE THE HIGHLIGHT WAS AND NOW IS
+		if ((oldPolygon != highlightedPolygon) || (oldPolyLocation != renderer.getPolyLocation()))
+			renderer.repaintHighlight(oldPolygon, highlightedPolygon);
 	}
 	public void recallPaint(){
 		renderer.repaint();
@@ -366,11 +335,25 @@ public class ElectionMapDataModel
 		// SAVE THESE GUYS FOR LATER
 		renderer = initRenderer;
 		fileManager = initFileManager;
+		
+		// FLAGS ARE DRAWN AS SOON AS THEY'RE LOADED, AND THE USER IS
+		// TOLD ONCE ABOUT ANY THAT CAN'T BE
+		flagCache.setLoadListener(new ElectionMapFlagCache.LoadListener(){
+			public void flagLoaded(){
+				renderer.repaint();
+			}
+			public void flagFailed(File flagFile, IOException ioe){
+				JOptionPane.showMessageDialog(	renderer,
+												"Error loading flag " + flagFile,
+												"Error loading flag " + flagFile,
+												JOptionPane.ERROR_MESSAGE);
+			}
+		});
 	}
 	public void colorSections(SHPMap map, File file){
 		try {
 			//set sections to the relevant DBFTable
-			sections = (new DBFFileIO()).loadDBF(file);
+			sections = DBFTableCache.getSharedCache().getTable(file);
 			initShapeColors(map);//color in sections
 		} 
 		catch (IOException e) {
@@ -385,23 +368,37 @@ public class ElectionMapDataModel
 	public void initShapeColors(SHPMap map)
 	{
 		// INITIALIZE THE COLORS
-		Iterator<SHPShape> shapesIt = map.shapesIterator();
-		for (int i=0; shapesIt.hasNext(); i++)
+		initShapeColors(map, this.sections);
+		
+		// THE RENDERER WILL NEED TO REDRAW THE MAP WITH ITS NEW COLORS
+		if (renderer != null)
+			renderer.invalidateBaseLayer();
+	}
+	
+	/**
+	 * This method colors the shapes of the map argument with the winner
+	 * of each of the table argument's records, without changing anything
+	 * else in the data model. This means it can be done on any thread, as
+	 * long as the map isn't being rendered yet.
+	 **/
+	public void initShapeColors(SHPMap map, DBFTable table)
+	{
+		ElectionResults results = getResults(table);
+		SHPData data = map.getShapefileData();
+		for (int i=0; i<data.getNumShapes(); i++)
 		{
-			//get the next shape
-			SHPShape shape = shapesIt.next();
-			//find the number of fields
-			int numFields = this.sections.getNumFields();
-			DBFRecord record = this.sections.getTree().get(i);
-			//if Obama has more votes, set it to blue. if McCain has more votes, set it to Red. Otherwise, set it to yellow
-			if((Long)record.getData(numFields-3)>(Long)record.getData(numFields-2)){
-				shape.setFillColor(Color.BLUE);
+			//if Obama has more votes, set it to blue. if McCain has more votes, set it to Red. Otherwise, set it to yellow.
+			//note that this doesn't need the shape itself to be loaded
+			long obamaVotes = results.getVotes(0, i);
+			long mccainVotes = results.getVotes(1, i);
+			if(obamaVotes>mccainVotes){
+				data.setShapeFillColor(i, Color.BLUE);
 			}
-			else if((Long)record.getData(numFields-3)<(Long)record.getData(numFields-2)){
-				shape.setFillColor(Color.RED);
+			else if(obamaVotes<mccainVotes){
+				data.setShapeFillColor(i, Color.RED);
 			}
 			else{
-				shape.setFillColor(Color.YELLOW);
+				data.setShapeFillColor(i, Color.YELLOW);
 			}
 		}
 	}	
@@ -411,6 +408,16 @@ public class ElectionMapDataModel
 	 * This method sets the USA map, including the shp and
 	 * dbf data. Note that it does not force a repaint.
 	 **/
+	public void initUSAMap(SHPMap initUSAshp, DBFTable initTable)
+	{
+		sections = initTable;
+		initUSAMap(initUSAshp);
+	}
+	
+	/**
+	 * This method sets the USA map's shp data, keeping the
+	 * current table. Note that it does not force a repaint.
+	 **/
 	public void initUSAMap(SHPMap initUSAshp)
 	{
 		currentMapName = USA_MAP_NAME;
@@ -421,41 +428,14 @@ public class ElectionMapDataModel
 	}
 	
 	/**
-	 * This method tests to see if the (x,y) point is inside one of the parts (polygons)
-	 * of the poly argument. If it is, true is returned, else false.
+	 * This method tests to see if the (x,y) pixel is inside the poly argument.
+	 * If it is, true is returned, else false. Note that rather than converting
+	 * all of the polygon's points into pixels, we convert the pixel into a
+	 * geographic location and test that.
 	 **/
 	public boolean pointIsInPoly(ElectionMapRenderer renderer, SHPPolygon poly, int x, int y)
 	{
-		// GO THROUGH ALL THE PARTS (POLYGONS) OF THIS SHPPolygon. REMEMBER, IN
-		// AN SHP FILE, A POLYGON IS MAKE UP OF OTHER PARTS, WHICH ARE EACH THEIR
-		// OWN POLYGONS
-		for (int i = 0; i < poly.getNumParts(); i++)
-		{
-			// CLEAR OUR RECYCLED POLYGON OBJECT
-			testPoly.reset();
-		
-			// DETERMINE WHERE IN THE ARRAY WE'LL GET OUR POINTS FROM
-			int partStart = poly.getParts()[i];
-			int partEnd = poly.getNumPoints()-1;
-			if (i < poly.getNumParts()-1)
-			{
-				partEnd = poly.getParts()[i+1]-1;
-			}
-		
-			// NOW FILL OUR testPoly WITH PARTS
-			for (int j = partStart; j <= partEnd; j++)
-			{
-				double lat = poly.getXPointsData()[j];
-				double lon = poly.getYPointsData()[j];
-				int pX = renderer.xCoordinateToPixel(lat);
-				int pY = renderer.yCoordinateToPixel(lon);
-				testPoly.addPoint(pX,pY);
-			}
-			// AND LET OUR testPoly DO THE TEST
-			if (testPoly.contains(x, y))
-				return true;
-		}
-		return false;
+		return poly.contains(renderer.pixelToXCoordinate(x), renderer.pixelToYCoordinate(y));
 	}
 
 	/**
@@ -478,37 +458,38 @@ public class ElectionMapDataModel
 	public boolean selectPolygonAt(int x, int y)
 	{
 		SHPMap currentMap = getCurrentSHP();
-		SHPData mapData = currentMap.getShapefileData();	
-		Iterator<SHPShape> polyIt = (mapData.getShapes().iterator());
-		SHPPolygon poly;
-		boolean polyFound = false;
-		boolean stopSearching = false;
-		
-		// GO THROUGH ALL THE POLYGONS IN THE MAP
-		while (polyIt.hasNext())
-		{
-			// TEST EACH ONE
-			poly = (SHPPolygon)polyIt.next();
+		SHPData mapData = currentMap.getShapefileData();
 
-			if (!stopSearching)
-			{
-				// ONCE ONE IS FOUND TO BE TRUE, NONE OTHERS CAN
-				polyFound = pointIsInPoly(renderer, poly, x, y);
-			}
+		// WE ONLY NEED TO CONVERT THE MOUSE LOCATION INTO LONGITUDE AND
+		// LATITUDE ONCE, THEN EVERYTHING CAN BE TESTED IN MAP COORDINATES
+		double lon = renderer.pixelToXCoordinate(x);
+		double lat = renderer.pixelToYCoordinate(y);
 
-			if (polyFound)
-			{
-				// MARK THIS ONE FOR HIGHLIGHTING
-				setHighlightedRegion(poly);
-				renderer.setPolyNumber(poly.getRecordNumber()-1);
-				return true;
-			}				
-			else
+		// ONLY SHAPES WHOSE BOUNDING BOXES CONTAIN THE POINT CAN
+		// CONTAIN IT, SO LET THE SPATIAL INDEX FIND THOSE
+		mapData.findShapes(lon, lat, shapesFound);
+
+		// NOW TEST EACH ONE. IF MORE THAN ONE CONTAINS THE
+		// POINT, THE FIRST ONE IN THE MAP WINS
+		int polyIndex = -1;
+		for (int i = 0; i < shapesFound.getSize(); i++)
+		{
+			int index = shapesFound.get(i);
+			if (((polyIndex == -1) || (index < polyIndex))
+				&& ((SHPPolygon)mapData.getShape(index)).contains(lon, lat))
 			{
-				// ALL OTHERS WILL KEEP THE STANDARD BLACK
-				poly.setLineColor(Color.black);
+				polyIndex = index;
 			}
 		}
+
+		if (polyIndex != -1)
+		{
+			// MARK THIS ONE FOR HIGHLIGHTING
+			SHPPolygon poly = (SHPPolygon)mapData.getShape(polyIndex);
+			setHighlightedRegion(poly);
+			renderer.setPolyNumber(poly.getRecordNumber()-1);
+			return true;
+		}
 		renderer.setPolyNumber(-1);
 		return false;
 	}	
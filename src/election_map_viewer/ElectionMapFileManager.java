@@ -1,13 +1,15 @@
 package election_map_viewer;
 
 import java.awt.Image;
-import java.awt.MediaTracker;
 import java.io.File;
 import java.io.IOException;
 
 import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
 
+import dbf_framework.DBFTable;
+import dbf_framework.DBFTableCache;
+
 import shp_framework.SHPDataLoader;
 import shp_framework.SHPMap;
 
@@ -27,11 +29,28 @@ public class ElectionMapFileManager
 	public static final String USA_SHP = MAPS_DIR + "USA.shp";
 	public static final String USA_DBF = MAPS_DIR + "USA.dbf";
 	
+	// ALL THE MAPS, ALREADY COMPILED BY ElectionMapBundleCompiler
+	public static final String MAPS_BUNDLE = MAPS_DIR + "maps.bundle";
+	
+	// MAPS AT LEAST THIS BIG ARE LOADED LAZILY, ONE SHAPE AT A TIME AS NEEDED
+	public static final long LAZY_MAP_SIZE = 64L * 1024 * 1024;
+	
 	// THIS IS THE ICON FOR OUR APP
 	public static final String APP_ICON = SETUP_DIR + "USPresidentialSeal.png";
 
-	// AND HERE ARE THE CLASSES THAT CAN LOAD THE DATA
+	// AND HERE ARE THE CLASSES THAT CAN LOAD THE DATA. THIS ONE IS ONLY
+	// USED FOR ITS SETTINGS, EACH MAP IS LOADED WITH A COPY OF IT
 	private SHPDataLoader shpLoader;
+	
+	// MAPS IN THE BUNDLE ARE OPENED FROM IT RATHER THAN LOADED,
+	// THIS IS NULL IF THERE'S NO BUNDLE
+	private ElectionMapBundle mapBundle;
+
+	// THIS LOADS MAPS IN THE BACKGROUND FOR DRILLING DOWN, BUT ISN'T MADE
+	// UNTIL IT'S FIRST NEEDED, AND THIS KEEPS THE ONES THAT HAVE BEEN SHOWN
+	// SO THEY AREN'T AGAIN
+	private ElectionMapLoader mapLoader;
+	private ElectionMapRepository mapRepository;
 
 	// WE'LL NEED TO LOAD DATA INTO THE DATA MODEL
 	private ElectionMapDataModel dataModel;
@@ -43,38 +62,125 @@ public class ElectionMapFileManager
 	{
 		dataModel = initDataModel;
 		shpLoader = new SHPDataLoader();
+		shpLoader.setMemoryMapped(true);
+		shpLoader.setLazyLoadingThreshold(LAZY_MAP_SIZE);
+		mapBundle = openMapBundle();
+		mapRepository = new ElectionMapRepository();
+	}
+	
+	// ACCESSOR METHODS
+	public SHPDataLoader getSHPLoader()			{ return shpLoader;	}
+	public ElectionMapBundle getMapBundle()		{ return mapBundle;	}
+	public ElectionMapRepository getMapRepository()	{ return mapRepository;	}
+
+	/*@returns- ElectionMapLoader
+	 * gets the background map loader, making it the first time. Nothing that only loads maps on
+	 * its own thread, like rendering in batch, ever asks, so it never starts the loader's threads
+	 */
+	public synchronized ElectionMapLoader getMapLoader(){
+		if(mapLoader==null)
+			mapLoader = new ElectionMapLoader(this, dataModel);
+		return mapLoader;
+	}
+	
+	/*@params- abbr:String
+	 * @returns- SHPMap
+	 * @throws- IOException
+	 * gets the map for abbr, from the bundle if it's there and still up to date, in which case its
+	 * table is put in the table cache too so it isn't loaded from the .dbf. Otherwise the .shp is loaded
+	 */
+	public SHPMap loadMap(String abbr) throws IOException{
+		if(isBundled(abbr))
+			loadMapTable(abbr);
+		return loadMapGeometry(abbr);
+	}
+	
+	/*@params- abbr:String
+	 * @returns- SHPMap
+	 * @throws- IOException
+	 * gets just the shapes of the map for abbr, from the bundle if it's there and still up to date,
+	 * otherwise from the .shp. Unlike loadMap this never touches the table, so the two can be
+	 * loaded at the same time on different threads
+	 */
+	public SHPMap loadMapGeometry(String abbr) throws IOException{
+		if(isBundled(abbr))
+			return mapBundle.loadMap(abbr);
+		return makeSHPLoader().loadShapefile(new File(MAPS_DIR + abbr + ".shp"));
+	}
+	
+	/*@returns- SHPDataLoader
+	 * helper that makes a loader set up just like shpLoader. Each map gets its own, since a loader
+	 * reuses its buffers and maps are loaded on more than one thread at a time
+	 */
+	private SHPDataLoader makeSHPLoader(){
+		SHPDataLoader loader = new SHPDataLoader();
+		loader.setMemoryMapped(shpLoader.isMemoryMapped());
+		loader.setLazyLoadingThreshold(shpLoader.getLazyLoadingThreshold());
+		loader.setParallelThreshold(shpLoader.getParallelThreshold());
+		return loader;
+	}
+	
+	/*@params- abbr:String
+	 * @returns- DBFTable
+	 * @throws- IOException
+	 * gets the table of the map for abbr, from the bundle if it's there and still up to date,
+	 * otherwise from the .dbf. Either way it ends up in the table cache
+	 */
+	public DBFTable loadMapTable(String abbr) throws IOException{
+		File dbfFile = new File(MAPS_DIR + abbr + ".dbf");
+		if(isBundled(abbr)){
+			DBFTable table = mapBundle.loadTable(abbr);
+			DBFTableCache.getSharedCache().putTable(dbfFile, table);
+			return table;
+		}
+		return DBFTableCache.getSharedCache().getTable(dbfFile);
+	}
+	
+	/*@params- abbr:String
+	 * @returns- boolean
+	 * helper that tells whether the map for abbr can be opened from the bundle
+	 */
+	private boolean isBundled(String abbr){
+		return (mapBundle!=null) && mapBundle.hasMap(abbr)
+				&& mapBundle.isCurrent(abbr, new File(MAPS_DIR + abbr + ".shp"), new File(MAPS_DIR + abbr + ".dbf"));
+	}
+	
+	/*
+	 * helper that opens the map bundle if there is one. A bundle that can't be read is
+	 * just not used, since the maps can still be loaded without it
+	 */
+	private ElectionMapBundle openMapBundle(){
+		File bundleFile = new File(MAPS_BUNDLE);
+		if(!bundleFile.exists())
+			return null;
+		try{
+			return new ElectionMapBundle(bundleFile);
+		}
+		catch(IOException ioe){
+			ioe.printStackTrace();
+			return null;
+		}
 	}
 	
 	/**
-	 * Loads all images, both sizes, for all map regions, into the
-	 * data model.
+	 * Finds all images, both sizes, for all map regions, for the data
+	 * model's flag cache. Note that they're only loaded as they're
+	 * needed, so this may be done on any thread.
+	 **/
+	public void indexFlags() throws IOException
+	{
+		dataModel.getFlagCache().indexFlags();
+	}
+	
+	/**
+	 * Finds all images, both sizes, for all map regions, telling the
+	 * user if they can't be found.
 	 **/
 	public void loadAllFlags(ElectionMapViewer view)
 	{
-		// THE FLAG IMAGES MUST BE IN THIS DIRECTORY
-		File flagsDir = new File(FLAGS_DIR);
-		File[] flags = flagsDir.listFiles();
-		
-		// THE TRACKER MAKES SURE IMAGES ARE COMPLETELY
-		// LOADED BEFORE MOVING ON, SINCE IMAGE LOADING
-		// IS DONE ASYNCHRONOUSLY
-		MediaTracker tracker = new MediaTracker(view);
 		try
 		{
-			// GO THROUGH ALL THE CONTENTS OF THE flags DIRECTORY
-			for (int i = 0; i < flags.length; i++)
-			{	
-				// GET AND LOAD THE FLAG
-				File flagFile = flags[i];
-				String name = flagFile.getName();
-				int dotIndex = name.indexOf('.');
-				String abbr = name.substring(0, dotIndex);
-				Image flag = ImageIO.read(flagFile);
-				dataModel.addFlag(name, abbr, flag);				
-				tracker.addImage(flag, i);
-			}
-			// AND WAIT FOR THEM TO LOAD
-			tracker.waitForAll();
+			indexFlags();
 		}
 		catch(IOException ioe)
 		{
@@ -83,13 +189,6 @@ public class ElectionMapFileManager
 											"Error loading flags from " + FLAGS_DIR,
 											JOptionPane.ERROR_MESSAGE);
 		}
-		catch(InterruptedException ie)
-		{
-			// THIS SHOULD NEVER HAPPEN, SO WE HAVE NO PROGRAMMED RESPONSE,
-			// BUT YOU SHOULD ALWAYS AT LEAST HAVE A STACK TRACE, DON'T JUST
-			// SQUELCH EXCEPTIONS, THAT CAN MAKE LOGICAL ERRORS HARDER TO FIND
-			ie.printStackTrace();
-		}
 	}
 	
 	/**
@@ -97,16 +196,10 @@ public class ElectionMapFileManager
 	 **/
 	public void loadAppIcon(ElectionMapViewer view)
 	{
-		File appIconFile = new File(APP_ICON);
 		try
 		{
 			// LOAD THE APP'S ICON AND SET IT IN THE FRAME
-			Image appIcon = ImageIO.read(appIconFile);
-			MediaTracker tracker = new MediaTracker(view);
-			tracker.addImage(appIcon, 0);
-			try { tracker.waitForID(0); }
-			catch(InterruptedException ie) { ie.printStackTrace(); }
-			view.setIconImage(appIcon);
+			view.setIconImage(readAppIcon());
 		}
 		catch(IOException ioe)
 		{
@@ -118,6 +211,14 @@ public class ElectionMapFileManager
 		}
 	}
 	
+	/**
+	 * Reads the program's icon, which may be done on any thread.
+	 **/
+	public Image readAppIcon() throws IOException
+	{
+		return ImageIO.read(new File(APP_ICON));
+	}
+	
 	/**
 	 * Loads the USA map, which should happen only once, at startup.
 	 **/
@@ -126,9 +227,8 @@ public class ElectionMapFileManager
 		try
 		{
 			// LOAD THE USA MAP FILE
-			File shpFile = new File(USA_SHP);
-			//load the SHPMap
-			SHPMap usaSHP = shpLoader.loadShapefile(shpFile);
+			//load the SHPMap, from the bundle if we can
+			SHPMap usaSHP = loadMap(ElectionMapDataModel.USA_MAP_ABBR);
 			// INITIALIZE THE COLORS
 			dataModel.colorSections(usaSHP, new File(USA_DBF));
 			// AND UPDATE THE GUI
@@ -0,0 +1,438 @@
+package election_map_viewer;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import static election_map_viewer.ElectionMapDataModel.MINI_FLAG_EXT;
+
+/**
+ * This class provides the flag images, both sizes, for all map regions,
+ * without loading them all up front. At startup only the names of the files
+ * in the flags directory are read. An image is decoded the first time it's
+ * asked for, on a background thread, and until then null is given for it,
+ * with the load listener told once it's ready so it can be drawn. A flag that
+ * can't be decoded is remembered as missing, so the listener is told about
+ * it just once and null is given for it from then on.
+ *
+ * Images are kept as copies in the screen's own format, already at the size
+ * they're drawn, so drawing them never has to convert or scale anything. Only
+ * the most recently used ones are kept, up to maxCachedBytes worth, and only
+ * by soft reference, so they're also thrown out when memory runs low. Either
+ * way, a flag that's thrown out is just decoded again the next time.
+ **/
+public class ElectionMapFlagCache
+{
+	// BY DEFAULT WE'LL KEEP THIS MANY BYTES OF IMAGES AROUND
+	public static final long DEFAULT_MAX_CACHED_BYTES = 4L * 1024 * 1024;
+
+	// MINI FLAGS ARE DRAWN IN THE LEGEND, SO A LARGE FLAG USED FOR
+	// ONE WHEN THERE'S NO .gif IS SCALED DOWN TO THIS HEIGHT
+	public static final int MINI_FLAG_HEIGHT = 30;
+
+	// THIS IS TOLD ON THE EVENT DISPATCH THREAD WHENEVER AN IMAGE THAT WAS
+	// DECODED IN THE BACKGROUND IS READY, OR COULDN'T BE DECODED
+	public interface LoadListener
+	{
+		public void flagLoaded();
+		public void flagFailed(File flagFile, IOException ioe);
+	}
+
+	// WHERE THE FLAGS ARE
+	private File flagsDir;
+
+	// THE FLAG FILES, BY ABBREVIATION. THESE ARE REPLACED, NEVER CHANGED,
+	// SO THEY CAN BE READ WITHOUT LOCKING
+	private volatile Map<String, File> flagFiles;
+	private volatile Map<String, File> miniFlagFiles;
+
+	// THE DECODED IMAGES, IN LEAST TO MOST RECENTLY USED ORDER, AND
+	// HOW MANY BYTES THEY TAKE UP ALTOGETHER
+	private LinkedHashMap<String, CacheEntry> entries;
+	private long numCachedBytes;
+	private long maxCachedBytes;
+
+	// THE IMAGES BEING DECODED RIGHT NOW, SO THEY'RE ONLY DECODED ONCE,
+	// AND THE FILES THAT COULDN'T BE, SO THEY AREN'T TRIED AGAIN
+	private Set<String> pending;
+	private Set<File> missing;
+
+	// THIS DOES THE DECODING
+	private ExecutorService executor;
+	private LoadListener loadListener;
+
+	/*@params- initFlagsDir:File
+	 * sets up an empty cache for the flags in initFlagsDir. Nothing is read until indexFlags is called
+	 */
+	public ElectionMapFlagCache(File initFlagsDir)
+	{
+		flagsDir = initFlagsDir;
+		flagFiles = new TreeMap<String, File>();
+		miniFlagFiles = new TreeMap<String, File>();
+		entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+		numCachedBytes = 0;
+		maxCachedBytes = DEFAULT_MAX_CACHED_BYTES;
+		pending = new HashSet<String>();
+		missing = new HashSet<File>();
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "Flag loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	// ACCESSOR METHODS
+	public File					getFlagsDir()			{ return flagsDir;			}
+	public synchronized long	getNumCachedBytes()		{ return numCachedBytes;	}
+	public synchronized long	getMaxCachedBytes()		{ return maxCachedBytes;	}
+	public boolean				hasFlag(String abbr)	{ return flagFiles.containsKey(abbr);	}
+
+	/*@params- abbr:String
+	 * @returns- BufferedImage
+	 * gets the large flag for the abbr map region, or null if it isn't decoded yet, in which case
+	 * it's started if it isn't already. Also null if there's no such flag
+	 */
+	public BufferedImage getFlag(String abbr){
+		return getImage(abbr, false);
+	}
+
+	/*@params- abbr:String
+	 * @returns- BufferedImage
+	 * gets the mini flag for the abbr map region, just like getFlag. If there's no .gif for it, its
+	 * large flag is used instead, scaled down to MINI_FLAG_HEIGHT when it's decoded
+	 */
+	public BufferedImage getMiniFlag(String abbr){
+		return getImage(abbr, true);
+	}
+
+	// MUTATOR METHODS
+
+	/*@params- initLoadListener:LoadListener
+	 * sets what's told on the event dispatch thread whenever an image is ready, so it can repaint,
+	 * or couldn't be decoded
+	 */
+	public synchronized void setLoadListener(LoadListener initLoadListener){
+		loadListener = initLoadListener;
+	}
+
+	/*@params- initMaxCachedBytes:long
+	 * changes how many bytes of images may be kept, throwing out the least recently used ones if
+	 * there are now too many
+	 */
+	public synchronized void setMaxCachedBytes(long initMaxCachedBytes){
+		maxCachedBytes = Math.max(0, initMaxCachedBytes);
+		evict();
+	}
+
+	/*@throws- IOException
+	 * reads the names of all the files in the flags directory, .gif files being mini flags and
+	 * everything else large flags, each named for its map region's abbreviation. No images are read,
+	 * and flags that couldn't be decoded before will be tried again
+	 */
+	public void indexFlags() throws IOException{
+		File[] files = flagsDir.listFiles();
+		if(files==null)
+			throw new IOException("No flags directory " + flagsDir);
+		TreeMap<String, File> newFlagFiles = new TreeMap<String, File>();
+		TreeMap<String, File> newMiniFlagFiles = new TreeMap<String, File>();
+		for(int i=0; i<files.length; i++){
+			String name = files[i].getName();
+			int dotIndex = name.indexOf('.');
+			if(dotIndex<=0)
+				continue;
+			String abbr = name.substring(0, dotIndex);
+			if(name.endsWith(MINI_FLAG_EXT))
+				newMiniFlagFiles.put(abbr, files[i]);
+			else
+				newFlagFiles.put(abbr, files[i]);
+		}
+		flagFiles = newFlagFiles;
+		miniFlagFiles = newMiniFlagFiles;
+		synchronized(this){
+			missing.clear();
+		}
+	}
+
+	/*@params- abbr:String
+	 * @returns- BufferedImage
+	 * @throws- IOException
+	 * gets the flag of the abbr map region, decoding it on this thread if it isn't cached, or null
+	 * if there's no flag for it. This is for when there's no GUI to repaint once it's ready, like
+	 * rendering in batch. The cache only keeps it softly, so the caller should hold on to it for as
+	 * long as it may be drawn. A flag that can't be decoded is remembered as missing, just like in
+	 * the background
+	 */
+	public BufferedImage loadFlag(String abbr) throws IOException{
+		return loadImage(abbr, false);
+	}
+
+	/*@params- abbr:String
+	 * @returns- BufferedImage
+	 * @throws- IOException
+	 * same as loadFlag, but for the mini flag drawn in the legend
+	 */
+	public BufferedImage loadMiniFlag(String abbr) throws IOException{
+		return loadImage(abbr, true);
+	}
+
+	/*@params- abbr:String
+	 * starts decoding both flags of the abbr map region, if they aren't already, so they're likely
+	 * to be ready by the time they're drawn
+	 */
+	public void prefetch(String abbr){
+		getImage(abbr, false);
+		getImage(abbr, true);
+	}
+
+	/*
+	 * throws out all the images, which will be decoded again as they're asked for, even the ones
+	 * that couldn't be before
+	 */
+	public synchronized void clear(){
+		entries.clear();
+		numCachedBytes = 0;
+		missing.clear();
+	}
+
+	/*@params- abbr:String, mini:boolean
+	 * @returns- BufferedImage
+	 * helper that gets an image if it's cached, and otherwise starts decoding it
+	 */
+	private BufferedImage getImage(final String abbr, final boolean mini){
+		final File flagFile = getFlagFile(abbr, mini);
+		if(flagFile==null)
+			return null;
+		final String key = getKey(abbr, mini);
+		synchronized(this){
+			BufferedImage image = getCachedImage(key);
+			if(image!=null)
+				return image;
+			if(missing.contains(flagFile) || !pending.add(key))
+				return null;
+		}
+
+		// IT'S NOT HERE, SO DECODE IT, BUT NOT ON THIS THREAD
+		executor.execute(new Runnable(){
+			public void run(){
+				try{
+					imageLoaded(key, decode(flagFile, isScaledToMini(abbr, mini)));
+				}
+				catch(IOException ioe){
+					imageFailed(key, flagFile, ioe);
+				}
+			}
+		});
+		return null;
+	}
+
+	/*@params- abbr:String, mini:boolean
+	 * @returns- BufferedImage
+	 * @throws- IOException
+	 * helper that decodes an image on this thread, unless it's already cached
+	 */
+	private BufferedImage loadImage(String abbr, boolean mini) throws IOException{
+		File flagFile = getFlagFile(abbr, mini);
+		if(flagFile==null)
+			return null;
+		String key = getKey(abbr, mini);
+		synchronized(this){
+			BufferedImage image = getCachedImage(key);
+			if((image!=null) || missing.contains(flagFile))
+				return image;
+		}
+		BufferedImage image;
+		try{
+			image = decode(flagFile, isScaledToMini(abbr, mini));
+		}
+		catch(IOException ioe){
+			synchronized(this){
+				missing.add(flagFile);
+			}
+			throw ioe;
+		}
+		synchronized(this){
+			CacheEntry entry = new CacheEntry(image);
+			CacheEntry oldEntry = entries.put(key, entry);
+			if(oldEntry!=null)
+				numCachedBytes -= oldEntry.numBytes;
+			numCachedBytes += entry.numBytes;
+			evict();
+		}
+		return image;
+	}
+
+	/*@params- key:String
+	 * @returns- BufferedImage
+	 * helper that gets a cached image, or null if it isn't cached, forgetting it if it was thrown
+	 * out to free up memory. This must be called while synchronized
+	 */
+	private BufferedImage getCachedImage(String key){
+		CacheEntry entry = entries.get(key);
+		if(entry==null)
+			return null;
+		BufferedImage image = entry.image.get();
+		if(image==null){
+			entries.remove(key);
+			numCachedBytes -= entry.numBytes;
+		}
+		return image;
+	}
+
+	/*@params- abbr:String, mini:boolean
+	 * @returns- File
+	 * helper that finds the file an image is decoded from, which for a mini flag is the large flag
+	 * if there's no .gif, or null if there's no such flag
+	 */
+	private File getFlagFile(String abbr, boolean mini){
+		if(abbr==null)
+			return null;
+		File imageFile = mini ? miniFlagFiles.get(abbr) : flagFiles.get(abbr);
+		if(mini && (imageFile==null))
+			return flagFiles.get(abbr);
+		return imageFile;
+	}
+
+	/*@params- abbr:String, mini:boolean
+	 * @returns- boolean
+	 * helper that tells whether an image is a large flag used as a mini flag
+	 */
+	private boolean isScaledToMini(String abbr, boolean mini){
+		return mini && !miniFlagFiles.containsKey(abbr);
+	}
+
+	/*@params- abbr:String, mini:boolean
+	 * @returns- String
+	 * helper that gives what an image is cached by
+	 */
+	private static String getKey(String abbr, boolean mini){
+		return (mini ? MINI_FLAG_EXT : "") + abbr;
+	}
+
+	/*@params- key:String, image:BufferedImage
+	 * helper that caches an image decoded in the background and tells the listener
+	 */
+	private void imageLoaded(String key, BufferedImage image){
+		final LoadListener listener;
+		synchronized(this){
+			pending.remove(key);
+			CacheEntry entry = new CacheEntry(image);
+			CacheEntry oldEntry = entries.put(key, entry);
+			if(oldEntry!=null)
+				numCachedBytes -= oldEntry.numBytes;
+			numCachedBytes += entry.numBytes;
+			evict();
+			listener = loadListener;
+		}
+		if(listener!=null){
+			SwingUtilities.invokeLater(new Runnable(){
+				public void run(){
+					listener.flagLoaded();
+				}
+			});
+		}
+	}
+
+	/*@params- key:String, flagFile:File, ioe:IOException
+	 * helper that remembers a file that couldn't be decoded in the background, so it isn't tried
+	 * again, and tells the listener, unless it already knew since both flags came from that file
+	 */
+	private void imageFailed(String key, final File flagFile, final IOException ioe){
+		final LoadListener listener;
+		synchronized(this){
+			pending.remove(key);
+			if(!missing.add(flagFile))
+				return;
+			listener = loadListener;
+		}
+		if(listener!=null){
+			SwingUtilities.invokeLater(new Runnable(){
+				public void run(){
+					listener.flagFailed(flagFile, ioe);
+				}
+			});
+		}
+	}
+
+	/*
+	 * helper that throws out the least recently used images until they fit, always keeping the
+	 * most recent one so that a flag bigger than the whole cache can still be drawn
+	 */
+	private void evict(){
+		while((numCachedBytes>maxCachedBytes) && (entries.size()>1)){
+			Map.Entry<String, CacheEntry> eldest = entries.entrySet().iterator().next();
+			numCachedBytes -= eldest.getValue().numBytes;
+			entries.remove(eldest.getKey());
+		}
+	}
+
+	/*@params- flagFile:File, scaleToMini:boolean
+	 * @returns- BufferedImage
+	 * @throws- IOException
+	 * helper that reads the image in flagFile and copies it into an image in the screen's format,
+	 * scaled to MINI_FLAG_HEIGHT if scaleToMini, so it can be drawn as is
+	 */
+	private static BufferedImage decode(File flagFile, boolean scaleToMini) throws IOException{
+		BufferedImage decoded = ImageIO.read(flagFile);
+		if(decoded==null)
+			throw new IOException("Can't read flag image " + flagFile);
+		int width = decoded.getWidth();
+		int height = decoded.getHeight();
+		if(scaleToMini && (height>MINI_FLAG_HEIGHT)){
+			width = Math.max(1, (width*MINI_FLAG_HEIGHT)/height);
+			height = MINI_FLAG_HEIGHT;
+		}
+
+		// WITHOUT A SCREEN, LIKE WHEN RENDERING IN BATCH, ANY FORMAT WILL DO
+		BufferedImage image;
+		if(GraphicsEnvironment.isHeadless()){
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		else{
+			GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
+			image = gc.createCompatibleImage(width, height, decoded.getTransparency());
+		}
+		Graphics2D g2 = image.createGraphics();
+		try{
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			g2.drawImage(decoded, 0, 0, width, height, null);
+		}
+		finally{
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/*
+	 * A cached image, which the garbage collector may throw out if it needs the memory, and about
+	 * how many bytes it takes up, which is remembered since the image may be gone when it's evicted
+	 */
+	private static class CacheEntry
+	{
+		private SoftReference<BufferedImage> image;
+		private long numBytes;
+
+		public CacheEntry(BufferedImage initImage){
+			image = new SoftReference<BufferedImage>(initImage);
+			numBytes = 4L * initImage.getWidth() * initImage.getHeight();
+		}
+	}
+}
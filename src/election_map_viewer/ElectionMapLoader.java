@@ -0,0 +1,303 @@
+package election_map_viewer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import dbf_framework.DBFTable;
+
+import shp_framework.SHPMap;
+
+/**
+ * This class loads maps in the background so that the GUI never waits for
+ * one. A map is loaded the same way no matter why it's wanted, so a map the
+ * user is hovering over can be prefetched, and if they then click on it the
+ * load that's already started, or even finished, is used rather than starting
+ * another. The last few maps loaded are kept for this, but only until they're
+ * shown, after which they're kept by the ElectionMapRepository instead. Maps
+ * that are already there aren't prefetched.
+ *
+ * Loads that are no longer wanted, like the prefetch of a state the mouse has
+ * moved off of, are dropped if they haven't started yet. If they're already
+ * done, or finish later, the map they loaded is closed, since nothing else
+ * will ever close it.
+ **/
+public class ElectionMapLoader
+{
+	// THERE'S MORE THAN ONE LOADING THREAD SO A MAP THAT'S CLICKED ON
+	// DOESN'T HAVE TO WAIT FOR ONE THAT'S BEING PREFETCHED
+	public static final int NUM_THREADS = 2;
+
+	// HOW MANY LOADS, STARTED OR DONE, WE KEEP TRACK OF
+	public static final int MAX_LOADS = 4;
+
+	// THIS IS TOLD WHEN A MAP THAT WAS ASKED FOR WITH load IS READY, ON THE EVENT DISPATCH THREAD
+	public interface LoadListener
+	{
+		public void mapLoaded(ElectionMapData mapData);
+		public void mapFailed(String abbr, Exception e);
+	}
+
+	// THIS LOADS THE FILES, AND THE DATA MODEL COLORS THE MAPS
+	private ElectionMapFileManager fileManager;
+	private ElectionMapDataModel dataModel;
+
+	// RUNS THE LOADS
+	private ThreadPoolExecutor executor;
+
+	// THE LOADS WE KNOW ABOUT, BY ABBREVIATION, IN LEAST TO MOST RECENTLY USED ORDER
+	private LinkedHashMap<String, MapLoad> loads;
+
+	// THE MAP THAT WAS LAST PREFETCHED, WHICH IS DROPPED IF ANOTHER ONE IS
+	private String prefetchAbbr;
+
+	/*@params- initFileManager:ElectionMapFileManager, initDataModel:ElectionMapDataModel
+	 */
+	public ElectionMapLoader(ElectionMapFileManager initFileManager, ElectionMapDataModel initDataModel)
+	{
+		fileManager = initFileManager;
+		dataModel = initDataModel;
+		executor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory(){
+			private int numThreads = 0;
+			public synchronized Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "Map loader-" + (++numThreads));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// ACCESS ORDER MEANS THE ELDEST ENTRY IS THE LEAST RECENTLY USED
+		loads = new LinkedHashMap<String, MapLoad>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<String, MapLoad> eldest){
+				if(size()<=MAX_LOADS)
+					return false;
+				MapLoad load = eldest.getValue();
+				if(!load.hasListeners() && !drop(load))
+					load.discard();
+				return true;
+			}
+		};
+	}
+
+	/*@params- abbr:String, listener:LoadListener
+	 * starts loading the abbr map, unless it already is, and tells the listener once it's ready.
+	 * That may be right away, though still after this returns, if it was prefetched
+	 */
+	public synchronized void load(String abbr, LoadListener listener){
+		if(abbr.equals(prefetchAbbr))
+			prefetchAbbr = null;
+		MapLoad load = getLoad(abbr);
+		load.addListener(listener);
+	}
+
+	/*@params- abbr:String
+	 * starts loading the abbr map in case it's asked for soon, dropping the last one prefetched if it
+	 * hasn't started loading yet and nothing is waiting for it
+	 */
+	public synchronized void prefetch(String abbr){
+		if(abbr.equals(prefetchAbbr) || fileManager.getMapRepository().hasMap(abbr))
+			return;
+		MapLoad lastPrefetch = (prefetchAbbr!=null) ? loads.get(prefetchAbbr) : null;
+		if((lastPrefetch!=null) && !lastPrefetch.hasListeners())
+			cancel(prefetchAbbr);
+		prefetchAbbr = abbr;
+		getLoad(abbr);
+	}
+
+	/*@params- abbr:String
+	 * forgets the load of the abbr map, closing its map if it's done and making sure it never even
+	 * starts if it hasn't started yet. One that has started is left to finish, since it may be asked
+	 * for again, but if it's forgotten before then, its map is closed once it's done
+	 */
+	public synchronized void cancel(String abbr){
+		MapLoad load = loads.get(abbr);
+		if(load==null)
+			return;
+		if(load.isDone()){
+			loads.remove(abbr);
+			load.discard();
+		}
+		else if(drop(load)){
+			loads.remove(abbr);
+		}
+	}
+
+	/*@params- abbr:String
+	 * forgets a finished load of the abbr map, which is done once it's shown so that its data
+	 * isn't kept here any longer than that. Its map isn't closed, since it now belongs to the
+	 * ElectionMapRepository, which closes it once it's thrown out
+	 */
+	public synchronized void forget(String abbr){
+		MapLoad load = loads.get(abbr);
+		if((load!=null) && load.isDone())
+			loads.remove(abbr);
+	}
+
+	/*@params- load:MapLoad
+	 * @returns- boolean
+	 * helper that keeps a load from ever starting, if it hasn't yet, in which case anyone waiting for
+	 * it is told it failed
+	 */
+	private boolean drop(MapLoad load){
+		if(!executor.remove(load))
+			return false;
+		load.cancel(false);
+		return true;
+	}
+
+	/*@params- abbr:String
+	 * @returns- MapLoad
+	 * helper that gets the load of the abbr map, starting it if there isn't one. A load that failed
+	 * or was dropped is started over
+	 */
+	private MapLoad getLoad(String abbr){
+		MapLoad load = loads.get(abbr);
+		if((load==null) || load.hasFailed()){
+			load = new MapLoad(abbr);
+			loads.put(abbr, load);
+			executor.execute(load);
+		}
+		return load;
+	}
+
+	/*@params- abbr:String
+	 * @returns- ElectionMapData
+	 * @throws- Exception
+	 * helper that actually loads a map, on one of the loading threads
+	 */
+	private ElectionMapData loadMapData(String abbr) throws Exception{
+		SHPMap map = fileManager.loadMapGeometry(abbr);
+		DBFTable table = fileManager.loadMapTable(abbr);
+		dataModel.initShapeColors(map, table);
+		return new ElectionMapData(abbr, map, table);
+	}
+
+	/*
+	 * The loading of one map, which tells everyone waiting for it when it's done
+	 */
+	private class MapLoad extends FutureTask<ElectionMapData>
+	{
+		private String abbr;
+		private List<LoadListener> listeners;
+
+		// SET ONCE NOTHING WILL EVER USE THE MAP, SO IT'S CLOSED WHEN IT'S DONE
+		private boolean discarded;
+
+		public MapLoad(final String initAbbr){
+			super(new Callable<ElectionMapData>(){
+				public ElectionMapData call() throws Exception{
+					return loadMapData(initAbbr);
+				}
+			});
+			abbr = initAbbr;
+			listeners = new ArrayList<LoadListener>();
+			discarded = false;
+		}
+
+		/*@params- listener:LoadListener
+		 * tells the listener when this is done, or soon if it already is
+		 */
+		public void addListener(LoadListener listener){
+			synchronized(this){
+				if(!isDone()){
+					listeners.add(listener);
+					return;
+				}
+			}
+			notifyListener(listener);
+		}
+
+		/*@returns- boolean
+		 * tells whether anything is waiting for this to finish
+		 */
+		public synchronized boolean hasListeners(){
+			return !listeners.isEmpty();
+		}
+
+		/*@returns- boolean
+		 */
+		public boolean hasFailed(){
+			if(!isDone())
+				return false;
+			try{
+				get();
+				return false;
+			}
+			catch(Exception e){
+				return true;
+			}
+		}
+
+		/*
+		 * closes the map once this is done, now if it already is, since nothing will ever use it
+		 */
+		public void discard(){
+			synchronized(this){
+				discarded = true;
+				if(!isDone())
+					return;
+			}
+			closeMap();
+		}
+
+		protected void done(){
+			List<LoadListener> waiting;
+			synchronized(this){
+				if(discarded){
+					closeMap();
+					return;
+				}
+				waiting = new ArrayList<LoadListener>(listeners);
+				listeners.clear();
+			}
+			for(LoadListener listener : waiting)
+				notifyListener(listener);
+		}
+
+		/*
+		 * helper that closes the loaded map, if the load worked
+		 */
+		private void closeMap(){
+			ElectionMapData mapData;
+			try{
+				mapData = get();
+			}
+			catch(Exception e){
+				// IT FAILED OR WAS DROPPED, SO THERE'S NOTHING TO CLOSE
+				return;
+			}
+			ElectionMapRepository.close(mapData);
+		}
+
+		/*@params- listener:LoadListener
+		 * helper that tells the listener how the load went, on the event dispatch thread
+		 */
+		private void notifyListener(final LoadListener listener){
+			SwingUtilities.invokeLater(new Runnable(){
+				public void run(){
+					try{
+						listener.mapLoaded(get());
+					}
+					catch(ExecutionException ee){
+						Throwable cause = ee.getCause();
+						listener.mapFailed(abbr, (cause instanceof Exception) ? (Exception)cause : ee);
+					}
+					catch(Exception e){
+						listener.mapFailed(abbr, e);
+					}
+				}
+			});
+		}
+	}
+}
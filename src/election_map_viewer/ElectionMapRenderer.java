@@ -1,16 +1,16 @@
 package election_map_viewer;
 
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.Iterator;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-
-import dbf_framework.DBFFileIO;
-import dbf_framework.DBFTable;
+import javax.swing.Timer;
 
 import shp_framework.SHPData;
-import shp_framework.SHPDataLoader;
 import shp_framework.SHPMap;
 import shp_framework.geometry.SHPPolygon;
 import shp_framework.geometry.SHPShape;
@@ -34,12 +34,37 @@ public class ElectionMapRenderer extends JPanel
 	private File currentMap;
 	private String miniFlagLocation;
 	
+	// THE MAP BEING LOADED TO BE SHOWN NEXT, OR NULL IF THERE ISN'T ONE
+	private String loadingAbbr;
+	
+	// THE CANDIDATES IN THE LEGEND, AND THE LEGEND TEXT LAST BUILT FOR THEM
+	private Candidate[] candidates;
+	private ElectionResults legendResults;
+	private int legendLocation;
+	private String[] legendStrings;
+	private String legendTotal;
+	
 	// VIEWPORT DATA IS USED FOR ZOOMING IN AND OUT
 	// AND VIEWING ONLY A PORTION OF THE MAP
 	private double viewportCenterX;
 	private double viewportCenterY;
 	private double scale;
 	
+	// THE FILLED AND OUTLINED MAP ITSELF IS RENDERED INTO THIS IMAGE, WHICH
+	// IS ONLY REDONE WHEN THE MAP, ITS COLORS, OR THE VIEWPORT CHANGE. WE
+	// REMEMBER WHAT IT WAS LAST RENDERED FOR SO WE KNOW WHEN THAT IS
+	private BufferedImage baseLayer;
+	private boolean baseLayerValid;
+	private SHPMap baseLayerMap;
+	private double baseLayerScale;
+	private double baseLayerCenterX;
+	private double baseLayerCenterY;
+	
+	// A NEWLY SHOWN MAP FADES IN, THIS IS HOW OPAQUE IT IS SO FAR
+	// AND THE TIMER THAT REPAINTS IT UNTIL IT'S ALL THERE
+	private float mapAlpha;
+	private Timer fadeTimer;
+	
 	// THIS HELPS US TO PROVIDE PADDING AROUND THE MAP WE ZOOM TO
 	public static final double SCALE_MAP_DOWN_FACTOR = 0.8;
 	
@@ -49,12 +74,30 @@ public class ElectionMapRenderer extends JPanel
 
 	// FONT SETTINGS FOR RENDERING
 	public static final Font TITLE_FONT = new Font("Serif", Font.BOLD, 36);
+	public static final Font LEGEND_TITLE_FONT = new Font("Times New Roman", Font.BOLD, 20);
+	public static final Font LEGEND_FONT = new Font("Times New Roman", Font.PLAIN, 12);
+	public static final Font LOADING_FONT = new Font("Serif", Font.BOLD, 24);
 	
 	// COLOR SETTINGS FOR RENDERING
 	public static final Color DEFAULT_BACKGROUND_COLOR = new Color(100, 100, 255);
 	public static final Color DEFAULT_BORDER_COLOR = Color.BLACK;
 	public static final Color DEFAULT_HIGHLIGHT_COLOR = Color.CYAN;
 	public static final Color TITLE_COLOR = new Color(0, 0, 80);
+	public static final Color LEGEND_BACKGROUND_COLOR = new Color(248,248,255);
+	public static final Color LOADING_BACKGROUND_COLOR = new Color(248, 248, 255, 200);
+	
+	// WHERE THE LEGEND GOES, INCLUDING ITS BORDER
+	public static final int LEGEND_X = 1000;
+	public static final int LEGEND_Y = 600;
+	public static final int LEGEND_WIDTH = 251;
+	public static final int LEGEND_HEIGHT = 151;
+	
+	// HOW FAR BEYOND A REGION'S BOUNDING BOX ITS HIGHLIGHT MAY BE DRAWN
+	public static final int HIGHLIGHT_PADDING = 3;
+	
+	// HOW LONG A MAP TAKES TO FADE IN, AND HOW OFTEN IT'S REPAINTED MEANWHILE, IN MILLISECONDS
+	public static final int FADE_IN_TIME = 400;
+	public static final int FADE_IN_FRAME_TIME = 20;
 		
 	/**
 	 * This constructor sets up all the rendering settings and gets
@@ -68,11 +111,17 @@ public class ElectionMapRenderer extends JPanel
 		polyLocation=-1;
 		selection = new File(ElectionMapFileManager.USA_DBF);
 		currentMap = new File(ElectionMapFileManager.USA_DBF);
+		//the position of each candidate is its column among the last three in the table
+		candidates = new Candidate[ElectionResults.NUM_CANDIDATES];
+		candidates[0] = new Candidate(0, "Barack Obama", Color.BLUE);
+		candidates[1] = new Candidate(1, "John McCain", Color.RED);
+		candidates[2] = new Candidate(2, "Other", Color.GRAY);
 		// DEFAULT VIEWPORT STUFF, WHICH WILL BE CHANGED AS SOON
 		// AS A MAP IS LOADED
 		viewportCenterX = 0;
 		viewportCenterY = 0;
 		scale = 1;
+		mapAlpha = 1;
 		
 		// SOME DEFAULT SETUP STUFF
 		setBackground(DEFAULT_BACKGROUND_COLOR);
@@ -83,17 +132,11 @@ public class ElectionMapRenderer extends JPanel
 	 * updates the candidates votes
 	 */
 	public Candidate[] updateCandidates(Candidate[] candidates) throws IOException{
-		DBFTable currentTable = (new DBFFileIO()).loadDBF(selection);
-		// not selecting a state/county do this. Otherwise send a different set of data
-		if(polyLocation!=-1){
-			for(int i=0; i<candidates.length; i++){
-				candidates[i].setVotes(null,currentTable.getRecord(polyLocation),currentTable.getNumFields()-(3-i));
-			}
-		}
-		else{
-			for(int i=0; i<candidates.length; i++){
-				candidates[i].setVotes(currentTable, null, currentTable.getNumFields()-(3-i));
-			}
+		ElectionResults results = dataModel.getResults(selection);
+		// not selecting a state/county gets the whole table's votes, otherwise just that record's
+		int recordIndex = (polyLocation!=-1) ? polyLocation : ElectionResults.WHOLE_TABLE;
+		for(int i=0; i<candidates.length; i++){
+			candidates[i].setVotes(results, recordIndex, candidates[i].getPosition());
 		}
 		return candidates;
 	}
@@ -107,6 +150,45 @@ public class ElectionMapRenderer extends JPanel
 	public File getFile(){ return this.selection;}
 	public void setFile(File file){ this.selection=file;		}
 	public void setCurrentMap(File file){ this.currentMap =file;}
+	public boolean isLoadingMap(){ return loadingAbbr!=null;}
+	
+	/**
+	 * Called whenever the colors of the current map's shapes change, this
+	 * makes sure the map gets rendered again rather than reusing the image
+	 * of it that we already have.
+	 */
+	public void invalidateBaseLayer()
+	{
+		baseLayerValid = false;
+	}
+	
+	/**
+	 * Called once a map has just been put in the data model, this redraws
+	 * it, starting out completely see through and becoming opaque over the
+	 * next FADE_IN_TIME milliseconds. This must be called on the event
+	 * dispatch thread.
+	 */
+	public void fadeInMap()
+	{
+		invalidateBaseLayer();
+		if (fadeTimer != null)
+			fadeTimer.stop();
+		mapAlpha = 0;
+		final long fadeStart = System.currentTimeMillis();
+		fadeTimer = new Timer(FADE_IN_FRAME_TIME, new ActionListener()
+		{
+			public void actionPerformed(ActionEvent ae)
+			{
+				mapAlpha = Math.min(1, (System.currentTimeMillis() - fadeStart) / (float)FADE_IN_TIME);
+				if (mapAlpha >= 1)
+					fadeTimer.stop();
+				repaint();
+			}
+		});
+		fadeTimer.start();
+		repaint();
+	}
+	
 	/*** RENDERING METHODS ***/
 
 	/**
@@ -131,55 +213,211 @@ public class ElectionMapRenderer extends JPanel
 				dataModel.setMapRendered(true);
 			}
 
-			// ONLY RENDER THE MAP IF THE USER HAS SELECTED IT
-			renderMap(g);
-		
-			// NOW THE MAP TITLE
-			renderTitle(g);
-			try {
-				renderLegend(g);
-			} catch (IOException e) {
-				e.printStackTrace();
+			// WHILE THE MAP IS FADING IN, EVERYTHING IS DRAWN PARTLY SEE THROUGH
+			Graphics2D g2 = (Graphics2D)g.create();
+			try
+			{
+				if (mapAlpha < 1)
+					g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, mapAlpha));
+				
+				// ONLY RENDER THE MAP IF THE USER HAS SELECTED IT
+				renderMap(g2);
+			
+				// NOW THE MAP TITLE
+				renderTitle(g2);
+				try {
+					renderLegend(g2);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+			finally
+			{
+				g2.dispose();
 			}
 		}
+		
+		// AND IF ANOTHER MAP IS ON THE WAY, SAY SO OVER THE ONE THAT'S UP NOW
+		if (loadingAbbr != null)
+			renderLoading(g);
 	}	
 	
 	/**
-	 * Renders the actual map, meaning polygon outlines and filling.
+	 * Renders the actual map, meaning polygon outlines and filling. Since
+	 * this gets done on every mouse movement, the map itself is drawn from
+	 * the base layer image, with only the highlighted region's outline
+	 * drawn fresh on top of it.
 	 */
 	public void renderMap(Graphics g)
 	{
 		// WE'LL USE Graphics2D METHODS
 		Graphics2D g2 = (Graphics2D)g;
 		SHPMap mapData = dataModel.getCurrentSHP();
-		System.out.println(mapData.getLocation());
 		if (mapData == null)
 			return;
-		Iterator<SHPShape> shapesIt = mapData.shapesIterator();
 
-		// RENDER ALL THE SHAPES
-		while (shapesIt.hasNext())
+		// MAKE SURE THE BASE LAYER IS UP TO DATE, THEN COPY IT OVER
+		updateBaseLayer(mapData);
+		if (baseLayer == null)
+			return;
+		g2.drawImage(baseLayer, 0, 0, null);
+
+		SHPPolygon highlightedPolygon = dataModel.getHighlightedPolygon();
+		// WE WILL OUTLINE THE PART THAT THE POLYGON IS OVER
+		if (highlightedPolygon != null)
 		{
+			Stroke oldStroke = g2.getStroke();
+			g2.setStroke(OUTLINED_POLYGON_STROKE);
+			g2.setColor(DEFAULT_HIGHLIGHT_COLOR);
+			highlightedPolygon.renderOutline(g2, scale, viewportCenterX, viewportCenterY, getWidth(), getHeight());
+			g2.setStroke(oldStroke);
+		}
+	}
+
+	/**
+	 * Renders all the shapes of the mapData argument that are in view for the
+	 * current viewport, filled and outlined, onto g2, which is width by height
+	 * pixels. This doesn't render any highlighting, so it can be used to render
+	 * a map anywhere, not just on this panel.
+	 */
+	public void renderBaseLayer(Graphics2D g2, SHPMap mapData, int width, int height)
+	{
+		SHPData data = mapData.getShapefileData();
+		g2.setStroke(DEFAULT_STROKE);
+
+		// THIS IS THE PART OF THE MAP THAT'S IN VIEW
+		double minLong = viewportCenterX - (180/scale);
+		double maxLong = viewportCenterX + (180/scale);
+		double minLat = viewportCenterY - (90/scale);
+		double maxLat = viewportCenterY + (90/scale);
+
+		// RENDER ALL THE SHAPES THAT ARE IN VIEW, SKIPPING THE OTHERS
+		// MEANS THEY DON'T EVEN HAVE TO BE LOADED FOR LAZILY LOADED MAPS
+		for (int i = 0; i < data.getNumShapes(); i++)
+		{
+			double[] box = data.getShapeBoundingBox(i);
+			if ((box[2] < minLong) || (box[0] > maxLong) || (box[3] < minLat) || (box[1] > maxLat))
+				continue;
+
 			// GET THE SHAPE
-			SHPShape shape = shapesIt.next();
-			if(dataModel.getCurrentMapAbbr()!="USA"){
-				int five =5;
-				five++;
-			}
+			SHPShape shape = data.getShape(i);
+
 			// AND RENDER IT
-			shape.render(g2, scale, viewportCenterX, viewportCenterY, getWidth(), getHeight());
+			shape.render(g2, scale, viewportCenterX, viewportCenterY, width, height);
 			
 			// ALWAYS SET THE COLOR BACK TO BLACK (THE DEFAULT)
 			g2.setColor(Color.black);
 		}
+	}
 
-		SHPPolygon highlightedPolygon = dataModel.getHighlightedPolygon();
-		// WE WILL OUTLINE THE PART THAT THE POLYGON IS OVER
-		if (highlightedPolygon != null)
+	/**
+	 * Renders the current map, with its title and legend, into the image
+	 * argument just like it's rendered on this panel, but without any
+	 * highlighting. The panel should be set to the image's size first,
+	 * but it doesn't have to be shown, so this can be used headless.
+	 */
+	public void renderToImage(BufferedImage image) throws IOException
+	{
+		int width = image.getWidth();
+		int height = image.getHeight();
+		Graphics2D g2 = image.createGraphics();
+		try
 		{
-			g2.setStroke(OUTLINED_POLYGON_STROKE);
-			highlightedPolygon.render(g2, scale, viewportCenterX, viewportCenterY, getWidth(), getHeight());
+			// ZOOM TO THE MAP THE FIRST TIME, JUST LIKE paintComponent
+			if (!dataModel.isMapRendered())
+			{
+				zoomToMapBounds();
+				dataModel.setMapRendered(true);
+			}
+			g2.setColor(getBackground());
+			g2.fillRect(0, 0, width, height);
+			renderBaseLayer(g2, dataModel.getCurrentSHP(), width, height);
+			renderTitle(g2);
+			renderLegend(g2);
 		}
+		finally
+		{
+			g2.dispose();
+		}
+	}
+
+	/**
+	 * This helper method renders the mapData argument into the base layer
+	 * image, but only if it's not already there for the current viewport
+	 * and panel size.
+	 */
+	private void updateBaseLayer(SHPMap mapData)
+	{
+		int width = getWidth();
+		int height = getHeight();
+		if ((width <= 0) || (height <= 0))
+			return;
+
+		// IS WHAT'S ALREADY THERE STILL GOOD?
+		if (baseLayerValid
+			&& (baseLayerMap == mapData)
+			&& (baseLayerScale == scale)
+			&& (baseLayerCenterX == viewportCenterX)
+			&& (baseLayerCenterY == viewportCenterY)
+			&& (baseLayer.getWidth() == width)
+			&& (baseLayer.getHeight() == height))
+			return;
+
+		// WE ONLY NEED A NEW IMAGE IF THE PANEL CHANGED SIZE
+		if ((baseLayer == null) || (baseLayer.getWidth() != width) || (baseLayer.getHeight() != height))
+		{
+			GraphicsConfiguration gc = getGraphicsConfiguration();
+			if (gc != null)
+				baseLayer = gc.createCompatibleImage(width, height);
+			else
+				baseLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+
+		// THE IMAGE IS OPAQUE, SO IT NEEDS THE OCEAN TOO
+		Graphics2D g2 = baseLayer.createGraphics();
+		try
+		{
+			g2.setColor(getBackground());
+			g2.fillRect(0, 0, width, height);
+			renderBaseLayer(g2, mapData, width, height);
+		}
+		finally
+		{
+			g2.dispose();
+		}
+		baseLayerValid = true;
+		baseLayerMap = mapData;
+		baseLayerScale = scale;
+		baseLayerCenterX = viewportCenterX;
+		baseLayerCenterY = viewportCenterY;
+	}
+
+	/**
+	 * Called when the highlighted region changes, this repaints only what
+	 * needs it, meaning where the old and new highlights are and the legend,
+	 * which describes the highlighted region. Either argument may be null.
+	 */
+	public void repaintHighlight(SHPPolygon oldPolygon, SHPPolygon newPolygon)
+	{
+		Rectangle dirtyRegion = new Rectangle(LEGEND_X, LEGEND_Y, LEGEND_WIDTH, LEGEND_HEIGHT);
+		if (oldPolygon != null)
+			dirtyRegion.add(getPixelBounds(oldPolygon));
+		if (newPolygon != null)
+			dirtyRegion.add(getPixelBounds(newPolygon));
+		repaint(dirtyRegion);
+	}
+
+	/**
+	 * This helper method calculates the pixel area the shape argument's
+	 * highlight covers in the current viewport.
+	 */
+	private Rectangle getPixelBounds(SHPShape shape)
+	{
+		double[] box = shape.getBoundingBox();
+		Rectangle bounds = new Rectangle(xCoordinateToPixel(box[0]), yCoordinateToPixel(box[3]), 0, 0);
+		bounds.add(xCoordinateToPixel(box[2]), yCoordinateToPixel(box[1]));
+		bounds.grow(HIGHLIGHT_PADDING, HIGHLIGHT_PADDING);
+		return bounds;
 	}
 	
 	/** 
@@ -212,48 +450,68 @@ public class ElectionMapRenderer extends JPanel
 		// AND RENDER IT
 		g.drawString(title, titleX, titleY);
 	}
+	/*@params- g:Graphics
+	 * This function renders the placeholder shown while a map is loading, which is a box in the
+	 * middle of the panel saying which one
+	 */
+	public void renderLoading(Graphics g){
+		String message = "Loading " + loadingAbbr + "...";
+		g.setFont(LOADING_FONT);
+		FontMetrics fm = g.getFontMetrics();
+		int boxWidth = fm.stringWidth(message) + 40;
+		int boxHeight = fm.getHeight() + 20;
+		int boxX = (getWidth() - boxWidth)/2;
+		int boxY = (getHeight() - boxHeight)/2;
+		g.setColor(LOADING_BACKGROUND_COLOR);
+		g.fillRect(boxX, boxY, boxWidth, boxHeight);
+		g.setColor(TITLE_COLOR);
+		g.drawRect(boxX, boxY, boxWidth-1, boxHeight-1);
+		g.drawString(message, boxX + 20, boxY + 10 + fm.getAscent());
+	}
 	/*@params- g:Graphics
 	 * @throws- IOException
 	 * This function is responsible for rendering the legend. It sets certain info and calls functions
 	 * which will get the data which this function then renders
 	 */
 	public void renderLegend(Graphics g) throws IOException{
-		//always make sure to reinitialize the candidates so as to not have collision between data from past mouseovers
-		Candidate[] candidates = new Candidate[3];
-		candidates[0] = new Candidate(2, "Barack Obama", Color.BLUE);
-		candidates[1] = new Candidate(3, "John McCain", Color.RED);
-		candidates[2] = new Candidate(4, "Other", Color.GRAY);
 		//draw the rectangle
-		g.drawRect(1000, 600, 250, 150);
+		g.drawRect(LEGEND_X, LEGEND_Y, LEGEND_WIDTH-1, LEGEND_HEIGHT-1);
 		//set the color to fill
-		g.setColor(new Color(248,248,255));
+		g.setColor(LEGEND_BACKGROUND_COLOR);
 		//fill the rectangle
-		g.fillRect(1001, 601, 249, 149);
+		g.fillRect(LEGEND_X+1, LEGEND_Y+1, LEGEND_WIDTH-2, LEGEND_HEIGHT-2);
 		//set the font and color to draw the abbr
-		g.setFont(new Font("Times New Roman", Font.BOLD, 20));
+		g.setFont(LEGEND_TITLE_FONT);
 		g.setColor(Color.BLACK);
 		g.drawString(this.dataModel.getStateAbbr(), 1005, 620);
-		if(dataModel.getCurrentMapAbbr().equals("USA"))
+		if(dataModel.getCurrentMapAbbr().equals("USA") || this.miniFlagLocation==null)
 			this.miniFlagLocation=this.dataModel.getStateAbbr();
 		//draw the miniflag
-		g.drawImage(this.dataModel.getMiniFlags().get(this.miniFlagLocation), 1005, 630, null);
-		//update the candidates
-		candidates = this.updateCandidates(candidates);
-		//sort the candidates
-		candidates = dataModel.sortArray(candidates);
-		//turn them into strings
-		String[] votes = dataModel.buildStrings(candidates, selection);
+		g.drawImage(this.dataModel.getMiniFlag(this.miniFlagLocation), 1005, 630, null);
+		//only rebuild the strings when the results being shown have changed
+		ElectionResults results = dataModel.getResults(selection);
+		if(results!=legendResults || polyLocation!=legendLocation){
+			//update the candidates
+			this.updateCandidates(candidates);
+			//sort the candidates
+			dataModel.sortArray(candidates);
+			//turn them into strings
+			legendStrings = dataModel.buildStrings(candidates, selection);
+			legendTotal = dataModel.totalVotesString(selection);
+			legendResults = results;
+			legendLocation = polyLocation;
+		}
 		//set the font and loop through to render all the strings
-		g.setFont(new Font("Times New Roman", Font.PLAIN, 12));
-		for(int i=0; i<votes.length; i++){
+		g.setFont(LEGEND_FONT);
+		for(int i=0; i<legendStrings.length; i++){
 			g.setColor(candidates[i].getColor());
-			g.drawString(votes[i], 1005, 670+((i+1)*13));
+			g.drawString(legendStrings[i], 1005, 670+((i+1)*13));
 		}
 		//draw the horizontal line
 		g.drawLine(1005, 715, 1200, 715);
 		//render the total votes in this given country or state
 		g.setColor(Color.BLACK);
-		g.drawString(dataModel.totalVotesString(selection), 1005, 730);
+		g.drawString(legendTotal, 1005, 730);
 	}
 	// VIEWPORT SETUP FUNCTIONS
 	
@@ -438,8 +696,8 @@ public class ElectionMapRenderer extends JPanel
 		double latHeight = 180/scale;
 		double minLat = viewportCenterY - (latHeight/2);
 	
-		// SCALE THE PIXEL
-		double percentLat = ((double)yPixel)/getHeight();
+		// SCALE THE PIXEL, NOTE THAT PIXELS GO DOWN AS LATITUDE GOES UP
+		double percentLat = ((double)(getHeight() - yPixel))/getHeight();
 		double yLat = minLat + (percentLat * latHeight);
 		return yLat;
 	}
@@ -476,26 +734,79 @@ public class ElectionMapRenderer extends JPanel
 	}
 	/*
 	 * @param abr:String
-	 * This map handles zooming including calling the zoom function given to us
+	 * This map handles zooming including calling the zoom function given to us. A map that's been
+	 * shown before is shown again right away, otherwise it's loaded in the background, so until it's
+	 * ready the current map stays up with a note saying it's loading. Asking for another map
+	 * meanwhile means this one is never shown
 	 */
-	public void zoomHandler(String abr){
-		String location =ElectionMapFileManager.MAPS_DIR+abr;
-		SHPMap map =null;
-		try {		
-			map = new SHPDataLoader().loadShapefile(new File(location+".shp"));
-			dataModel.setCurrentSHP(map);
-		} catch (IOException e) {
-			e.printStackTrace();
+	public void zoomHandler(final String abr){
+		ElectionMapData keptMap = dataModel.getFileManager().getMapRepository().getMap(abr);
+		if(keptMap!=null){
+			cancelZoom();
+			showMap(keptMap);
+			return;
 		}
+		final ElectionMapLoader mapLoader = dataModel.getFileManager().getMapLoader();
+		if(loadingAbbr!=null && !loadingAbbr.equals(abr))
+			mapLoader.cancel(loadingAbbr);
+		loadingAbbr = abr;
+		setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		this.repaint();
+		mapLoader.load(abr, new ElectionMapLoader.LoadListener(){
+			public void mapLoaded(ElectionMapData mapData){
+				//only show it if it's still the one we want
+				if(!abr.equals(loadingAbbr))
+					return;
+				mapLoader.forget(abr);
+				stopLoading();
+				showMap(mapData);
+			}
+			public void mapFailed(String abbr, Exception e){
+				if(!abr.equals(loadingAbbr))
+					return;
+				stopLoading();
+				e.printStackTrace();
+				JOptionPane.showMessageDialog(ElectionMapRenderer.this, "Error loading " + abr + " map",
+						"Error loading " + abr + " map", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	/*
+	 * stops waiting for the map being loaded, if there is one, so the current map stays up
+	 */
+	public void cancelZoom(){
+		if(loadingAbbr!=null){
+			dataModel.getFileManager().getMapLoader().cancel(loadingAbbr);
+			stopLoading();
+		}
+	}
+	/*
+	 * helper that takes down the note that a map is loading
+	 */
+	private void stopLoading(){
+		loadingAbbr = null;
+		setCursor(Cursor.getDefaultCursor());
+		this.repaint();
+	}
+	/*
+	 * @param mapData:ElectionMapData
+	 * makes the loaded mapData the current map, zoomed in on, and keeps it so it can be shown again
+	 */
+	public void showMap(ElectionMapData mapData){
+		dataModel.getFileManager().getMapRepository().putMap(mapData);
+		String abr = mapData.getAbbr();
+		SHPMap map = mapData.getMap();
+		dataModel.setCurrentSHP(map);
 		SHPData data =map.getShapefileData();
 		double[] array2 = data.getMBR();
 		this.zoom((int)this.xCoordinateToPixel(array2[0]), (int)this.yCoordinateToPixel(array2[3]), 
 				(int)this.xCoordinateToPixel(array2[2]), (int)this.yCoordinateToPixel(array2[1]));
-		File currentFile = new File(location+".dbf");
-		dataModel.colorSections(map, currentFile);
-		dataModel.getRenderer().setFile(currentFile);
+		//its shapes are already colored
+		dataModel.setTable(mapData.getTable());
+		this.invalidateBaseLayer();
+		this.setFile(mapData.getDBFFile());
 		dataModel.setCurrentMapAbbr(abr);
-		if(abr!="USA")
+		if(!abr.equals(USA_MAP_ABBR))
 			dataModel.setMapRendered(false);
 		else
 			dataModel.setMapRendered(true);
@@ -0,0 +1,234 @@
+package election_map_viewer;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * This class keeps the maps that have been shown, shapes and table both,
+ * so that going back to one doesn't load it again. Maps are kept by their
+ * abbreviation until they take up more than maxBytes, estimated from what
+ * their shapes and tables actually have in memory, at which point the least
+ * recently shown ones are thrown out. Pinned maps, meaning the USA map, are
+ * never thrown out, and neither is the one shown last. Since maps whose
+ * shapes are loaded as needed grow while they're shown, their sizes are
+ * estimated again whenever a map is gotten or kept.
+ *
+ * A map is also thrown out if its .shp or .dbf changes, so it's loaded
+ * again rather than showing what's no longer there. A map that's thrown
+ * out is closed, which closes the file its shapes are read from and takes
+ * its table out of the shared DBFTableCache, so it really is let go of.
+ **/
+public class ElectionMapRepository
+{
+	// BY DEFAULT WE'LL KEEP THIS MANY BYTES OF MAPS AROUND
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	// HERE ARE ALL THE MAPS, IN LEAST TO MOST RECENTLY USED ORDER
+	private LinkedHashMap<String, Entry> entries;
+
+	// THE ABBREVIATIONS OF THE PINNED MAPS, WHICH STAY PINNED EVEN WHILE
+	// THEIR MAPS ARE THROWN OUT AND LOADED AGAIN BECAUSE THEIR FILES CHANGED
+	private HashSet<String> pinnedAbbrs;
+
+	// HOW MANY BYTES THEY TAKE UP, AND HOW MANY THEY MAY
+	private long numBytes;
+	private long maxBytes;
+
+	/*
+	 * sets up an empty repository that may hold DEFAULT_MAX_BYTES of maps
+	 */
+	public ElectionMapRepository()
+	{
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/*@params- initMaxBytes:long
+	 * sets up an empty repository that may hold initMaxBytes of maps, not counting pinned ones
+	 */
+	public ElectionMapRepository(long initMaxBytes)
+	{
+		// ACCESS ORDER MEANS THE ELDEST ENTRY IS THE LEAST RECENTLY USED
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		pinnedAbbrs = new HashSet<String>();
+		numBytes = 0;
+		maxBytes = Math.max(0, initMaxBytes);
+	}
+
+	// ACCESSOR METHODS
+	public synchronized int		getNumMaps()			{ return entries.size();	}
+	public synchronized long	getNumBytes()			{ return numBytes;			}
+	public synchronized long	getMaxBytes()			{ return maxBytes;			}
+
+	/*@params- abbr:String
+	 * @returns- ElectionMapData
+	 * gets the abbr map if it's here and its files haven't changed, otherwise null. This makes it the
+	 * most recently used
+	 */
+	public synchronized ElectionMapData getMap(String abbr){
+		Entry entry = entries.get(abbr);
+		if(entry==null)
+			return null;
+		if(!entry.isCurrent()){
+			remove(abbr, null);
+			return null;
+		}
+		if(!entry.pinned)
+			numBytes += entry.estimateBytes();
+		evict();
+		return entry.mapData;
+	}
+
+	/*@params- abbr:String
+	 * @returns- boolean
+	 * tells whether the abbr map is here, without making it the most recently used
+	 */
+	public synchronized boolean hasMap(String abbr){
+		return entries.containsKey(abbr);
+	}
+
+	// MUTATOR METHODS
+
+	/*@params- mapData:ElectionMapData
+	 * keeps mapData as the most recently used map, replacing what was kept for its abbreviation. Its
+	 * size is estimated again every time, since maps whose shapes are loaded as needed grow as
+	 * they're shown. A map for a pinned abbreviation is pinned, even if it's loaded again after
+	 * the one that was pinned was thrown out for being out of date
+	 */
+	public synchronized void putMap(ElectionMapData mapData){
+		put(mapData, pinnedAbbrs.contains(mapData.getAbbr()));
+	}
+
+	/*@params- mapData:ElectionMapData
+	 * keeps mapData like putMap, but never throws it out, nor any map kept for its abbreviation later
+	 */
+	public synchronized void pinMap(ElectionMapData mapData){
+		pinnedAbbrs.add(mapData.getAbbr());
+		put(mapData, true);
+	}
+
+	/*@params- abbr:String
+	 * throws out the abbr map, even if it's pinned, closing it. It isn't pinned anymore
+	 */
+	public synchronized void removeMap(String abbr){
+		pinnedAbbrs.remove(abbr);
+		remove(abbr, null);
+	}
+
+	/*@params- initMaxBytes:long
+	 * changes how many bytes of maps may be kept, throwing out the least recently used ones if there
+	 * are now too many
+	 */
+	public synchronized void setMaxBytes(long initMaxBytes){
+		maxBytes = Math.max(0, initMaxBytes);
+		evict();
+	}
+
+	/*@params- mapData:ElectionMapData
+	 * @returns- long
+	 * estimates how many bytes of memory the map's shapes and table take up
+	 */
+	public static long estimateBytes(ElectionMapData mapData){
+		return mapData.getMap().getShapefileData().estimateHeapBytes()
+				+ mapData.getTable().estimateHeapBytes();
+	}
+
+	/*@params- mapData:ElectionMapData, pinned:boolean
+	 * helper that keeps mapData, counting its bytes unless it's pinned. The other maps are estimated
+	 * again first, since the one that was being shown may have grown
+	 */
+	private void put(ElectionMapData mapData, boolean pinned){
+		remove(mapData.getAbbr(), mapData);
+		for(Entry entry : entries.values()){
+			if(!entry.pinned)
+				numBytes += entry.estimateBytes();
+		}
+		Entry entry = new Entry(mapData, pinned);
+		entries.put(mapData.getAbbr(), entry);
+		if(!pinned)
+			numBytes += entry.numBytes;
+		evict();
+	}
+
+	/*@params- abbr:String, keeping:ElectionMapData
+	 * helper that throws out the abbr map, closing it unless it's keeping, which is being kept again
+	 */
+	private void remove(String abbr, ElectionMapData keeping){
+		Entry entry = entries.remove(abbr);
+		if(entry==null)
+			return;
+		if(!entry.pinned)
+			numBytes -= entry.numBytes;
+		if((keeping==null) || (entry.mapData.getMap()!=keeping.getMap()))
+			close(entry.mapData);
+	}
+
+	/*
+	 * helper that throws out the least recently used maps that aren't pinned until the rest fit,
+	 * always keeping the most recently used one since it's probably being shown
+	 */
+	private void evict(){
+		Iterator<Entry> it = entries.values().iterator();
+		int numLeft = entries.size();
+		while((numBytes>maxBytes) && (numLeft>1)){
+			Entry entry = it.next();
+			numLeft--;
+			if(!entry.pinned){
+				numBytes -= entry.numBytes;
+				it.remove();
+				close(entry.mapData);
+			}
+		}
+	}
+
+	/*@params- mapData:ElectionMapData
+	 * helper that closes a map that's been thrown out
+	 */
+	static void close(ElectionMapData mapData){
+		try{
+			mapData.close();
+		}
+		catch(IOException ioe){
+			// THE FILE IS ONLY READ, SO FAILING TO CLOSE IT LOSES NOTHING,
+			// AND THE MAP IS GONE EITHER WAY
+		}
+	}
+
+	/*
+	 * A kept map, with how big it was estimated to be and when its files were last changed
+	 */
+	private static class Entry
+	{
+		private ElectionMapData mapData;
+		private boolean pinned;
+		private long numBytes;
+		private long shpModified;
+		private long dbfModified;
+
+		public Entry(ElectionMapData initMapData, boolean initPinned){
+			mapData = initMapData;
+			pinned = initPinned;
+			numBytes = ElectionMapRepository.estimateBytes(mapData);
+			shpModified = mapData.getSHPFile().lastModified();
+			dbfModified = mapData.getDBFFile().lastModified();
+		}
+
+		/*@returns- long
+		 * estimates the map's size again, returning how much it grew by
+		 */
+		public long estimateBytes(){
+			long oldNumBytes = numBytes;
+			numBytes = ElectionMapRepository.estimateBytes(mapData);
+			return numBytes - oldNumBytes;
+		}
+
+		/*@returns- boolean
+		 * tells whether the map's files are the same as when it was kept. Note that a file that isn't
+		 * there, like for maps from the bundle, is always the same
+		 */
+		public boolean isCurrent(){
+			return (mapData.getSHPFile().lastModified()==shpModified) && (mapData.getDBFFile().lastModified()==dbfModified);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package election_map_viewer;
+
+import java.awt.Image;
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import dbf_framework.DBFTable;
+
+import shp_framework.SHPMap;
+
+import static election_map_viewer.ElectionMapDataModel.USA_MAP_ABBR;
+
+/*
+ * This class loads everything the app needs at startup while the window is already showing.
+ * Each part of it is a stage that runs on its own thread as soon as the stages it needs are done,
+ * so the app icon, the flag index, the USA map's shapes and the USA map's table are all loaded at
+ * the same time, the map is colored once both its shapes and its table are there, and it then fades
+ * in. How long each stage took is printed as it finishes.
+ */
+public class ElectionMapStartup
+{
+	// THE NAMES OF THE STAGES, AS THEY'RE PRINTED
+	public static final String APP_ICON_STAGE = "app icon";
+	public static final String FLAGS_STAGE = "flag index";
+	public static final String SHP_STAGE = "USA shp";
+	public static final String DBF_STAGE = "USA dbf";
+	public static final String COLORS_STAGE = "USA colors";
+	public static final String MAP_SHOWN_STAGE = "USA map shown";
+
+	// ONE THREAD FOR EACH STAGE THAT DOESN'T NEED ANY OTHERS
+	public static final int NUM_THREADS = 4;
+
+	// THE APP WE'RE STARTING UP
+	private ElectionMapViewer view;
+
+	// RUNS THE STAGES, THIS IS SHUT DOWN ONCE THEY'RE ALL STARTED
+	private ExecutorService executor;
+
+	// WHEN STARTUP BEGAN, SO WE CAN TELL WHEN EACH STAGE FINISHED
+	private long startTime;
+
+	/*@params- initView:ElectionMapViewer
+	 * the view's data model, file manager and renderer must already be set up
+	 */
+	public ElectionMapStartup(ElectionMapViewer initView){
+		view = initView;
+	}
+
+	/*
+	 * starts all the stages and returns right away, the map is put in the data model on the event
+	 * dispatch thread once it's ready. This should only be called once
+	 */
+	public void start(){
+		startTime = System.nanoTime();
+		executor = Executors.newFixedThreadPool(NUM_THREADS, new ThreadFactory(){
+			private int numThreads = 0;
+			public synchronized Thread newThread(Runnable r){
+				// THESE SHOULDN'T KEEP THE APP RUNNING IF THE WINDOW IS CLOSED WHILE LOADING
+				Thread thread = new Thread(r, "Startup-" + (++numThreads));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final ElectionMapFileManager fileManager = view.getFileManager();
+		final ElectionMapDataModel dataModel = view.getDataModel();
+
+		// THE ICON AND FLAGS DON'T NEED ANYTHING ELSE. FLAGS ARE ONLY FOUND, THEN THE USA ONES,
+		// WHICH ARE SHOWN FIRST, START LOADING
+		executor.submit(new Stage<Image>(APP_ICON_STAGE, "Error loading app icon"){
+			protected Image load() throws Exception{
+				final Image appIcon = fileManager.readAppIcon();
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						view.setIconImage(appIcon);
+					}
+				});
+				return appIcon;
+			}
+		});
+		executor.submit(new Stage<ElectionMapFlagCache>(FLAGS_STAGE, "Error loading flags from " + ElectionMapFileManager.FLAGS_DIR){
+			protected ElectionMapFlagCache load() throws Exception{
+				fileManager.indexFlags();
+				dataModel.getFlagCache().prefetch(USA_MAP_ABBR);
+				return dataModel.getFlagCache();
+			}
+		});
+
+		// THE MAP'S SHAPES AND TABLE DON'T NEED EACH OTHER UNTIL IT'S COLORED
+		final Future<SHPMap> usaSHP = executor.submit(new Stage<SHPMap>(SHP_STAGE, "Error loading USA map"){
+			protected SHPMap load() throws Exception{
+				return fileManager.loadMapGeometry(USA_MAP_ABBR);
+			}
+		});
+		final Future<DBFTable> usaTable = executor.submit(new Stage<DBFTable>(DBF_STAGE, "Error loading USA map"){
+			protected DBFTable load() throws Exception{
+				return fileManager.loadMapTable(USA_MAP_ABBR);
+			}
+		});
+		executor.submit(new Stage<SHPMap>(COLORS_STAGE, "Error loading USA map", usaSHP, usaTable){
+			protected SHPMap load() throws Exception{
+				final SHPMap map = usaSHP.get();
+				final DBFTable table = usaTable.get();
+				dataModel.initShapeColors(map, table);
+
+				// THE MAP IS READY, SO NOW IT CAN BE SHOWN, AND IT'S ALWAYS KEPT
+				// SO GOING BACK TO IT NEVER LOADS IT AGAIN
+				fileManager.getMapRepository().pinMap(new ElectionMapData(USA_MAP_ABBR, map, table));
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						dataModel.initUSAMap(map, table);
+						view.getRenderer().setFile(new File(ElectionMapFileManager.USA_DBF));
+						view.getRenderer().fadeInMap();
+						reportStage(MAP_SHOWN_STAGE, System.nanoTime());
+					}
+				});
+				return map;
+			}
+		});
+
+		// QUEUED STAGES STILL RUN, BUT ONCE THEY'RE DONE THE THREADS GO AWAY
+		executor.shutdown();
+	}
+
+	/*@params- stageName:String, stageStart:long
+	 * prints how long the stage took, from stageStart until now, and how long after startup began it finished
+	 */
+	private void reportStage(String stageName, long stageStart){
+		long now = System.nanoTime();
+		System.out.printf("Startup: %s took %.1f ms, done %.1f ms after start%n",
+				stageName, (now - stageStart) / 1e6, (now - startTime) / 1e6);
+	}
+
+	/*
+	 * helper that tells the user a stage failed, on the event dispatch thread
+	 */
+	private void showError(final String errorMessage){
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				JOptionPane.showMessageDialog(view, errorMessage, errorMessage, JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+
+	/*
+	 * One stage of startup, which waits for the stages it needs before it loads anything. If any of
+	 * them failed, so does this one, but the user was already told about that, so only the stage
+	 * that actually failed shows its error.
+	 */
+	private abstract class Stage<T> implements Callable<T>
+	{
+		private String name;
+		private String errorMessage;
+		private Future<?>[] dependencies;
+
+		/*@params- initName:String, initErrorMessage:String, initDependencies:Future<?>...
+		 */
+		public Stage(String initName, String initErrorMessage, Future<?>... initDependencies){
+			name = initName;
+			errorMessage = initErrorMessage;
+			dependencies = initDependencies;
+		}
+
+		public T call() throws Exception{
+			for(Future<?> dependency : dependencies)
+				dependency.get();
+
+			// THE STAGE'S OWN TIME DOESN'T COUNT WAITING FOR THE OTHERS
+			long stageStart = System.nanoTime();
+			try{
+				T result = load();
+				reportStage(name, stageStart);
+				return result;
+			}
+			catch(Exception e){
+				e.printStackTrace();
+				showError(errorMessage);
+				throw e;
+			}
+		}
+
+		/*@returns- T
+		 * @throws- Exception
+		 * does the work of the stage, on one of the startup threads
+		 */
+		protected abstract T load() throws Exception;
+	}
+}
@@ -3,7 +3,6 @@ package election_map_viewer;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.io.File;
 import java.io.IOException;
 
 import javax.swing.*;
@@ -35,9 +34,10 @@ public class ElectionMapViewer extends JFrame
 	private SHPMap map;
 
 	/**
-	 * This constructor sets up the GUI, including loading the
-	 * USA map. Note that the state maps are only loaded upon 
-	 * user request.
+	 * This constructor sets up the GUI, but doesn't load anything,
+	 * that's done by an ElectionMapStartup once the window is up so
+	 * that it doesn't have to wait. Note that the state maps are only
+	 * loaded upon user request.
 	 */
 	public ElectionMapViewer()
 	{
@@ -76,7 +76,7 @@ public class ElectionMapViewer extends JFrame
 	/**
 	 * Initializes the data manager and the file manager used by our app.
 	 * Note that the data model is still not ready for use after this method,
-	 * it will still need a constructed renderer.
+	 * it will still need a constructed renderer, and nothing is loaded yet.
 	 */
 	public void initData()
 	{
@@ -85,9 +85,6 @@ public class ElectionMapViewer extends JFrame
 
 		// SETUP THE CLASS THAT LOADS DBF, SHP, and IMAGE FILES
 		fileManager = new ElectionMapFileManager(dataModel);
-		fileManager.loadAppIcon(this);
-		fileManager.loadAllFlags(this);
-		fileManager.loadUSAMap(this);
 	}
 
 	/**
@@ -137,18 +134,13 @@ public class ElectionMapViewer extends JFrame
 		// SETUP THE WINDOW
 		ElectionMapViewer frame = new ElectionMapViewer();
 		
-		// DISPLAY THE WINDOW
+		// START LOADING THE FLAGS AND USA MAP, WHICH WILL FADE
+		// IN ONCE IT'S READY. THE RENDERER ZOOMS IN ON IT THE FIRST
+		// TIME IT'S PAINTED, WHEN ITS SIZE IS KNOWN
+		new ElectionMapStartup(frame).start();
+		
+		// AND DISPLAY THE WINDOW RIGHT AWAY
 		frame.setVisible(true);
-
-		// WE'LL WAIT UNTIL WE KNOW THE SIZE OF THE RENDERING
-		// PANEL BEFORE WE ZOOM IN ON THE MAP
-		while (frame.renderer.getWidth() <= 0)
-		{
-			try { Thread.sleep(10); }
-			catch(InterruptedException ie) { ie.printStackTrace(); }
-		}
-		frame.renderer.repaint();
-		frame.renderer.setFile(new File(ElectionMapFileManager.USA_DBF));
 	}
 	/*
 	 * class for the zooming action
@@ -166,11 +158,15 @@ public class ElectionMapViewer extends JFrame
 		//@params arg:MouseEVent
 		public void mouseClicked(MouseEvent arg0)
 		{
-			//as long as you are in the USA map you can click to zoom
-			if(this.dataModel.getCurrentMapAbbr().equals("USA"))
+			//as long as you are in the USA map you can click to zoom, once it's loaded
+			if(this.dataModel.isMapLoaded() && this.dataModel.getCurrentMapAbbr().equals("USA"))
 			{
-				dataModel.getRenderer().zoomHandler((String)dataModel.getTable().getTree().
-						get(dataModel.getRenderer().getPolyLocation()).getData(1));
+				//clicking outside of the states means never mind the state that's loading
+				if(dataModel.getRenderer().getPolyLocation()==-1)
+					dataModel.getRenderer().cancelZoom();
+				else
+					dataModel.getRenderer().zoomHandler(dataModel.getTable().
+							getString(dataModel.getRenderer().getPolyLocation(), 1));
 			}
 		}
 		//we don't want any of these
@@ -0,0 +1,120 @@
+package election_map_viewer;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import dbf_framework.DBFColumn;
+import dbf_framework.DBFTable;
+
+/**
+ * This class stores the vote counts found in an election results table,
+ * added up once when the table is loaded so that rendering never has to
+ * go back through the table. The candidates are the last NUM_CANDIDATES
+ * columns of the table, in order. Note that objects of this class cannot
+ * be changed once built.
+ **/
+public class ElectionResults
+{
+	// THE LAST THREE COLUMNS OF EVERY RESULTS TABLE ARE THE CANDIDATES
+	public static final int NUM_CANDIDATES = 3;
+
+	// USED AS THE RECORD INDEX FOR ASKING ABOUT THE WHOLE TABLE
+	public static final int WHOLE_TABLE = -1;
+
+	// THE SAME ROUNDING THE LEGEND HAS ALWAYS USED
+	private static final MathContext PERCENT_CONTEXT = new MathContext(2);
+	private static final BigDecimal ONE_HUNDRED = new BigDecimal(100);
+
+	// PER RECORD DATA, INDEXED [candidate][record] WHERE THERE ARE SEVERAL
+	private final long[][] recordVotes;
+	private final int[][] recordPercents;
+	private final long[] recordTotals;
+
+	// AND THE SAME FOR THE TABLE AS A WHOLE
+	private final long[] tableVotes;
+	private final int[] tablePercents;
+	private final long tableTotal;
+
+	/**
+	 * This constructor goes through all the records in the table argument
+	 * once, adding up everything the application will need to know.
+	 *
+	 * @param table The election results table to add up.
+	 **/
+	public ElectionResults(DBFTable table)
+	{
+		int numRecords = table.getNumRecords();
+		int firstCandidateField = table.getNumFields() - NUM_CANDIDATES;
+		recordVotes = new long[NUM_CANDIDATES][numRecords];
+		recordPercents = new int[NUM_CANDIDATES][numRecords];
+		recordTotals = new long[numRecords];
+		tableVotes = new long[NUM_CANDIDATES];
+		tablePercents = new int[NUM_CANDIDATES];
+
+		// FIRST GET ALL THE VOTES OUT OF THE TABLE, A COLUMN AT A TIME.
+		// EMPTY CELLS COUNT AS NO VOTES
+		for (int c = 0; c < NUM_CANDIDATES; c++)
+		{
+			DBFColumn column = table.getColumn(firstCandidateField + c);
+			long[] votes = recordVotes[c];
+			long candidateTotal = 0;
+			for (int i = 0; i < numRecords; i++)
+			{
+				votes[i] = column.getLong(i);
+				recordTotals[i] += votes[i];
+				candidateTotal += votes[i];
+			}
+			tableVotes[c] = candidateTotal;
+		}
+
+		long total = 0;
+		for (int i = 0; i < numRecords; i++)
+			total += recordTotals[i];
+		tableTotal = total;
+
+		// AND THEN THE PERCENTAGES
+		for (int c = 0; c < NUM_CANDIDATES; c++)
+		{
+			for (int i = 0; i < numRecords; i++)
+				recordPercents[c][i] = calculatePercent(recordVotes[c][i], recordTotals[i]);
+			tablePercents[c] = calculatePercent(tableVotes[c], tableTotal);
+		}
+	}
+
+	// ACCESSOR METHODS - FOR ANY OF THESE THAT TAKE A recordIndex,
+	// WHOLE_TABLE MAY BE PROVIDED TO GET THE TOTAL FOR ALL RECORDS
+	public int		getNumRecords()						{ return recordTotals.length;		}
+
+	public long getVotes(int candidate, int recordIndex)
+	{
+		if (recordIndex == WHOLE_TABLE)
+			return tableVotes[candidate];
+		return recordVotes[candidate][recordIndex];
+	}
+
+	public int getPercent(int candidate, int recordIndex)
+	{
+		if (recordIndex == WHOLE_TABLE)
+			return tablePercents[candidate];
+		return recordPercents[candidate][recordIndex];
+	}
+
+	public long getTotalVotes(int recordIndex)
+	{
+		if (recordIndex == WHOLE_TABLE)
+			return tableTotal;
+		return recordTotals[recordIndex];
+	}
+
+	/**
+	 * Helper method for calculating the percent of total that votes is,
+	 * rounded to two significant digits like the legend always has been.
+	 **/
+	private static int calculatePercent(long votes, long total)
+	{
+		if (total == 0)
+			return 0;
+		BigDecimal ratio = new BigDecimal(votes).divide(new BigDecimal(total), PERCENT_CONTEXT);
+		return ratio.multiply(ONE_HUNDRED).intValue();
+	}
+}
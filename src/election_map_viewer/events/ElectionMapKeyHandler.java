@@ -32,7 +32,7 @@ public class ElectionMapKeyHandler implements KeyListener
 	{
 		// STORES THE KEY PRESSED FOR THIS EVENT
 		int key = ke.getKeyCode();
-		if(key==27){
+		if(key==27 && dataModel.isMapLoaded()){
 			dataModel.getRenderer().zoomHandler("USA");
 		}
 	}
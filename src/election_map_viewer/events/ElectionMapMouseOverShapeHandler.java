@@ -4,7 +4,7 @@ import java.awt.event.*;
 import java.io.File;
 import java.io.IOException;
 
-import dbf_framework.DBFFileIO;
+import dbf_framework.DBFTableCache;
 
 import election_map_viewer.ElectionMapDataModel;
 /**
@@ -37,13 +37,18 @@ public class ElectionMapMouseOverShapeHandler implements MouseMotionListener
 		// GET THE CURRENT MOUSE LOCATION
 		int x = me.getX();
 		int y = me.getY();
+		// THERE'S NOTHING TO HIGHLIGHT UNTIL THE MAP IS LOADED
+		if (!dataModel.isMapLoaded())
+			return;
 		dataModel.highlightMapRegion(x, y);
-		DBFFileIO input = new DBFFileIO();
+		DBFTableCache input = DBFTableCache.getSharedCache();
 		if(dataModel.getCurrentMapAbbr()=="USA" && dataModel.getRenderer().getPolyLocation()!=-1){
 			try {
 				int location = dataModel.getRenderer().getPolyLocation();
 				File currentFile = dataModel.getRenderer().getFile();
-				dataModel.setCurrentStateAbbr((String)input.loadDBF(currentFile).getRecord(location).getData(1));
+				dataModel.setCurrentStateAbbr((String)input.getTable(currentFile).getRecord(location).getData(1));
+				// THE USER MAY BE ABOUT TO CLICK ON THIS STATE, SO START LOADING IT
+				dataModel.getFileManager().getMapLoader().prefetch(dataModel.getStateAbbr());
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -52,7 +57,7 @@ public class ElectionMapMouseOverShapeHandler implements MouseMotionListener
 			try {
 				int location = dataModel.getRenderer().getPolyLocation();
 				File currentFile = dataModel.getRenderer().getFile();
-				dataModel.setCurrentStateAbbr((String)input.loadDBF(currentFile).getRecord(location).getData(0));
+				dataModel.setCurrentStateAbbr((String)input.getTable(currentFile).getRecord(location).getData(0));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -0,0 +1,267 @@
+package election_map_viewer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TreeSet;
+
+import dbf_framework.DBFFieldType;
+import dbf_framework.DBFFileIO;
+import dbf_framework.DBFRecord;
+import dbf_framework.DBFTable;
+
+import shp_framework.SHPData;
+import shp_framework.SHPDataLoader;
+import shp_framework.geometry.SHPPolyType;
+import shp_framework.geometry.SHPSimplifier;
+
+/**
+ * This program tests map bundles by writing a few small maps, compiling
+ * them into a bundle, and checking that every map and table opened from
+ * the bundle is the same as loading its .shp and .dbf, and that the bundle
+ * knows when those files have changed since. It throws an AssertionError
+ * at the first thing that's wrong.
+ **/
+public class ElectionMapBundleTest
+{
+	/*@params- args:String[]
+	 * @throws- IOException
+	 * runs all the tests in a temporary directory, which is deleted afterwards
+	 */
+	public static void main(String[] args) throws IOException{
+		File mapsDir = File.createTempFile("ElectionMapBundleTest", "");
+		mapsDir.delete();
+		if(!mapsDir.mkdir())
+			throw new IOException("Could not make " + mapsDir);
+		try{
+			testRoundTrip(mapsDir);
+			testNotABundle(mapsDir);
+		}
+		finally{
+			for(File file : mapsDir.listFiles())
+				file.delete();
+			mapsDir.delete();
+		}
+		System.out.println("ElectionMapBundleTest passed");
+	}
+
+	/*@params- mapsDir:File
+	 * @throws- IOException
+	 * compiles two maps, and a .shp without a .dbf that should be left out, and checks what
+	 * comes back out of the bundle
+	 */
+	private static void testRoundTrip(File mapsDir) throws IOException{
+		Random random = new Random(20);
+		String[] names = { "IL", "WI" };
+		for(int i=0; i<names.length; i++){
+			writeShapefile(new File(mapsDir, names[i] + ".shp"), 40 + (i * 100), random);
+			new DBFFileIO().saveDBF(makeTable(40 + (i * 100)), new File(mapsDir, names[i] + ".dbf"));
+		}
+		writeShapefile(new File(mapsDir, "XX.shp"), 3, random);
+
+		File bundleFile = new File(mapsDir, "maps.bundle");
+		int numMaps = new ElectionMapBundleCompiler().compile(mapsDir, bundleFile);
+		check(numMaps==names.length, numMaps + " maps compiled");
+
+		SHPDataLoader shpLoader = new SHPDataLoader();
+		DBFFileIO dbfLoader = new DBFFileIO();
+		ElectionMapBundle bundle = new ElectionMapBundle(bundleFile);
+		try{
+			check(bundle.getMapNames().equals(new TreeSet<String>(Arrays.asList(names))),
+					"bundled maps are " + bundle.getMapNames());
+			for(String name : names){
+				File shpFile = new File(mapsDir, name + ".shp");
+				File dbfFile = new File(mapsDir, name + ".dbf");
+				check(bundle.isCurrent(name, shpFile, dbfFile), name + " is current");
+				checkSameData(shpLoader.loadShapefile(shpFile).getShapefileData(),
+						bundle.loadMap(name).getShapefileData(), name);
+				checkSameTable(dbfLoader.loadDBF(dbfFile), bundle.loadTable(name), name);
+			}
+
+			//a map whose files change isn't current anymore, but one whose files are gone still is
+			File dbfFile = new File(mapsDir, "WI.dbf");
+			check(dbfFile.setLastModified(dbfFile.lastModified() - 60000), "changing when WI.dbf was modified");
+			check(!bundle.isCurrent("WI", new File(mapsDir, "WI.shp"), dbfFile), "WI isn't current once its .dbf changes");
+			check(bundle.isCurrent("IL", new File(mapsDir, "IL.shp"), new File(mapsDir, "gone.dbf")), "IL is current without its .dbf");
+			check(!bundle.isCurrent("XX", new File(mapsDir, "XX.shp"), new File(mapsDir, "XX.dbf")), "XX isn't bundled");
+
+			try{
+				bundle.loadMap("XX");
+				throw new AssertionError("a map that isn't bundled was loaded");
+			}
+			catch(IOException ioe){
+				//expected
+			}
+		}
+		finally{
+			bundle.close();
+		}
+	}
+
+	/*@params- mapsDir:File
+	 * @throws- IOException
+	 * a file that isn't a bundle can't be opened as one
+	 */
+	private static void testNotABundle(File mapsDir) throws IOException{
+		File notABundle = new File(mapsDir, "IL.dbf");
+		try{
+			new ElectionMapBundle(notABundle).close();
+			throw new AssertionError("a .dbf was opened as a bundle");
+		}
+		catch(IOException ioe){
+			//expected
+		}
+	}
+
+	/*
+	 * helper that checks two maps have the same shapes, point for point, including their
+	 * levels of detail
+	 */
+	private static void checkSameData(SHPData expected, SHPData actual, String name){
+		check(actual.getShapeType()==expected.getShapeType(), name + ": shape type");
+		check(Arrays.equals(actual.getMBR(), expected.getMBR()), name + ": MBR");
+		check(actual.getNumShapes()==expected.getNumShapes(), name + ": number of shapes");
+		for(int i=0; i<expected.getNumShapes(); i++){
+			String what = name + ": shape " + i + " ";
+			SHPPolyType expectedPoly = (SHPPolyType)expected.getShape(i);
+			SHPPolyType actualPoly = (SHPPolyType)actual.getShape(i);
+			check(actualPoly.getRecordNumber()==expectedPoly.getRecordNumber(), what + "record number");
+			check(Arrays.equals(actualPoly.getBoundingBox(), expectedPoly.getBoundingBox()), what + "bounding box");
+			check(Arrays.equals(actualPoly.getParts(), expectedPoly.getParts()), what + "parts");
+			check(Arrays.equals(actualPoly.getXPointsData(), expectedPoly.getXPointsData()), what + "x points");
+			check(Arrays.equals(actualPoly.getYPointsData(), expectedPoly.getYPointsData()), what + "y points");
+			check(actualPoly.hasDetailLevels() && expectedPoly.hasDetailLevels(), what + "levels of detail");
+			for(int level=0; level<SHPSimplifier.NUM_DETAIL_LEVELS; level++){
+				check(Arrays.equals(actualPoly.getDetailParts(level), expectedPoly.getDetailParts(level)), what + "parts at level " + level);
+				check(Arrays.equals(actualPoly.getDetailXPointsData(level), expectedPoly.getDetailXPointsData(level)), what + "x points at level " + level);
+				check(Arrays.equals(actualPoly.getDetailYPointsData(level), expectedPoly.getDetailYPointsData(level)), what + "y points at level " + level);
+			}
+		}
+	}
+
+	/*
+	 * helper that checks two tables have the same records
+	 */
+	private static void checkSameTable(DBFTable expected, DBFTable actual, String name){
+		check(actual.getNumFields()==expected.getNumFields(), name + ": number of fields");
+		check(actual.getNumRecords()==expected.getNumRecords(), name + ": number of records");
+		check(actual.getLastModifiedDate().equals(expected.getLastModifiedDate()), name + ": last update");
+		for(int i=0; i<expected.getNumRecords(); i++){
+			check(Arrays.equals(actual.getRecord(i).getAllData(), expected.getRecord(i).getAllData()),
+					name + ": record " + i);
+		}
+	}
+
+	/*
+	 * helper that makes a table of results for numRecords counties, one per shape
+	 */
+	private static DBFTable makeTable(int numRecords){
+		DBFTable table = new DBFTable();
+		table.setFileType((byte)3);
+		table.setLastModifiedDate(2008, Calendar.NOVEMBER, 4);
+		table.setMup(new int[3]);
+		table.setTerminator((byte)0x0D);
+		table.addField("NAME", DBFFieldType.C, 16);
+		table.addField("OBAMA", DBFFieldType.N, 9);
+		table.addField("MCCAIN", DBFFieldType.N, 9);
+		for(int i=0; i<numRecords; i++){
+			DBFRecord record = new DBFRecord(3);
+			record.setData("County " + i, 0);
+			record.setData(Long.valueOf(i * 37), 1);
+			record.setData(Long.valueOf(i * 41), 2);
+			table.addRecord(record);
+		}
+		return table;
+	}
+
+	/*
+	 * helper that writes a polygon shapefile of numShapes rough rings
+	 */
+	private static void writeShapefile(File shpFile, int numShapes, Random random) throws IOException{
+		double[][] xs = new double[numShapes][];
+		double[][] ys = new double[numShapes][];
+		int fileLength = 100;
+		for(int i=0; i<numShapes; i++){
+			int numPoints = 5 + random.nextInt(80);
+			double centerX = -90 + random.nextDouble() * 5;
+			double centerY = 40 + random.nextDouble() * 5;
+			double radius = 0.05 + random.nextDouble() * 0.5;
+			xs[i] = new double[numPoints];
+			ys[i] = new double[numPoints];
+			for(int j=0; j<numPoints; j++){
+				double angle = (2 * Math.PI * j) / (numPoints - 1);
+				double r = radius * (0.9 + random.nextDouble() * 0.2);
+				xs[i][j] = centerX + (r * Math.cos(angle));
+				ys[i][j] = centerY + (r * Math.sin(angle));
+			}
+			xs[i][numPoints-1] = xs[i][0];
+			ys[i][numPoints-1] = ys[i][0];
+			fileLength += 8 + 44 + 4 + (numPoints * 16);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(fileLength);
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(9994);
+		for(int i=0; i<5; i++)
+			buffer.putInt(0);
+		buffer.putInt(fileLength / 2);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(1000);
+		buffer.putInt(SHPDataLoader.POLYGON);
+		double[] mbr = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for(int i=0; i<numShapes; i++)
+			mbr = union(mbr, boundingBox(xs[i], ys[i]));
+		for(double value : mbr)
+			buffer.putDouble(value);
+		for(int i=0; i<4; i++)
+			buffer.putDouble(0);
+
+		for(int i=0; i<numShapes; i++){
+			int numBytes = 44 + 4 + (xs[i].length * 16);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			buffer.putInt(i + 1);
+			buffer.putInt(numBytes / 2);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(SHPDataLoader.POLYGON);
+			for(double value : boundingBox(xs[i], ys[i]))
+				buffer.putDouble(value);
+			buffer.putInt(1);
+			buffer.putInt(xs[i].length);
+			buffer.putInt(0);
+			for(int j=0; j<xs[i].length; j++){
+				buffer.putDouble(xs[i][j]);
+				buffer.putDouble(ys[i][j]);
+			}
+		}
+
+		FileOutputStream fos = new FileOutputStream(shpFile);
+		try{
+			fos.write(buffer.array());
+		}
+		finally{
+			fos.close();
+		}
+	}
+
+	private static double[] boundingBox(double[] x, double[] y){
+		double[] box = { Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+		for(int i=0; i<x.length; i++)
+			box = union(box, new double[] { x[i], y[i], x[i], y[i] });
+		return box;
+	}
+
+	private static double[] union(double[] box1, double[] box2){
+		return new double[] {	Math.min(box1[0], box2[0]), Math.min(box1[1], box2[1]),
+								Math.max(box1[2], box2[2]), Math.max(box1[3], box2[3])	};
+	}
+
+	private static void check(boolean condition, String what){
+		if(!condition)
+			throw new AssertionError(what);
+	}
+}
@@ -0,0 +1,122 @@
+package election_map_viewer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import dbf_framework.DBFFieldType;
+import dbf_framework.DBFRecord;
+import dbf_framework.DBFTable;
+
+import shp_framework.SHPData;
+import shp_framework.SHPMap;
+
+/**
+ * This program tests that the map repository keeps pinned maps pinned, even once they've been
+ * thrown out for their files changing and loaded again, while other maps are thrown out to keep
+ * under its byte budget. It makes a .dbf for the pinned map in the maps directory, which it deletes
+ * afterwards along with whatever directories it had to make. It throws an AssertionError at the
+ * first thing that's wrong.
+ **/
+public class ElectionMapRepositoryTest
+{
+	// THE PINNED MAP, WHICH NO REAL MAP IS CALLED
+	private static final String PINNED_ABBR = "ZZPINNED";
+
+	/*@params- args:String[]
+	 * @throws- IOException
+	 * runs all the tests
+	 */
+	public static void main(String[] args) throws IOException{
+		File setupDir = new File(ElectionMapFileManager.SETUP_DIR);
+		File mapsDir = new File(ElectionMapFileManager.MAPS_DIR);
+		boolean madeSetupDir = !setupDir.exists();
+		boolean madeMapsDir = !mapsDir.exists();
+		if(madeMapsDir && !mapsDir.mkdirs())
+			throw new IOException("Could not make " + mapsDir);
+		File dbfFile = new File(mapsDir, PINNED_ABBR + ".dbf");
+		try{
+			touch(dbfFile);
+			testReloadedPin(dbfFile);
+			testRemovedPin();
+		}
+		finally{
+			dbfFile.delete();
+			if(madeMapsDir)
+				mapsDir.delete();
+			if(madeSetupDir)
+				setupDir.delete();
+		}
+		System.out.println("ElectionMapRepositoryTest passed");
+	}
+
+	/*@params- dbfFile:File
+	 * a pinned map whose .dbf changes is thrown out, but the map loaded in its place is pinned too,
+	 * so filling the repository up past its budget throws out everything else instead
+	 */
+	private static void testReloadedPin(File dbfFile){
+		ElectionMapData oldMap = makeMap(PINNED_ABBR);
+		ElectionMapRepository repository = new ElectionMapRepository(3 * ElectionMapRepository.estimateBytes(oldMap));
+		repository.pinMap(oldMap);
+		check(repository.getMap(PINNED_ABBR)==oldMap, "the pinned map is kept");
+
+		check(dbfFile.setLastModified(dbfFile.lastModified() - 60000), "changing when the .dbf was modified");
+		check(repository.getMap(PINNED_ABBR)==null, "the pinned map is thrown out once its .dbf changes");
+		ElectionMapData newMap = makeMap(PINNED_ABBR);
+		repository.putMap(newMap);
+
+		fill(repository, 10);
+		check(repository.getNumMaps()<11, "other maps were thrown out, " + repository.getNumMaps() + " are kept");
+		check(repository.getNumBytes()<=repository.getMaxBytes(), "the maps kept fit");
+		check(repository.hasMap(PINNED_ABBR), "the map loaded again is still pinned");
+		check(repository.getMap(PINNED_ABBR)==newMap, "and it's the one loaded again");
+	}
+
+	/*
+	 * a pinned map that's removed isn't pinned anymore, so when it's kept again it may be thrown out
+	 */
+	private static void testRemovedPin(){
+		ElectionMapData map = makeMap(PINNED_ABBR);
+		ElectionMapRepository repository = new ElectionMapRepository(3 * ElectionMapRepository.estimateBytes(map));
+		repository.pinMap(map);
+		repository.removeMap(PINNED_ABBR);
+		check(!repository.hasMap(PINNED_ABBR), "the removed map is gone");
+		repository.putMap(makeMap(PINNED_ABBR));
+		fill(repository, 10);
+		check(!repository.hasMap(PINNED_ABBR), "the map kept again after being removed was thrown out");
+	}
+
+	/*
+	 * helper that keeps numMaps more maps, none of which have files
+	 */
+	private static void fill(ElectionMapRepository repository, int numMaps){
+		for(int i=0; i<numMaps; i++)
+			repository.putMap(makeMap("ZZ" + i));
+	}
+
+	/*
+	 * helper that makes a map with no shapes but a table of 500 records, so it takes up some room
+	 */
+	private static ElectionMapData makeMap(String abbr){
+		DBFTable table = new DBFTable();
+		table.addField("NAME", DBFFieldType.C, 40);
+		for(int i=0; i<500; i++){
+			DBFRecord record = new DBFRecord(1);
+			record.setData(abbr + " county " + i, 0);
+			table.addRecord(record);
+		}
+		return new ElectionMapData(abbr, new SHPMap(abbr, new SHPData()), table);
+	}
+
+	/*
+	 * helper that makes an empty file
+	 */
+	private static void touch(File file) throws IOException{
+		new FileOutputStream(file).close();
+	}
+
+	private static void check(boolean condition, String what){
+		if(!condition)
+			throw new AssertionError(what);
+	}
+}